@@ -21,6 +21,10 @@ echo "📌 Setting environment variables..."
 export AWS_REGION=${AWS_REGION:-ap-southeast-1}
 export DDB_TABLE_TICKETS=${DDB_TABLE_TICKETS:-smarq-tickets}
 export DDB_TABLE_QUEUES=${DDB_TABLE_QUEUES:-smarq-queues}
+export DDB_TABLE_OUTBOX=${DDB_TABLE_OUTBOX:-smarq-outbox}
+export DDB_TABLE_JOIN_GUARDS=${DDB_TABLE_JOIN_GUARDS:-smarq-join-guards}
+export DDB_TABLE_QUEUE_SHARDS=${DDB_TABLE_QUEUE_SHARDS:-smarq-queue-shards}
+export SHARDING_HOT_QUEUES=${SHARDING_HOT_QUEUES:-}
 export SERVER_PORT=${SERVER_PORT:-8080}
 export SERVICE_B_BASEURL=${SERVICE_B_BASEURL:-http://localhost:8081}
 export SPRING_PROFILES_ACTIVE=${SPRING_PROFILES_ACTIVE:-prod}
@@ -53,6 +57,10 @@ WorkingDirectory=$APP_DIR
 Environment="AWS_REGION=$AWS_REGION"
 Environment="DDB_TABLE_TICKETS=$DDB_TABLE_TICKETS"
 Environment="DDB_TABLE_QUEUES=$DDB_TABLE_QUEUES"
+Environment="DDB_TABLE_OUTBOX=$DDB_TABLE_OUTBOX"
+Environment="DDB_TABLE_JOIN_GUARDS=$DDB_TABLE_JOIN_GUARDS"
+Environment="DDB_TABLE_QUEUE_SHARDS=$DDB_TABLE_QUEUE_SHARDS"
+Environment="SHARDING_HOT_QUEUES=$SHARDING_HOT_QUEUES"
 Environment="SERVER_PORT=$SERVER_PORT"
 Environment="SERVICE_B_BASEURL=$SERVICE_B_BASEURL"
 Environment="SPRING_PROFILES_ACTIVE=$SPRING_PROFILES_ACTIVE"
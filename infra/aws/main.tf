@@ -180,12 +180,30 @@ resource "aws_dynamodb_table" "tickets" {
     type = "S"
   }
 
+  attribute {
+    name = "waitingShard"
+    type = "S"
+  }
+
+  attribute {
+    name = "sequence"
+    type = "N"
+  }
+
   global_secondary_index {
     name            = "queueId-index"
     hash_key        = "queueId"
     projection_type = "ALL"
   }
 
+  # Sparse: only waiting tickets of sharded hot queues carry waitingShard ("queueId#shard")
+  global_secondary_index {
+    name            = "waitingShard-sequence-index"
+    hash_key        = "waitingShard"
+    range_key       = "sequence"
+    projection_type = "ALL"
+  }
+
   tags = {
     Environment = var.environment
     Project     = var.project_name
@@ -235,6 +253,67 @@ resource "aws_dynamodb_table" "queues" {
   }
 }
 
+# Join uniqueness guards (idempotency keys, one waiting ticket per user and queue)
+resource "aws_dynamodb_table" "join_guards" {
+  name           = "${var.project_name}-join-guards-${var.environment}"
+  billing_mode   = "PAY_PER_REQUEST"
+  hash_key       = "guardKey"
+
+  attribute {
+    name = "guardKey"
+    type = "S"
+  }
+
+  ttl {
+    attribute_name = "expiresAt"
+    enabled        = true
+  }
+
+  tags = {
+    Environment = var.environment
+    Project     = var.project_name
+  }
+}
+
+# openSlots counter shards of hot queues (app.sharding.hot-queues)
+resource "aws_dynamodb_table" "queue_shards" {
+  name           = "${var.project_name}-queue-shards-${var.environment}"
+  billing_mode   = "PAY_PER_REQUEST"
+  hash_key       = "shardKey"
+
+  attribute {
+    name = "shardKey"
+    type = "S"
+  }
+
+  tags = {
+    Environment = var.environment
+    Project     = var.project_name
+  }
+}
+
+# Transactional outbox: served-stats events waiting to be relayed to the ETA service
+resource "aws_dynamodb_table" "outbox" {
+  name           = "${var.project_name}-outbox-${var.environment}"
+  billing_mode   = "PAY_PER_REQUEST"
+  hash_key       = "stream"
+  range_key      = "sequence"
+
+  attribute {
+    name = "stream"
+    type = "S"
+  }
+
+  attribute {
+    name = "sequence"
+    type = "N"
+  }
+
+  tags = {
+    Environment = var.environment
+    Project     = var.project_name
+  }
+}
 
 # Outputs
 output "dynamodb_tickets_table_name" {
@@ -245,6 +324,18 @@ output "dynamodb_queues_table_name" {
   value = aws_dynamodb_table.queues.name
 }
 
+output "dynamodb_outbox_table_name" {
+  value = aws_dynamodb_table.outbox.name
+}
+
+output "dynamodb_join_guards_table_name" {
+  value = aws_dynamodb_table.join_guards.name
+}
+
+output "dynamodb_queue_shards_table_name" {
+  value = aws_dynamodb_table.queue_shards.name
+}
+
 output "ssh_private_key_path" {
   description = "Path to the generated private key"
   value       = local_file.ssh_key.filename
@@ -22,10 +22,13 @@ aws dynamodb create-table \
     --attribute-definitions \
         AttributeName=ticketId,AttributeType=S \
         AttributeName=queueId,AttributeType=S \
+        AttributeName=waitingShard,AttributeType=S \
+        AttributeName=sequence,AttributeType=N \
     --key-schema \
         AttributeName=ticketId,KeyType=HASH \
     --global-secondary-indexes \
         IndexName=queueId-index,KeySchema=[{AttributeName=queueId,KeyType=HASH}],Projection={ProjectionType=ALL},BillingMode=PAY_PER_REQUEST \
+        "IndexName=waitingShard-sequence-index,KeySchema=[{AttributeName=waitingShard,KeyType=HASH},{AttributeName=sequence,KeyType=RANGE}],Projection={ProjectionType=ALL}" \
     --billing-mode PAY_PER_REQUEST \
     --endpoint-url http://localhost:4566
 
@@ -39,6 +42,43 @@ aws dynamodb create-table \
     --billing-mode PAY_PER_REQUEST \
     --endpoint-url http://localhost:4566
 
+# Create outbox table (served-stats events for the ETA service)
+aws dynamodb create-table \
+    --table-name smartqueue-outbox \
+    --attribute-definitions \
+        AttributeName=stream,AttributeType=S \
+        AttributeName=sequence,AttributeType=N \
+    --key-schema \
+        AttributeName=stream,KeyType=HASH \
+        AttributeName=sequence,KeyType=RANGE \
+    --billing-mode PAY_PER_REQUEST \
+    --endpoint-url http://localhost:4566
+
+# Create join guards table (idempotent joins)
+aws dynamodb create-table \
+    --table-name smartqueue-join-guards \
+    --attribute-definitions \
+        AttributeName=guardKey,AttributeType=S \
+    --key-schema \
+        AttributeName=guardKey,KeyType=HASH \
+    --billing-mode PAY_PER_REQUEST \
+    --endpoint-url http://localhost:4566
+
+aws dynamodb update-time-to-live \
+    --table-name smartqueue-join-guards \
+    --time-to-live-specification Enabled=true,AttributeName=expiresAt \
+    --endpoint-url http://localhost:4566
+
+# Create queue shard counters table (openSlots of sharded hot queues)
+aws dynamodb create-table \
+    --table-name smartqueue-queue-shards \
+    --attribute-definitions \
+        AttributeName=shardKey,AttributeType=S \
+    --key-schema \
+        AttributeName=shardKey,KeyType=HASH \
+    --billing-mode PAY_PER_REQUEST \
+    --endpoint-url http://localhost:4566
+
 # List tables to verify
 echo "✅ Created tables:"
 aws dynamodb list-tables --endpoint-url http://localhost:4566
@@ -2,8 +2,10 @@ package com.smartqueue.aliyun;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class EtaNotificationApplication {
     public static void main(String[] args) {
         SpringApplication.run(EtaNotificationApplication.class, args);
@@ -0,0 +1,136 @@
+package com.smartqueue.aliyun.concurrent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Guards blocking Aliyun SDK calls made from virtual threads.
+ *
+ * A virtual thread that blocks inside a synchronized block pins its carrier thread; with only
+ * ~#cores carriers a handful of slow SDK calls would stall every request. Two guards apply
+ * while app.threads.virtual.enabled=true and the caller is a virtual thread:
+ * - SDKs listed in app.threads.sdk-offload (default: directmail, whose DefaultAcsClient does
+ *   socket I/O under monitors) run on a small platform-thread pool; the virtual caller parks
+ *   on the Future, which unmounts it cleanly.
+ * - All other SDK calls (TableStore SyncClient waits on futures, no monitors on the I/O path)
+ *   run inline, bounded by a semaphore so a burst of virtual threads cannot open more
+ *   concurrent requests than the SDK connection pool holds.
+ * On platform threads every call runs inline, unchanged.
+ */
+@Slf4j
+@Component
+public class SdkCallGuard {
+
+    @FunctionalInterface
+    public interface SdkCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private final boolean enabled;
+    private final Set<String> offloadedSdks;
+    private final Semaphore inlinePermits;
+    private final long acquireTimeoutMs;
+    private final ExecutorService offloadPool;
+
+    public SdkCallGuard(@Value("${app.threads.virtual.enabled:false}") boolean virtualThreadsEnabled,
+                        @Value("${app.threads.sdk-offload:directmail}") String offloadedSdks,
+                        @Value("${app.threads.sdk-offload-pool-size:32}") int offloadPoolSize,
+                        @Value("${app.threads.sdk-max-concurrency:256}") int maxConcurrency,
+                        @Value("${app.threads.sdk-acquire-timeout-ms:5000}") long acquireTimeoutMs,
+                        MeterRegistry meterRegistry) {
+        this.enabled = virtualThreadsEnabled && VirtualThreads.isSupported();
+        this.offloadedSdks = Arrays.stream(offloadedSdks.split(","))
+                .map(String::trim)
+                .filter(sdk -> !sdk.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        this.inlinePermits = new Semaphore(maxConcurrency);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+
+        if (enabled) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    offloadPoolSize, offloadPoolSize, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "sdk-offload-" + threadIndex.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            this.offloadPool = ExecutorServiceMetrics.monitor(meterRegistry, pool, "smartqueue.sdk.offload");
+            log.info("SDK call guard active (offloaded: {}, pool: {}, inline max concurrency: {})",
+                    this.offloadedSdks, offloadPoolSize, maxConcurrency);
+        } else {
+            this.offloadPool = null;
+        }
+    }
+
+    public <T, E extends Exception> T call(String sdk, SdkCall<T, E> call) throws E {
+        if (!enabled || !VirtualThreads.isCurrentThreadVirtual()) {
+            return call.call();
+        }
+        return offloadedSdks.contains(sdk) ? offload(call) : callBounded(sdk, call);
+    }
+
+    private <T, E extends Exception> T callBounded(String sdk, SdkCall<T, E> call) throws E {
+        boolean acquired;
+        try {
+            acquired = inlinePermits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for " + sdk + " call permit", e);
+        }
+        if (!acquired) {
+            throw new IllegalStateException("Timed out waiting for " + sdk + " call permit");
+        }
+        try {
+            return call.call();
+        } finally {
+            inlinePermits.release();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T, E extends Exception> T offload(SdkCall<T, E> call) throws E {
+        Future<T> future = offloadPool.submit(call::call);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for offloaded SDK call", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw (E) cause;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (offloadPool != null) {
+            offloadPool.shutdown();
+        }
+    }
+}
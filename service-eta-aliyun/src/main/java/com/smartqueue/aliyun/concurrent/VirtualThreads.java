@@ -0,0 +1,66 @@
+package com.smartqueue.aliyun.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual-thread factory methods resolved reflectively: the module still compiles for Java 18,
+ * virtual threads are only available when the service runs on JDK 21+. (JDK 19 and 20 have the
+ * same methods as a preview feature, which fails without --enable-preview, so they count as
+ * unsupported.)
+ */
+public final class VirtualThreads {
+
+    private static final int MIN_FEATURE_VERSION = 21;
+    private static final Method IS_VIRTUAL = Runtime.version().feature() >= MIN_FEATURE_VERSION
+            ? findMethod(Thread.class, "isVirtual")
+            : null;
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return IS_VIRTUAL != null;
+    }
+
+    public static boolean isCurrentThreadVirtual() {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(Thread.currentThread());
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * One new virtual thread per task, named prefix0, prefix1, ... so they stay readable in logs.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads require JDK 21+, running on " + Runtime.version());
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    private static Method findMethod(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
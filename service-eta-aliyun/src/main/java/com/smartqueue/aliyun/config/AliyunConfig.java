@@ -2,6 +2,10 @@ package com.smartqueue.aliyun.config;
 
 import com.alicloud.openservices.tablestore.SyncClient;
 import com.alicloud.openservices.tablestore.ClientConfiguration;
+import com.aliyuncs.DefaultAcsClient;
+import com.aliyuncs.IAcsClient;
+import com.aliyuncs.http.HttpClientConfig;
+import com.aliyuncs.profile.DefaultProfile;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -27,6 +31,12 @@ public class AliyunConfig {
     @Value("${aliyun.region}")
     private String region;
 
+    @Value("${aliyun.tablestore.max-connections:300}")
+    private int tablestoreMaxConnections;
+
+    @Value("${aliyun.directmail.max-connections:16}")
+    private int directMailMaxConnections;
+
     @Value("${spring.profiles.active:dev}")
     private String activeProfile;
 
@@ -42,6 +52,7 @@ public class AliyunConfig {
             ClientConfiguration clientConfiguration = new ClientConfiguration();
             clientConfiguration.setConnectionTimeoutInMillisecond(5000);
             clientConfiguration.setSocketTimeoutInMillisecond(5000);
+            clientConfiguration.setMaxConnections(tablestoreMaxConnections);
 
             return new SyncClient(
                 tablestoreEndpoint,
@@ -57,6 +68,20 @@ public class AliyunConfig {
         }
     }
 
+    // 📧 DirectMail Client - one per application, its HTTP connections are pooled and reused
+    @Bean(name = "directMailClient", destroyMethod = "shutdown")
+    public IAcsClient directMailClient() {
+        HttpClientConfig httpClientConfig = HttpClientConfig.getDefault();
+        httpClientConfig.setMaxRequestsPerHost(directMailMaxConnections);
+        httpClientConfig.setMaxIdleConnections(directMailMaxConnections);
+        httpClientConfig.setConnectionTimeoutMillis(5000);
+        httpClientConfig.setReadTimeoutMillis(10000);
+
+        DefaultProfile profile = DefaultProfile.getProfile(region, accessKeyId, accessKeySecret);
+        profile.setHttpClientConfig(httpClientConfig);
+        return new DefaultAcsClient(profile);
+    }
+
     // DirectMail
     @Bean
     public boolean directMailEnabled() {
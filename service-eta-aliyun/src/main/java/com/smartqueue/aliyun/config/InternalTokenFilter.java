@@ -0,0 +1,39 @@
+package com.smartqueue.aliyun.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Lets a request through only if its X-Internal-Token header equals app.internal.token;
+ * answers 403 to everything while no token is configured. Guards endpoints meant for
+ * operators and sibling services, not for clients.
+ */
+public class InternalTokenFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "X-Internal-Token";
+
+    private final byte[] expected;
+
+    public InternalTokenFilter(String token) {
+        this.expected = token != null ? token.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String presented = request.getHeader(HEADER);
+        if (expected.length == 0 || presented == null
+                || !MessageDigest.isEqual(expected, presented.getBytes(StandardCharsets.UTF_8))) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,75 @@
+package com.smartqueue.aliyun.config;
+
+import com.aliyuncs.dm.model.v20151123.SingleSendMailRequest;
+import com.aliyuncs.dm.model.v20151123.SingleSendMailResponse;
+import com.smartqueue.aliyun.dto.request.NotificationRequest;
+import com.smartqueue.aliyun.dto.request.ServedStatsBatchRequest;
+import com.smartqueue.aliyun.dto.request.UpdateStatsRequest;
+import com.smartqueue.aliyun.dto.response.EtaResponse;
+import com.smartqueue.aliyun.dto.response.NotificationResponse;
+import com.smartqueue.aliyun.model.EtaStats;
+import com.smartqueue.aliyun.model.NotificationLog;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+
+/**
+ * Reflection/resource hints for the AOT / native-image build (mvn -Pnative).
+ * Only consulted at build time; no effect on a regular JVM run.
+ */
+@Configuration
+@ImportRuntimeHints(NativeHintsConfig.AliyunSdkRuntimeHints.class)
+@RegisterReflectionForBinding({
+        NotificationRequest.class, UpdateStatsRequest.class,
+        ServedStatsBatchRequest.class, ServedStatsBatchRequest.ServedEvent.class,
+        EtaResponse.class, NotificationResponse.class,
+        EtaStats.class, NotificationLog.class
+})
+public class NativeHintsConfig {
+
+    // Protobuf messages of the TableStore wire protocol (accessed reflectively by GeneratedMessage)
+    private static final String TABLESTORE_PROTOCOL = "com.alicloud.openservices.tablestore.core.protocol.OtsInternalApi";
+
+    static class AliyunSdkRuntimeHints implements RuntimeHintsRegistrar {
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            // DirectMail: DefaultAcsClient instantiates the response class reflectively
+            for (Class<?> type : List.of(SingleSendMailRequest.class, SingleSendMailResponse.class)) {
+                hints.reflection().registerType(type, MemberCategory.values());
+            }
+            // aliyun-java-sdk-core endpoint and region metadata
+            hints.resources().registerPattern("endpoints.json");
+            hints.resources().registerPattern("com/aliyuncs/**/*.json");
+
+            try {
+                Class<?> protocol = Class.forName(TABLESTORE_PROTOCOL, false, classLoader);
+                hints.reflection().registerType(protocol, MemberCategory.values());
+                for (Class<?> message : protocol.getDeclaredClasses()) {
+                    hints.reflection().registerType(TypeReference.of(message), MemberCategory.values());
+                }
+            } catch (ClassNotFoundException e) {
+                // TableStore SDK not on the classpath - nothing to register
+            }
+
+            // VirtualThreads resolves the JDK 21 virtual-thread API reflectively
+            hints.reflection().registerType(Thread.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+            hints.reflection().registerType(TypeReference.of("java.lang.Thread$Builder"), MemberCategory.INVOKE_PUBLIC_METHODS);
+            hints.reflection().registerType(Executors.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+
+            // Lombok @Builder classes of the Jackson models
+            for (Class<?> model : List.of(EtaStats.class, NotificationLog.class, EtaResponse.class, NotificationResponse.class)) {
+                for (Class<?> nested : model.getDeclaredClasses()) {
+                    hints.reflection().registerType(nested, MemberCategory.values());
+                }
+            }
+        }
+    }
+}
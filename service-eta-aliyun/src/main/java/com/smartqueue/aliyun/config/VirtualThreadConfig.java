@@ -0,0 +1,48 @@
+package com.smartqueue.aliyun.config;
+
+import com.smartqueue.aliyun.concurrent.VirtualThreads;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Virtual-thread execution mode (app.threads.virtual.enabled=true, JDK 21+).
+ * Tomcat dispatches every request on its own virtual thread instead of the bounded
+ * server.tomcat.threads.max pool, so requests blocked on TableStore/DirectMail no longer
+ * cap throughput. Blocking SDK calls are routed through SdkCallGuard to avoid carrier pinning.
+ * On an older runtime the setting is ignored with a warning and Tomcat keeps its platform
+ * thread pool; SdkCallGuard makes the same VirtualThreads.isSupported() check.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "app.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    // Not a bean: an Executor bean would replace Spring's auto-configured applicationTaskExecutor
+    private ExecutorService requestExecutor;
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        if (!VirtualThreads.isSupported()) {
+            log.warn("app.threads.virtual.enabled=true needs JDK 21+, running on {}: keeping the platform thread pool",
+                    Runtime.version());
+            return protocolHandler -> {
+            };
+        }
+        requestExecutor = VirtualThreads.newThreadPerTaskExecutor("http-vt-");
+        log.info("Virtual-thread request handling enabled (runtime: {})", Runtime.version());
+        return protocolHandler -> protocolHandler.setExecutor(requestExecutor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
+    }
+}
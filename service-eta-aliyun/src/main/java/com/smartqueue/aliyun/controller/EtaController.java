@@ -1,19 +1,25 @@
 package com.smartqueue.aliyun.controller;
 
 import com.smartqueue.aliyun.dto.request.NotificationRequest;
+import com.smartqueue.aliyun.dto.request.ServedStatsBatchRequest;
 import com.smartqueue.aliyun.dto.request.UpdateStatsRequest;
 import com.smartqueue.aliyun.dto.response.EtaResponse;
 import com.smartqueue.aliyun.dto.response.NotificationResponse;
 import com.smartqueue.aliyun.service.EtaService;
 import com.smartqueue.aliyun.service.NotificationService;
+import com.smartqueue.aliyun.stats.RateHistory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import java.time.Instant;
 import java.util.Map;
 
 @Slf4j
@@ -57,6 +63,14 @@ public class EtaController {
         
         try {
             NotificationResponse response = notificationService.scheduleNotification(request);
+            if ("REJECTED".equals(response.getStatus())) {
+                // Dispatch queue full: the caller should retry later
+                return ResponseEntity.status(503).body(response);
+            }
+            if ("UNSUPPORTED".equals(response.getStatus())) {
+                // No provider for the channel: retrying cannot help
+                return ResponseEntity.badRequest().body(response);
+            }
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             log.error("Error scheduling notification", e);
@@ -71,6 +85,24 @@ public class EtaController {
         }
     }
     
+    @GetMapping("/notifications")
+    public ResponseEntity<?> getNotifications(
+            @RequestParam(required = false) String ticketId,
+            @RequestParam(required = false) String queueId,
+            @RequestParam(defaultValue = "100") @Min(1) @Max(1000) int limit) {
+        
+        if ((ticketId == null) == (queueId == null)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Exactly one of ticketId or queueId is required"));
+        }
+        
+        try {
+            return ResponseEntity.ok(notificationService.findNotifications(ticketId, queueId, limit));
+        } catch (Exception e) {
+            log.error("Error reading notification logs", e);
+            return ResponseEntity.status(503).body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+    
     @PostMapping("/stats/served")
     public ResponseEntity<?> updateServedStats(
             @RequestBody @Valid UpdateStatsRequest request) {
@@ -92,4 +124,57 @@ public class EtaController {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
-}
\ No newline at end of file
+    
+    @GetMapping("/stats/history")
+    public ResponseEntity<?> getRateHistory(
+            @RequestParam @NotBlank String queueId,
+            @RequestParam(defaultValue = "MINUTE") RateHistory.Resolution resolution,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to) {
+        
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minusMillis(resolution.getRetentionMillis());
+        
+        try {
+            return ResponseEntity.ok(Map.of(
+                "queueId", queueId,
+                "resolution", resolution,
+                "points", etaService.getRateHistory(queueId, resolution, start, end)
+            ));
+        } catch (Exception e) {
+            log.error("Error reading rate history for queue: {}", queueId, e);
+            return ResponseEntity.status(503).body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+    
+    @PostMapping("/stats/served/batch")
+    public ResponseEntity<?> updateServedStatsBatch(
+            @RequestBody @Valid ServedStatsBatchRequest request) {
+        
+        log.info("Served stats batch received: {} events", request.getEvents().size());
+        
+        try {
+            int applied = etaService.applyServedEvents(request.getEvents());
+            
+            return ResponseEntity.ok(Map.of(
+                "message", "Stats updated successfully",
+                "applied", applied,
+                "duplicates", request.getEvents().size() - applied
+            ));
+            
+        } catch (Exception e) {
+            log.error("Error applying served stats batch", e);
+            // 5xx so the outbox relay retries the batch
+            return ResponseEntity.internalServerError().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+    
+    /**
+     * Out-of-range request parameters (@Min/@Max on limit, ...) are client errors.
+     */
+    @ExceptionHandler(ConstraintViolationException.class)
+    public ResponseEntity<Map<String, String>> handleConstraintViolation(ConstraintViolationException e) {
+        log.warn("Invalid request parameters: {}", e.getMessage());
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+}
@@ -17,6 +17,9 @@ public class NotificationRequest {
     @NotBlank(message = "Ticket ID is required")
     private String ticketId;
     
+    // Optional; lets notification logs be queried by queue
+    private String queueId;
+    
     @NotNull(message = "Channel is required")
     private NotificationChannel channel;
     
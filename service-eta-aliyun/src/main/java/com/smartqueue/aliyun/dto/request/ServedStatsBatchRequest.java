@@ -0,0 +1,59 @@
+package com.smartqueue.aliyun.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Ordered batch of served-stats events relayed from the queue service outbox.
+ * Events may be re-sent; they are applied at most once (per queue sequence, or per eventId
+ * for events without one).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ServedStatsBatchRequest {
+    
+    @NotEmpty(message = "Events are required")
+    @Size(max = 500, message = "At most 500 events per batch")
+    private List<@Valid ServedEvent> events;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ServedEvent {
+        
+        @NotBlank(message = "Event ID is required")
+        private String eventId;
+        
+        @NotBlank(message = "Queue ID is required")
+        private String queueId;
+        
+        @NotNull(message = "Count is required")
+        @Min(value = 1, message = "Count must be at least 1")
+        private Integer count;
+        
+        @NotNull(message = "Window size is required")
+        @Min(value = 1, message = "Window size must be at least 1")
+        private Integer windowSec;
+        
+        private Long sequence;
+        
+        private String occurredAt;
+        
+        // Wait of each served ticket in seconds; absent from older queue-service versions
+        @Size(max = 1000, message = "At most 1000 wait samples per event")
+        private List<@Min(value = 0, message = "Wait must not be negative") Long> waitSeconds;
+    }
+}
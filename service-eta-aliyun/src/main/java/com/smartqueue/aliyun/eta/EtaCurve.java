@@ -0,0 +1,115 @@
+package com.smartqueue.aliyun.eta;
+
+import com.smartqueue.aliyun.stats.SeasonalityProfile;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Position-to-minutes table of one queue for one time bucket and one state of its stats.
+ *
+ * Everything an ETA depends on besides the position - service rate, seasonality factors,
+ * percentiles - is fixed when the curve is built, so an estimate is an array read (or, past
+ * the table, one multiplication). The minutes for a position walk forward through the
+ * seasonality slots, each served at the deseasonalized rate times that slot's factor, up to
+ * one week ahead; later positions continue at the last slot's rate. Curves are immutable and
+ * safely shared.
+ */
+@Getter
+public final class EtaCurve {
+
+    // Positions past this get a 10% buffer for longer queues
+    private static final int LONG_QUEUE_POSITION = 10;
+    private static final double LONG_QUEUE_BUFFER = 1.1;
+    // Small buffer on every estimate for reliability
+    private static final double RELIABILITY_BUFFER = 1.05;
+    // Customers per minute, however slow a slot is
+    private static final double MIN_SERVICE_RATE = 0.1;
+
+    @Getter(AccessLevel.NONE)
+    private final int[] minutesByPosition;
+    @Getter(AccessLevel.NONE)
+    private final double tableEndMinutes;
+    private final double minutesPerPosition;
+    private final double serviceRate;
+    private final double seasonFactor;
+    private final int p50WaitMinutes;
+    private final int p90WaitMinutes;
+    private final long validUntilMillis;
+
+    private EtaCurve(int[] minutesByPosition, double tableEndMinutes, double minutesPerPosition, double serviceRate,
+                     double seasonFactor, int p50WaitMinutes, int p90WaitMinutes, long validUntilMillis) {
+        this.minutesByPosition = minutesByPosition;
+        this.tableEndMinutes = tableEndMinutes;
+        this.minutesPerPosition = minutesPerPosition;
+        this.serviceRate = serviceRate;
+        this.seasonFactor = seasonFactor;
+        this.p50WaitMinutes = p50WaitMinutes;
+        this.p90WaitMinutes = p90WaitMinutes;
+        this.validUntilMillis = validUntilMillis;
+    }
+
+    /**
+     * @param baseServiceRate deseasonalized customers per minute
+     * @param slotFactor seasonality factor of the current slot (0) and of the n-th slot after it
+     * @param minutesLeftInSlot minutes until the current slot ends
+     * @param maxPosition positions tabulated; larger ones are computed on lookup
+     */
+    public static EtaCurve build(double baseServiceRate, IntToDoubleFunction slotFactor, double minutesLeftInSlot,
+                                 int p50WaitMinutes, int p90WaitMinutes, int maxPosition, long validUntilMillis) {
+        double seasonFactor = slotFactor.applyAsDouble(0);
+        double currentRate = Math.max(MIN_SERVICE_RATE, baseServiceRate * seasonFactor);
+
+        // Minutes until the position's customer is served, before buffers
+        double[] rawMinutes = new double[maxPosition + 1];
+        int position = 1;
+        double slotStart = 0;
+        double servedBefore = 0;
+        double slotLength = minutesLeftInSlot;
+        double rate = currentRate;
+        for (int slot = 0; position <= maxPosition && slot < SeasonalityProfile.SLOTS; slot++) {
+            rate = slot == 0 ? currentRate : Math.max(MIN_SERVICE_RATE, baseServiceRate * slotFactor.applyAsDouble(slot));
+            double servedBySlotEnd = servedBefore + rate * slotLength;
+            for (; position <= maxPosition && position <= servedBySlotEnd; position++) {
+                rawMinutes[position] = slotStart + (position - servedBefore) / rate;
+            }
+            servedBefore = servedBySlotEnd;
+            slotStart += slotLength;
+            slotLength = SeasonalityProfile.SLOT_MINUTES;
+        }
+        for (; position <= maxPosition; position++) {
+            rawMinutes[position] = slotStart + (position - servedBefore) / rate;
+        }
+
+        int[] minutes = new int[maxPosition + 1];
+        for (int i = 0; i <= maxPosition; i++) {
+            minutes[i] = estimate(i, rawMinutes[i]);
+        }
+        return new EtaCurve(minutes, rawMinutes[maxPosition], 1 / rate, currentRate, seasonFactor,
+                p50WaitMinutes, p90WaitMinutes, validUntilMillis);
+    }
+
+    public int minutesAt(int position) {
+        if (position < 0) {
+            return minutesByPosition[0];
+        }
+        if (position < minutesByPosition.length) {
+            return minutesByPosition[position];
+        }
+        int maxPosition = minutesByPosition.length - 1;
+        return estimate(position, tableEndMinutes + (position - maxPosition) * minutesPerPosition);
+    }
+
+    public boolean isValidAt(long nowMillis) {
+        return nowMillis < validUntilMillis;
+    }
+
+    private static int estimate(int position, double rawMinutes) {
+        double eta = rawMinutes * RELIABILITY_BUFFER;
+        if (position > LONG_QUEUE_POSITION) {
+            eta *= LONG_QUEUE_BUFFER;
+        }
+        return Math.max(1, (int) Math.ceil(eta));
+    }
+}
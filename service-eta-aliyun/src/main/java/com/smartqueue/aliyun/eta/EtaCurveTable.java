@@ -0,0 +1,65 @@
+package com.smartqueue.aliyun.eta;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Current EtaCurve of each queue, rebuilt when it expires (end of its time bucket or max age)
+ * or after invalidate - called whenever the queue's stats change.
+ *
+ * Lookups are lock-free: a map read and a timestamp comparison. Threads that find the same
+ * curve expired may each rebuild it; the last one wins, which is harmless since they build
+ * from the same inputs. A curve built while an event is being recorded can miss that event
+ * until the next invalidation or expiry.
+ *
+ * At most maxQueues curves are held. A new queue arriving when the table is full first drops
+ * the expired curves (at most once per second); if none can go, its curve is returned without
+ * being kept.
+ */
+public final class EtaCurveTable {
+
+    private static final long PURGE_INTERVAL_MILLIS = 1_000;
+
+    private final ConcurrentMap<String, EtaCurve> curves = new ConcurrentHashMap<>();
+    private final Function<String, EtaCurve> builder;
+    private final int maxQueues;
+    private volatile long nextPurgeMillis;
+
+    public EtaCurveTable(Function<String, EtaCurve> builder, int maxQueues) {
+        this.builder = builder;
+        this.maxQueues = maxQueues;
+    }
+
+    public EtaCurve curve(String queueId) {
+        EtaCurve curve = curves.get(queueId);
+        long now = System.currentTimeMillis();
+        if (curve != null && curve.isValidAt(now)) {
+            return curve;
+        }
+        EtaCurve rebuilt = builder.apply(queueId);
+        if (curve != null || hasRoom(now)) {
+            curves.put(queueId, rebuilt);
+        }
+        return rebuilt;
+    }
+
+    public void invalidate(String queueId) {
+        curves.remove(queueId);
+    }
+
+    public int size() {
+        return curves.size();
+    }
+
+    private boolean hasRoom(long now) {
+        if (curves.size() < maxQueues) {
+            return true;
+        }
+        if (now >= nextPurgeMillis) {
+            nextPurgeMillis = now + PURGE_INTERVAL_MILLIS;
+            curves.values().removeIf(curve -> !curve.isValidAt(now));
+        }
+        return curves.size() < maxQueues;
+    }
+}
@@ -1,5 +1,6 @@
 package com.smartqueue.aliyun.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -8,7 +9,7 @@ import lombok.NoArgsConstructor;
 import java.time.Instant;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class EtaStats {
@@ -22,6 +23,16 @@ public class EtaStats {
     private Instant updatedAt;
     private String timeWindow;
     
+    // Highest outbox sequence of the queue applied when the row was written (RelaySequences)
+    private Long relaySequence;
+    
+    // Incremented by every conditional write of the row; null for rows written before it existed
+    private Long version;
+    
+    // Encoded WaitTimeSketch of the window; p50/p90 are read from it when it has samples
+    @JsonIgnore
+    private byte[] waitSketch;
+    
     // TableStore primary key will be queueId + timeWindow
     public String getPrimaryKey() {
         return queueId + "#" + timeWindow;
@@ -0,0 +1,515 @@
+package com.smartqueue.aliyun.notify;
+
+import com.smartqueue.aliyun.model.NotificationLog;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Compact on-disk store of notification logs that left the in-memory hot window, queryable by
+ * ticketId and queueId.
+ *
+ * Records go to numbered segment files ({@code 00000000000000000000.log}), each record its
+ * length and CRC32 followed by the compact body: UUID notification ids as 16 bytes, channel and
+ * status as one byte, times as epoch millis, message and error cut to a configured length.
+ * A segment is sealed after a fixed number of records and gets two index files,
+ * {@code .tidx} (ticketId) and {@code .qidx} (queueId): (64-bit key hash, record offset) pairs
+ * sorted by hash, searched by binary search through a memory mapping. Only the open segment's
+ * index is on the heap (primitive arrays, at most one segment of records), so memory does not
+ * grow with the number of stored logs. Hash collisions are filtered by comparing the key of
+ * each record read.
+ *
+ * A sealed segment never changes, so its records and both index files are memory-mapped once,
+ * when it is sealed or found on open, and the file handles closed again. Lookups read the open
+ * segment under the archive lock and then walk the sealed mappings without it, so a slow
+ * lookup does not hold up append; a lookup stops at its deadline, returning what it found.
+ *
+ * Sealed segments older than the retention are deleted. On open, the index of the last
+ * segment is rebuilt from its records and a torn record at its end is cut off; a sealed
+ * segment whose index files are missing is re-indexed.
+ */
+@Slf4j
+final class NotificationArchive implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String TICKET_INDEX_SUFFIX = ".tidx";
+    private static final String QUEUE_INDEX_SUFFIX = ".qidx";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int RECORD_HEADER_BYTES = 4 + 4;
+
+    private static final int ID_STRING = 0;
+    private static final int ID_UUID = 1;
+
+    enum Key {
+        TICKET(TICKET_INDEX_SUFFIX),
+        QUEUE(QUEUE_INDEX_SUFFIX);
+
+        private final String suffix;
+
+        Key(String suffix) {
+            this.suffix = suffix;
+        }
+
+        String of(NotificationLog notificationLog) {
+            return this == TICKET ? notificationLog.getTicketId() : notificationLog.getQueueId();
+        }
+    }
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final int maxMessageChars;
+    private final ConcurrentNavigableMap<Long, SealedSegment> sealed = new ConcurrentSkipListMap<>();
+
+    private FileChannel active;
+    private long activeId;
+    private long activeBytes;
+    private int activeRecords;
+    private final OpenIndex ticketIndex;
+    private final OpenIndex queueIndex;
+
+    /**
+     * Index of the open segment: parallel arrays in append order.
+     */
+    private static final class OpenIndex {
+        long[] hashes;
+        long[] offsets;
+        int size;
+
+        OpenIndex(int capacity) {
+            this.hashes = new long[capacity];
+            this.offsets = new long[capacity];
+        }
+
+        void add(long hash, long offset) {
+            if (size == hashes.length) {
+                // Only when re-indexing a segment written with a larger segment size
+                hashes = Arrays.copyOf(hashes, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            hashes[size] = hash;
+            offsets[size] = offset;
+            size++;
+        }
+    }
+
+    /**
+     * Read-only mappings of a sealed segment's records and index files. Mappings stay valid
+     * after their channels are closed and after the files are deleted.
+     */
+    private record SealedSegment(Path file, ByteBuffer records, LongBuffer ticketPairs, LongBuffer queuePairs) {
+
+        LongBuffer pairs(Key key) {
+            return key == Key.TICKET ? ticketPairs : queuePairs;
+        }
+    }
+
+    private NotificationArchive(Path directory, int segmentRecords, int maxMessageChars) {
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.maxMessageChars = maxMessageChars;
+        this.ticketIndex = new OpenIndex(segmentRecords);
+        this.queueIndex = new OpenIndex(segmentRecords);
+    }
+
+    static NotificationArchive open(Path directory, int segmentRecords, int maxMessageChars) throws IOException {
+        Files.createDirectories(directory);
+        NotificationArchive archive = new NotificationArchive(directory, segmentRecords, maxMessageChars);
+        archive.recover();
+        return archive;
+    }
+
+    synchronized void append(NotificationLog notificationLog) throws IOException {
+        ensureOpen();
+        ByteBuffer body = encode(notificationLog);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES)
+                .putInt(body.remaining())
+                .putInt((int) crc.getValue())
+                .flip();
+        long offset = activeBytes;
+        int length = header.remaining() + body.remaining();
+        while (header.hasRemaining() || body.hasRemaining()) {
+            active.write(new ByteBuffer[]{header, body});
+        }
+        activeBytes += length;
+        index(notificationLog, offset);
+        if (activeRecords >= segmentRecords) {
+            seal();
+        }
+    }
+
+    /**
+     * Adds up to {@code limit} records whose key equals {@code value} to {@code out}, newest
+     * first, skipping notification ids already in {@code seen} (so only the latest version of
+     * a record is returned). Returns false if it stopped at {@code deadlineNanos} (System.nanoTime)
+     * before searching every segment.
+     */
+    boolean find(Key key, String value, int limit, long deadlineNanos, Set<String> seen, List<NotificationLog> out) throws IOException {
+        long hash = hash(value);
+        synchronized (this) {
+            ensureOpen();
+            OpenIndex openIndex = key == Key.TICKET ? ticketIndex : queueIndex;
+            for (int i = openIndex.size - 1; i >= 0 && out.size() < limit; i--) {
+                if (openIndex.hashes[i] == hash) {
+                    collect(read(active, openIndex.offsets[i]), key, value, seen, out);
+                }
+            }
+        }
+        // A segment sealed since is seen twice; seen drops the second copies
+        for (SealedSegment segment : sealed.descendingMap().values()) {
+            if (out.size() >= limit) {
+                return true;
+            }
+            if (System.nanoTime() - deadlineNanos > 0) {
+                return false;
+            }
+            LongBuffer pairs = segment.pairs(key);
+            // Entries of one hash are sorted by offset: walk them from the newest
+            for (int i = upperBound(pairs, hash) - 1; i >= 0 && pairs.get(2 * i) == hash && out.size() < limit; i--) {
+                collect(read(segment.records(), pairs.get(2 * i + 1)), key, value, seen, out);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Deletes sealed segments last written before the cutoff.
+     */
+    synchronized int purgeBefore(Instant cutoff) throws IOException {
+        int deleted = 0;
+        while (!sealed.isEmpty()) {
+            Map.Entry<Long, SealedSegment> oldest = sealed.firstEntry();
+            if (!Files.getLastModifiedTime(oldest.getValue().file()).toInstant().isBefore(cutoff)) {
+                break;
+            }
+            // A lookup still walking the segment keeps reading its mappings
+            sealed.pollFirstEntry();
+            Files.deleteIfExists(indexFile(oldest.getKey(), Key.TICKET));
+            Files.deleteIfExists(indexFile(oldest.getKey(), Key.QUEUE));
+            Files.deleteIfExists(oldest.getValue().file());
+            deleted++;
+        }
+        return deleted;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.force(true);
+            active.close();
+            active = null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (active == null) {
+            throw new IOException("Notification archive is closed: " + directory);
+        }
+    }
+
+    private void collect(NotificationLog notificationLog, Key key, String value, Set<String> seen, List<NotificationLog> out) {
+        if (value.equals(key.of(notificationLog)) && seen.add(notificationLog.getNotificationId())) {
+            out.add(notificationLog);
+        }
+    }
+
+    private void index(NotificationLog notificationLog, long offset) {
+        activeRecords++;
+        if (notificationLog.getTicketId() != null) {
+            ticketIndex.add(hash(notificationLog.getTicketId()), offset);
+        }
+        if (notificationLog.getQueueId() != null) {
+            queueIndex.add(hash(notificationLog.getQueueId()), offset);
+        }
+    }
+
+    private void seal() throws IOException {
+        active.force(true);
+        active.close();
+        writeIndex(activeId, Key.TICKET, ticketIndex);
+        writeIndex(activeId, Key.QUEUE, queueIndex);
+        sealed.put(activeId, mapSealed(activeId));
+        openSegment(activeId + 1);
+    }
+
+    private void openSegment(long id) throws IOException {
+        activeId = id;
+        activeBytes = 0;
+        activeRecords = 0;
+        ticketIndex.size = 0;
+        queueIndex.size = 0;
+        active = FileChannel.open(segmentFile(id), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // Sorted (hash, offset) pairs, written to a temporary file and renamed
+    private void writeIndex(long id, Key key, OpenIndex index) throws IOException {
+        Integer[] order = new Integer[index.size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> a.equals(b) ? 0
+                : index.hashes[a] != index.hashes[b] ? Long.compare(index.hashes[a], index.hashes[b])
+                : Long.compare(index.offsets[a], index.offsets[b]));
+        ByteBuffer pairs = ByteBuffer.allocate(order.length * 16);
+        for (int i : order) {
+            pairs.putLong(index.hashes[i]).putLong(index.offsets[i]);
+        }
+        pairs.flip();
+
+        Path file = indexFile(id, key);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (pairs.hasRemaining()) {
+                channel.write(pairs);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void recover() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(file -> {
+                        String name = file.getFileName().toString();
+                        segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+                    });
+        }
+        if (segments.isEmpty()) {
+            openSegment(0);
+            return;
+        }
+
+        long lastId = segments.lastKey();
+        for (Map.Entry<Long, Path> segment : segments.headMap(lastId).entrySet()) {
+            if (!Files.exists(indexFile(segment.getKey(), Key.TICKET)) || !Files.exists(indexFile(segment.getKey(), Key.QUEUE))) {
+                log.warn("Notification archive segment {} has no index, rebuilding it", segment.getValue());
+                activeId = segment.getKey();
+                activeRecords = 0;
+                ticketIndex.size = 0;
+                queueIndex.size = 0;
+                try (FileChannel channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ)) {
+                    scan(channel);
+                }
+                writeIndex(activeId, Key.TICKET, ticketIndex);
+                writeIndex(activeId, Key.QUEUE, queueIndex);
+            }
+            sealed.put(segment.getKey(), mapSealed(segment.getKey()));
+        }
+
+        openSegment(lastId);
+        activeBytes = scan(active);
+        active.truncate(activeBytes);
+        active.position(activeBytes);
+        log.info("Notification archive {} opened: {} sealed segment(s), {} record(s) in the open one",
+                directory, sealed.size(), activeRecords);
+    }
+
+    // Indexes every valid record; returns the offset just past the last one
+    private long scan(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        while (position + RECORD_HEADER_BYTES <= size) {
+            header.clear();
+            channel.read(header, position);
+            int length = header.getInt(0);
+            if (length <= 0 || position + RECORD_HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(length);
+            channel.read(body, position + RECORD_HEADER_BYTES);
+            body.flip();
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            index(decode(body), position);
+            position += RECORD_HEADER_BYTES + length;
+        }
+        if (position < size) {
+            log.warn("Notification archive {}: cutting {} byte(s) after offset {}", directory, size - position, position);
+        }
+        return position;
+    }
+
+    private SealedSegment mapSealed(long id) throws IOException {
+        Path file = segmentFile(id);
+        return new SealedSegment(file, map(file),
+                map(indexFile(id, Key.TICKET)).asLongBuffer(), map(indexFile(id, Key.QUEUE)).asLongBuffer());
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // Absolute reads only: the mapping is shared by concurrent lookups
+    private static NotificationLog read(ByteBuffer records, long offset) {
+        int position = (int) offset;
+        return decode(records.slice(position + RECORD_HEADER_BYTES, records.getInt(position)));
+    }
+
+    private static NotificationLog read(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        channel.read(header, offset);
+        ByteBuffer body = ByteBuffer.allocate(header.getInt(0));
+        channel.read(body, offset + RECORD_HEADER_BYTES);
+        return decode(body.flip());
+    }
+
+    private ByteBuffer encode(NotificationLog notificationLog) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+        UUID uuid = parseUuid(notificationLog.getNotificationId());
+        if (uuid != null) {
+            out.writeByte(ID_UUID);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeByte(ID_STRING);
+            writeString(out, notificationLog.getNotificationId());
+        }
+        writeString(out, notificationLog.getTicketId());
+        writeString(out, notificationLog.getQueueId());
+        out.writeByte(notificationLog.getChannel() != null ? notificationLog.getChannel().ordinal() : -1);
+        out.writeByte(notificationLog.getStatus() != null ? notificationLog.getStatus().ordinal() : -1);
+        writeString(out, notificationLog.getRecipient());
+        writeString(out, truncate(notificationLog.getMessage()));
+        writeString(out, truncate(notificationLog.getErrorMessage()));
+        out.writeLong(notificationLog.getScheduledAt() != null ? notificationLog.getScheduledAt().toEpochMilli() : Long.MIN_VALUE);
+        out.writeLong(notificationLog.getSentAt() != null ? notificationLog.getSentAt().toEpochMilli() : Long.MIN_VALUE);
+        out.flush();
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static NotificationLog decode(ByteBuffer body) {
+        int version = body.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported notification archive record version " + version);
+        }
+        String notificationId = body.get() == ID_UUID
+                ? new UUID(body.getLong(), body.getLong()).toString()
+                : readString(body);
+        String ticketId = readString(body);
+        String queueId = readString(body);
+        int channel = body.get();
+        int status = body.get();
+        String recipient = readString(body);
+        String message = readString(body);
+        String errorMessage = readString(body);
+        long scheduledAt = body.getLong();
+        long sentAt = body.getLong();
+        return NotificationLog.builder()
+                .notificationId(notificationId)
+                .ticketId(ticketId)
+                .queueId(queueId)
+                .channel(channel >= 0 ? NotificationLog.NotificationType.values()[channel] : null)
+                .status(status >= 0 ? NotificationLog.NotificationStatus.values()[status] : null)
+                .recipient(recipient)
+                .message(message)
+                .errorMessage(errorMessage)
+                .scheduledAt(scheduledAt != Long.MIN_VALUE ? Instant.ofEpochMilli(scheduledAt) : null)
+                .sentAt(sentAt != Long.MIN_VALUE ? Instant.ofEpochMilli(sentAt) : null)
+                .build();
+    }
+
+    private String truncate(String value) {
+        return value != null && value.length() > maxMessageChars ? value.substring(0, maxMessageChars) : value;
+    }
+
+    // Length-prefixed UTF-8, -1 for null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer body) {
+        int length = body.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static UUID parseUuid(String value) {
+        if (value == null || value.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(value);
+            return uuid.toString().equals(value) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Index of the first pair whose hash is greater than the given one
+    private static int upperBound(LongBuffer pairs, long hash) {
+        int low = 0;
+        int high = pairs.limit() / 2;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (pairs.get(2 * mid) <= hash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // FNV-1a, 64 bit
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private Path segmentFile(long id) {
+        return directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private Path indexFile(long id, Key key) {
+        return directory.resolve(String.format("%020d%s", id, key.suffix));
+    }
+}
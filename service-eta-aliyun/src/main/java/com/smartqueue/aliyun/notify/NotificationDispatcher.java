@@ -0,0 +1,153 @@
+package com.smartqueue.aliyun.notify;
+
+import com.smartqueue.aliyun.model.NotificationLog;
+import com.smartqueue.aliyun.repository.NotificationRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends notifications of DIRECT mode off the request thread.
+ *
+ * /notify only puts the notification on a bounded queue (notification.dispatch.queue-capacity)
+ * and returns; when the queue is full it is rejected instead of blocking the caller. A fixed
+ * set of workers (an ExecutorService of notification.dispatch.workers threads) drains the queue
+ * through NotificationSender, which holds the shared, pooled DirectMail client and the
+ * per-provider rate limits, so sustained throughput is set by the provider quota.
+ *
+ * Every notification is sent on its own: one DirectMail call and one permit per recipient, so
+ * the rate limit counts messages and one bad address fails only its own notification.
+ */
+@Slf4j
+@Component
+public class NotificationDispatcher {
+
+    private static final String STOPPED_MESSAGE = "Notification dispatcher stopped before sending";
+
+    private final NotificationSender notificationSender;
+    private final NotificationRepository notificationRepository;
+    private final MeterRegistry meterRegistry;
+    private final long shutdownTimeoutMillis;
+
+    private final BlockingQueue<NotificationLog> queue;
+    private final ExecutorService workers;
+    private volatile boolean running = true;
+
+    public NotificationDispatcher(NotificationSender notificationSender,
+                                  NotificationRepository notificationRepository,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${notification.dispatch.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${notification.dispatch.workers:4}") int workerCount,
+                                  @Value("${notification.dispatch.shutdown-timeout-ms:10000}") long shutdownTimeoutMillis) {
+        this.notificationSender = notificationSender;
+        this.notificationRepository = notificationRepository;
+        this.meterRegistry = meterRegistry;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("smartqueue.notify.dispatch.queue", queue, BlockingQueue::size)
+                .description("Notifications waiting for a dispatcher worker")
+                .register(meterRegistry);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount,
+                runnable -> new Thread(runnable, "notify-dispatch-" + threadIndex.getAndIncrement()));
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+        log.info("Notification dispatcher started (workers: {}, queue: {})", workerCount, queueCapacity);
+    }
+
+    /**
+     * Queues the notification for sending; false if the queue is full or shutting down.
+     */
+    public boolean submit(NotificationLog notificationLog) {
+        boolean accepted = running && queue.offer(notificationLog);
+        if (!accepted) {
+            count(notificationLog, "rejected");
+        }
+        return accepted;
+    }
+
+    private void work() {
+        while (running || !queue.isEmpty()) {
+            NotificationLog notificationLog;
+            try {
+                notificationLog = queue.poll(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (notificationLog == null) {
+                continue;
+            }
+            try {
+                notificationSender.send(notificationLog);
+                complete(List.of(notificationLog), null);
+            } catch (InterruptedException e) {
+                // Interrupted waiting for a permit (shutdown timed out): already taken off the queue,
+                // so settled here like the ones shutdown drains
+                complete(List.of(notificationLog), new RuntimeException(STOPPED_MESSAGE));
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                complete(List.of(notificationLog), e);
+            }
+        }
+    }
+
+    private void complete(List<NotificationLog> notificationLogs, RuntimeException error) {
+        for (NotificationLog notificationLog : notificationLogs) {
+            if (error == null) {
+                notificationRepository.updateNotificationStatus(
+                        notificationLog, NotificationLog.NotificationStatus.SENT, null);
+                log.info("✅ REAL Notification sent successfully: {}", notificationLog.getNotificationId());
+            } else {
+                log.error("❌ Error sending REAL notification: {}", notificationLog.getNotificationId(), error);
+                notificationRepository.updateNotificationStatus(
+                        notificationLog, NotificationLog.NotificationStatus.FAILED, error.getMessage());
+            }
+            count(notificationLog, error == null ? "sent" : "failed");
+        }
+    }
+
+    private void count(NotificationLog notificationLog, String outcome) {
+        meterRegistry.counter("smartqueue.notify.dispatched",
+                "channel", String.valueOf(notificationLog.getChannel()), "outcome", outcome).increment();
+    }
+
+    /**
+     * Stops taking notifications and lets the workers send what is queued, for up to
+     * notification.dispatch.shutdown-timeout-ms; anything left after that, including a notification
+     * whose worker was interrupted waiting for a rate-limit permit, is marked FAILED.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        workers.shutdown();
+        if (!workers.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            workers.shutdownNow();
+            if (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                log.warn("Notification dispatcher workers still running after interrupt");
+            }
+        }
+        List<NotificationLog> unsent = new ArrayList<>();
+        queue.drainTo(unsent);
+        if (!unsent.isEmpty()) {
+            log.warn("Notification dispatcher stopped with {} unsent notification(s)", unsent.size());
+            complete(unsent, new RuntimeException(STOPPED_MESSAGE));
+        }
+    }
+}
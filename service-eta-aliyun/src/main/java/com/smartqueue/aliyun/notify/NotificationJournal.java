@@ -0,0 +1,307 @@
+package com.smartqueue.aliyun.notify;
+
+import com.smartqueue.aliyun.model.NotificationLog;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of one notification channel, split into segment files, with a consumer
+ * offset.
+ *
+ * Offsets are byte positions across the whole log; a segment file is named after the offset of
+ * its first byte ({@code 00000000000000000000.seg}) and a new one is started once the current
+ * one reaches the segment size. Each record is its length and CRC32 followed by a body whose
+ * first byte is its type:
+ * - ENTRY: a notification to deliver, with its attempt number and earliest delivery time;
+ * - DONE: the offset of an entry that needs no more work (sent, rescheduled or dead-lettered).
+ *
+ * The consumer offset (file {@code consumer.offset}) is the offset below which every entry is
+ * done; segments entirely below it are deleted. On open, the log is read from the consumer
+ * offset and every entry without a DONE record is returned for redelivery, so delivery is
+ * at-least-once. A torn record at the end of the last segment (crash during a write) is cut
+ * off.
+ */
+@Slf4j
+final class NotificationJournal implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String OFFSET_FILE = "consumer.offset";
+
+    private static final byte ENTRY = 1;
+    private static final byte DONE = 2;
+    private static final int RECORD_HEADER_BYTES = 4 + 4;
+
+    /**
+     * A stored notification: where it is in the log, which attempt it is, when it may be sent,
+     * and (for dead letters) why it failed.
+     */
+    record Entry(long offset, NotificationLog notification, int attempt, long notBeforeMillis, String error) {
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+
+    private FileChannel active;
+    private long activeBase;
+    private long writeOffset;
+    private long consumerOffset;
+
+    private NotificationJournal(Path directory, long segmentBytes, boolean fsync) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Opens (or creates) the log in the directory; entries that are not done are added to
+     * {@code pending}, oldest first.
+     */
+    static NotificationJournal open(Path directory, long segmentBytes, boolean fsync, List<Entry> pending) throws IOException {
+        Files.createDirectories(directory);
+        NotificationJournal journal = new NotificationJournal(directory, segmentBytes, fsync);
+        journal.recover(pending);
+        return journal;
+    }
+
+    synchronized Entry append(NotificationLog notification, int attempt, long notBeforeMillis, String error) throws IOException {
+        ByteBuffer body = encodeEntry(notification, attempt, notBeforeMillis, error);
+        long offset = write(body);
+        return new Entry(offset, notification, attempt, notBeforeMillis, error);
+    }
+
+    synchronized void markDone(long entryOffset) throws IOException {
+        write(ByteBuffer.allocate(1 + 8).put(DONE).putLong(entryOffset).flip());
+    }
+
+    synchronized long writeOffset() {
+        return writeOffset;
+    }
+
+    /**
+     * Stores the consumer offset (temporary file, fsync, atomic rename) and deletes segments
+     * that lie entirely below it.
+     */
+    synchronized void commit(long offset) throws IOException {
+        if (offset <= consumerOffset) {
+            return;
+        }
+        Path temp = directory.resolve(OFFSET_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer data = ByteBuffer.allocate(8).putLong(offset).flip();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(OFFSET_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        consumerOffset = offset;
+
+        // A segment is obsolete once the next one starts at or below the consumer offset
+        while (segments.size() > 1) {
+            Map.Entry<Long, Path> oldest = segments.firstEntry();
+            Long next = segments.higherKey(oldest.getKey());
+            if (next > offset) {
+                break;
+            }
+            Files.deleteIfExists(oldest.getValue());
+            segments.pollFirstEntry();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.force(true);
+            active.close();
+            active = null;
+        }
+    }
+
+    private long write(ByteBuffer body) throws IOException {
+        if (writeOffset - activeBase >= segmentBytes) {
+            roll();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES)
+                .putInt(body.remaining())
+                .putInt((int) crc.getValue())
+                .flip();
+        long offset = writeOffset;
+        int length = header.remaining() + body.remaining();
+        while (header.hasRemaining() || body.hasRemaining()) {
+            active.write(new ByteBuffer[]{header, body});
+        }
+        if (fsync) {
+            active.force(false);
+        }
+        writeOffset += length;
+        return offset;
+    }
+
+    private void roll() throws IOException {
+        if (active != null) {
+            active.force(true);
+            active.close();
+        }
+        activeBase = writeOffset;
+        Path segment = directory.resolve(segmentName(activeBase));
+        segments.put(activeBase, segment);
+        active = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        active.position(0);
+    }
+
+    private void recover(List<Entry> pending) throws IOException {
+        Path offsetFile = directory.resolve(OFFSET_FILE);
+        if (Files.exists(offsetFile)) {
+            consumerOffset = ByteBuffer.wrap(Files.readAllBytes(offsetFile)).getLong();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(file -> {
+                        String name = file.getFileName().toString();
+                        segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+                    });
+        }
+
+        if (segments.isEmpty()) {
+            writeOffset = consumerOffset;
+            roll();
+            return;
+        }
+
+        Map<Long, Entry> open = new LinkedHashMap<>();
+        long end = 0;
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            Long next = segments.higherKey(segment.getKey());
+            if (next != null && next <= consumerOffset) {
+                continue; // entirely consumed, deleted at the next commit
+            }
+            end = readSegment(segment.getKey(), segment.getValue(), next == null, open);
+        }
+        pending.addAll(open.values());
+
+        activeBase = segments.lastKey();
+        writeOffset = end;
+        active = FileChannel.open(segments.lastEntry().getValue(), StandardOpenOption.WRITE);
+        active.truncate(writeOffset - activeBase);
+        active.position(writeOffset - activeBase);
+        log.info("Notification journal {} opened: {} segment(s), {} pending, consumer offset {}",
+                directory, segments.size(), pending.size(), consumerOffset);
+    }
+
+    // Reads the records at or above the consumer offset; returns the offset just past the last valid record
+    private long readSegment(long base, Path file, boolean last, Map<Long, Entry> open) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            // The consumer offset is always a record boundary
+            int position = (int) Math.max(0, Math.min(size, consumerOffset - base));
+            while (position + RECORD_HEADER_BYTES <= size) {
+                int length = mapped.getInt(position);
+                int expectedCrc = mapped.getInt(position + 4);
+                if (length <= 0 || position + RECORD_HEADER_BYTES + (long) length > size) {
+                    break;
+                }
+                ByteBuffer body = mapped.slice(position + RECORD_HEADER_BYTES, length);
+                CRC32 crc = new CRC32();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                long offset = base + position;
+                byte type = body.get();
+                if (type == ENTRY && offset >= consumerOffset) {
+                    open.put(offset, decodeEntry(offset, body));
+                } else if (type == DONE) {
+                    open.remove(body.getLong());
+                }
+                position += RECORD_HEADER_BYTES + length;
+            }
+            if (position < size) {
+                if (last) {
+                    log.warn("Notification journal {}: cutting {} byte(s) of torn records at offset {}",
+                            directory, size - position, base + position);
+                } else {
+                    log.error("Notification journal {}: corrupt record at offset {}, rest of segment skipped",
+                            directory, base + position);
+                }
+            }
+            return base + position;
+        }
+    }
+
+    private static ByteBuffer encodeEntry(NotificationLog notification, int attempt, long notBeforeMillis, String error) {
+        byte[][] strings = {
+                bytes(notification.getNotificationId()), bytes(notification.getTicketId()), bytes(notification.getQueueId()),
+                bytes(notification.getChannel() != null ? notification.getChannel().name() : null),
+                bytes(notification.getRecipient()), bytes(notification.getMessage()), bytes(error)
+        };
+        int length = 1 + 4 + 8;
+        for (byte[] string : strings) {
+            length += 4 + (string != null ? string.length : 0);
+        }
+        ByteBuffer body = ByteBuffer.allocate(length).put(ENTRY).putInt(attempt).putLong(notBeforeMillis);
+        for (byte[] string : strings) {
+            if (string == null) {
+                body.putInt(-1);
+            } else {
+                body.putInt(string.length).put(string);
+            }
+        }
+        return body.flip();
+    }
+
+    private static Entry decodeEntry(long offset, ByteBuffer body) {
+        int attempt = body.getInt();
+        long notBeforeMillis = body.getLong();
+        NotificationLog notification = NotificationLog.builder()
+                .notificationId(string(body))
+                .ticketId(string(body))
+                .queueId(string(body))
+                .build();
+        String channel = string(body);
+        notification.setChannel(channel != null ? NotificationLog.NotificationType.valueOf(channel) : null);
+        notification.setRecipient(string(body));
+        notification.setMessage(string(body));
+        notification.setStatus(NotificationLog.NotificationStatus.PENDING);
+        return new Entry(offset, notification, attempt, notBeforeMillis, string(body));
+    }
+
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static String string(ByteBuffer body) {
+        int length = body.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        body.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static String segmentName(long base) {
+        return String.format("%020d%s", base, SEGMENT_SUFFIX);
+    }
+}
@@ -0,0 +1,259 @@
+package com.smartqueue.aliyun.notify;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.smartqueue.aliyun.model.NotificationLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded store of notification logs: a hot window in memory plus the on-disk
+ * NotificationArchive.
+ *
+ * The hot window keeps full records for notification.log.hot-ttl-ms after their last write, at
+ * most notification.log.hot-max-size of them, with in-memory indexes by ticketId and queueId.
+ * A record is written to the archive in compact form when it reaches a terminal status (SENT,
+ * FAILED, CANCELLED) and, if it changed since, when it leaves the hot window, so heap use is
+ * set by the configured sizes rather than by traffic. Queries read the hot window first, then
+ * the archive, newest first. A status update of a record that already left the hot window is
+ * appended to the archive as a new version of the record, which then supersedes the older one.
+ * An archive lookup stops after notification.log.find-timeout-ms and returns what it found.
+ */
+@Slf4j
+@Component
+public class NotificationLogStore {
+
+    private final Cache<String, HotRecord> hot;
+    private final ConcurrentMap<String, Set<String>> hotByTicket = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> hotByQueue = new ConcurrentHashMap<>();
+    private final NotificationArchive archive;
+    private final MeterRegistry meterRegistry;
+    private final Duration retention;
+    private final long findTimeoutNanos;
+
+    /**
+     * A hot record and the status it was last archived with (null if never).
+     */
+    private static final class HotRecord {
+        final NotificationLog notificationLog;
+        NotificationLog.NotificationStatus archivedStatus;
+
+        HotRecord(NotificationLog notificationLog) {
+            this.notificationLog = notificationLog;
+        }
+    }
+
+    public NotificationLogStore(MeterRegistry meterRegistry,
+                                @Value("${notification.log.dir:./data/notify-log}") String directory,
+                                @Value("${notification.log.hot-ttl-ms:3600000}") long hotTtlMillis,
+                                @Value("${notification.log.hot-max-size:50000}") long hotMaxSize,
+                                @Value("${notification.log.segment-records:100000}") int segmentRecords,
+                                @Value("${notification.log.archive-max-chars:200}") int archiveMaxChars,
+                                @Value("${notification.log.retention-days:30}") int retentionDays,
+                                @Value("${notification.log.find-timeout-ms:500}") long findTimeoutMillis) {
+        this.meterRegistry = meterRegistry;
+        this.retention = Duration.ofDays(retentionDays);
+        this.findTimeoutNanos = Duration.ofMillis(findTimeoutMillis).toNanos();
+        try {
+            this.archive = NotificationArchive.open(Path.of(directory), segmentRecords, archiveMaxChars);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open notification archive in " + directory, e);
+        }
+        this.hot = Caffeine.newBuilder()
+                .maximumSize(hotMaxSize)
+                .expireAfterWrite(Duration.ofMillis(hotTtlMillis))
+                .scheduler(Scheduler.systemScheduler())
+                .evictionListener(this::onEviction)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, hot, "notificationLogs");
+        purgeArchive();
+    }
+
+    public void save(NotificationLog notificationLog) {
+        HotRecord record = new HotRecord(notificationLog);
+        // Indexed under the entry's lock, which the eviction (unindex) of the same id also holds
+        hot.asMap().compute(notificationLog.getNotificationId(), (id, previous) -> {
+            if (previous != null) {
+                record.archivedStatus = previous.archivedStatus;
+            }
+            index(hotByTicket, notificationLog.getTicketId(), id);
+            index(hotByQueue, notificationLog.getQueueId(), id);
+            return record;
+        });
+        archiveIfTerminal(record);
+    }
+
+    /**
+     * Applies a status change to the notification: to its hot record if it is still in the hot
+     * window, otherwise to the given (sender's) copy, which is appended to the archive. Returns
+     * the updated record.
+     */
+    public NotificationLog updateStatus(NotificationLog notificationLog, NotificationLog.NotificationStatus status, String errorMessage) {
+        // Atomic with eviction: the record cannot be evicted (archived, unindexed) between the
+        // update and the re-put, which restarts the TTL of a record that is still changing
+        HotRecord record = hot.asMap().computeIfPresent(notificationLog.getNotificationId(), (id, current) -> {
+            synchronized (current) {
+                applyStatus(current.notificationLog, status, errorMessage);
+            }
+            return current;
+        });
+        if (record == null) {
+            // Cold: the copy carries ticketId and queueId, so the archive indexes the new version
+            applyStatus(notificationLog, status, errorMessage);
+            archive(new HotRecord(notificationLog));
+            meterRegistry.counter("smartqueue.notify.log.cold.updates").increment();
+            return notificationLog;
+        }
+        archiveIfTerminal(record);
+        return record.notificationLog;
+    }
+
+    private static void applyStatus(NotificationLog notificationLog, NotificationLog.NotificationStatus status, String errorMessage) {
+        notificationLog.setStatus(status);
+        if (errorMessage != null) {
+            notificationLog.setErrorMessage(errorMessage);
+        }
+        if (status == NotificationLog.NotificationStatus.SENT) {
+            notificationLog.setSentAt(Instant.now());
+        }
+    }
+
+    public Optional<NotificationLog> findById(String notificationId) {
+        HotRecord record = hot.getIfPresent(notificationId);
+        return record != null ? Optional.of(record.notificationLog) : Optional.empty();
+    }
+
+    public List<NotificationLog> findByTicketId(String ticketId, int limit) {
+        return find(hotByTicket, NotificationArchive.Key.TICKET, ticketId, limit);
+    }
+
+    public List<NotificationLog> findByQueueId(String queueId, int limit) {
+        return find(hotByQueue, NotificationArchive.Key.QUEUE, queueId, limit);
+    }
+
+    private List<NotificationLog> find(ConcurrentMap<String, Set<String>> hotIndex, NotificationArchive.Key key,
+                                       String value, int limit) {
+        List<NotificationLog> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        boolean expired = false;
+        for (String notificationId : hotIndex.getOrDefault(value, Set.of())) {
+            HotRecord record = hot.getIfPresent(notificationId);
+            if (record == null) {
+                expired = true;
+            } else if (seen.add(notificationId)) {
+                result.add(record.notificationLog);
+            }
+        }
+        if (expired) {
+            // Expired but not evicted yet, so not archived either: evict (archive) it now
+            hot.cleanUp();
+        }
+        result.sort(Comparator.comparing(NotificationLog::getScheduledAt, Comparator.nullsLast(Comparator.reverseOrder())));
+        if (result.size() > limit) {
+            return new ArrayList<>(result.subList(0, limit));
+        }
+        try {
+            if (!archive.find(key, value, limit, System.nanoTime() + findTimeoutNanos, seen, result)) {
+                meterRegistry.counter("smartqueue.notify.log.find.timeouts").increment();
+                log.debug("Notification archive lookup of {} {} timed out with {} record(s)", key, value, result.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read notification archive", e);
+        }
+        return result;
+    }
+
+    // Runs while the entry is being removed, so a lookup finds the record either hot or archived
+    private void onEviction(String notificationId, HotRecord record, RemovalCause cause) {
+        if (record == null) {
+            return;
+        }
+        archive(record);
+        unindex(hotByTicket, record.notificationLog.getTicketId(), notificationId);
+        unindex(hotByQueue, record.notificationLog.getQueueId(), notificationId);
+    }
+
+    private void archiveIfTerminal(HotRecord record) {
+        NotificationLog.NotificationStatus status = record.notificationLog.getStatus();
+        if (status == NotificationLog.NotificationStatus.SENT
+                || status == NotificationLog.NotificationStatus.FAILED
+                || status == NotificationLog.NotificationStatus.CANCELLED) {
+            archive(record);
+        }
+    }
+
+    // Writes the record unless it was already archived with its current status
+    private void archive(HotRecord record) {
+        synchronized (record) {
+            NotificationLog.NotificationStatus status = record.notificationLog.getStatus();
+            if (record.archivedStatus == status) {
+                return;
+            }
+            try {
+                archive.append(record.notificationLog);
+                record.archivedStatus = status;
+                meterRegistry.counter("smartqueue.notify.log.archived").increment();
+            } catch (IOException e) {
+                meterRegistry.counter("smartqueue.notify.log.archive.failures").increment();
+                log.error("Failed to archive notification log: {}", record.notificationLog.getNotificationId(), e);
+            }
+        }
+    }
+
+    private static void index(ConcurrentMap<String, Set<String>> index, String key, String notificationId) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(notificationId);
+        }
+    }
+
+    private static void unindex(ConcurrentMap<String, Set<String>> index, String key, String notificationId) {
+        if (key != null) {
+            index.computeIfPresent(key, (k, ids) -> ids.remove(notificationId) && ids.isEmpty() ? null : ids);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${notification.log.purge-interval-ms:3600000}")
+    public void purgeArchive() {
+        try {
+            int deleted = archive.purgeBefore(Instant.now().minus(retention));
+            if (deleted > 0) {
+                log.info("Deleted {} notification archive segment(s) older than {}", deleted, retention);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to purge notification archive", e);
+        }
+    }
+
+    /**
+     * Archives what is still only in the hot window, so a restart loses no record.
+     */
+    @PreDestroy
+    public void shutdown() throws IOException {
+        for (HotRecord record : hot.asMap().values()) {
+            archive(record);
+        }
+        archive.close();
+    }
+}
@@ -0,0 +1,368 @@
+package com.smartqueue.aliyun.notify;
+
+import com.smartqueue.aliyun.model.NotificationLog;
+import com.smartqueue.aliyun.repository.NotificationRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable delivery queue of QUEUE mode (notification.mode=QUEUE).
+ *
+ * Every channel (EMAIL, SMS, PUSH) has its own NotificationJournal under notification.queue.dir
+ * and its own worker threads (notification.queue.workers), so a slow or throttled provider
+ * never holds back another channel. A notification is written to the journal before /notify
+ * returns; workers send it through NotificationSender at the provider's rate limit.
+ *
+ * Notifications of a channel NotificationSender does not support are refused by enqueue
+ * instead of being journaled. A failed send is retried with exponential backoff and jitter:
+ * attempt n waits a random time between half and all of min(backoff-max-ms,
+ * backoff-initial-ms * 2^(n-1)). The retry is appended to the journal as a new entry, so it
+ * survives a restart. After max-attempts - or at once when the failure is permanent
+ * (PermanentDeliveryException) - the notification goes to the dead-letter journal and is marked
+ * FAILED. Entries not done when the service stops are delivered again on the next start.
+ *
+ * Dead letters are kept for notification.queue.dead-letter-retention-days and at most
+ * dead-letter-max-entries of them: older ones are dropped by moving the dead-letter journal's
+ * consumer offset past them, which deletes its consumed segments and bounds what a start reads.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "notification.mode", havingValue = "QUEUE")
+public class NotificationQueue {
+
+    private final NotificationSender notificationSender;
+    private final NotificationRepository notificationRepository;
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long backoffInitialMillis;
+    private final long backoffMaxMillis;
+    private final long maxPending;
+    private final long shutdownTimeoutMillis;
+    private final long deadLetterRetentionMillis;
+    private final int deadLetterMaxEntries;
+
+    private final Map<NotificationLog.NotificationType, ChannelQueue> channels = new EnumMap<>(NotificationLog.NotificationType.class);
+    private final NotificationJournal deadLetters;
+    private final ArrayDeque<DeadLetter> deadLetterIndex = new ArrayDeque<>(); // oldest first, guarded by itself
+    private final AtomicLong deadLetterCount = new AtomicLong();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    /**
+     * One channel: its journal, the entries waiting for their delivery time, and the offsets of
+     * entries not yet done (the lowest one is how far the consumer offset may advance).
+     */
+    private static final class ChannelQueue {
+        final NotificationLog.NotificationType channel;
+        final NotificationJournal journal;
+        final DelayQueue<Delivery> due = new DelayQueue<>();
+        final ConcurrentSkipListSet<Long> open = new ConcurrentSkipListSet<>();
+        final AtomicLong pending = new AtomicLong(); // open.size() without the O(n) count
+
+        ChannelQueue(NotificationLog.NotificationType channel, NotificationJournal journal) {
+            this.channel = channel;
+            this.journal = journal;
+        }
+
+        // Append and open together, so a commit never passes an entry that is not yet open
+        synchronized NotificationJournal.Entry append(NotificationLog notification, int attempt, long notBeforeMillis) throws IOException {
+            NotificationJournal.Entry entry = journal.append(notification, attempt, notBeforeMillis, null);
+            add(entry);
+            return entry;
+        }
+
+        void add(NotificationJournal.Entry entry) {
+            open.add(entry.offset());
+            pending.incrementAndGet();
+            due.add(new Delivery(entry));
+        }
+
+        synchronized void done(long offset) throws IOException {
+            journal.markDone(offset);
+            if (open.remove(offset)) {
+                pending.decrementAndGet();
+            }
+        }
+
+        synchronized void commit() throws IOException {
+            journal.commit(open.isEmpty() ? journal.writeOffset() : open.first());
+        }
+    }
+
+    /**
+     * Where a dead letter is in its journal and when it was written.
+     */
+    private record DeadLetter(long offset, long atMillis) {
+    }
+
+    private record Delivery(NotificationJournal.Entry entry) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(entry.notBeforeMillis() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(entry.notBeforeMillis(), ((Delivery) other).entry.notBeforeMillis());
+        }
+    }
+
+    public NotificationQueue(NotificationSender notificationSender,
+                             NotificationRepository notificationRepository,
+                             MeterRegistry meterRegistry,
+                             @Value("${notification.queue.dir:./data/notify-queue}") String directory,
+                             @Value("${notification.queue.segment-bytes:16777216}") long segmentBytes,
+                             @Value("${notification.queue.fsync:true}") boolean fsync,
+                             @Value("${notification.queue.workers:EMAIL:4,SMS:2,PUSH:1}") String workerCounts,
+                             @Value("${notification.queue.max-attempts:8}") int maxAttempts,
+                             @Value("${notification.queue.backoff-initial-ms:1000}") long backoffInitialMillis,
+                             @Value("${notification.queue.backoff-max-ms:300000}") long backoffMaxMillis,
+                             @Value("${notification.queue.max-pending:100000}") long maxPending,
+                             @Value("${notification.queue.shutdown-timeout-ms:10000}") long shutdownTimeoutMillis,
+                             @Value("${notification.queue.dead-letter-retention-days:7}") int deadLetterRetentionDays,
+                             @Value("${notification.queue.dead-letter-max-entries:100000}") int deadLetterMaxEntries) {
+        this.notificationSender = notificationSender;
+        this.notificationRepository = notificationRepository;
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.backoffInitialMillis = backoffInitialMillis;
+        this.backoffMaxMillis = backoffMaxMillis;
+        this.maxPending = maxPending;
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        this.deadLetterRetentionMillis = TimeUnit.DAYS.toMillis(deadLetterRetentionDays);
+        this.deadLetterMaxEntries = deadLetterMaxEntries;
+
+        Path root = Path.of(directory);
+        try {
+            for (NotificationLog.NotificationType channel : NotificationLog.NotificationType.values()) {
+                List<NotificationJournal.Entry> pending = new ArrayList<>();
+                ChannelQueue queue = new ChannelQueue(channel,
+                        NotificationJournal.open(root.resolve(channel.name().toLowerCase()), segmentBytes, fsync, pending));
+                pending.forEach(queue::add);
+                channels.put(channel, queue);
+                if (!pending.isEmpty()) {
+                    log.info("📬 Redelivering {} {} notification(s) from the journal", pending.size(), channel);
+                }
+            }
+            List<NotificationJournal.Entry> dead = new ArrayList<>();
+            this.deadLetters = NotificationJournal.open(root.resolve("dead-letter"), segmentBytes, fsync, dead);
+            dead.forEach(entry -> deadLetterIndex.add(new DeadLetter(entry.offset(), entry.notBeforeMillis())));
+            deadLetterCount.set(dead.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open notification queue in " + root, e);
+        }
+        purgeDeadLetters();
+
+        for (ChannelQueue queue : channels.values()) {
+            Gauge.builder("smartqueue.notify.queue.pending", queue.pending, AtomicLong::get)
+                    .description("Notifications in the durable queue not yet delivered")
+                    .tag("channel", queue.channel.name())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("smartqueue.notify.queue.dead.letters", deadLetterCount, AtomicLong::get)
+                .description("Notifications in the dead-letter journal")
+                .register(meterRegistry);
+
+        Map<String, Integer> counts = parseWorkerCounts(workerCounts);
+        for (ChannelQueue queue : channels.values()) {
+            int count = counts.getOrDefault(queue.channel.name(), 1);
+            for (int i = 0; i < count; i++) {
+                Thread worker = new Thread(() -> work(queue), "notify-" + queue.channel.name().toLowerCase() + "-" + i);
+                worker.setDaemon(true);
+                worker.start();
+                workers.add(worker);
+            }
+        }
+        log.info("Notification queue started in {} (workers: {}, max attempts: {})", root, counts, maxAttempts);
+    }
+
+    /**
+     * Writes the notification to its channel's journal; false if the channel already holds
+     * notification.queue.max-pending undelivered notifications or the queue is stopping.
+     * Throws IllegalArgumentException for a channel NotificationSender does not support.
+     */
+    public boolean enqueue(NotificationLog notificationLog) {
+        if (!notificationSender.supports(notificationLog.getChannel())) {
+            throw new IllegalArgumentException("Unsupported notification channel: " + notificationLog.getChannel());
+        }
+        ChannelQueue queue = channels.get(notificationLog.getChannel());
+        if (!running || queue.pending.get() >= maxPending) {
+            count(notificationLog, "rejected");
+            return false;
+        }
+        try {
+            queue.append(notificationLog, 0, System.currentTimeMillis());
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write notification to the queue journal", e);
+        }
+    }
+
+    private void work(ChannelQueue queue) {
+        while (running) {
+            try {
+                Delivery delivery = queue.due.poll(200, TimeUnit.MILLISECONDS);
+                if (delivery != null) {
+                    deliver(queue, delivery.entry());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.error("❌ Notification queue worker error on {}", queue.channel, e);
+            }
+        }
+    }
+
+    private void deliver(ChannelQueue queue, NotificationJournal.Entry entry) throws InterruptedException, IOException {
+        NotificationLog notificationLog = entry.notification();
+        try {
+            notificationSender.send(notificationLog);
+        } catch (RuntimeException e) {
+            int attempt = entry.attempt() + 1;
+            if (!(e instanceof PermanentDeliveryException) && attempt < maxAttempts) {
+                long delay = backoffMillis(attempt);
+                queue.append(notificationLog, attempt, System.currentTimeMillis() + delay);
+                queue.done(entry.offset());
+                notificationRepository.updateNotificationStatus(
+                        notificationLog, NotificationLog.NotificationStatus.PENDING, e.getMessage());
+                log.warn("Notification {} failed (attempt {}/{}), retrying in {} ms: {}",
+                        notificationLog.getNotificationId(), attempt, maxAttempts, delay, e.getMessage());
+                count(notificationLog, "retried");
+            } else {
+                deadLetter(notificationLog, attempt, e.getMessage());
+                queue.done(entry.offset());
+                notificationRepository.updateNotificationStatus(
+                        notificationLog, NotificationLog.NotificationStatus.FAILED, e.getMessage());
+                if (e instanceof PermanentDeliveryException) {
+                    log.error("❌ Notification {} dead-lettered, permanent failure: {}", notificationLog.getNotificationId(), e.getMessage());
+                } else {
+                    log.error("❌ Notification {} dead-lettered after {} attempts", notificationLog.getNotificationId(), attempt, e);
+                }
+                count(notificationLog, "dead_lettered");
+            }
+            return;
+        }
+        queue.done(entry.offset());
+        notificationRepository.updateNotificationStatus(
+                notificationLog, NotificationLog.NotificationStatus.SENT, null);
+        log.info("✅ Queued notification sent successfully: {}", notificationLog.getNotificationId());
+        count(notificationLog, "sent");
+    }
+
+    private void deadLetter(NotificationLog notificationLog, int attempt, String error) throws IOException {
+        long now = System.currentTimeMillis();
+        synchronized (deadLetterIndex) {
+            NotificationJournal.Entry entry = deadLetters.append(notificationLog, attempt, now, error);
+            deadLetterIndex.addLast(new DeadLetter(entry.offset(), now));
+            deadLetterCount.set(deadLetterIndex.size());
+        }
+    }
+
+    /**
+     * Drops dead letters past the retention or beyond the maximum count, oldest first, by
+     * committing the dead-letter journal's offset past them.
+     */
+    @Scheduled(fixedDelayString = "${notification.queue.dead-letter-purge-interval-ms:3600000}")
+    public void purgeDeadLetters() {
+        long expiredBefore = System.currentTimeMillis() - deadLetterRetentionMillis;
+        synchronized (deadLetterIndex) {
+            int dropped = 0;
+            while (!deadLetterIndex.isEmpty()
+                    && (deadLetterIndex.size() > deadLetterMaxEntries || deadLetterIndex.peekFirst().atMillis() < expiredBefore)) {
+                deadLetterIndex.pollFirst();
+                dropped++;
+            }
+            deadLetterCount.set(deadLetterIndex.size());
+            if (dropped > 0) {
+                log.info("Dropping {} dead-lettered notification(s) past retention or the maximum count", dropped);
+            }
+            try {
+                // A no-op unless the oldest kept dead letter moved; also retries a failed commit
+                deadLetters.commit(deadLetterIndex.isEmpty() ? deadLetters.writeOffset() : deadLetterIndex.peekFirst().offset());
+            } catch (IOException e) {
+                log.warn("Could not commit the dead-letter journal offset, retrying at the next purge", e);
+            }
+        }
+    }
+
+    // Half of the capped exponential delay, plus a random share of the other half
+    private long backoffMillis(int attempt) {
+        long cap = Math.min(backoffMaxMillis, backoffInitialMillis << Math.min(attempt - 1, 30));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    private void count(NotificationLog notificationLog, String outcome) {
+        meterRegistry.counter("smartqueue.notify.queue.deliveries",
+                "channel", String.valueOf(notificationLog.getChannel()), "outcome", outcome).increment();
+    }
+
+    @Scheduled(fixedDelayString = "${notification.queue.commit-interval-ms:1000}")
+    public void commitOffsets() {
+        for (ChannelQueue queue : channels.values()) {
+            try {
+                queue.commit();
+            } catch (IOException e) {
+                log.warn("Could not commit notification queue offset of {}", queue.channel, e);
+            }
+        }
+    }
+
+    private static Map<String, Integer> parseWorkerCounts(String workerCounts) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String entry : workerCounts.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid notification.queue.workers entry: " + entry);
+            }
+            counts.put(parts[0].trim().toUpperCase(), Integer.parseInt(parts[1].trim()));
+        }
+        return counts;
+    }
+
+    /**
+     * Stops the workers (a send in progress may finish for up to
+     * notification.queue.shutdown-timeout-ms), commits the offsets and closes the journals.
+     * Whatever was not delivered stays in the journals for the next start.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException, IOException {
+        running = false;
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMillis;
+        for (Thread worker : workers) {
+            worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+            worker.join(1000);
+        }
+        commitOffsets();
+        for (ChannelQueue queue : channels.values()) {
+            queue.journal.close();
+        }
+        deadLetters.close();
+    }
+}
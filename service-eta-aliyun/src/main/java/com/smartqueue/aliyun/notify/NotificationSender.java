@@ -0,0 +1,230 @@
+package com.smartqueue.aliyun.notify;
+
+import com.aliyuncs.IAcsClient;
+import com.aliyuncs.dm.model.v20151123.SingleSendMailRequest;
+import com.aliyuncs.dm.model.v20151123.SingleSendMailResponse;
+import com.aliyuncs.exceptions.ClientException;
+import com.aliyuncs.exceptions.ServerException;
+import com.smartqueue.aliyun.concurrent.SdkCallGuard;
+import com.smartqueue.aliyun.model.NotificationLog;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Sends notifications to the providers, shared by the DIRECT dispatcher and the QUEUE mode
+ * delivery queue.
+ *
+ * Every provider call first takes a permit from that provider's calls-per-second limit
+ * (notification.dispatch.rate-limits), so both modes together stay within the quota; callers
+ * wait for a permit rather than piling up throttled calls. A failed send throws:
+ * PermanentDeliveryException when retrying cannot help (invalid address, a request DirectMail
+ * rejects, a channel without a provider), any other RuntimeException when it may.
+ */
+@Slf4j
+@Component
+public class NotificationSender {
+
+    static final String DIRECTMAIL = "directmail";
+    static final String SMS = "sms";
+
+    private static final String EMAIL_SUBJECT = "🎯 SmartQueue Notification - Your Turn is Coming!";
+
+    // Channels with a provider behind them; SMS and PUSH are not integrated yet
+    private static final Set<NotificationLog.NotificationType> SUPPORTED_CHANNELS = EnumSet.of(NotificationLog.NotificationType.EMAIL);
+
+    // One address, no list: local@domain.tld without spaces or separators
+    private static final Pattern EMAIL_ADDRESS = Pattern.compile("[^@\\s,;]+@[^@\\s,;]+\\.[^@\\s,;]+");
+
+    private final IAcsClient directMailClient;
+    private final ObservationRegistry observationRegistry;
+    private final SdkCallGuard sdkCallGuard;
+    private final boolean demoCredentials;
+    private final String fromEmail;
+    private final String fromName;
+    private final Map<String, TokenBucket> rateLimits;
+
+    public NotificationSender(@Qualifier("directMailClient") IAcsClient directMailClient,
+                              ObservationRegistry observationRegistry,
+                              SdkCallGuard sdkCallGuard,
+                              @Value("${aliyun.access-key:demo-key}") String accessKeyId,
+                              @Value("${aliyun.access-secret:demo-secret}") String accessKeySecret,
+                              @Value("${aliyun.directmail.from-email:noreply@smartqueue.com}") String fromEmail,
+                              @Value("${aliyun.directmail.from-name:SmartQueue System}") String fromName,
+                              @Value("${notification.dispatch.rate-limits:directmail:10,sms:10}") String rateLimits) {
+        this.directMailClient = directMailClient;
+        this.observationRegistry = observationRegistry;
+        this.sdkCallGuard = sdkCallGuard;
+        this.demoCredentials = accessKeyId.equals("demo-key") || accessKeySecret.equals("demo-secret");
+        this.fromEmail = fromEmail;
+        this.fromName = fromName;
+        this.rateLimits = parseRateLimits(rateLimits);
+    }
+
+    /**
+     * Whether notifications of the channel can be sent at all; others are rejected when they
+     * are submitted.
+     */
+    public boolean supports(NotificationLog.NotificationType channel) {
+        return SUPPORTED_CHANNELS.contains(channel);
+    }
+
+    /**
+     * Sends one notification on its channel, to its single recipient; each email is its own
+     * DirectMail call and takes its own permit.
+     */
+    public void send(NotificationLog notificationLog) throws InterruptedException {
+        switch (notificationLog.getChannel()) {
+            case EMAIL -> {
+                rateLimits.get(DIRECTMAIL).acquire();
+                sendRealEmail(notificationLog);
+            }
+            case SMS -> sendRealSMS(notificationLog);
+            default -> throw new PermanentDeliveryException("Unsupported notification channel: " + notificationLog.getChannel());
+        }
+    }
+
+    // 📧 Aliyun DirectMail Integration
+    private void sendRealEmail(NotificationLog notificationLog) {
+        String recipient = notificationLog.getRecipient();
+        if (recipient == null || !EMAIL_ADDRESS.matcher(recipient).matches()) {
+            throw new PermanentDeliveryException("Invalid email address");
+        }
+        // Check if using demo credentials
+        if (demoCredentials) {
+            log.info("🧪 Using demo credentials, simulating email send for notification: {}", notificationLog.getNotificationId());
+            return;
+        }
+
+        try {
+            SingleSendMailRequest request = new SingleSendMailRequest();
+            request.setAccountName(fromEmail);
+            request.setFromAlias(fromName);
+            request.setAddressType(1);
+            request.setToAddress(recipient);
+            request.setReplyToAddress(false);
+            request.setSubject(EMAIL_SUBJECT);
+            request.setHtmlBody(createEmailHtmlBody(notificationLog.getMessage()));
+
+            SingleSendMailResponse response = sendObserved(request);
+            log.info("📧 Email sent successfully via Aliyun DirectMail for notification: {}. EnvId: {}",
+                    notificationLog.getNotificationId(), response.getEnvId());
+
+        } catch (ClientException e) {
+            log.error("❌ Aliyun DirectMail error: Code={}, Message={}", e.getErrCode(), e.getErrMsg());
+            if (isPermanent(e)) {
+                throw new PermanentDeliveryException("DirectMail rejected the email: " + e.getErrCode() + " " + e.getErrMsg(), e);
+            }
+            throw new RuntimeException("Failed to send email via DirectMail: " + e.getErrMsg(), e);
+        }
+    }
+
+    // A client error (4xx) other than throttling; server errors and SDK.* (connection, timeout) may pass on retry
+    private static boolean isPermanent(ClientException e) {
+        String code = e.getErrCode() != null ? e.getErrCode() : "";
+        return !(e instanceof ServerException) && !code.startsWith("SDK.") && !code.startsWith("Throttling");
+    }
+
+    // Records each DirectMail round trip as "smartqueue.directmail.send"
+    private SingleSendMailResponse sendObserved(SingleSendMailRequest request) throws ClientException {
+        Observation observation = Observation.createNotStarted("smartqueue.directmail.send", observationRegistry)
+                .contextualName("directmail SingleSendMail")
+                .lowCardinalityKeyValue("api", "SingleSendMail")
+                .start();
+        try (Observation.Scope scope = observation.openScope()) {
+            return sdkCallGuard.call(DIRECTMAIL, () -> directMailClient.getAcsResponse(request));
+        } catch (ClientException | RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    // 📱 Real SMS (placeholder for Aliyun SMS service): nothing is sent, so it must not count as SENT
+    private void sendRealSMS(NotificationLog notificationLog) {
+        // TODO: Implement Aliyun SMS service, taking a permit from rateLimits.get(SMS) per message
+        // and adding SMS to SUPPORTED_CHANNELS
+        throw new PermanentDeliveryException("SMS delivery is not implemented");
+    }
+
+    // 🎨 Professional Email Template
+    private String createEmailHtmlBody(String message) {
+        return String.format("""
+            <!DOCTYPE html>
+            <html>
+            <head>
+                <meta charset="UTF-8">
+                <title>SmartQueue Notification</title>
+                <style>
+                    body { font-family: 'Segoe UI', Arial, sans-serif; line-height: 1.6; color: #333; }
+                    .container { max-width: 600px; margin: 0 auto; padding: 20px; }
+                    .header { background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }
+                    .content { background: #f8f9fa; padding: 30px; border-radius: 0 0 10px 10px; }
+                    .highlight { background: #e3f2fd; padding: 15px; border-radius: 8px; margin: 20px 0; border-left: 4px solid #2196F3; }
+                    .footer { text-align: center; margin-top: 30px; color: #666; font-size: 14px; }
+                    .btn { display: inline-block; padding: 12px 30px; background: #4CAF50; color: white; text-decoration: none; border-radius: 25px; font-weight: bold; }
+                </style>
+            </head>
+            <body>
+                <div class="container">
+                    <div class="header">
+                        <h1>🎯 SmartQueue</h1>
+                        <p>Your queue position update</p>
+                    </div>
+                    <div class="content">
+                        <h2>Hello! 👋</h2>
+                        <p>We wanted to let you know about your queue status:</p>
+
+                        <div class="highlight">
+                            <h3>📝 %s</h3>
+                            <p><strong>Notification Time:</strong> %s</p>
+                        </div>
+
+                        <p>Thank you for using SmartQueue! We're working hard to serve you as quickly as possible.</p>
+
+                        <p style="text-align: center;">
+                            <a href="#" class="btn">Check Queue Status</a>
+                        </p>
+                    </div>
+                    <div class="footer">
+                        <p>SmartQueue - Smart waiting, better experience</p>
+                        <p>🌐 Multi-cloud powered by AWS & Aliyun</p>
+                    </div>
+                </div>
+            </body>
+            </html>
+            """,
+            message,
+            Instant.now().toString()
+        );
+    }
+
+    private static Map<String, TokenBucket> parseRateLimits(String rateLimits) {
+        Map<String, TokenBucket> buckets = new HashMap<>();
+        for (String entry : rateLimits.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid notification.dispatch.rate-limits entry: " + entry);
+            }
+            buckets.put(parts[0].trim(), new TokenBucket(Double.parseDouble(parts[1].trim())));
+        }
+        for (String provider : List.of(DIRECTMAIL, SMS)) {
+            if (!buckets.containsKey(provider)) {
+                throw new IllegalArgumentException("notification.dispatch.rate-limits has no limit for " + provider);
+            }
+        }
+        return buckets;
+    }
+}
@@ -0,0 +1,17 @@
+package com.smartqueue.aliyun.notify;
+
+/**
+ * A send that fails the same way however often it is retried - invalid address, a request the
+ * provider rejects (4xx), a channel that is not implemented - so the notification fails at once
+ * instead of going through the retry schedule.
+ */
+public class PermanentDeliveryException extends RuntimeException {
+
+    public PermanentDeliveryException(String message) {
+        super(message);
+    }
+
+    public PermanentDeliveryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
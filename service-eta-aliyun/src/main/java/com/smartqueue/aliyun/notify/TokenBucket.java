@@ -0,0 +1,42 @@
+package com.smartqueue.aliyun.notify;
+
+/**
+ * Calls-per-second limit of one notification provider, shared by all dispatcher workers.
+ * Holds up to one second of permits (at least one), so an idle provider can take a short burst.
+ */
+final class TokenBucket {
+
+    private final double permitsPerSecond;
+    private final double capacity;
+    private double permits;
+    private long refilledAtNanos;
+
+    TokenBucket(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = Math.max(1, permitsPerSecond);
+        this.permits = capacity;
+        this.refilledAtNanos = System.nanoTime();
+    }
+
+    /**
+     * Blocks until a permit is available.
+     */
+    void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = tryAcquire()) > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    // Takes a permit and returns 0, or returns the time until the next one
+    private synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        permits = Math.min(capacity, permits + (now - refilledAtNanos) * permitsPerSecond / 1e9);
+        refilledAtNanos = now;
+        if (permits >= 1) {
+            permits -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) ((1 - permits) / permitsPerSecond * 1e9));
+    }
+}
@@ -2,7 +2,12 @@ package com.smartqueue.aliyun.repository;
 
 import com.alicloud.openservices.tablestore.SyncClient;
 import com.alicloud.openservices.tablestore.model.*;
+import com.alicloud.openservices.tablestore.model.condition.SingleColumnValueCondition;
+import com.smartqueue.aliyun.concurrent.SdkCallGuard;
 import com.smartqueue.aliyun.model.EtaStats;
+import com.smartqueue.aliyun.stats.ServedStatsDelta;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,19 +15,37 @@ import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Slf4j
 @Repository
 public class EtaStatsRepository {
     
+    // BatchGetRow reads at most 100 rows per request (BatchWriteRow: 200)
+    private static final int MAX_BATCH_ROWS = 100;
+    
+    // Conditional writes of a single event retried after losing to a concurrent writer
+    private static final int MAX_CONDITIONAL_ATTEMPTS = 5;
+    
+    // Seasonality profiles share the stats table under this time window, one row per queue
+    private static final String SEASONALITY_WINDOW = "seasonality";
+    
     private final SyncClient tableStoreClient;
     private final String etaStatsTableName;
+    private final ObservationRegistry observationRegistry;
+    private final SdkCallGuard sdkCallGuard;
     
     public EtaStatsRepository(@Autowired(required = false) SyncClient tableStoreClient, 
-                             String etaStatsTableName) {
+                             String etaStatsTableName,
+                             ObservationRegistry observationRegistry,
+                             SdkCallGuard sdkCallGuard) {
         this.tableStoreClient = tableStoreClient;
         this.etaStatsTableName = etaStatsTableName;
+        this.observationRegistry = observationRegistry;
+        this.sdkCallGuard = sdkCallGuard;
         log.info("EtaStatsRepository initialized with client: {}", tableStoreClient != null ? "REAL" : "NULL");
     }
     
@@ -38,22 +61,8 @@ public class EtaStatsRepository {
         try {
             etaStats.setUpdatedAt(Instant.now());
             
-            PrimaryKeyBuilder primaryKeyBuilder = PrimaryKeyBuilder.createPrimaryKeyBuilder();
-            primaryKeyBuilder.addPrimaryKeyColumn("queueId", PrimaryKeyValue.fromString(etaStats.getQueueId()));
-            primaryKeyBuilder.addPrimaryKeyColumn("timeWindow", PrimaryKeyValue.fromString(etaStats.getTimeWindow()));
-            
-            RowPutChange rowPutChange = new RowPutChange(etaStatsTableName, primaryKeyBuilder.build());
-            
-            // Add attributes
-            rowPutChange.addColumn(new Column("servedCount", ColumnValue.fromLong(etaStats.getServedCount())));
-            rowPutChange.addColumn(new Column("emaServiceRate", ColumnValue.fromDouble(etaStats.getEmaServiceRate())));
-            rowPutChange.addColumn(new Column("p90WaitTimeMinutes", ColumnValue.fromLong(etaStats.getP90WaitTimeMinutes())));
-            rowPutChange.addColumn(new Column("p50WaitTimeMinutes", ColumnValue.fromLong(etaStats.getP50WaitTimeMinutes())));
-            rowPutChange.addColumn(new Column("windowStart", ColumnValue.fromLong(etaStats.getWindowStart().toEpochMilli())));
-            rowPutChange.addColumn(new Column("updatedAt", ColumnValue.fromLong(etaStats.getUpdatedAt().toEpochMilli())));
-            
-            PutRowRequest request = new PutRowRequest(rowPutChange);
-            tableStoreClient.putRow(request);
+            PutRowRequest request = new PutRowRequest(toRowPutChange(etaStats));
+            observeTableStore("PutRow", () -> tableStoreClient.putRow(request));
             
             log.info("ETA stats saved successfully for queue: {}", etaStats.getQueueId());
             return etaStats;
@@ -65,6 +74,19 @@ public class EtaStatsRepository {
     }
     
     public Optional<EtaStats> findByQueueIdAndTimeWindow(String queueId, String timeWindow) {
+        try {
+            return loadByQueueIdAndTimeWindow(queueId, timeWindow);
+        } catch (Exception e) {
+            log.error("Error finding ETA stats for queue: {} and time window: {}", queueId, timeWindow, e);
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * Like findByQueueIdAndTimeWindow, but a failed read throws instead of looking like a
+     * missing row, so a cache does not mistake a TableStore outage for "no stats".
+     */
+    public Optional<EtaStats> loadByQueueIdAndTimeWindow(String queueId, String timeWindow) {
         log.debug("Finding ETA stats for queue: {} and time window: {}", queueId, timeWindow);
         
         if (tableStoreClient == null) {
@@ -72,28 +94,18 @@ public class EtaStatsRepository {
             return Optional.empty();
         }
         
-        try {
-            PrimaryKeyBuilder primaryKeyBuilder = PrimaryKeyBuilder.createPrimaryKeyBuilder();
-            primaryKeyBuilder.addPrimaryKeyColumn("queueId", PrimaryKeyValue.fromString(queueId));
-            primaryKeyBuilder.addPrimaryKeyColumn("timeWindow", PrimaryKeyValue.fromString(timeWindow));
-            
-            SingleRowQueryCriteria criteria = new SingleRowQueryCriteria(etaStatsTableName, primaryKeyBuilder.build());
-            criteria.setMaxVersions(1);
-            
-            GetRowRequest request = new GetRowRequest(criteria);
-            GetRowResponse response = tableStoreClient.getRow(request);
-            
-            Row row = response.getRow();
-            if (row != null && !row.isEmpty()) {
-                return Optional.of(convertRowToEtaStats(row, queueId, timeWindow));
-            }
-            
-            return Optional.empty();
-            
-        } catch (Exception e) {
-            log.error("Error finding ETA stats for queue: {} and time window: {}", queueId, timeWindow, e);
-            return Optional.empty();
+        SingleRowQueryCriteria criteria = new SingleRowQueryCriteria(etaStatsTableName, primaryKey(queueId, timeWindow));
+        criteria.setMaxVersions(1);
+        
+        GetRowRequest request = new GetRowRequest(criteria);
+        GetRowResponse response = observeTableStore("GetRow", () -> tableStoreClient.getRow(request));
+        
+        Row row = response.getRow();
+        if (row != null && !row.isEmpty()) {
+            return Optional.of(convertRowToEtaStats(row, queueId, timeWindow));
         }
+        
+        return Optional.empty();
     }
     
     public Optional<EtaStats> findLatestByQueueId(String queueId) {
@@ -104,33 +116,169 @@ public class EtaStatsRepository {
         return findByQueueIdAndTimeWindow(queueId, currentTimeWindow);
     }
     
-    public EtaStats updateServiceRate(String queueId, double newServiceRate, double alpha) {
+    /**
+     * Applies one served event to the current window right away (write-behind disabled), with
+     * the same conditional write as the batched path: a lost race re-reads the row and retries,
+     * so concurrent events are never overwritten.
+     */
+    public void updateServiceRate(String queueId, int servedCount, double newServiceRate, double seedRate, double alpha,
+                                  List<Long> waitSeconds, long relaySequence) {
         log.debug("Updating service rate for queue: {} to {} with alpha: {}", queueId, newServiceRate, alpha);
         
-        String timeWindow = getCurrentTimeWindow();
-        Optional<EtaStats> existingStats = findByQueueIdAndTimeWindow(queueId, timeWindow);
+        ServedStatsDelta delta = new ServedStatsDelta(queueId, getCurrentTimeWindow(), Instant.now(), seedRate);
+        delta.record(servedCount, newServiceRate, alpha, waitSeconds, relaySequence);
+        for (int attempt = 1; attempt <= MAX_CONDITIONAL_ATTEMPTS; attempt++) {
+            if (applyServedDeltas(List.of(delta)).isEmpty()) {
+                return;
+            }
+        }
+        throw new RuntimeException("Failed to update service rate for queue " + queueId + " after " + MAX_CONDITIONAL_ATTEMPTS + " attempts");
+    }
+    
+    /**
+     * Applies write-behind deltas: one BatchGetRow and one BatchWriteRow per 100 windows.
+     * Each row is written on condition that it is unchanged since it was read (same version, or
+     * still absent) and with its version incremented, so concurrent writers never overwrite each
+     * other's events, however close together they write. Returns the
+     * deltas that were not written - condition lost or request failed - for the next flush.
+     */
+    public List<ServedStatsDelta> applyServedDeltas(List<ServedStatsDelta> deltas) {
+        if (tableStoreClient == null) {
+            log.warn("TableStore client is null, dropping {} served stats deltas", deltas.size());
+            return List.of();
+        }
+        
+        List<ServedStatsDelta> notWritten = new ArrayList<>();
+        for (int from = 0; from < deltas.size(); from += MAX_BATCH_ROWS) {
+            List<ServedStatsDelta> chunk = deltas.subList(from, Math.min(from + MAX_BATCH_ROWS, deltas.size()));
+            try {
+                notWritten.addAll(applyServedDeltaChunk(chunk));
+            } catch (Exception e) {
+                log.warn("Failed to write {} served stats deltas, keeping them for the next flush", chunk.size(), e);
+                notWritten.addAll(chunk);
+            }
+        }
+        return notWritten;
+    }
+    
+    private List<ServedStatsDelta> applyServedDeltaChunk(List<ServedStatsDelta> chunk) {
+        MultiRowQueryCriteria criteria = new MultiRowQueryCriteria(etaStatsTableName);
+        criteria.setMaxVersions(1);
+        chunk.forEach(delta -> criteria.addRow(primaryKey(delta.getQueueId(), delta.getTimeWindow())));
+        BatchGetRowRequest getRequest = new BatchGetRowRequest();
+        getRequest.addMultiRowQueryCriteria(criteria);
+        BatchGetRowResponse getResponse = observeTableStore("BatchGetRow", () -> tableStoreClient.batchGetRow(getRequest));
+        
+        List<ServedStatsDelta> notWritten = new ArrayList<>();
+        getResponse.getFailedRows().forEach(failed -> notWritten.add(chunk.get(failed.getIndex())));
         
-        EtaStats etaStats;
-        if (existingStats.isPresent()) {
-            etaStats = existingStats.get();
-            // EMA calculation: new_ema = alpha * new_value + (1 - alpha) * old_ema
-            double oldEma = etaStats.getEmaServiceRate();
-            double newEma = alpha * newServiceRate + (1 - alpha) * oldEma;
-            etaStats.setEmaServiceRate(newEma);
-            etaStats.setServedCount(etaStats.getServedCount() + 1);
-        } else {
-            etaStats = EtaStats.builder()
-                    .queueId(queueId)
-                    .timeWindow(timeWindow)
-                    .windowStart(Instant.now())
-                    .servedCount(1)
-                    .emaServiceRate(newServiceRate)
-                    .p90WaitTimeMinutes(5) // Default values
-                    .p50WaitTimeMinutes(3)
-                    .build();
+        // Row changes of one table are indexed in the order they were added
+        BatchWriteRowRequest writeRequest = new BatchWriteRowRequest();
+        List<ServedStatsDelta> written = new ArrayList<>();
+        Instant now = Instant.now();
+        for (BatchGetRowResponse.RowResult result : getResponse.getSucceedRows()) {
+            ServedStatsDelta delta = chunk.get(result.getIndex());
+            Row row = result.getRow();
+            EtaStats existing = row != null && !row.isEmpty()
+                    ? convertRowToEtaStats(row, delta.getQueueId(), delta.getTimeWindow())
+                    : null;
+            long version = existing != null && existing.getVersion() != null ? existing.getVersion() : 0;
+            EtaStats updated = delta.applyTo(existing);
+            updated.setUpdatedAt(now);
+            updated.setVersion(version + 1);
+            
+            RowPutChange change = toRowPutChange(updated);
+            if (existing == null) {
+                change.setCondition(new Condition(RowExistenceExpectation.EXPECT_NOT_EXIST));
+            } else {
+                Condition condition = new Condition(RowExistenceExpectation.EXPECT_EXIST);
+                SingleColumnValueCondition unchanged = new SingleColumnValueCondition("version",
+                        SingleColumnValueCondition.CompareOperator.EQUAL, ColumnValue.fromLong(version));
+                // A row from before the version column passes until the first writer adds it
+                unchanged.setPassIfMissing(existing.getVersion() == null);
+                condition.setColumnCondition(unchanged);
+                change.setCondition(condition);
+            }
+            writeRequest.addRowChange(change);
+            written.add(delta);
+        }
+        if (written.isEmpty()) {
+            return notWritten;
         }
         
-        return save(etaStats);
+        BatchWriteRowResponse writeResponse = observeTableStore("BatchWriteRow", () -> tableStoreClient.batchWriteRow(writeRequest));
+        for (BatchWriteRowResponse.RowResult failed : writeResponse.getFailedRows()) {
+            ServedStatsDelta delta = written.get(failed.getIndex());
+            log.debug("Served stats row {} not written: {}", delta.getKey(), failed.getError());
+            notWritten.add(delta);
+        }
+        return notWritten;
+    }
+    
+    /**
+     * Hourly stats rows of the queue with timeWindow in [fromWindow, toWindow), oldest first,
+     * read with paged GetRange and without the wait sketches. A failed read throws.
+     */
+    public List<EtaStats> findRange(String queueId, String fromWindow, String toWindow) {
+        if (tableStoreClient == null) {
+            return List.of();
+        }
+        
+        RangeRowQueryCriteria criteria = new RangeRowQueryCriteria(etaStatsTableName);
+        criteria.setInclusiveStartPrimaryKey(primaryKey(queueId, fromWindow));
+        criteria.setExclusiveEndPrimaryKey(primaryKey(queueId, toWindow));
+        criteria.setMaxVersions(1);
+        criteria.addColumnsToGet(new String[]{"servedCount", "emaServiceRate", "p90WaitTimeMinutes",
+                "p50WaitTimeMinutes", "windowStart", "updatedAt", "relaySequence", "version"});
+        
+        List<EtaStats> rows = new ArrayList<>();
+        PrimaryKey next = criteria.getInclusiveStartPrimaryKey();
+        while (next != null) {
+            criteria.setInclusiveStartPrimaryKey(next);
+            GetRangeResponse response = observeTableStore("GetRange", () -> tableStoreClient.getRange(new GetRangeRequest(criteria)));
+            for (Row row : response.getRows()) {
+                String timeWindow = row.getPrimaryKey().getPrimaryKeyColumn("timeWindow").getValue().asString();
+                rows.add(convertRowToEtaStats(row, queueId, timeWindow));
+            }
+            next = response.getNextStartPrimaryKey();
+        }
+        return rows;
+    }
+    
+    /**
+     * Encoded SeasonalityProfile of the queue; a failed read throws, unlike the stats lookups.
+     */
+    public Optional<byte[]> findSeasonalityProfile(String queueId) {
+        if (tableStoreClient == null) {
+            return Optional.empty();
+        }
+        
+        SingleRowQueryCriteria criteria = new SingleRowQueryCriteria(etaStatsTableName, primaryKey(queueId, SEASONALITY_WINDOW));
+        criteria.setMaxVersions(1);
+        criteria.addColumnsToGet("profile");
+        GetRowResponse response = observeTableStore("GetRow", () -> tableStoreClient.getRow(new GetRowRequest(criteria)));
+        
+        Row row = response.getRow();
+        if (row == null || !row.contains("profile")) {
+            return Optional.empty();
+        }
+        return Optional.of(row.getLatestColumn("profile").getValue().asBinary());
+    }
+    
+    public void saveSeasonalityProfile(String queueId, byte[] profile) {
+        if (tableStoreClient == null) {
+            return;
+        }
+        
+        try {
+            RowPutChange change = new RowPutChange(etaStatsTableName, primaryKey(queueId, SEASONALITY_WINDOW));
+            change.addColumn(new Column("profile", ColumnValue.fromBinary(profile)));
+            change.addColumn(new Column("updatedAt", ColumnValue.fromLong(Instant.now().toEpochMilli())));
+            observeTableStore("PutRow", () -> tableStoreClient.putRow(new PutRowRequest(change)));
+        } catch (Exception e) {
+            log.error("Error saving seasonality profile for queue: {}", queueId, e);
+            throw new RuntimeException("Failed to save seasonality profile", e);
+        }
     }
     
     public void deleteByQueueId(String queueId) {
@@ -153,7 +301,7 @@ public class EtaStatsRepository {
             RowDeleteChange rowDeleteChange = new RowDeleteChange(etaStatsTableName, primaryKeyBuilder.build());
             DeleteRowRequest request = new DeleteRowRequest(rowDeleteChange);
             
-            tableStoreClient.deleteRow(request);
+            observeTableStore("DeleteRow", () -> tableStoreClient.deleteRow(request));
             
             log.info("ETA stats deleted successfully for queue: {}", queueId);
             
@@ -163,6 +311,44 @@ public class EtaStatsRepository {
         }
     }
     
+    // Records each TableStore round trip as "smartqueue.tablestore" tagged by operation
+    private <T> T observeTableStore(String operation, Supplier<T> call) {
+        return Observation.createNotStarted("smartqueue.tablestore", observationRegistry)
+                .contextualName("tablestore " + operation)
+                .lowCardinalityKeyValue("table", etaStatsTableName)
+                .lowCardinalityKeyValue("operation", operation)
+                .observe(() -> sdkCallGuard.call("tablestore", call::get));
+    }
+    
+    private PrimaryKey primaryKey(String queueId, String timeWindow) {
+        PrimaryKeyBuilder primaryKeyBuilder = PrimaryKeyBuilder.createPrimaryKeyBuilder();
+        primaryKeyBuilder.addPrimaryKeyColumn("queueId", PrimaryKeyValue.fromString(queueId));
+        primaryKeyBuilder.addPrimaryKeyColumn("timeWindow", PrimaryKeyValue.fromString(timeWindow));
+        return primaryKeyBuilder.build();
+    }
+    
+    private RowPutChange toRowPutChange(EtaStats etaStats) {
+        RowPutChange rowPutChange = new RowPutChange(etaStatsTableName, primaryKey(etaStats.getQueueId(), etaStats.getTimeWindow()));
+        
+        // Add attributes
+        rowPutChange.addColumn(new Column("servedCount", ColumnValue.fromLong(etaStats.getServedCount())));
+        rowPutChange.addColumn(new Column("emaServiceRate", ColumnValue.fromDouble(etaStats.getEmaServiceRate())));
+        rowPutChange.addColumn(new Column("p90WaitTimeMinutes", ColumnValue.fromLong(etaStats.getP90WaitTimeMinutes())));
+        rowPutChange.addColumn(new Column("p50WaitTimeMinutes", ColumnValue.fromLong(etaStats.getP50WaitTimeMinutes())));
+        rowPutChange.addColumn(new Column("windowStart", ColumnValue.fromLong(etaStats.getWindowStart().toEpochMilli())));
+        rowPutChange.addColumn(new Column("updatedAt", ColumnValue.fromLong(etaStats.getUpdatedAt().toEpochMilli())));
+        if (etaStats.getRelaySequence() != null) {
+            rowPutChange.addColumn(new Column("relaySequence", ColumnValue.fromLong(etaStats.getRelaySequence())));
+        }
+        if (etaStats.getVersion() != null) {
+            rowPutChange.addColumn(new Column("version", ColumnValue.fromLong(etaStats.getVersion())));
+        }
+        if (etaStats.getWaitSketch() != null) {
+            rowPutChange.addColumn(new Column("waitSketch", ColumnValue.fromBinary(etaStats.getWaitSketch())));
+        }
+        return rowPutChange;
+    }
+    
     private EtaStats convertRowToEtaStats(Row row, String queueId, String timeWindow) {
         return EtaStats.builder()
                 .queueId(queueId)
@@ -173,6 +359,9 @@ public class EtaStatsRepository {
                 .p50WaitTimeMinutes((int) row.getLatestColumn("p50WaitTimeMinutes").getValue().asLong())
                 .windowStart(Instant.ofEpochMilli(row.getLatestColumn("windowStart").getValue().asLong()))
                 .updatedAt(Instant.ofEpochMilli(row.getLatestColumn("updatedAt").getValue().asLong()))
+                .relaySequence(row.contains("relaySequence") ? row.getLatestColumn("relaySequence").getValue().asLong() : null)
+                .version(row.contains("version") ? row.getLatestColumn("version").getValue().asLong() : null)
+                .waitSketch(row.contains("waitSketch") ? row.getLatestColumn("waitSketch").getValue().asBinary() : null)
                 .build();
     }
     
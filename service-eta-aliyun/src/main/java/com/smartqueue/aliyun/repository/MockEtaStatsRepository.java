@@ -1,12 +1,16 @@
 package com.smartqueue.aliyun.repository;
 
 import com.smartqueue.aliyun.model.EtaStats;
+import com.smartqueue.aliyun.stats.ServedStatsDelta;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -18,10 +22,16 @@ public class MockEtaStatsRepository {
     
     // In-memory storage for development
     private final ConcurrentMap<String, EtaStats> etaStatsMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, byte[]> seasonalityProfiles = new ConcurrentHashMap<>();
+    
+    // Simulated TableStore round trip for load tests (tools/k6/eta_thread_modes.js), 0 = off
+    @Value("${app.mock.tablestore-latency-ms:0}")
+    private long simulatedLatencyMs;
     
     public EtaStats save(EtaStats etaStats) {
         log.debug("Saving ETA stats for queue: {}", etaStats.getQueueId());
         
+        simulateRoundTrip();
         etaStats.setUpdatedAt(Instant.now());
         String key = etaStats.getQueueId() + "#" + etaStats.getTimeWindow();
         etaStatsMap.put(key, etaStats);
@@ -33,6 +43,7 @@ public class MockEtaStatsRepository {
     public Optional<EtaStats> findByQueueIdAndTimeWindow(String queueId, String timeWindow) {
         log.debug("Finding ETA stats for queue: {} and time window: {}", queueId, timeWindow);
         
+        simulateRoundTrip();
         String key = queueId + "#" + timeWindow;
         return Optional.ofNullable(etaStatsMap.get(key));
     }
@@ -44,33 +55,52 @@ public class MockEtaStatsRepository {
         return findByQueueIdAndTimeWindow(queueId, currentTimeWindow);
     }
     
-    public EtaStats updateServiceRate(String queueId, double newServiceRate, double alpha) {
+    /**
+     * Applies one served event to the current window right away (write-behind disabled);
+     * atomic per window like the batched path.
+     */
+    public void updateServiceRate(String queueId, int servedCount, double newServiceRate, double seedRate, double alpha,
+                                  List<Long> waitSeconds, long relaySequence) {
         log.debug("Updating service rate for queue: {} to {} with alpha: {}", queueId, newServiceRate, alpha);
         
-        String timeWindow = getCurrentTimeWindow();
-        Optional<EtaStats> existingStats = findByQueueIdAndTimeWindow(queueId, timeWindow);
+        ServedStatsDelta delta = new ServedStatsDelta(queueId, getCurrentTimeWindow(), Instant.now(), seedRate);
+        delta.record(servedCount, newServiceRate, alpha, waitSeconds, relaySequence);
+        applyServedDeltas(List.of(delta));
+    }
+    
+    public List<ServedStatsDelta> applyServedDeltas(List<ServedStatsDelta> deltas) {
+        log.debug("Applying {} served stats deltas", deltas.size());
         
-        EtaStats etaStats;
-        if (existingStats.isPresent()) {
-            etaStats = existingStats.get();
-            // EMA calculation: new_ema = alpha * new_value + (1 - alpha) * old_ema
-            double oldEma = etaStats.getEmaServiceRate();
-            double newEma = alpha * newServiceRate + (1 - alpha) * oldEma;
-            etaStats.setEmaServiceRate(newEma);
-            etaStats.setServedCount(etaStats.getServedCount() + 1);
-        } else {
-            etaStats = EtaStats.builder()
-                    .queueId(queueId)
-                    .timeWindow(timeWindow)
-                    .windowStart(Instant.now())
-                    .servedCount(1)
-                    .emaServiceRate(newServiceRate)
-                    .p90WaitTimeMinutes(5) // Default values
-                    .p50WaitTimeMinutes(3)
-                    .build();
+        simulateRoundTrip();
+        Instant now = Instant.now();
+        for (ServedStatsDelta delta : deltas) {
+            etaStatsMap.compute(delta.getKey(), (key, existing) -> {
+                EtaStats updated = delta.applyTo(existing);
+                updated.setUpdatedAt(now);
+                updated.setVersion(existing != null && existing.getVersion() != null ? existing.getVersion() + 1 : 1);
+                return updated;
+            });
         }
-        
-        return save(etaStats);
+        return List.of();
+    }
+    
+    public List<EtaStats> findRange(String queueId, String fromWindow, String toWindow) {
+        simulateRoundTrip();
+        return etaStatsMap.values().stream()
+                .filter(stats -> stats.getQueueId().equals(queueId))
+                .filter(stats -> stats.getTimeWindow().compareTo(fromWindow) >= 0 && stats.getTimeWindow().compareTo(toWindow) < 0)
+                .sorted(Comparator.comparing(EtaStats::getTimeWindow))
+                .toList();
+    }
+    
+    public Optional<byte[]> findSeasonalityProfile(String queueId) {
+        simulateRoundTrip();
+        return Optional.ofNullable(seasonalityProfiles.get(queueId));
+    }
+    
+    public void saveSeasonalityProfile(String queueId, byte[] profile) {
+        simulateRoundTrip();
+        seasonalityProfiles.put(queueId, profile);
     }
     
     public void deleteByQueueId(String queueId) {
@@ -83,6 +113,17 @@ public class MockEtaStatsRepository {
         log.info("ETA stats deleted successfully for queue: {}", queueId);
     }
     
+    private void simulateRoundTrip() {
+        if (simulatedLatencyMs <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(simulatedLatencyMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
     private String getCurrentTimeWindow() {
         return DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH").format(Instant.now().atZone(java.time.ZoneOffset.UTC));
     }
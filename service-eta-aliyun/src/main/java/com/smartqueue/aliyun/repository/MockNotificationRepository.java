@@ -1,22 +1,23 @@
 package com.smartqueue.aliyun.repository;
 
 import com.smartqueue.aliyun.model.NotificationLog;
+import com.smartqueue.aliyun.notify.NotificationLogStore;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 @Slf4j
 @Repository
 @Profile("dev") // Chỉ sử dụng trong development
+@RequiredArgsConstructor
 public class MockNotificationRepository {
     
-    // In-memory storage for demo purposes
-    private final ConcurrentMap<String, NotificationLog> notificationLogs = new ConcurrentHashMap<>();
+    // Same bounded store as production: hot window in memory, older records archived on disk
+    private final NotificationLogStore notificationLogStore;
     
     public NotificationLog save(NotificationLog notificationLog) {
         log.debug("Saving notification log: {}", notificationLog.getNotificationId());
@@ -26,7 +27,7 @@ public class MockNotificationRepository {
         }
         
         notificationLog.setScheduledAt(Instant.now());
-        notificationLogs.put(notificationLog.getNotificationId(), notificationLog);
+        notificationLogStore.save(notificationLog);
         
         log.info("Notification log saved: {}", notificationLog.getNotificationId());
         return notificationLog;
@@ -80,27 +81,14 @@ public class MockNotificationRepository {
         }
     }
     
-    public void updateNotificationStatus(String notificationId, NotificationLog.NotificationStatus status, String errorMessage) {
-        log.debug("Updating notification status: {} to {}", notificationId, status);
+    public void updateNotificationStatus(NotificationLog notificationLog, NotificationLog.NotificationStatus status, String errorMessage) {
+        log.debug("Updating notification status: {} to {}", notificationLog.getNotificationId(), status);
         
-        NotificationLog notificationLog = notificationLogs.get(notificationId);
-        if (notificationLog != null) {
-            notificationLog.setStatus(status);
-            if (status == NotificationLog.NotificationStatus.SENT) {
-                notificationLog.setSentAt(Instant.now());
-            }
-            if (errorMessage != null) {
-                notificationLog.setErrorMessage(errorMessage);
-            }
-            
-            notificationLogs.put(notificationId, notificationLog);
-            log.info("Notification status updated: {}", notificationId);
-        } else {
-            log.warn("Notification log not found: {}", notificationId);
-        }
+        notificationLogStore.updateStatus(notificationLog, status, errorMessage);
+        log.info("Notification status updated: {}", notificationLog.getNotificationId());
     }
     
     public NotificationLog findById(String notificationId) {
-        return notificationLogs.get(notificationId);
+        return notificationLogStore.findById(notificationId).orElse(null);
     }
 }
\ No newline at end of file
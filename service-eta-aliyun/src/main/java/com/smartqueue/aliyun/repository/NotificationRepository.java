@@ -1,25 +1,28 @@
 package com.smartqueue.aliyun.repository;
 
 import com.smartqueue.aliyun.model.NotificationLog;
+import com.smartqueue.aliyun.notify.NotificationLogStore;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 @Slf4j
 @Repository
+@RequiredArgsConstructor
 public class NotificationRepository {
     
-    private final ConcurrentMap<String, NotificationLog> notificationLogs = new ConcurrentHashMap<>();
+    // Hot window in memory, older records in the compact on-disk archive
+    private final NotificationLogStore notificationLogStore;
     
     public NotificationLog save(NotificationLog notificationLog) {
         if (notificationLog.getNotificationId() == null) {
             notificationLog.setNotificationId(UUID.randomUUID().toString());
         }
         notificationLog.setScheduledAt(Instant.now());
-        notificationLogs.put(notificationLog.getNotificationId(), notificationLog);
+        notificationLogStore.save(notificationLog);
         log.info("Notification saved: {}", notificationLog.getNotificationId());
         return notificationLog;
     }
@@ -30,19 +33,19 @@ public class NotificationRepository {
         log.info("Notification enqueued: {}", notificationLog.getNotificationId());
     }
     
-    public void updateNotificationStatus(String notificationId, 
+    public void updateNotificationStatus(NotificationLog notificationLog, 
                                        NotificationLog.NotificationStatus status, 
                                        String errorMessage) {
-        NotificationLog notificationLog = notificationLogs.get(notificationId);
-        if (notificationLog != null) {
-            notificationLog.setStatus(status);
-            if (errorMessage != null) {
-                notificationLog.setErrorMessage(errorMessage);
-            }
-            if (status == NotificationLog.NotificationStatus.SENT) {
-                notificationLog.setSentAt(Instant.now());
-            }
-            save(notificationLog);
-        }
+        // Archived as a new version if the record already left the hot window
+        notificationLogStore.updateStatus(notificationLog, status, errorMessage);
+        log.debug("Notification status updated: {} to {}", notificationLog.getNotificationId(), status);
+    }
+    
+    public List<NotificationLog> findByTicketId(String ticketId, int limit) {
+        return notificationLogStore.findByTicketId(ticketId, limit);
+    }
+    
+    public List<NotificationLog> findByQueueId(String queueId, int limit) {
+        return notificationLogStore.findByQueueId(queueId, limit);
     }
 }
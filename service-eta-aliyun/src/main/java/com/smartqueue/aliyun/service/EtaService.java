@@ -1,21 +1,43 @@
 package com.smartqueue.aliyun.service;
 
+import com.smartqueue.aliyun.dto.request.ServedStatsBatchRequest;
 import com.smartqueue.aliyun.dto.response.EtaResponse;
+import com.smartqueue.aliyun.eta.EtaCurve;
+import com.smartqueue.aliyun.eta.EtaCurveTable;
 import com.smartqueue.aliyun.model.EtaStats;
 import com.smartqueue.aliyun.repository.EtaStatsRepository;
 import com.smartqueue.aliyun.repository.MockEtaStatsRepository;
+import com.smartqueue.aliyun.stats.EtaStatsCache;
+import com.smartqueue.aliyun.stats.RateHistory;
+import com.smartqueue.aliyun.stats.RateHistoryStore;
+import com.smartqueue.aliyun.stats.RelaySequences;
+import com.smartqueue.aliyun.stats.SeasonalityModel;
+import com.smartqueue.aliyun.stats.SeasonalityProfile;
+import com.smartqueue.aliyun.stats.ServedRateEstimators;
+import com.smartqueue.aliyun.stats.ServedStatsAggregator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalDouble;
 
 @Slf4j
 @Service
@@ -27,57 +49,103 @@ public class EtaService {
     @Autowired(required = false)
     private MockEtaStatsRepository mockEtaStatsRepository;
     
+    @Autowired
+    private ObservationRegistry observationRegistry;
+    
+    @Autowired
+    private ServedStatsAggregator servedStatsAggregator;
+    
+    @Autowired
+    private EtaStatsCache etaStatsCache;
+    
+    @Autowired
+    private SeasonalityModel seasonalityModel;
+    
+    @Autowired
+    private ServedRateEstimators servedRateEstimators;
+    
+    @Autowired
+    private RateHistoryStore rateHistoryStore;
+    
+    @Autowired
+    private RelaySequences relaySequences;
+    
+    // Buffer served events in memory and write them in batches (ServedStatsAggregator)
+    @Value("${eta.stats.write-behind.enabled:true}")
+    private boolean writeBehind;
+    
     @Value("${eta.calculation.ema-alpha:0.3}")
     private double emaAlpha;
     
     @Value("${eta.calculation.default-service-rate:1.0}")
     private double defaultServiceRate;
     
+    // Recently applied eventIds of events without an outbox sequence (older queue-service versions)
+    private final Map<String, Boolean> appliedEventIds;
+    
+    // Lower bound of the factor a live rate is divided by
+    private static final double MIN_SEASON_FACTOR = 0.1;
+    
+    // Per-queue position -> minutes tables; /eta reads these instead of recomputing every call
+    private final EtaCurveTable etaCurves;
+    private final int curveMaxPosition;
+    private final long curveMaxAgeMs;
+    private final Counter curveRebuilds;
+    
+    public EtaService(@Value("${eta.stats.dedupe-window-events:100000}") int dedupeWindowEvents,
+                      @Value("${eta.curve.max-position:1000}") int curveMaxPosition,
+                      @Value("${eta.curve.max-age-ms:15000}") long curveMaxAgeMs,
+                      @Value("${eta.curve.max-queues:10000}") int curveMaxQueues,
+                      MeterRegistry meterRegistry) {
+        this.etaCurves = new EtaCurveTable(this::buildCurve, curveMaxQueues);
+        this.curveMaxPosition = curveMaxPosition;
+        this.curveMaxAgeMs = curveMaxAgeMs;
+        this.curveRebuilds = meterRegistry.counter("smartqueue.eta.curve.rebuilds");
+        Gauge.builder("smartqueue.eta.curves", etaCurves, EtaCurveTable::size)
+                .description("Queues with a precomputed ETA curve")
+                .register(meterRegistry);
+        this.appliedEventIds = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > dedupeWindowEvents;
+            }
+        };
+    }
+    
     public EtaResponse calculateEta(String queueId, String ticketId, Integer position) {
-        log.info("Calculating SMART ETA for queueId: {}, ticketId: {}, position: {}", queueId, ticketId, position);
-        
+        return Observation.createNotStarted("smartqueue.eta.calculate", observationRegistry)
+                .contextualName("eta calculate")
+                .highCardinalityKeyValue("queueId", queueId)
+                .highCardinalityKeyValue("ticketId", ticketId)
+                .observe(() -> computeEta(queueId, ticketId, position));
+    }
+    
+    /**
+     * Estimated wait at the position from the queue's current curve: a map read and an array
+     * read while the curve is current. (calculateEta additionally creates an Observation and an
+     * EtaResponse per call.)
+     */
+    public int estimateWaitMinutes(String queueId, int position) {
+        return etaCurves.curve(queueId).minutesAt(position);
+    }
+    
+    private EtaResponse computeEta(String queueId, String ticketId, Integer position) {
         try {
-            // Get current ETA stats - use mock repository in dev profile
-            Optional<EtaStats> statsOpt;
-            if (mockEtaStatsRepository != null) {
-                statsOpt = mockEtaStatsRepository.findLatestByQueueId(queueId);
-            } else {
-                statsOpt = etaStatsRepository.findLatestByQueueId(queueId);
-            }
-            
-            double baseServiceRate = defaultServiceRate;
-            int p90Wait = 10;
-            int p50Wait = 5;
+            EtaCurve curve = etaCurves.curve(queueId);
+            int estimatedWaitMinutes = curve.minutesAt(position);
             
-            if (statsOpt.isPresent()) {
-                EtaStats stats = statsOpt.get();
-                baseServiceRate = stats.getEmaServiceRate();
-                p90Wait = stats.getP90WaitTimeMinutes();
-                p50Wait = stats.getP50WaitTimeMinutes();
+            if (log.isDebugEnabled()) {
+                log.debug("SMART ETA - Queue: {}, Position: {}, ETA: {}min, Rate: {}/min, Season factor: {}",
+                        queueId, position, estimatedWaitMinutes, String.format("%.2f", curve.getServiceRate()), curve.getSeasonFactor());
             }
             
-            // 🧠 SMART ETA CALCULATION với Time-based Factors
-            LocalDateTime now = LocalDateTime.now(ZoneId.systemDefault());
-            double smartServiceRate = calculateSmartServiceRate(baseServiceRate, now);
-            
-            // Calculate base ETA with smart service rate
-            double baseEtaMinutes = position / smartServiceRate;
-            
-            // Apply additional factors
-            double finalEta = applySmartFactors(baseEtaMinutes, now, position);
-            int estimatedWaitMinutes = Math.max(1, (int) Math.ceil(finalEta));
-            
-            log.info("SMART ETA calculated - Queue: {}, Position: {}, Base: {:.1f}min, Smart: {}min, Factors: Peak={}, Lunch={}, Weekend={}", 
-                    queueId, position, baseEtaMinutes, estimatedWaitMinutes, 
-                    isPeakHour(now), isLunchTime(now), isWeekend(now));
-            
             return EtaResponse.builder()
                     .queueId(queueId)
                     .ticketId(ticketId)
                     .estimatedWaitMinutes(estimatedWaitMinutes)
-                    .p90WaitMinutes(p90Wait)
-                    .p50WaitMinutes(p50Wait)
-                    .serviceRate(smartServiceRate)
+                    .p90WaitMinutes(curve.getP90WaitMinutes())
+                    .p50WaitMinutes(curve.getP50WaitMinutes())
+                    .serviceRate(curve.getServiceRate())
                     .updatedAt(Instant.now())
                     .build();
                     
@@ -98,18 +166,44 @@ public class EtaService {
     }
     
     public void updateServiceStats(String queueId, int servedCount, int windowSec) {
+        updateServiceStats(queueId, servedCount, windowSec, List.of(), Instant.now(), 0);
+    }
+    
+    /**
+     * Records a served batch; waitSeconds (joinedAt to servedAt of each ticket, may be empty)
+     * feed the window's wait-time sketch behind p50/p90, servedAt the live decayed rate.
+     * relaySequence (0 if none) is stored with the stats row for RelaySequences.
+     */
+    public void updateServiceStats(String queueId, int servedCount, int windowSec, List<Long> waitSeconds, Instant servedAt,
+                                   long relaySequence) {
         log.info("Updating service stats for queueId: {}, served: {}, window: {}sec", queueId, servedCount, windowSec);
         
         try {
             // Calculate service rate (customers per minute)
             double serviceRate = (double) servedCount / (windowSec / 60.0);
+            // A new hourly window continues from the queue's EMA instead of restarting
+            double seedRate = rateHistoryStore.latestEma(queueId).orElse(serviceRate);
             
             // Update EMA service rate - use mock repository in dev profile
-            if (mockEtaStatsRepository != null) {
-                mockEtaStatsRepository.updateServiceRate(queueId, serviceRate, emaAlpha);
+            if (writeBehind) {
+                servedStatsAggregator.record(queueId, servedCount, serviceRate, seedRate, waitSeconds, relaySequence);
             } else {
-                etaStatsRepository.updateServiceRate(queueId, serviceRate, emaAlpha);
+                if (mockEtaStatsRepository != null) {
+                    mockEtaStatsRepository.updateServiceRate(queueId, servedCount, serviceRate, seedRate, emaAlpha, waitSeconds, relaySequence);
+                } else {
+                    etaStatsRepository.updateServiceRate(queueId, servedCount, serviceRate, seedRate, emaAlpha, waitSeconds, relaySequence);
+                }
+                etaStatsCache.invalidateLatest(queueId);
             }
+            // After the stats write: a failed event is re-sent and must not be counted twice
+            servedRateEstimators.record(queueId, servedCount, servedAt.toEpochMilli());
+            // The live decayed rate describes the queue now, so it only teaches the slot of a recent event
+            if (servedAt.isAfter(Instant.now().minus(Duration.ofMinutes(SeasonalityProfile.SLOT_MINUTES)))) {
+                servedRateEstimators.ratePerMinute(queueId).ifPresent(rate -> seasonalityModel.record(
+                        queueId, LocalDateTime.ofInstant(servedAt, ZoneId.systemDefault()), rate));
+            }
+            rateHistoryStore.record(queueId, servedCount, servedAt.toEpochMilli(), serviceRate);
+            etaCurves.invalidate(queueId);
             
             log.info("Service stats updated successfully for queueId: {}", queueId);
             
@@ -119,13 +213,83 @@ public class EtaService {
         }
     }
     
-    public EtaStats getLatestStats(String queueId) {
-        Optional<EtaStats> statsOpt;
-        if (mockEtaStatsRepository != null) {
-            statsOpt = mockEtaStatsRepository.findLatestByQueueId(queueId);
-        } else {
-            statsOpt = etaStatsRepository.findLatestByQueueId(queueId);
+    /**
+     * Applies relayed served-stats events in order, skipping those already applied: by the
+     * queue's stored relay sequence (RelaySequences), or by recent eventIds for events without
+     * a sequence. Returns how many events were applied; a failure stops the batch and the
+     * sender retries it. With write-behind, the buffered windows are flushed before returning,
+     * and a flush that leaves any unwritten fails the batch too: the sender deletes acknowledged
+     * events, so they must not be acknowledged while only in memory.
+     */
+    public int applyServedEvents(List<ServedStatsBatchRequest.ServedEvent> events) {
+        int applied = 0;
+        for (ServedStatsBatchRequest.ServedEvent event : events) {
+            if (event.getSequence() != null) {
+                long sequence = event.getSequence();
+                if (relaySequences.applyOnce(event.getQueueId(), sequence, () -> apply(event, sequence))) {
+                    applied++;
+                } else {
+                    log.debug("Skipping served event {} at or below the applied sequence of queue {}", event.getEventId(), event.getQueueId());
+                }
+                continue;
+            }
+            if (!claimEvent(event.getEventId())) {
+                log.debug("Skipping duplicate served event: {}", event.getEventId());
+                continue;
+            }
+            try {
+                apply(event, 0);
+                applied++;
+            } catch (RuntimeException e) {
+                releaseEvent(event.getEventId());
+                throw e;
+            }
+        }
+        // Also covers events skipped above whose windows an earlier, failed flush left buffered
+        if (writeBehind && !servedStatsAggregator.flushNow()) {
+            throw new IllegalStateException("Served stats of the batch not written yet, retry the batch");
         }
+        return applied;
+    }
+    
+    private void apply(ServedStatsBatchRequest.ServedEvent event, long relaySequence) {
+        updateServiceStats(event.getQueueId(), event.getCount(), event.getWindowSec(),
+                event.getWaitSeconds() != null ? event.getWaitSeconds() : List.of(), occurredAt(event), relaySequence);
+    }
+    
+    // When the tickets were served; relayed events can arrive long after
+    private Instant occurredAt(ServedStatsBatchRequest.ServedEvent event) {
+        if (event.getOccurredAt() != null) {
+            try {
+                return Instant.parse(event.getOccurredAt());
+            } catch (DateTimeParseException e) {
+                log.debug("Invalid occurredAt on served event {}: {}", event.getEventId(), event.getOccurredAt());
+            }
+        }
+        return Instant.now();
+    }
+    
+    private boolean claimEvent(String eventId) {
+        synchronized (appliedEventIds) {
+            return appliedEventIds.putIfAbsent(eventId, Boolean.TRUE) == null;
+        }
+    }
+    
+    private void releaseEvent(String eventId) {
+        synchronized (appliedEventIds) {
+            appliedEventIds.remove(eventId);
+        }
+    }
+    
+    /**
+     * Served customers and rates of the queue per bucket of the given resolution, from memory.
+     */
+    public List<RateHistory.Point> getRateHistory(String queueId, RateHistory.Resolution resolution, Instant from, Instant to) {
+        return rateHistoryStore.range(queueId, resolution, from, to);
+    }
+    
+    public EtaStats getLatestStats(String queueId) {
+        Optional<EtaStats> statsOpt = servedStatsAggregator.withPending(queueId, etaStatsCache.getLatest(queueId));
         
         return statsOpt
                 .orElse(EtaStats.builder()
@@ -138,82 +302,46 @@ public class EtaService {
                         .build());
     }
     
-    // 🧠 SMART SERVICE RATE CALCULATION với Time-based Factors
-    private double calculateSmartServiceRate(double baseRate, LocalDateTime now) {
-        double multiplier = 1.0;
+    // 🧠 SMART ETA CURVE: stats + learned time-of-week factors, fixed until the 15-minute bucket ends
+    private EtaCurve buildCurve(String queueId) {
+        // Current ETA stats from the read-through cache, plus events not yet written
+        Optional<EtaStats> statsOpt = servedStatsAggregator.withPending(queueId, etaStatsCache.getLatest(queueId));
         
-        // Peak Hours: 9-11AM và 2-4PM (slower service)
-        if (isPeakHour(now)) {
-            multiplier *= 0.7;  // 30% slower
-        }
-        
-        // Lunch Time: 12-1PM (much slower)
-        if (isLunchTime(now)) {
-            multiplier *= 0.5;  // 50% slower
-        }
-        
-        // Weekend: Generally slower
-        if (isWeekend(now)) {
-            multiplier *= 0.8;  // 20% slower
-        }
+        double baseServiceRate = defaultServiceRate;
+        int p90Wait = 10;
+        int p50Wait = 5;
         
-        // Late hours: 6-8PM (slightly faster as people leave)
-        if (isEveningRush(now)) {
-            multiplier *= 1.2;  // 20% faster
+        if (statsOpt.isPresent()) {
+            EtaStats stats = statsOpt.get();
+            baseServiceRate = stats.getEmaServiceRate();
+            p90Wait = stats.getP90WaitTimeMinutes();
+            p50Wait = stats.getP50WaitTimeMinutes();
         }
+        // The in-memory EMA survives hour boundaries; the current window's row may not exist yet
+        baseServiceRate = rateHistoryStore.latestEma(queueId).orElse(baseServiceRate);
         
-        return Math.max(0.1, baseRate * multiplier); // Minimum service rate
-    }
-    
-    // 🎯 SMART FACTORS APPLICATION
-    private double applySmartFactors(double baseEta, LocalDateTime now, int position) {
-        double eta = baseEta;
-        
-        // Position-based factor: Higher positions get slightly longer estimates (buffer)
-        if (position > 10) {
-            eta *= 1.1;  // 10% buffer for longer queues
-        }
+        ZonedDateTime now = ZonedDateTime.now(ZoneId.systemDefault());
+        LocalDateTime slotStart = now.toLocalDateTime().truncatedTo(ChronoUnit.MINUTES)
+                .minusMinutes(now.getMinute() % SeasonalityProfile.SLOT_MINUTES);
+        double seasonFactor = seasonalityModel.factor(queueId, now.toLocalDateTime());
         
-        // Day-of-week factors
-        DayOfWeek dayOfWeek = now.getDayOfWeek();
-        switch (dayOfWeek) {
-            case MONDAY:
-                eta *= 1.15;  // Mondays are typically slower
-                break;
-            case FRIDAY:
-                eta *= 1.1;   // Fridays slightly slower
-                break;
-            case SATURDAY:
-            case SUNDAY:
-                eta *= 0.9;   // Weekends often faster (fewer people)
-                break;
+        // The live decayed rate is what the queue serves in this slot, seasonality included (the
+        // profile learns from it): deseasonalize it, so the factors below apply only once
+        OptionalDouble liveRate = servedRateEstimators.ratePerMinute(queueId);
+        if (liveRate.isPresent()) {
+            baseServiceRate = liveRate.getAsDouble() / Math.max(seasonFactor, MIN_SEASON_FACTOR);
         }
         
-        // Time-based uncertainty factor (add small buffer for reliability)
-        eta *= 1.05;  // 5% reliability buffer
+        double minutesLeftInSlot = Duration.between(now.toLocalDateTime(), slotStart.plusMinutes(SeasonalityProfile.SLOT_MINUTES))
+                .toMillis() / 60_000.0;
+        long bucketEnd = now.toInstant().toEpochMilli() + (long) (minutesLeftInSlot * 60_000);
+        long validUntil = Math.min(bucketEnd, now.toInstant().toEpochMilli() + curveMaxAgeMs);
         
-        return eta;
-    }
-    
-    // 🕐 TIME DETECTION HELPERS
-    private boolean isPeakHour(LocalDateTime now) {
-        LocalTime time = now.toLocalTime();
-        return (time.isAfter(LocalTime.of(9, 0)) && time.isBefore(LocalTime.of(11, 0))) ||
-               (time.isAfter(LocalTime.of(14, 0)) && time.isBefore(LocalTime.of(16, 0)));
-    }
-    
-    private boolean isLunchTime(LocalDateTime now) {
-        LocalTime time = now.toLocalTime();
-        return time.isAfter(LocalTime.of(12, 0)) && time.isBefore(LocalTime.of(13, 30));
-    }
-    
-    private boolean isWeekend(LocalDateTime now) {
-        DayOfWeek dayOfWeek = now.getDayOfWeek();
-        return dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY;
-    }
-    
-    private boolean isEveningRush(LocalDateTime now) {
-        LocalTime time = now.toLocalTime();
-        return time.isAfter(LocalTime.of(18, 0)) && time.isBefore(LocalTime.of(20, 0));
+        curveRebuilds.increment();
+        log.debug("ETA curve rebuilt for queue: {} (base rate {}/min, season factor {})", queueId, baseServiceRate, seasonFactor);
+        return EtaCurve.build(baseServiceRate,
+                slot -> slot == 0 ? seasonFactor
+                        : seasonalityModel.factor(queueId, slotStart.plusMinutes((long) slot * SeasonalityProfile.SLOT_MINUTES)),
+                minutesLeftInSlot, p50Wait, p90Wait, curveMaxPosition, validUntil);
     }
-}
\ No newline at end of file
+}
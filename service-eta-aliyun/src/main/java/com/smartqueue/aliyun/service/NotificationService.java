@@ -1,14 +1,11 @@
 package com.smartqueue.aliyun.service;
 
-import com.aliyuncs.DefaultAcsClient;
-import com.aliyuncs.IAcsClient;
-import com.aliyuncs.dm.model.v20151123.SingleSendMailRequest;
-import com.aliyuncs.dm.model.v20151123.SingleSendMailResponse;
-import com.aliyuncs.exceptions.ClientException;
-import com.aliyuncs.profile.DefaultProfile;
 import com.smartqueue.aliyun.dto.request.NotificationRequest;
 import com.smartqueue.aliyun.dto.response.NotificationResponse;
 import com.smartqueue.aliyun.model.NotificationLog;
+import com.smartqueue.aliyun.notify.NotificationDispatcher;
+import com.smartqueue.aliyun.notify.NotificationQueue;
+import com.smartqueue.aliyun.notify.NotificationSender;
 import com.smartqueue.aliyun.repository.NotificationRepository;
 import com.smartqueue.aliyun.repository.MockNotificationRepository;
 
@@ -17,7 +14,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
 
 @Slf4j
@@ -30,28 +27,22 @@ public class NotificationService {
     @Autowired(required = false)
     private MockNotificationRepository mockNotificationRepository;
     
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+    
+    @Autowired
+    private NotificationSender notificationSender;
+    
+    // Only present with notification.mode=QUEUE
+    @Autowired(required = false)
+    private NotificationQueue notificationQueue;
+    
     @Value("${notification.mode:DIRECT}")
     private String notificationMode;
     
     @Value("${notification.eta-threshold-minutes:10}")
     private int etaThresholdMinutes;
     
-    // 📧 Real Email Service Configuration
-    @Value("${aliyun.access-key:demo-key}")
-    private String accessKeyId;
-    
-    @Value("${aliyun.access-secret:demo-secret}")
-    private String accessKeySecret;
-    
-    @Value("${aliyun.region:ap-southeast-1}")
-    private String region;
-    
-    @Value("${aliyun.directmail.from-email:noreply@smartqueue.com}")
-    private String fromEmail;
-    
-    @Value("${aliyun.directmail.from-name:SmartQueue System}")
-    private String fromName;
-    
     public NotificationResponse scheduleNotification(NotificationRequest request) {
         log.info("Scheduling notification for ticketId: {}, channel: {}", request.getTicketId(), request.getChannel());
         
@@ -59,6 +50,7 @@ public class NotificationService {
             NotificationLog notificationLog = NotificationLog.builder()
                     .notificationId(UUID.randomUUID().toString())
                     .ticketId(request.getTicketId())
+                    .queueId(request.getQueueId())
                     .channel(convertToNotificationChannel(request.getChannel()))
                     .recipient(request.getAddress())
                     .message(request.getMessage() != null ? request.getMessage() : "Your turn is coming up soon!")
@@ -71,11 +63,42 @@ public class NotificationService {
                 // Always enqueue for mock (it processes immediately)
                 mockNotificationRepository.enqueueNotification(notificationLog);
             } else {
+                if (!notificationSender.supports(notificationLog.getChannel())) {
+                    // Would only fail in the workers (or sit in a journal) - refuse it up front
+                    log.warn("Notification channel {} is not supported, rejected for ticketId: {}",
+                            notificationLog.getChannel(), request.getTicketId());
+                    return NotificationResponse.builder()
+                            .ticketId(request.getTicketId())
+                            .scheduled(false)
+                            .status("UNSUPPORTED")
+                            .message("Notification channel " + notificationLog.getChannel() + " is not supported")
+                            .build();
+                }
                 notificationLog = notificationRepository.save(notificationLog);
+                boolean accepted;
                 if ("DIRECT".equalsIgnoreCase(notificationMode)) {
-                    sendRealNotification(notificationLog);
+                    // Sent by the dispatcher workers; the request does not wait for DirectMail
+                    accepted = notificationDispatcher.submit(notificationLog);
                 } else {
                     notificationRepository.enqueueNotification(notificationLog);
+                    // Written to the durable queue journal, delivered by its channel workers
+                    accepted = notificationQueue == null || notificationQueue.enqueue(notificationLog);
+                }
+                if (!accepted) {
+                    notificationRepository.updateNotificationStatus(
+                        notificationLog,
+                        NotificationLog.NotificationStatus.FAILED,
+                        "Notification queue is full"
+                    );
+                    log.warn("Notification queue is full, rejected: {}", notificationLog.getNotificationId());
+                    
+                    return NotificationResponse.builder()
+                            .notificationId(notificationLog.getNotificationId())
+                            .ticketId(request.getTicketId())
+                            .scheduled(false)
+                            .status("REJECTED")
+                            .message("Notification queue is full, try again later")
+                            .build();
                 }
             }
             
@@ -101,141 +124,10 @@ public class NotificationService {
         }
     }
     
-    public void processNotificationQueue() {
-        log.debug("Processing notification queue - using mock implementation");
-        
-        try {
-            // Mock queue processing for now
-            // In production, integrate with Aliyun MNS
-            log.info("Processing notification queue (mock implementation)");
-        } catch (Exception e) {
-            log.error("Error processing notification queue", e);
-        }
-    }
-    
-    // 📧 REAL EMAIL NOTIFICATION với Aliyun DirectMail
-    private void sendRealNotification(NotificationLog notificationLog) {
-        try {
-            switch (notificationLog.getChannel()) {
-                case EMAIL:
-                    sendRealEmail(notificationLog);
-                    break;
-                case SMS:
-                    sendRealSMS(notificationLog);
-                    break;
-                default:
-                    throw new RuntimeException("Unsupported notification channel: " + notificationLog.getChannel());
-            }
-            
-            notificationRepository.updateNotificationStatus(
-                notificationLog.getNotificationId(), 
-                NotificationLog.NotificationStatus.SENT, 
-                null
-            );
-            
-            log.info("✅ REAL Notification sent successfully: {}", notificationLog.getNotificationId());
-            
-        } catch (Exception e) {
-            log.error("❌ Error sending REAL notification: {}", notificationLog.getNotificationId(), e);
-            
-            notificationRepository.updateNotificationStatus(
-                notificationLog.getNotificationId(), 
-                NotificationLog.NotificationStatus.FAILED, 
-                e.getMessage()
-            );
-        }
-    }
-    
-    // 📧 Aliyun DirectMail Integration
-    private void sendRealEmail(NotificationLog notificationLog) {
-        // Check if using demo credentials
-        if (accessKeyId.equals("demo-key") || accessKeySecret.equals("demo-secret")) {
-            log.info("🧪 Using demo credentials, simulating email send to: {}", notificationLog.getRecipient());
-            return;
-        }
-        
-        try {
-            DefaultProfile profile = DefaultProfile.getProfile(region, accessKeyId, accessKeySecret);
-            IAcsClient client = new DefaultAcsClient(profile);
-            
-            SingleSendMailRequest request = new SingleSendMailRequest();
-            request.setAccountName(fromEmail);
-            request.setFromAlias(fromName);
-            request.setAddressType(1);
-            request.setToAddress(notificationLog.getRecipient());
-            request.setReplyToAddress(false);
-            request.setSubject("🎯 SmartQueue Notification - Your Turn is Coming!");
-            
-            // Professional HTML Email Template
-            String htmlBody = createEmailHtmlBody(notificationLog);
-            request.setHtmlBody(htmlBody);
-            
-            SingleSendMailResponse response = client.getAcsResponse(request);
-            log.info("📧 Email sent successfully via Aliyun DirectMail. EnvId: {}", response.getEnvId());
-            
-        } catch (ClientException e) {
-            log.error("❌ Aliyun DirectMail error: Code={}, Message={}", e.getErrCode(), e.getErrMsg());
-            throw new RuntimeException("Failed to send email via DirectMail: " + e.getErrMsg(), e);
-        }
-    }
-    
-    // 📱 Real SMS (placeholder for Aliyun SMS service)
-    private void sendRealSMS(NotificationLog notificationLog) {
-        // TODO: Implement Aliyun SMS service
-        log.warn("📱 SMS service not yet implemented. Would send to: {} - Message: {}", 
-                notificationLog.getRecipient(), notificationLog.getMessage());
-    }
-    
-    // 🎨 Professional Email Template
-    private String createEmailHtmlBody(NotificationLog notificationLog) {
-        return String.format("""
-            <!DOCTYPE html>
-            <html>
-            <head>
-                <meta charset="UTF-8">
-                <title>SmartQueue Notification</title>
-                <style>
-                    body { font-family: 'Segoe UI', Arial, sans-serif; line-height: 1.6; color: #333; }
-                    .container { max-width: 600px; margin: 0 auto; padding: 20px; }
-                    .header { background: linear-gradient(135deg, #667eea 0%%, #764ba2 100%%); color: white; padding: 30px; text-align: center; border-radius: 10px 10px 0 0; }
-                    .content { background: #f8f9fa; padding: 30px; border-radius: 0 0 10px 10px; }
-                    .highlight { background: #e3f2fd; padding: 15px; border-radius: 8px; margin: 20px 0; border-left: 4px solid #2196F3; }
-                    .footer { text-align: center; margin-top: 30px; color: #666; font-size: 14px; }
-                    .btn { display: inline-block; padding: 12px 30px; background: #4CAF50; color: white; text-decoration: none; border-radius: 25px; font-weight: bold; }
-                </style>
-            </head>
-            <body>
-                <div class="container">
-                    <div class="header">
-                        <h1>🎯 SmartQueue</h1>
-                        <p>Your queue position update</p>
-                    </div>
-                    <div class="content">
-                        <h2>Hello! 👋</h2>
-                        <p>We wanted to let you know about your queue status:</p>
-                        
-                        <div class="highlight">
-                            <h3>📝 %s</h3>
-                            <p><strong>Notification Time:</strong> %s</p>
-                        </div>
-                        
-                        <p>Thank you for using SmartQueue! We're working hard to serve you as quickly as possible.</p>
-                        
-                        <p style="text-align: center;">
-                            <a href="#" class="btn">Check Queue Status</a>
-                        </p>
-                    </div>
-                    <div class="footer">
-                        <p>SmartQueue - Smart waiting, better experience</p>
-                        <p>🌐 Multi-cloud powered by AWS & Aliyun</p>
-                    </div>
-                </div>
-            </body>
-            </html>
-            """, 
-            notificationLog.getMessage(),
-            Instant.now().toString()
-        );
+    public List<NotificationLog> findNotifications(String ticketId, String queueId, int limit) {
+        return ticketId != null
+                ? notificationRepository.findByTicketId(ticketId, limit)
+                : notificationRepository.findByQueueId(queueId, limit);
     }
     
     private void sendEmail(NotificationLog notificationLog) {
@@ -0,0 +1,129 @@
+package com.smartqueue.aliyun.stats;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Per-queue values loaded from the stats table off the caller's thread.
+ *
+ * get returns the value once it is loaded; otherwise it starts a load on a small pool of daemon
+ * threads and returns empty, so a request on the /eta path falls back instead of waiting for
+ * TableStore (or holding a map lock while it does). There is at most one load per queue at a
+ * time, and none for retryDelayMillis after a failed one.
+ *
+ * Queue ids come from requests and events, so nothing here grows with them unbounded: at most
+ * maxEntries values are kept, a value not read for idleExpiryMillis is dropped (onEvict sees
+ * both), and at most MAX_PENDING_LOADS loads wait for a thread - a get that finds them all
+ * taken starts none and returns empty, so a later get retries.
+ */
+final class BackgroundLoader<V> {
+
+    static final int MAX_PENDING_LOADS = 1_000;
+
+    private final Function<String, V> loader;
+    private final BiConsumer<String, RuntimeException> onFailure;
+    private final ThreadPoolExecutor pool;
+
+    private final Cache<String, V> loaded;
+    private final Set<String> loading = ConcurrentHashMap.newKeySet();
+    private final Cache<String, Boolean> backingOff;
+
+    BackgroundLoader(String threadName, int threads, long retryDelayMillis, long maxEntries, long idleExpiryMillis,
+                     Function<String, V> loader, BiConsumer<String, RuntimeException> onFailure) {
+        this(threadName, threads, retryDelayMillis, maxEntries, idleExpiryMillis, loader, onFailure, (key, value) -> {
+        });
+    }
+
+    BackgroundLoader(String threadName, int threads, long retryDelayMillis, long maxEntries, long idleExpiryMillis,
+                     Function<String, V> loader, BiConsumer<String, RuntimeException> onFailure,
+                     BiConsumer<String, V> onEvict) {
+        this.loader = loader;
+        this.onFailure = onFailure;
+        // Maintenance on the calling thread: evictions happen during the write that causes them
+        this.loaded = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterAccess(Duration.ofMillis(idleExpiryMillis))
+                .executor(Runnable::run)
+                .<String, V>evictionListener((key, value, cause) -> onEvict.accept(key, value))
+                .build();
+        this.backingOff = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofMillis(retryDelayMillis))
+                .executor(Runnable::run)
+                .build();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_PENDING_LOADS),
+                runnable -> {
+                    Thread thread = new Thread(runnable, threadName + "-" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The loaded value, or empty while it is not loaded yet (a load is started if none is
+     * running or backing off).
+     */
+    Optional<V> get(String key) {
+        V value = loaded.getIfPresent(key);
+        if (value != null) {
+            return Optional.of(value);
+        }
+        startLoad(key);
+        return Optional.empty();
+    }
+
+    /**
+     * The loaded values by queue; entries can be read and removed, not added.
+     */
+    ConcurrentMap<String, V> loaded() {
+        return loaded.asMap();
+    }
+
+    /**
+     * Stops the loads in progress; values loaded so far stay readable.
+     */
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private void startLoad(String key) {
+        if (backingOff.getIfPresent(key) != null) {
+            return;
+        }
+        if (!loading.add(key)) {
+            return;
+        }
+        try {
+            pool.execute(() -> load(key));
+        } catch (RejectedExecutionException e) {
+            loading.remove(key); // too many loads waiting, or shutting down
+        }
+    }
+
+    private void load(String key) {
+        try {
+            loaded.asMap().putIfAbsent(key, loader.apply(key));
+            backingOff.invalidate(key);
+        } catch (RuntimeException e) {
+            backingOff.put(key, Boolean.TRUE);
+            onFailure.accept(key, e);
+        } finally {
+            loading.remove(key);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.smartqueue.aliyun.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Lock-free, continuous-time decayed rate of served customers for one queue.
+ *
+ * Each event of c customers at time t contributes c * exp(-(now - t) / tau) to a decayed count;
+ * at a steady rate r the count settles at r * tau, so count / tau is the rate, weighting recent
+ * time most and using the real time between events rather than any caller-declared window.
+ * Until tau has passed since the first event the divisor is the decayed length of the observed
+ * span, tau * (1 - exp(-span / tau)), so a new queue is not underestimated.
+ *
+ * Forward decay keeps recording a single add: contributions are stored relative to a landmark
+ * time t0, as c * exp((t - t0) / tau), in a DoubleAdder (striped cells, no CAS loop on a hot
+ * queue) and scaled down to now on read. Before the weights grow too large the landmark moves
+ * forward; the previous adder stays in the chain for one more landmark so an add that raced
+ * with the move is still counted, and is settled into a plain value after that.
+ */
+public final class DecayingRate {
+
+    // Landmark moves once the newest weight reaches exp(32)
+    private static final double REBASE_AFTER_TAUS = 32;
+
+    private final double tauMillis;
+    private final long minSpanMillis;
+    private final AtomicReference<Landmark> landmark;
+    private final AtomicLong firstEventMillis = new AtomicLong(Long.MAX_VALUE);
+
+    private record Landmark(long t0, DoubleAdder weights, Landmark previous, double settled) {
+
+        double valueAt(long t, double tau) {
+            double value = (weights.sum() + settled) * Math.exp((t0 - t) / tau);
+            return previous != null ? value + previous.weights.sum() * Math.exp((previous.t0 - t) / tau) : value;
+        }
+    }
+
+    public DecayingRate(long tauMillis, long minSpanMillis, long nowMillis) {
+        this.tauMillis = tauMillis;
+        this.minSpanMillis = minSpanMillis;
+        this.landmark = new AtomicReference<>(new Landmark(nowMillis, new DoubleAdder(), null, 0));
+    }
+
+    public void record(long count, long atMillis) {
+        firstEventMillis.accumulateAndGet(atMillis, Math::min);
+        Landmark current = landmark.get();
+        if ((atMillis - current.t0()) / tauMillis > REBASE_AFTER_TAUS) {
+            current = rebase(current, atMillis);
+        }
+        current.weights().add(count * Math.exp((atMillis - current.t0()) / tauMillis));
+    }
+
+    /**
+     * Decayed number of customers served as of the given time (about rate * tau when steady).
+     */
+    public double decayedCount(long nowMillis) {
+        return landmark.get().valueAt(nowMillis, tauMillis);
+    }
+
+    /**
+     * Customers per minute as of the given time.
+     */
+    public double ratePerMinute(long nowMillis) {
+        long span = Math.max(minSpanMillis, nowMillis - firstEventMillis.get());
+        double effectiveMillis = tauMillis * -Math.expm1(-span / tauMillis);
+        return decayedCount(nowMillis) / effectiveMillis * 60_000;
+    }
+
+    private Landmark rebase(Landmark current, long nowMillis) {
+        // Everything older than the current landmark is settled at the new one
+        double settled = current.settled() * Math.exp((current.t0() - nowMillis) / tauMillis)
+                + (current.previous() != null
+                        ? current.previous().weights().sum() * Math.exp((current.previous().t0() - nowMillis) / tauMillis)
+                        : 0);
+        Landmark next = new Landmark(nowMillis, new DoubleAdder(),
+                new Landmark(current.t0(), current.weights(), null, 0), settled);
+        return landmark.compareAndSet(current, next) ? next : landmark.get();
+    }
+}
@@ -0,0 +1,98 @@
+package com.smartqueue.aliyun.stats;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.smartqueue.aliyun.model.EtaStats;
+import com.smartqueue.aliyun.repository.EtaStatsRepository;
+import com.smartqueue.aliyun.repository.MockEtaStatsRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+
+/**
+ * Read-through cache of EtaStats per queue and hourly window, so /eta does not read the stats
+ * table on every request.
+ *
+ * Entries older than eta.stats.cache.refresh-after-ms are reloaded in the background on their
+ * next read while the cached value is still served (refresh-ahead). A failed reload keeps the
+ * old value (stale-while-revalidate) until eta.stats.cache.max-stale-ms after the last
+ * successful load, when the entry expires. Local writes invalidate their entry. Missing rows are
+ * cached as empty; read errors are not cached.
+ */
+@Slf4j
+@Component
+public class EtaStatsCache {
+
+    private static final DateTimeFormatter TIME_WINDOW = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH").withZone(ZoneOffset.UTC);
+
+    private final EtaStatsRepository etaStatsRepository;
+    private final MockEtaStatsRepository mockEtaStatsRepository;
+    private final MeterRegistry meterRegistry;
+    private final LoadingCache<Key, Optional<EtaStats>> cache;
+
+    private record Key(String queueId, String timeWindow) {
+    }
+
+    public EtaStatsCache(@Autowired(required = false) EtaStatsRepository etaStatsRepository,
+                         @Autowired(required = false) MockEtaStatsRepository mockEtaStatsRepository,
+                         MeterRegistry meterRegistry,
+                         @Value("${eta.stats.cache.max-size:10000}") long maxSize,
+                         @Value("${eta.stats.cache.refresh-after-ms:15000}") long refreshAfterMs,
+                         @Value("${eta.stats.cache.max-stale-ms:300000}") long maxStaleMs) {
+        this.etaStatsRepository = etaStatsRepository;
+        this.mockEtaStatsRepository = mockEtaStatsRepository;
+        this.meterRegistry = meterRegistry;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(Duration.ofMillis(refreshAfterMs))
+                .expireAfterWrite(Duration.ofMillis(maxStaleMs))
+                .recordStats()
+                .build(this::load);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "etaStats");
+    }
+
+    /**
+     * Stats of the queue's current window. A read error without a cached value gives empty,
+     * so callers fall back to defaults as they do for a queue without stats.
+     */
+    public Optional<EtaStats> getLatest(String queueId) {
+        try {
+            return cache.get(new Key(queueId, currentTimeWindow()));
+        } catch (RuntimeException e) {
+            log.warn("Failed to load ETA stats for queue: {}, using defaults", queueId, e);
+            return Optional.empty();
+        }
+    }
+
+    public void invalidate(String queueId, String timeWindow) {
+        cache.invalidate(new Key(queueId, timeWindow));
+    }
+
+    public void invalidateLatest(String queueId) {
+        invalidate(queueId, currentTimeWindow());
+    }
+
+    private Optional<EtaStats> load(Key key) {
+        try {
+            return mockEtaStatsRepository != null
+                    ? mockEtaStatsRepository.findByQueueIdAndTimeWindow(key.queueId(), key.timeWindow())
+                    : etaStatsRepository.loadByQueueIdAndTimeWindow(key.queueId(), key.timeWindow());
+        } catch (RuntimeException e) {
+            meterRegistry.counter("smartqueue.eta.stats.cache.load.failures").increment();
+            throw e;
+        }
+    }
+
+    private static String currentTimeWindow() {
+        return TIME_WINDOW.format(Instant.now());
+    }
+}
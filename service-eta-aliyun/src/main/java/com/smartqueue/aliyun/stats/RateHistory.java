@@ -0,0 +1,137 @@
+package com.smartqueue.aliyun.stats;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Served-customer history of one queue at three resolutions: per minute for 2 hours, per hour
+ * for 7 days, per day for a year. Each resolution is a ring of primitive arrays indexed by
+ * bucket number modulo its size (about 10 KB per queue in total); a slot whose bucket number
+ * is older than the one being written is reused.
+ *
+ * The history also carries the queue's EMA service rate across window boundaries, so a new
+ * hourly stats row continues from the previous rate instead of restarting from its first
+ * event.
+ */
+public final class RateHistory {
+
+    public enum Resolution {
+        MINUTE(60_000L, 120),
+        HOUR(3_600_000L, 7 * 24),
+        DAY(86_400_000L, 366);
+
+        private final long bucketMillis;
+        private final int buckets;
+
+        Resolution(long bucketMillis, int buckets) {
+            this.bucketMillis = bucketMillis;
+            this.buckets = buckets;
+        }
+
+        public long getBucketMillis() {
+            return bucketMillis;
+        }
+
+        public long getRetentionMillis() {
+            return bucketMillis * buckets;
+        }
+    }
+
+    /**
+     * One bucket: customers served in it, their average rate, and the EMA rate at its end.
+     */
+    public record Point(Instant start, long served, double ratePerMinute, double emaServiceRate) {
+    }
+
+    private final Ring minutes = new Ring(Resolution.MINUTE);
+    private final Ring hours = new Ring(Resolution.HOUR);
+    private final Ring days = new Ring(Resolution.DAY);
+    private double ema = Double.NaN;
+    private long emaAtMillis;
+
+    public synchronized void record(long servedCount, long atMillis, double serviceRate, double alpha) {
+        ema = Double.isNaN(ema) ? serviceRate : (1 - alpha) * ema + alpha * serviceRate;
+        emaAtMillis = Math.max(emaAtMillis, atMillis);
+        minutes.add(atMillis, servedCount, ema);
+        hours.add(atMillis, servedCount, ema);
+        days.add(atMillis, servedCount, ema);
+    }
+
+    /**
+     * Loads a stored hourly window (cold start); the minute ring only fills from live events.
+     */
+    public synchronized void load(long windowStartMillis, long servedCount, double emaServiceRate) {
+        hours.add(windowStartMillis, servedCount, emaServiceRate);
+        days.add(windowStartMillis, servedCount, emaServiceRate);
+        if (windowStartMillis >= emaAtMillis) {
+            ema = emaServiceRate;
+            emaAtMillis = windowStartMillis;
+        }
+    }
+
+    /**
+     * The EMA service rate as of the latest event, if it is at most maxAgeMillis old.
+     */
+    public synchronized Optional<Double> latestEma(long nowMillis, long maxAgeMillis) {
+        return Double.isNaN(ema) || nowMillis - emaAtMillis > maxAgeMillis ? Optional.empty() : Optional.of(ema);
+    }
+
+    /**
+     * Buckets overlapping [fromMillis, toMillis) that had served customers, oldest first.
+     */
+    public synchronized List<Point> range(Resolution resolution, long fromMillis, long toMillis) {
+        Ring ring = switch (resolution) {
+            case MINUTE -> minutes;
+            case HOUR -> hours;
+            case DAY -> days;
+        };
+        return ring.points(fromMillis, toMillis);
+    }
+
+    private static final class Ring {
+
+        private final long bucketMillis;
+        private final long[] bucketIds;
+        private final long[] served;
+        private final float[] emaAtEnd;
+
+        Ring(Resolution resolution) {
+            this.bucketMillis = resolution.bucketMillis;
+            this.bucketIds = new long[resolution.buckets];
+            this.served = new long[resolution.buckets];
+            this.emaAtEnd = new float[resolution.buckets];
+            Arrays.fill(bucketIds, -1);
+        }
+
+        void add(long atMillis, long count, double ema) {
+            long bucket = Math.floorDiv(atMillis, bucketMillis);
+            int slot = (int) Math.floorMod(bucket, (long) bucketIds.length);
+            if (bucketIds[slot] > bucket) {
+                return; // older than what the ring still keeps
+            }
+            if (bucketIds[slot] != bucket) {
+                bucketIds[slot] = bucket;
+                served[slot] = 0;
+            }
+            served[slot] += count;
+            emaAtEnd[slot] = (float) ema;
+        }
+
+        List<Point> points(long fromMillis, long toMillis) {
+            long first = Math.max(Math.floorDiv(fromMillis, bucketMillis), Math.floorDiv(toMillis - 1, bucketMillis) - bucketIds.length + 1);
+            long last = Math.floorDiv(toMillis - 1, bucketMillis);
+            List<Point> points = new ArrayList<>();
+            for (long bucket = first; bucket <= last; bucket++) {
+                int slot = (int) Math.floorMod(bucket, (long) bucketIds.length);
+                if (bucketIds[slot] == bucket) {
+                    points.add(new Point(Instant.ofEpochMilli(bucket * bucketMillis), served[slot],
+                            served[slot] * 60_000.0 / bucketMillis, emaAtEnd[slot]));
+                }
+            }
+            return points;
+        }
+    }
+}
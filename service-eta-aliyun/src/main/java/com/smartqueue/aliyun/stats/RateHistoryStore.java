@@ -0,0 +1,178 @@
+package com.smartqueue.aliyun.stats;
+
+import com.smartqueue.aliyun.model.EtaStats;
+import com.smartqueue.aliyun.repository.EtaStatsRepository;
+import com.smartqueue.aliyun.repository.MockEtaStatsRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory RateHistory of each queue, so ETA and analytics read rates from memory instead of
+ * point-reading the current hourly stats row.
+ *
+ * A queue's history is loaded in the background on first use (BackgroundLoader) from its
+ * stored hourly rows of the hour resolution's retention (7 days, one paged GetRange), with the
+ * current window's buffered write-behind events applied; until then latestEma is empty and
+ * callers use the stats row. Older rows, up to eta.history.load-days, are only read when a DAY
+ * range asks for them. After the load, the history is kept up to date from the served events
+ * this instance applies. Events recorded before the history is loaded are not added: they are
+ * already in the rows the load reads (the stats write comes first), so adding them would count
+ * them twice. An event whose write races with the load's read may be missed by both.
+ *
+ * At most eta.history.max-queues histories are kept, and one not used for
+ * eta.history.idle-expiry-ms is dropped; the queue's next use loads it again from its rows.
+ */
+@Slf4j
+@Component
+public class RateHistoryStore {
+
+    private static final DateTimeFormatter TIME_WINDOW = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH").withZone(ZoneOffset.UTC);
+    private static final long INITIAL_LOAD_MILLIS = RateHistory.Resolution.HOUR.getRetentionMillis();
+
+    private final EtaStatsRepository etaStatsRepository;
+    private final MockEtaStatsRepository mockEtaStatsRepository;
+    private final ServedStatsAggregator servedStatsAggregator;
+    private final double emaAlpha;
+    private final long loadMillis;
+    private final long maxEmaAgeMillis;
+
+    private final BackgroundLoader<QueueHistory> histories;
+
+    /**
+     * A queue's history and the start of the oldest window read into it.
+     */
+    private static final class QueueHistory {
+        final RateHistory history = new RateHistory();
+        long loadedFromMillis; // guarded by this
+
+        QueueHistory(long loadedFromMillis) {
+            this.loadedFromMillis = loadedFromMillis;
+        }
+    }
+
+    public RateHistoryStore(@Autowired(required = false) EtaStatsRepository etaStatsRepository,
+                            @Autowired(required = false) MockEtaStatsRepository mockEtaStatsRepository,
+                            ServedStatsAggregator servedStatsAggregator,
+                            MeterRegistry meterRegistry,
+                            @Value("${eta.calculation.ema-alpha:0.3}") double emaAlpha,
+                            @Value("${eta.history.load-days:365}") int loadDays,
+                            @Value("${eta.history.max-ema-age-ms:21600000}") long maxEmaAgeMillis,
+                            @Value("${eta.history.load-retry-ms:30000}") long loadRetryMillis,
+                            @Value("${eta.history.max-queues:10000}") long maxQueues,
+                            @Value("${eta.history.idle-expiry-ms:3600000}") long idleExpiryMillis) {
+        this.etaStatsRepository = etaStatsRepository;
+        this.mockEtaStatsRepository = mockEtaStatsRepository;
+        this.servedStatsAggregator = servedStatsAggregator;
+        this.emaAlpha = emaAlpha;
+        this.loadMillis = Math.min(loadDays * RateHistory.Resolution.DAY.getBucketMillis(),
+                RateHistory.Resolution.DAY.getRetentionMillis());
+        this.maxEmaAgeMillis = maxEmaAgeMillis;
+        this.histories = new BackgroundLoader<>("rate-history-load", 2, loadRetryMillis, maxQueues, idleExpiryMillis, this::load, (queueId, e) -> {
+            meterRegistry.counter("smartqueue.eta.history.load.failures").increment();
+            log.warn("Could not load rate history for queue: {}", queueId, e);
+        });
+
+        Gauge.builder("smartqueue.eta.history.queues", histories.loaded(), ConcurrentMap::size)
+                .description("Queues with a rate history in memory")
+                .register(meterRegistry);
+    }
+
+    public void record(String queueId, int servedCount, long servedAtMillis, double serviceRate) {
+        histories.get(queueId).ifPresent(loaded -> loaded.history.record(servedCount, servedAtMillis, serviceRate, emaAlpha));
+    }
+
+    /**
+     * The queue's EMA service rate, carried across hourly windows, unless the queue has been
+     * idle for longer than eta.history.max-ema-age-ms or its history is still loading.
+     */
+    public Optional<Double> latestEma(String queueId) {
+        return histories.get(queueId).flatMap(loaded -> loaded.history.latestEma(System.currentTimeMillis(), maxEmaAgeMillis));
+    }
+
+    /**
+     * Points of the range; throws while the queue's history is still loading. A DAY range
+     * reaching before the loaded rows reads the missing ones first (at most eta.history.load-days
+     * back).
+     */
+    public List<RateHistory.Point> range(String queueId, RateHistory.Resolution resolution, Instant from, Instant to) {
+        QueueHistory loaded = histories.get(queueId)
+                .orElseThrow(() -> new IllegalStateException("Rate history of queue " + queueId + " is loading, retry shortly"));
+        if (resolution == RateHistory.Resolution.DAY) {
+            extend(queueId, loaded, Math.max(from.toEpochMilli(), System.currentTimeMillis() - loadMillis));
+        }
+        return loaded.history.range(resolution, from.toEpochMilli(), to.toEpochMilli());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        histories.shutdown();
+    }
+
+    private QueueHistory load(String queueId) {
+        Instant now = Instant.now();
+        long from = now.toEpochMilli() - INITIAL_LOAD_MILLIS;
+        // Exclusive end just past the current window
+        List<EtaStats> rows = new ArrayList<>(findRange(queueId, from, now.plusSeconds(3600).toEpochMilli()));
+
+        // Buffered write-behind events of the current window are not in its row yet
+        String currentWindow = TIME_WINDOW.format(now);
+        int last = rows.size() - 1;
+        boolean hasCurrent = last >= 0 && rows.get(last).getTimeWindow().equals(currentWindow);
+        servedStatsAggregator.withPending(queueId, hasCurrent ? Optional.of(rows.get(last)) : Optional.empty())
+                .filter(current -> current.getTimeWindow().equals(currentWindow))
+                .ifPresent(current -> {
+                    if (hasCurrent) {
+                        rows.set(last, current);
+                    } else {
+                        rows.add(current);
+                    }
+                });
+
+        QueueHistory loaded = new QueueHistory(from);
+        loadRows(loaded.history, rows);
+        log.debug("Loaded {} hourly windows of rate history for queue: {}", rows.size(), queueId);
+        return loaded;
+    }
+
+    // Reads the rows from fromMillis up to what the history already holds
+    private void extend(String queueId, QueueHistory loaded, long fromMillis) {
+        synchronized (loaded) {
+            if (fromMillis >= loaded.loadedFromMillis) {
+                return;
+            }
+            List<EtaStats> rows = findRange(queueId, fromMillis, loaded.loadedFromMillis);
+            loadRows(loaded.history, rows);
+            loaded.loadedFromMillis = fromMillis;
+            log.debug("Loaded {} older hourly windows of rate history for queue: {}", rows.size(), queueId);
+        }
+    }
+
+    private List<EtaStats> findRange(String queueId, long fromMillis, long toMillis) {
+        String from = TIME_WINDOW.format(Instant.ofEpochMilli(fromMillis));
+        String to = TIME_WINDOW.format(Instant.ofEpochMilli(toMillis));
+        return mockEtaStatsRepository != null
+                ? mockEtaStatsRepository.findRange(queueId, from, to)
+                : etaStatsRepository.findRange(queueId, from, to);
+    }
+
+    private static void loadRows(RateHistory history, List<EtaStats> rows) {
+        for (EtaStats row : rows) {
+            long windowStart = LocalDateTime.parse(row.getTimeWindow() + ":00").toInstant(ZoneOffset.UTC).toEpochMilli();
+            history.load(windowStart, row.getServedCount(), row.getEmaServiceRate());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.smartqueue.aliyun.stats;
+
+import com.smartqueue.aliyun.model.EtaStats;
+import com.smartqueue.aliyun.repository.EtaStatsRepository;
+import com.smartqueue.aliyun.repository.MockEtaStatsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Highest outbox sequence applied per queue: the durable half of served-event dedup.
+ *
+ * The queue service numbers each queue's events in commit order and relays them in that order,
+ * so an event at or below the queue's mark has been applied already. The mark is stored with
+ * the stats it covers - the relaySequence column of the window row the event went into, written
+ * by the same conditional write - and read back from the queue's rows of the last
+ * eta.stats.relay-lookback-hours after a restart. Events that were buffered but never written
+ * are above the stored mark and applied again when re-sent; the relay re-sends them because
+ * their batch was not acknowledged.
+ */
+@Slf4j
+@Component
+public class RelaySequences {
+
+    private static final DateTimeFormatter TIME_WINDOW = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH").withZone(ZoneOffset.UTC);
+
+    private final ToLongFunction<String> loader;
+    private final ConcurrentMap<String, Mark> marks = new ConcurrentHashMap<>();
+
+    private static final class Mark {
+        boolean loaded;
+        long sequence;
+    }
+
+    @Autowired
+    public RelaySequences(@Autowired(required = false) EtaStatsRepository etaStatsRepository,
+                          @Autowired(required = false) MockEtaStatsRepository mockEtaStatsRepository,
+                          @Value("${eta.stats.relay-lookback-hours:48}") int lookbackHours) {
+        this(queueId -> {
+            Instant now = Instant.now();
+            String from = TIME_WINDOW.format(now.minus(Duration.ofHours(lookbackHours)));
+            String to = TIME_WINDOW.format(now.plus(Duration.ofHours(1)));
+            List<EtaStats> rows = mockEtaStatsRepository != null
+                    ? mockEtaStatsRepository.findRange(queueId, from, to)
+                    : etaStatsRepository.findRange(queueId, from, to);
+            return rows.stream()
+                    .filter(row -> row.getRelaySequence() != null)
+                    .mapToLong(EtaStats::getRelaySequence)
+                    .max()
+                    .orElse(0);
+        });
+    }
+
+    RelaySequences(ToLongFunction<String> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Runs {@code apply} unless the queue's mark is already at or above the sequence, then moves
+     * the mark. Events of one queue are applied one at a time; a failed load or apply throws and
+     * leaves the mark where it was, so the re-sent event is applied then.
+     */
+    public boolean applyOnce(String queueId, long sequence, Runnable apply) {
+        Mark mark = marks.computeIfAbsent(queueId, id -> new Mark());
+        synchronized (mark) {
+            if (!mark.loaded) {
+                mark.sequence = loader.applyAsLong(queueId);
+                mark.loaded = true;
+                log.debug("Relay sequence of queue {} loaded: {}", queueId, mark.sequence);
+            }
+            if (sequence <= mark.sequence) {
+                return false;
+            }
+            apply.run();
+            mark.sequence = sequence;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.smartqueue.aliyun.stats;
+
+import com.smartqueue.aliyun.repository.EtaStatsRepository;
+import com.smartqueue.aliyun.repository.MockEtaStatsRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-queue seasonality profiles (eta.seasonality.enabled=true), learned from served events.
+ *
+ * A queue's profile is loaded from the stats table in the background on first use
+ * (BackgroundLoader) and kept in memory; profiles that learned something are written back every
+ * eta.seasonality.persist-interval-ms and on shutdown. Until the stored profile is loaded, the
+ * prior is used and nothing is recorded for the queue - also while a failed read waits
+ * eta.seasonality.load-retry-ms to be retried - so a lookup never waits for TableStore and an
+ * outage never overwrites a learned profile with a fresh one.
+ *
+ * At most eta.seasonality.max-queues profiles are kept, and one not used for
+ * eta.seasonality.idle-expiry-ms is dropped. A dropped profile with unsaved learning is held
+ * until the next persist writes it (a load in the meantime takes it back), so nothing learned
+ * is lost.
+ */
+@Slf4j
+@Component
+public class SeasonalityModel {
+
+    private final EtaStatsRepository etaStatsRepository;
+    private final MockEtaStatsRepository mockEtaStatsRepository;
+    private final boolean enabled;
+    private final double priorWeight;
+    private final double minAlpha;
+
+    private final BackgroundLoader<SeasonalityProfile> profiles;
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, SeasonalityProfile> evictedDirty = new ConcurrentHashMap<>();
+
+    public SeasonalityModel(@Autowired(required = false) EtaStatsRepository etaStatsRepository,
+                            @Autowired(required = false) MockEtaStatsRepository mockEtaStatsRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${eta.seasonality.enabled:true}") boolean enabled,
+                            @Value("${eta.seasonality.prior-weight:20}") double priorWeight,
+                            @Value("${eta.seasonality.min-alpha:0.05}") double minAlpha,
+                            @Value("${eta.seasonality.load-retry-ms:30000}") long loadRetryMillis,
+                            @Value("${eta.seasonality.max-queues:10000}") long maxQueues,
+                            @Value("${eta.seasonality.idle-expiry-ms:3600000}") long idleExpiryMillis) {
+        this.etaStatsRepository = etaStatsRepository;
+        this.mockEtaStatsRepository = mockEtaStatsRepository;
+        this.enabled = enabled;
+        this.priorWeight = priorWeight;
+        this.minAlpha = minAlpha;
+        this.profiles = new BackgroundLoader<>("seasonality-load", 2, loadRetryMillis, maxQueues, idleExpiryMillis,
+                this::load, (queueId, e) -> {
+                    meterRegistry.counter("smartqueue.seasonality.load.failures").increment();
+                    log.warn("Could not load seasonality profile for queue: {}, using the prior", queueId, e);
+                }, (queueId, profile) -> {
+                    if (dirty.contains(queueId)) {
+                        evictedDirty.put(queueId, profile);
+                    }
+                });
+
+        Gauge.builder("smartqueue.seasonality.profiles", profiles.loaded(), ConcurrentMap::size)
+                .description("Queues with a seasonality profile in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Service-rate multiplier for the queue at the given local time.
+     */
+    public double factor(String queueId, LocalDateTime time) {
+        int slot = SeasonalityProfile.slotOf(time);
+        if (!enabled) {
+            return SeasonalityProfile.priorFactor(slot);
+        }
+        return profiles.get(queueId)
+                .map(profile -> profile.factor(slot, priorWeight))
+                .orElseGet(() -> SeasonalityProfile.priorFactor(slot));
+    }
+
+    /**
+     * Learns one observed service rate (customers per minute) at the given local time.
+     */
+    public void record(String queueId, LocalDateTime time, double serviceRate) {
+        if (!enabled) {
+            return;
+        }
+        profiles.get(queueId).ifPresent(profile -> {
+            profile.record(SeasonalityProfile.slotOf(time), serviceRate, minAlpha);
+            dirty.add(queueId);
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${eta.seasonality.persist-interval-ms:60000}")
+    public void persist() {
+        for (String queueId : dirty) {
+            // Taken before clearing the flag: an eviction in between still finds it set and keeps the profile
+            SeasonalityProfile profile = profiles.loaded().get(queueId);
+            if (profile == null) {
+                profile = evictedDirty.get(queueId);
+            }
+            dirty.remove(queueId);
+            if (profile == null) {
+                continue;
+            }
+            try {
+                byte[] encoded = profile.encode();
+                if (mockEtaStatsRepository != null) {
+                    mockEtaStatsRepository.saveSeasonalityProfile(queueId, encoded);
+                } else {
+                    etaStatsRepository.saveSeasonalityProfile(queueId, encoded);
+                }
+                evictedDirty.remove(queueId, profile);
+            } catch (RuntimeException e) {
+                log.warn("Failed to persist seasonality profile for queue: {}, retrying later", queueId, e);
+                dirty.add(queueId);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void persistOnShutdown() {
+        profiles.shutdown();
+        persist();
+    }
+
+    private SeasonalityProfile load(String queueId) {
+        // Newer than the stored one until the next persist writes it
+        SeasonalityProfile evicted = evictedDirty.get(queueId);
+        if (evicted != null) {
+            return evicted;
+        }
+        Optional<byte[]> stored = mockEtaStatsRepository != null
+                ? mockEtaStatsRepository.findSeasonalityProfile(queueId)
+                : etaStatsRepository.findSeasonalityProfile(queueId);
+        return stored.map(SeasonalityProfile::decode).orElseGet(SeasonalityProfile::new);
+    }
+}
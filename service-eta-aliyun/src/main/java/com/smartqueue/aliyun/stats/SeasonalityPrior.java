@@ -0,0 +1,68 @@
+package com.smartqueue.aliyun.stats;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+/**
+ * The fixed time-of-week factors the ETA used before profiles were learned, tabulated once per
+ * 15-minute slot of the week. A queue's profile starts from these and moves away from them as
+ * served events arrive (SeasonalityProfile).
+ */
+final class SeasonalityPrior {
+
+    static final double[] FACTORS = tabulate();
+
+    private SeasonalityPrior() {
+    }
+
+    private static double[] tabulate() {
+        double[] factors = new double[SeasonalityProfile.SLOTS];
+        for (int slot = 0; slot < factors.length; slot++) {
+            DayOfWeek day = DayOfWeek.of(slot / SeasonalityProfile.SLOTS_PER_DAY + 1);
+            // Evaluated at the middle of the slot
+            LocalTime time = LocalTime.ofSecondOfDay((slot % SeasonalityProfile.SLOTS_PER_DAY) * SeasonalityProfile.SLOT_MINUTES * 60L
+                    + SeasonalityProfile.SLOT_MINUTES * 30L);
+            factors[slot] = rateMultiplier(day, time) / dayOfWeekEtaFactor(day);
+        }
+        return factors;
+    }
+
+    private static double rateMultiplier(DayOfWeek day, LocalTime time) {
+        double multiplier = 1.0;
+
+        // Peak Hours: 9-11AM và 2-4PM (slower service)
+        if (between(time, 9, 0, 11, 0) || between(time, 14, 0, 16, 0)) {
+            multiplier *= 0.7;  // 30% slower
+        }
+
+        // Lunch Time: 12-1:30PM (much slower)
+        if (between(time, 12, 0, 13, 30)) {
+            multiplier *= 0.5;  // 50% slower
+        }
+
+        // Weekend: Generally slower
+        if (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY) {
+            multiplier *= 0.8;  // 20% slower
+        }
+
+        // Late hours: 6-8PM (slightly faster as people leave)
+        if (between(time, 18, 0, 20, 0)) {
+            multiplier *= 1.2;  // 20% faster
+        }
+        return multiplier;
+    }
+
+    // Applied to the ETA, i.e. the inverse of a rate factor
+    private static double dayOfWeekEtaFactor(DayOfWeek day) {
+        return switch (day) {
+            case MONDAY -> 1.15;    // Mondays are typically slower
+            case FRIDAY -> 1.1;     // Fridays slightly slower
+            case SATURDAY, SUNDAY -> 0.9;  // Weekends often faster (fewer people)
+            default -> 1.0;
+        };
+    }
+
+    private static boolean between(LocalTime time, int fromHour, int fromMinute, int toHour, int toMinute) {
+        return time.isAfter(LocalTime.of(fromHour, fromMinute)) && time.isBefore(LocalTime.of(toHour, toMinute));
+    }
+}
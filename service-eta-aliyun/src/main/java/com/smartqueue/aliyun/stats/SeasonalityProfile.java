@@ -0,0 +1,101 @@
+package com.smartqueue.aliyun.stats;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+
+/**
+ * Learned service-rate profile of one queue over the week, in 15-minute slots (7 x 96).
+ *
+ * Each slot keeps an average of the service rates observed in it - a running mean at first,
+ * an EMA with minAlpha once it has enough samples, so the profile follows slow drift - and the
+ * queue keeps the same average over all slots. A slot's factor is its rate relative to the
+ * queue's, blended with the prior by sample count: n / (n + priorWeight) of the learned ratio,
+ * the rest from the hard-coded factors, so sparse slots stay close to the prior.
+ *
+ * State is two primitive arrays (about 4 KB per queue) and a lookup is two array reads.
+ */
+public final class SeasonalityProfile {
+
+    public static final int SLOT_MINUTES = 15;
+    public static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+    public static final int SLOTS = 7 * SLOTS_PER_DAY;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private final float[] slotRates;
+    private final int[] slotSamples;
+    private double overallRate;
+    private long overallSamples;
+
+    public SeasonalityProfile() {
+        this(new float[SLOTS], new int[SLOTS], 0, 0);
+    }
+
+    private SeasonalityProfile(float[] slotRates, int[] slotSamples, double overallRate, long overallSamples) {
+        this.slotRates = slotRates;
+        this.slotSamples = slotSamples;
+        this.overallRate = overallRate;
+        this.overallSamples = overallSamples;
+    }
+
+    public static int slotOf(LocalDateTime time) {
+        return (time.getDayOfWeek().getValue() - 1) * SLOTS_PER_DAY
+                + (time.getHour() * 60 + time.getMinute()) / SLOT_MINUTES;
+    }
+
+    public synchronized void record(int slot, double rate, double minAlpha) {
+        int samples = slotSamples[slot] == Integer.MAX_VALUE ? Integer.MAX_VALUE : slotSamples[slot] + 1;
+        slotSamples[slot] = samples;
+        slotRates[slot] += (float) (Math.max(1.0 / samples, minAlpha) * (rate - slotRates[slot]));
+
+        overallSamples++;
+        // The queue-wide average moves more slowly than any single slot
+        overallRate += Math.max(1.0 / overallSamples, minAlpha / SLOTS_PER_DAY) * (rate - overallRate);
+    }
+
+    /**
+     * Service-rate multiplier for the slot, relative to the queue's average.
+     */
+    public synchronized double factor(int slot, double priorWeight) {
+        double prior = SeasonalityPrior.FACTORS[slot];
+        int samples = slotSamples[slot];
+        if (samples == 0 || overallRate <= 0) {
+            return prior;
+        }
+        double weight = samples / (samples + priorWeight);
+        return weight * (slotRates[slot] / overallRate) + (1 - weight) * prior;
+    }
+
+    public static double priorFactor(int slot) {
+        return SeasonalityPrior.FACTORS[slot];
+    }
+
+    public synchronized byte[] encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 8 + 8 + SLOTS * (4 + 4));
+        buffer.put(FORMAT_VERSION).putInt(SLOTS).putDouble(overallRate).putLong(overallSamples);
+        for (float rate : slotRates) {
+            buffer.putFloat(rate);
+        }
+        for (int samples : slotSamples) {
+            buffer.putInt(samples);
+        }
+        return buffer.array();
+    }
+
+    public static SeasonalityProfile decode(byte[] encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        byte version = buffer.get();
+        int slots = buffer.getInt();
+        if (version != FORMAT_VERSION || slots != SLOTS) {
+            throw new IllegalArgumentException("Unsupported seasonality profile (version " + version + ", " + slots + " slots)");
+        }
+        double overallRate = buffer.getDouble();
+        long overallSamples = buffer.getLong();
+        float[] slotRates = new float[SLOTS];
+        int[] slotSamples = new int[SLOTS];
+        buffer.asFloatBuffer().get(slotRates);
+        buffer.position(buffer.position() + SLOTS * 4);
+        buffer.asIntBuffer().get(slotSamples);
+        return new SeasonalityProfile(slotRates, slotSamples, overallRate, overallSamples);
+    }
+}
@@ -0,0 +1,73 @@
+package com.smartqueue.aliyun.stats;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.OptionalDouble;
+
+/**
+ * Live service rate of each queue from the served events this instance received
+ * (eta.rate.decay-ms is the decay time constant tau).
+ *
+ * Queues have separate DecayingRate instances, so events of different queues never contend,
+ * and recording is lock-free within a queue. The rate is only reported while the decayed count
+ * is at least eta.rate.min-decayed-count customers; an idle queue, or one whose events go to
+ * another instance, falls back to the stored EMA.
+ *
+ * At most eta.rate.max-queues estimators are kept, and one without events for
+ * eta.rate.idle-expiry-ms (by then its decayed count is long below the minimum) is dropped.
+ */
+@Component
+public class ServedRateEstimators {
+
+    private final Cache<String, DecayingRate> rates;
+    private final long decayMillis;
+    private final long minSpanMillis;
+    private final double minDecayedCount;
+
+    public ServedRateEstimators(MeterRegistry meterRegistry,
+                                @Value("${eta.rate.decay-ms:600000}") long decayMillis,
+                                @Value("${eta.rate.min-span-ms:60000}") long minSpanMillis,
+                                @Value("${eta.rate.min-decayed-count:1.0}") double minDecayedCount,
+                                @Value("${eta.rate.max-queues:10000}") long maxQueues,
+                                @Value("${eta.rate.idle-expiry-ms:3600000}") long idleExpiryMillis) {
+        this.decayMillis = decayMillis;
+        this.minSpanMillis = minSpanMillis;
+        this.minDecayedCount = minDecayedCount;
+        this.rates = Caffeine.newBuilder()
+                .maximumSize(maxQueues)
+                .expireAfterAccess(Duration.ofMillis(idleExpiryMillis))
+                .build();
+
+        Gauge.builder("smartqueue.eta.rate.queues", rates, Cache::estimatedSize)
+                .description("Queues with a live served-rate estimator")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records customers served at the given time; times in the future are taken as now.
+     */
+    public void record(String queueId, int servedCount, long servedAtMillis) {
+        long now = System.currentTimeMillis();
+        rates.get(queueId, id -> new DecayingRate(decayMillis, minSpanMillis, now))
+                .record(servedCount, Math.min(servedAtMillis, now));
+    }
+
+    /**
+     * Customers per minute, or empty when the queue has too few recent events to tell.
+     */
+    public OptionalDouble ratePerMinute(String queueId) {
+        // Quietly: only events keep an estimator from expiring
+        DecayingRate rate = rates.policy().getIfPresentQuietly(queueId);
+        if (rate == null) {
+            return OptionalDouble.empty();
+        }
+        long now = System.currentTimeMillis();
+        return rate.decayedCount(now) >= minDecayedCount ? OptionalDouble.of(rate.ratePerMinute(now)) : OptionalDouble.empty();
+    }
+}
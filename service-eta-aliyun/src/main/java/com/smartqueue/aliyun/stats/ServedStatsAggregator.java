@@ -0,0 +1,198 @@
+package com.smartqueue.aliyun.stats;
+
+import com.smartqueue.aliyun.model.EtaStats;
+import com.smartqueue.aliyun.repository.EtaStatsRepository;
+import com.smartqueue.aliyun.repository.MockEtaStatsRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for served stats (eta.stats.write-behind.enabled=true).
+ *
+ * Served events are folded in memory into one ServedStatsDelta per queue and hourly window, so
+ * recording an event is a map update. Deltas are written to the stats table every
+ * eta.stats.write-behind.flush-interval-ms, or as soon as max-pending-events accumulate, with
+ * batched conditional writes; deltas that could not be written are folded back in front of newer
+ * events and retried on the next flush. Pending deltas are overlaid on reads, and flushed on
+ * shutdown - a hard crash loses at most one flush interval of events sent directly to
+ * /stats/served. Relayed batches are flushed before they are acknowledged (flushNow), so the
+ * outbox only deletes events that are in the stats table.
+ */
+@Slf4j
+@Component
+public class ServedStatsAggregator {
+
+    private static final DateTimeFormatter TIME_WINDOW = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH").withZone(ZoneOffset.UTC);
+    private static final int SHUTDOWN_FLUSH_ATTEMPTS = 3;
+
+    private final EtaStatsRepository etaStatsRepository;
+    private final MockEtaStatsRepository mockEtaStatsRepository;
+    private final MeterRegistry meterRegistry;
+    private final EtaStatsCache etaStatsCache;
+    private final double emaAlpha;
+    private final int maxPendingEvents;
+
+    private final ConcurrentMap<String, ServedStatsDelta> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingEvents = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public ServedStatsAggregator(@Autowired(required = false) EtaStatsRepository etaStatsRepository,
+                                 @Autowired(required = false) MockEtaStatsRepository mockEtaStatsRepository,
+                                 MeterRegistry meterRegistry,
+                                 EtaStatsCache etaStatsCache,
+                                 @Value("${eta.calculation.ema-alpha:0.3}") double emaAlpha,
+                                 @Value("${eta.stats.write-behind.max-pending-events:5000}") int maxPendingEvents) {
+        this.etaStatsRepository = etaStatsRepository;
+        this.mockEtaStatsRepository = mockEtaStatsRepository;
+        this.meterRegistry = meterRegistry;
+        this.etaStatsCache = etaStatsCache;
+        this.emaAlpha = emaAlpha;
+        this.maxPendingEvents = maxPendingEvents;
+
+        Gauge.builder("smartqueue.stats.pending.events", pendingEvents, AtomicInteger::get)
+                .description("Served events buffered in memory, not yet written to the stats table")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Buffers one served event (customers served, service rate in customers per minute, wait
+     * of each served ticket in seconds, outbox sequence or 0) for the current window. seedRate
+     * is the EMA a window without a row yet starts from.
+     */
+    public void record(String queueId, int servedCount, double serviceRate, double seedRate, List<Long> waitSeconds, long relaySequence) {
+        Instant now = Instant.now();
+        String timeWindow = TIME_WINDOW.format(now);
+        pending.compute(queueId + "#" + timeWindow, (key, delta) -> {
+            ServedStatsDelta current = delta != null ? delta : new ServedStatsDelta(queueId, timeWindow, now, seedRate);
+            current.record(servedCount, serviceRate, emaAlpha, waitSeconds, relaySequence);
+            return current;
+        });
+        if (pendingEvents.incrementAndGet() >= maxPendingEvents && flushLock.tryLock()) {
+            // One caller flushes on the size threshold; the others keep buffering
+            try {
+                flush();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stored stats of the queue's current window with its buffered events applied.
+     */
+    public Optional<EtaStats> withPending(String queueId, Optional<EtaStats> stored) {
+        String key = queueId + "#" + TIME_WINDOW.format(Instant.now());
+        EtaStats[] merged = new EtaStats[1];
+        pending.computeIfPresent(key, (k, delta) -> {
+            merged[0] = delta.applyTo(stored.orElse(null));
+            return delta;
+        });
+        return merged[0] != null ? Optional.of(merged[0]) : stored;
+    }
+
+    @Scheduled(fixedDelayString = "${eta.stats.write-behind.flush-interval-ms:1000}")
+    public void flush() {
+        write();
+    }
+
+    /**
+     * Flushes until every window buffered before the call is written, for callers that must not
+     * acknowledge events while they are only in memory (relayed batches, whose events the outbox
+     * deletes on the acknowledgement); false if some windows are still unwritten after
+     * SHUTDOWN_FLUSH_ATTEMPTS flushes (they stay buffered for the next one).
+     */
+    public boolean flushNow() {
+        for (int attempt = 1; attempt <= SHUTDOWN_FLUSH_ATTEMPTS; attempt++) {
+            if (write() == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Drains and writes the pending windows; returns how many were not written and are requeued
+    private int write() {
+        flushLock.lock();
+        try {
+            List<ServedStatsDelta> deltas = drain();
+            if (deltas.isEmpty()) {
+                return 0;
+            }
+            long started = System.nanoTime();
+            List<ServedStatsDelta> notWritten;
+            try {
+                notWritten = mockEtaStatsRepository != null
+                        ? mockEtaStatsRepository.applyServedDeltas(deltas)
+                        : etaStatsRepository.applyServedDeltas(deltas);
+            } catch (RuntimeException e) {
+                log.warn("Failed to flush {} served stats windows, retrying on the next flush", deltas.size(), e);
+                notWritten = deltas;
+            }
+            notWritten.forEach(this::requeue);
+            // Cached rows of written windows are stale now that their pending events are gone
+            Set<ServedStatsDelta> retried = Set.copyOf(notWritten);
+            deltas.stream()
+                    .filter(delta -> !retried.contains(delta))
+                    .forEach(delta -> etaStatsCache.invalidate(delta.getQueueId(), delta.getTimeWindow()));
+
+            meterRegistry.timer("smartqueue.stats.flush").record(Duration.ofNanos(System.nanoTime() - started));
+            meterRegistry.counter("smartqueue.stats.flushed.rows", "outcome", "written").increment(deltas.size() - notWritten.size());
+            meterRegistry.counter("smartqueue.stats.flushed.rows", "outcome", "retry").increment(notWritten.size());
+            log.debug("Flushed {} served stats windows ({} retried)", deltas.size() - notWritten.size(), notWritten.size());
+            return notWritten.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        for (int attempt = 1; attempt <= SHUTDOWN_FLUSH_ATTEMPTS && !pending.isEmpty(); attempt++) {
+            flush();
+        }
+        if (!pending.isEmpty()) {
+            log.error("Shutting down with {} served events in {} windows not written to the stats table",
+                    pendingEvents.get(), pending.size());
+        }
+    }
+
+    private List<ServedStatsDelta> drain() {
+        List<ServedStatsDelta> drained = new ArrayList<>(pending.size());
+        for (String key : pending.keySet()) {
+            ServedStatsDelta delta = pending.remove(key);
+            if (delta != null) {
+                pendingEvents.addAndGet(-delta.getEvents());
+                drained.add(delta);
+            }
+        }
+        return drained;
+    }
+
+    // Unwritten events go back in front of whatever arrived for the window during the flush
+    private void requeue(ServedStatsDelta unwritten) {
+        pendingEvents.addAndGet(unwritten.getEvents());
+        pending.merge(unwritten.getKey(), unwritten, (newer, older) -> {
+            older.append(newer);
+            return older;
+        });
+    }
+}
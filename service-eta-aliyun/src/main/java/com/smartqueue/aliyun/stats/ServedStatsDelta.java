@@ -0,0 +1,95 @@
+package com.smartqueue.aliyun.stats;
+
+import com.smartqueue.aliyun.model.EtaStats;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Served events of one queue and time window not yet written to the stats table.
+ *
+ * Each event moves the EMA service rate by ema' = (1 - alpha) * ema + alpha * rate, an affine
+ * map, so any run of events folds into one map ema' = decay * ema + contribution. Applying the
+ * folded map to the stored row gives exactly what applying the events one by one would have.
+ * A window with no row yet starts from firstRate: the queue's EMA carried over from earlier
+ * windows, or the first event's rate for a queue without history.
+ * Wait times of the served tickets accumulate in a sketch that is merged into the row's.
+ */
+@Getter
+public final class ServedStatsDelta {
+
+    private final String queueId;
+    private final String timeWindow;
+    private final Instant windowStart;
+    private final double firstRate;
+    private int events;
+    private int served;
+    private double decay = 1.0;
+    private double contribution;
+    private long relaySequence; // highest outbox sequence among the events, 0 if none carried one
+    private final WaitTimeSketch waits = new WaitTimeSketch();
+
+    public ServedStatsDelta(String queueId, String timeWindow, Instant windowStart, double firstRate) {
+        this.queueId = queueId;
+        this.timeWindow = timeWindow;
+        this.windowStart = windowStart;
+        this.firstRate = firstRate;
+    }
+
+    public String getKey() {
+        return queueId + "#" + timeWindow;
+    }
+
+    /**
+     * One served event: servedCount customers, observed at the given rate; relaySequence is its
+     * outbox sequence (0 for events that did not come through the outbox).
+     */
+    public void record(int servedCount, double rate, double alpha, List<Long> waitSeconds, long relaySequence) {
+        waitSeconds.forEach(waits::record);
+        this.relaySequence = Math.max(this.relaySequence, relaySequence);
+        served += servedCount;
+        decay *= 1 - alpha;
+        contribution = contribution * (1 - alpha) + alpha * rate;
+        events++;
+    }
+
+    /**
+     * Folds a newer delta of the same window in after this one.
+     */
+    public void append(ServedStatsDelta newer) {
+        contribution = newer.decay * contribution + newer.contribution;
+        decay *= newer.decay;
+        events += newer.events;
+        served += newer.served;
+        relaySequence = Math.max(relaySequence, newer.relaySequence);
+        waits.merge(newer.waits);
+    }
+
+    /**
+     * The row after these events: {@code existing} updated, or a new row when it is null.
+     */
+    public EtaStats applyTo(EtaStats existing) {
+        EtaStats updated = existing == null ? newRow() : existing.toBuilder()
+                .emaServiceRate(decay * existing.getEmaServiceRate() + contribution)
+                .servedCount(existing.getServedCount() + served)
+                .build();
+        if (relaySequence > 0 && (updated.getRelaySequence() == null || updated.getRelaySequence() < relaySequence)) {
+            updated.setRelaySequence(relaySequence);
+        }
+        WaitTimeSketch.mergeInto(updated, waits);
+        return updated;
+    }
+
+    private EtaStats newRow() {
+        return EtaStats.builder()
+                .queueId(queueId)
+                .timeWindow(timeWindow)
+                .windowStart(windowStart)
+                .servedCount(served)
+                .emaServiceRate(decay * firstRate + contribution)
+                .p90WaitTimeMinutes(5) // Default values
+                .p50WaitTimeMinutes(3)
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package com.smartqueue.aliyun.stats;
+
+import com.smartqueue.aliyun.model.EtaStats;
+import org.HdrHistogram.Histogram;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+/**
+ * Wait-time distribution of one queue and time window, in seconds.
+ *
+ * An HdrHistogram with 2 significant digits: any percentile is within 1% of the true value,
+ * memory is fixed by the trackable range (1s to 7 days) whatever the number of samples, and two
+ * sketches merge by adding their buckets - so a window's sketch can be built from any number of
+ * batches, nodes or flushes without keeping individual waits. Stored in the stats row in
+ * HdrHistogram's compressed encoding, typically a few hundred bytes.
+ */
+public final class WaitTimeSketch {
+
+    private static final long MAX_TRACKABLE_SECONDS = 7L * 24 * 3600;
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Histogram histogram;
+
+    public WaitTimeSketch() {
+        this(new Histogram(MAX_TRACKABLE_SECONDS, SIGNIFICANT_DIGITS));
+    }
+
+    private WaitTimeSketch(Histogram histogram) {
+        this.histogram = histogram;
+    }
+
+    public static WaitTimeSketch decode(byte[] encoded) {
+        if (encoded == null || encoded.length == 0) {
+            return new WaitTimeSketch();
+        }
+        try {
+            return new WaitTimeSketch(Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(encoded), MAX_TRACKABLE_SECONDS));
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt wait-time sketch", e);
+        }
+    }
+
+    /**
+     * Adds the waits to the row's sketch and sets its p50/p90 from the result.
+     * A row whose window has no samples yet keeps its default percentiles.
+     */
+    public static void mergeInto(EtaStats stats, WaitTimeSketch waits) {
+        if (waits == null || waits.isEmpty()) {
+            return;
+        }
+        WaitTimeSketch merged = decode(stats.getWaitSketch());
+        merged.merge(waits);
+        stats.setWaitSketch(merged.encode());
+        stats.setP50WaitTimeMinutes(merged.quantileMinutes(0.5));
+        stats.setP90WaitTimeMinutes(merged.quantileMinutes(0.9));
+    }
+
+    public byte[] encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Arrays.copyOf(buffer.array(), length);
+    }
+
+    public void record(long waitSeconds) {
+        histogram.recordValue(Math.min(Math.max(waitSeconds, 0), MAX_TRACKABLE_SECONDS));
+    }
+
+    public void merge(WaitTimeSketch other) {
+        histogram.add(other.histogram);
+    }
+
+    public long count() {
+        return histogram.getTotalCount();
+    }
+
+    public boolean isEmpty() {
+        return count() == 0;
+    }
+
+    /**
+     * Wait at the given quantile (0..1), rounded up to whole minutes, at least 1.
+     */
+    public int quantileMinutes(double quantile) {
+        long seconds = histogram.getValueAtPercentile(quantile * 100);
+        return (int) Math.max(1, (seconds + 59) / 60);
+    }
+}
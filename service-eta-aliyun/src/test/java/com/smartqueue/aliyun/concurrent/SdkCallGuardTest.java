@@ -0,0 +1,84 @@
+package com.smartqueue.aliyun.concurrent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SdkCallGuardTest {
+
+    private final ExecutorService virtualThreads = VirtualThreads.newThreadPerTaskExecutor("test-");
+    private final SdkCallGuard guard = new SdkCallGuard(true, "directmail", 2, 1, 100, new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        virtualThreads.shutdownNow();
+        guard.shutdown();
+    }
+
+    @Test
+    void virtualThreadsAreNamedAndRecognised() throws Exception {
+        assertThat(VirtualThreads.isSupported()).isTrue();
+        assertThat(VirtualThreads.isCurrentThreadVirtual()).isFalse();
+
+        assertThat(onVirtualThread(VirtualThreads::isCurrentThreadVirtual)).isTrue();
+        assertThat(onVirtualThread(() -> Thread.currentThread().getName())).startsWith("test-");
+    }
+
+    @Test
+    void offloadsAPinningSdkToAPlatformThread() throws Exception {
+        String thread = onVirtualThread(() -> guard.call("directmail", () -> Thread.currentThread().getName()));
+
+        assertThat(thread).startsWith("sdk-offload-");
+    }
+
+    @Test
+    void runsOtherSdksInlineOnTheVirtualThread() throws Exception {
+        assertThat(onVirtualThread(() -> guard.call("tablestore", VirtualThreads::isCurrentThreadVirtual))).isTrue();
+    }
+
+    @Test
+    void boundsTheInlineCallsOfVirtualThreads() throws Exception {
+        CountDownLatch inCall = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Boolean> holder = virtualThreads.submit(() -> guard.call("tablestore", () -> {
+            inCall.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }));
+        assertThat(inCall.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The only permit is taken: the second call gives up after sdk-acquire-timeout-ms
+        assertThatThrownBy(() -> onVirtualThread(() -> guard.call("tablestore", () -> true)))
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Timed out waiting for tablestore call permit");
+        release.countDown();
+        assertThat(holder.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void rethrowsTheCheckedExceptionOfAnOffloadedCall() {
+        assertThatThrownBy(() -> onVirtualThread(() -> guard.call("directmail", () -> {
+            throw new IOException("connection reset");
+        }))).hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void platformThreadsCallInline() throws Exception {
+        String caller = Thread.currentThread().getName();
+
+        assertThat(guard.call("directmail", () -> Thread.currentThread().getName())).isEqualTo(caller);
+    }
+
+    private <T> T onVirtualThread(Callable<T> task) throws Exception {
+        return virtualThreads.submit(task).get(5, TimeUnit.SECONDS);
+    }
+}
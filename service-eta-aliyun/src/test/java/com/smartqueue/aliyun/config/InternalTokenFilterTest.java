@@ -0,0 +1,39 @@
+package com.smartqueue.aliyun.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InternalTokenFilterTest {
+
+    @Test
+    void letsTheConfiguredTokenThrough() throws Exception {
+        MockHttpServletResponse response = filter("secret", "secret");
+
+        assertThat(response.getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void refusesAWrongOrMissingToken() throws Exception {
+        assertThat(filter("secret", "guess").getStatus()).isEqualTo(403);
+        assertThat(filter("secret", null).getStatus()).isEqualTo(403);
+    }
+
+    @Test
+    void refusesEverythingWhileNoTokenIsConfigured() throws Exception {
+        assertThat(filter("", "").getStatus()).isEqualTo(403);
+    }
+
+    private static MockHttpServletResponse filter(String configured, String presented) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/actuator/traces");
+        if (presented != null) {
+            request.addHeader(InternalTokenFilter.HEADER, presented);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new InternalTokenFilter(configured).doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
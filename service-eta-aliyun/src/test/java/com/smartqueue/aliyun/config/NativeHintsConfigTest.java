@@ -0,0 +1,44 @@
+package com.smartqueue.aliyun.config;
+
+import com.aliyuncs.dm.model.v20151123.SingleSendMailResponse;
+import com.smartqueue.aliyun.model.NotificationLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NativeHintsConfigTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    NativeHintsConfigTest() {
+        new NativeHintsConfig.AliyunSdkRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void registersTheDirectMailResponseAndTheSdkMetadata() {
+        assertThat(RuntimeHintsPredicates.reflection().onType(SingleSendMailResponse.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.resource().forResource("endpoints.json")).accepts(hints);
+    }
+
+    @Test
+    void registersTheTableStoreProtocolMessages() {
+        assertThat(RuntimeHintsPredicates.reflection()
+                .onType(TypeReference.of("com.alicloud.openservices.tablestore.core.protocol.OtsInternalApi$GetRowRequest")))
+                .accepts(hints);
+    }
+
+    @Test
+    void registersTheVirtualThreadApiAndTheModelBuilders() throws NoSuchMethodException {
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(Thread.class.getMethod("ofVirtual"))).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onMethod(Executors.class.getMethod("newVirtualThreadPerTaskExecutor")))
+                .accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(NotificationLog.NotificationLogBuilder.class)).accepts(hints);
+    }
+}
@@ -0,0 +1,80 @@
+package com.smartqueue.aliyun.eta;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EtaCurveTableTest {
+
+    private final AtomicInteger builds = new AtomicInteger();
+
+    @Test
+    void reusesACurveWhileItIsValid() {
+        EtaCurveTable table = table(60_000, 100);
+
+        EtaCurve first = table.curve("q1");
+        EtaCurve second = table.curve("q1");
+
+        assertThat(second).isSameAs(first);
+        assertThat(builds.get()).isEqualTo(1);
+    }
+
+    @Test
+    void rebuildsAnExpiredCurve() {
+        EtaCurveTable table = table(-1, 100);
+
+        table.curve("q1");
+        table.curve("q1");
+
+        assertThat(builds.get()).isEqualTo(2);
+    }
+
+    @Test
+    void rebuildsAfterInvalidate() {
+        EtaCurveTable table = table(60_000, 100);
+
+        EtaCurve first = table.curve("q1");
+        table.invalidate("q1");
+
+        assertThat(table.curve("q1")).isNotSameAs(first);
+        assertThat(builds.get()).isEqualTo(2);
+    }
+
+    @Test
+    void holdsAtMostMaxQueuesCurves() {
+        EtaCurveTable table = table(60_000, 10);
+
+        for (int i = 0; i < 1_000; i++) {
+            table.curve("q" + i);
+        }
+
+        assertThat(table.size()).isEqualTo(10);
+        assertThat(table.curve("q999")).isNotNull();
+    }
+
+    @Test
+    void dropsExpiredCurvesToMakeRoom() {
+        AtomicInteger validFor = new AtomicInteger(-1);
+        EtaCurveTable table = new EtaCurveTable(queueId -> {
+            builds.incrementAndGet();
+            return EtaCurve.build(1.0, slot -> 1.0, 15, 3, 5, 100, System.currentTimeMillis() + validFor.get());
+        }, 2);
+        table.curve("q1");
+        table.curve("q2");
+
+        validFor.set(60_000);
+        EtaCurve q3 = table.curve("q3");
+
+        assertThat(table.size()).isEqualTo(1);
+        assertThat(table.curve("q3")).isSameAs(q3);
+    }
+
+    private EtaCurveTable table(long validForMillis, int maxQueues) {
+        return new EtaCurveTable(queueId -> {
+            builds.incrementAndGet();
+            return EtaCurve.build(1.0, slot -> 1.0, 15, 3, 5, 100, System.currentTimeMillis() + validForMillis);
+        }, maxQueues);
+    }
+}
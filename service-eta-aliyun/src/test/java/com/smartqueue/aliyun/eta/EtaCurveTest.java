@@ -0,0 +1,47 @@
+package com.smartqueue.aliyun.eta;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EtaCurveTest {
+
+    @Test
+    void aConstantRateServesEveryPositionAtThatRate() {
+        EtaCurve curve = EtaCurve.build(2.0, slot -> 1.0, 15, 3, 5, 100, Long.MAX_VALUE);
+
+        assertThat(curve.minutesAt(0)).isEqualTo(1);
+        assertThat(curve.minutesAt(4)).isEqualTo(3);   // 4 * 1.05 / 2 = 2.1
+        assertThat(curve.minutesAt(20)).isEqualTo(12); // 20 * 1.05 / 2 * 1.1 = 11.55
+        // Past the table, at the same rate
+        assertThat(curve.minutesAt(200)).isEqualTo(116); // 200 * 1.05 / 2 * 1.1 = 115.5
+        assertThat(curve.getServiceRate()).isEqualTo(2.0);
+    }
+
+    @Test
+    void laterSlotsAreServedAtTheirOwnFactor() {
+        // 5 minutes left at factor 1, then every slot at half the rate
+        EtaCurve curve = EtaCurve.build(2.0, slot -> slot == 0 ? 1.0 : 0.5, 5, 3, 5, 100, Long.MAX_VALUE);
+
+        // 10 customers by the end of the current slot, then one per minute
+        assertThat(curve.minutesAt(10)).isEqualTo(6);  // 5 minutes * 1.05 = 5.25
+        assertThat(curve.minutesAt(20)).isEqualTo(18); // (5 + 10) * 1.05 * 1.1 = 17.3
+        assertThat(curve.getSeasonFactor()).isEqualTo(1.0);
+    }
+
+    @Test
+    void positionsPastTheTableContinueAtTheLastSlotRate() {
+        EtaCurve curve = EtaCurve.build(2.0, slot -> slot == 0 ? 1.0 : 0.5, 5, 3, 5, 20, Long.MAX_VALUE);
+
+        // Position 30: position 20 at minute 15, then ten more at one per minute
+        assertThat(curve.minutesAt(30)).isEqualTo(29); // 25 * 1.05 * 1.1 = 28.9
+    }
+
+    @Test
+    void expiresAtValidUntil() {
+        EtaCurve curve = EtaCurve.build(1.0, slot -> 1.0, 15, 3, 5, 10, 1_000);
+
+        assertThat(curve.isValidAt(999)).isTrue();
+        assertThat(curve.isValidAt(1_000)).isFalse();
+    }
+}
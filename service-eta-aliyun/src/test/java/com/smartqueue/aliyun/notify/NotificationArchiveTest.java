@@ -0,0 +1,133 @@
+package com.smartqueue.aliyun.notify;
+
+import com.smartqueue.aliyun.model.NotificationLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotificationArchiveTest {
+
+    @TempDir
+    Path directory;
+
+    private NotificationArchive archive;
+
+    @AfterEach
+    void close() throws IOException {
+        archive.close();
+    }
+
+    @Test
+    void findsRecordsAcrossSealedSegmentsNewestFirst() throws IOException {
+        archive = NotificationArchive.open(directory, 3, 200);
+        for (int i = 0; i < 10; i++) {
+            archive.append(notification("n" + i, "ticket-" + (i % 2), "q1"));
+        }
+
+        assertThat(indexFiles(".tidx")).hasSize(3);
+        assertThat(find(NotificationArchive.Key.TICKET, "ticket-0", 100))
+                .extracting(NotificationLog::getNotificationId)
+                .containsExactly("n8", "n6", "n4", "n2", "n0");
+        assertThat(find(NotificationArchive.Key.QUEUE, "q1", 4))
+                .extracting(NotificationLog::getNotificationId)
+                .containsExactly("n9", "n8", "n7", "n6");
+        assertThat(find(NotificationArchive.Key.TICKET, "ticket-unknown", 100)).isEmpty();
+    }
+
+    @Test
+    void theLatestVersionOfARecordSupersedesOlderOnes() throws IOException {
+        archive = NotificationArchive.open(directory, 2, 200);
+        NotificationLog pending = notification("n1", "ticket-1", "q1");
+        pending.setStatus(NotificationLog.NotificationStatus.PENDING);
+        archive.append(pending);
+        archive.append(notification("n2", "ticket-1", "q1"));
+        NotificationLog sent = notification("n1", "ticket-1", "q1");
+        sent.setStatus(NotificationLog.NotificationStatus.SENT);
+        archive.append(sent);
+
+        List<NotificationLog> found = find(NotificationArchive.Key.TICKET, "ticket-1", 100);
+
+        assertThat(found).extracting(NotificationLog::getNotificationId).containsExactly("n1", "n2");
+        assertThat(found.get(0).getStatus()).isEqualTo(NotificationLog.NotificationStatus.SENT);
+    }
+
+    @Test
+    void stopsAtTheDeadlineWithTheOpenSegmentsRecords() throws IOException {
+        archive = NotificationArchive.open(directory, 2, 200);
+        for (int i = 0; i < 5; i++) {
+            archive.append(notification("n" + i, "ticket-1", "q1"));
+        }
+        List<NotificationLog> found = new ArrayList<>();
+
+        boolean complete = archive.find(NotificationArchive.Key.TICKET, "ticket-1", 100, System.nanoTime() - 1,
+                new HashSet<>(), found);
+
+        assertThat(complete).isFalse();
+        assertThat(found).extracting(NotificationLog::getNotificationId).containsExactly("n4");
+    }
+
+    @Test
+    void reopensSealedSegmentsAndRebuildsAMissingIndex() throws IOException {
+        archive = NotificationArchive.open(directory, 2, 200);
+        for (int i = 0; i < 5; i++) {
+            archive.append(notification("n" + i, "ticket-1", "q1"));
+        }
+        archive.close();
+        Files.delete(indexFiles(".qidx").get(0));
+
+        archive = NotificationArchive.open(directory, 2, 200);
+
+        assertThat(find(NotificationArchive.Key.QUEUE, "q1", 100)).hasSize(5);
+        assertThat(indexFiles(".qidx")).hasSize(2);
+    }
+
+    @Test
+    void aPurgedSegmentIsNoLongerSearched() throws IOException {
+        archive = NotificationArchive.open(directory, 2, 200);
+        for (int i = 0; i < 5; i++) {
+            archive.append(notification("n" + i, "ticket-1", "q1"));
+        }
+
+        assertThat(archive.purgeBefore(Instant.now().plusSeconds(60))).isEqualTo(2);
+
+        assertThat(find(NotificationArchive.Key.TICKET, "ticket-1", 100))
+                .extracting(NotificationLog::getNotificationId)
+                .containsExactly("n4");
+    }
+
+    private List<NotificationLog> find(NotificationArchive.Key key, String value, int limit) throws IOException {
+        List<NotificationLog> found = new ArrayList<>();
+        assertThat(archive.find(key, value, limit, System.nanoTime() + 5_000_000_000L, new HashSet<>(), found)).isTrue();
+        return found;
+    }
+
+    private List<Path> indexFiles(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(suffix)).sorted().toList();
+        }
+    }
+
+    static NotificationLog notification(String notificationId, String ticketId, String queueId) {
+        return NotificationLog.builder()
+                .notificationId(notificationId)
+                .ticketId(ticketId)
+                .queueId(queueId)
+                .channel(NotificationLog.NotificationType.EMAIL)
+                .status(NotificationLog.NotificationStatus.SENT)
+                .recipient(notificationId + "@example.com")
+                .message("Your turn is coming")
+                .scheduledAt(Instant.now())
+                .build();
+    }
+}
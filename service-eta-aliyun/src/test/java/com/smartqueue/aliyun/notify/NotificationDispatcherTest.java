@@ -0,0 +1,112 @@
+package com.smartqueue.aliyun.notify;
+
+import com.smartqueue.aliyun.model.NotificationLog;
+import com.smartqueue.aliyun.repository.NotificationRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotificationDispatcherTest {
+
+    private final Map<String, NotificationLog.NotificationStatus> statuses = new ConcurrentHashMap<>();
+    private final Map<String, String> errors = new ConcurrentHashMap<>();
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+
+    private final NotificationRepository repository = new NotificationRepository(null) {
+        @Override
+        public void updateNotificationStatus(NotificationLog notificationLog, NotificationLog.NotificationStatus status, String errorMessage) {
+            statuses.put(notificationLog.getNotificationId(), status);
+            if (errorMessage != null) {
+                errors.put(notificationLog.getNotificationId(), errorMessage);
+            }
+        }
+    };
+
+    @Test
+    void sendsEveryEmailOnItsOwn() throws Exception {
+        NotificationDispatcher dispatcher = dispatcher(new NotificationSender(null, ObservationRegistry.NOOP, null,
+                "demo-key", "demo-secret", "noreply@smartqueue.com", "SmartQueue", "directmail:1000,sms:1000") {
+            @Override
+            public void send(NotificationLog notificationLog) {
+                sent.add(notificationLog.getRecipient());
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(dispatcher.submit(notification("n" + i, NotificationLog.NotificationType.EMAIL, "user" + i + "@example.com"))).isTrue();
+        }
+        dispatcher.shutdown();
+
+        assertThat(sent).hasSize(3);
+        assertThat(sent).contains("user0@example.com", "user1@example.com", "user2@example.com");
+        assertThat(statuses).containsEntry("n0", NotificationLog.NotificationStatus.SENT);
+        assertThat(statuses).containsEntry("n2", NotificationLog.NotificationStatus.SENT);
+    }
+
+    @Test
+    void marksSmsFailedWhileItIsNotImplemented() throws Exception {
+        NotificationDispatcher dispatcher = dispatcher(new NotificationSender(null, ObservationRegistry.NOOP, null,
+                "demo-key", "demo-secret", "noreply@smartqueue.com", "SmartQueue", "directmail:1000,sms:1000"));
+
+        dispatcher.submit(notification("sms-1", NotificationLog.NotificationType.SMS, "+84900000000"));
+        dispatcher.shutdown();
+
+        assertThat(statuses).containsEntry("sms-1", NotificationLog.NotificationStatus.FAILED);
+        assertThat(errors.get("sms-1")).isEqualTo("SMS delivery is not implemented");
+    }
+
+    @Test
+    void rejectsNotificationsAfterShutdown() throws Exception {
+        NotificationDispatcher dispatcher = dispatcher(new NotificationSender(null, ObservationRegistry.NOOP, null,
+                "demo-key", "demo-secret", "noreply@smartqueue.com", "SmartQueue", "directmail:1000,sms:1000"));
+
+        dispatcher.shutdown();
+
+        assertThat(dispatcher.submit(notification("late", NotificationLog.NotificationType.EMAIL, "late@example.com"))).isFalse();
+        assertThat(statuses).doesNotContainKey("late");
+    }
+
+    @Test
+    void marksANotificationFailedWhenItsWorkerIsInterruptedWaitingForAPermit() throws Exception {
+        CountDownLatch waiting = new CountDownLatch(1);
+        NotificationDispatcher dispatcher = new NotificationDispatcher(new NotificationSender(null, ObservationRegistry.NOOP, null,
+                "demo-key", "demo-secret", "noreply@smartqueue.com", "SmartQueue", "directmail:1000,sms:1000") {
+            @Override
+            public void send(NotificationLog notificationLog) throws InterruptedException {
+                waiting.countDown();
+                new CountDownLatch(1).await(); // a permit that never comes
+            }
+        }, repository, new SimpleMeterRegistry(), 100, 1, 100);
+
+        dispatcher.submit(notification("n1", NotificationLog.NotificationType.EMAIL, "user@example.com"));
+        assertThat(waiting.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.shutdown();
+
+        assertThat(statuses).containsEntry("n1", NotificationLog.NotificationStatus.FAILED);
+        assertThat(errors.get("n1")).isEqualTo("Notification dispatcher stopped before sending");
+    }
+
+    private NotificationDispatcher dispatcher(NotificationSender sender) {
+        return new NotificationDispatcher(sender, repository, new SimpleMeterRegistry(), 100, 2, 5_000);
+    }
+
+    private static NotificationLog notification(String notificationId, NotificationLog.NotificationType channel, String recipient) {
+        return NotificationLog.builder()
+                .notificationId(notificationId)
+                .ticketId("ticket-" + notificationId)
+                .queueId("q1")
+                .channel(channel)
+                .recipient(recipient)
+                .message("Your turn is coming")
+                .build();
+    }
+}
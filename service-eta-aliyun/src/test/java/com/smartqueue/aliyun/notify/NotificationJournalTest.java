@@ -0,0 +1,147 @@
+package com.smartqueue.aliyun.notify;
+
+import com.smartqueue.aliyun.model.NotificationLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotificationJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void redeliversEntriesWithoutDoneRecordAfterRestart() throws IOException {
+        NotificationJournal journal = open(1 << 20, new ArrayList<>());
+        NotificationJournal.Entry first = journal.append(notification("n1"), 0, 1000, null);
+        NotificationJournal.Entry second = journal.append(notification("n2"), 2, 2000, "timeout");
+        journal.append(notification("n3"), 0, 3000, null);
+        journal.markDone(first.offset());
+        journal.close();
+
+        List<NotificationJournal.Entry> pending = new ArrayList<>();
+        open(1 << 20, pending).close();
+
+        assertThat(pending).hasSize(2);
+        NotificationJournal.Entry recovered = pending.get(0);
+        assertThat(recovered.offset()).isEqualTo(second.offset());
+        assertThat(recovered.attempt()).isEqualTo(2);
+        assertThat(recovered.notBeforeMillis()).isEqualTo(2000L);
+        assertThat(recovered.error()).isEqualTo("timeout");
+        assertThat(recovered.notification().getNotificationId()).isEqualTo("n2");
+        assertThat(recovered.notification().getRecipient()).isEqualTo("n2@example.com");
+        assertThat(recovered.notification().getChannel()).isEqualTo(NotificationLog.NotificationType.EMAIL);
+        assertThat(pending.get(1).notification().getNotificationId()).isEqualTo("n3");
+    }
+
+    @Test
+    void cutsATornRecordAndKeepsAppendingAfterIt() throws IOException {
+        NotificationJournal journal = open(1 << 20, new ArrayList<>());
+        journal.append(notification("n1"), 0, 1000, null);
+        long end = journal.writeOffset();
+        journal.close();
+        // Crash in the middle of the next record: a header promising more bytes than were written
+        try (FileChannel segment = FileChannel.open(onlySegment(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            segment.write(ByteBuffer.allocate(12).putInt(500).putInt(42).putInt(7).flip());
+        }
+
+        List<NotificationJournal.Entry> pending = new ArrayList<>();
+        journal = open(1 << 20, pending);
+        assertThat(pending).hasSize(1);
+        assertThat(journal.writeOffset()).isEqualTo(end);
+        NotificationJournal.Entry next = journal.append(notification("n2"), 0, 2000, null);
+        journal.close();
+
+        pending.clear();
+        open(1 << 20, pending).close();
+        assertThat(pending).hasSize(2);
+        assertThat(pending.get(1).offset()).isEqualTo(next.offset());
+    }
+
+    @Test
+    void commitSkipsConsumedEntriesAndDeletesTheirSegments() throws IOException {
+        // Small segments, so every few entries start a new file
+        NotificationJournal journal = open(256, new ArrayList<>());
+        List<NotificationJournal.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            entries.add(journal.append(notification("n" + i), 0, i, null));
+        }
+        assertThat(segments().size()).isGreaterThan(2);
+
+        // Everything below the 16th entry is consumed, even without DONE records
+        journal.commit(entries.get(15).offset());
+        long writeOffset = journal.writeOffset();
+        journal.close();
+        assertThat(Files.exists(directory.resolve("consumer.offset"))).isTrue();
+
+        List<NotificationJournal.Entry> pending = new ArrayList<>();
+        journal = open(256, pending);
+        assertThat(pending).hasSize(5);
+        assertThat(pending.get(0).notification().getNotificationId()).isEqualTo("n15");
+        for (Path segment : segments()) {
+            long base = Long.parseLong(segment.getFileName().toString().replace(".seg", ""));
+            assertThat(base).isGreaterThan(entries.get(0).offset());
+        }
+
+        // Offsets keep growing across the restart
+        assertThat(journal.append(notification("n20"), 0, 20, null).offset()).isEqualTo(writeOffset);
+        journal.close();
+    }
+
+    @Test
+    void anEmptyCommittedLogStartsAtTheCommittedOffset() throws IOException {
+        NotificationJournal journal = open(128, new ArrayList<>());
+        for (int i = 0; i < 5; i++) {
+            NotificationJournal.Entry entry = journal.append(notification("n" + i), 0, i, null);
+            journal.markDone(entry.offset());
+        }
+        long writeOffset = journal.writeOffset();
+        journal.commit(writeOffset);
+        journal.close();
+
+        List<NotificationJournal.Entry> pending = new ArrayList<>();
+        journal = open(128, pending);
+
+        assertThat(pending).isEmpty();
+        assertThat(journal.writeOffset()).isEqualTo(writeOffset);
+        journal.close();
+    }
+
+    private NotificationJournal open(long segmentBytes, List<NotificationJournal.Entry> pending) throws IOException {
+        return NotificationJournal.open(directory, segmentBytes, false, pending);
+    }
+
+    private Path onlySegment() throws IOException {
+        List<Path> segments = segments();
+        assertThat(segments).hasSize(1);
+        return segments.get(0);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".seg")).sorted().toList();
+        }
+    }
+
+    private static NotificationLog notification(String notificationId) {
+        return NotificationLog.builder()
+                .notificationId(notificationId)
+                .ticketId("ticket-" + notificationId)
+                .queueId("q1")
+                .channel(NotificationLog.NotificationType.EMAIL)
+                .recipient(notificationId + "@example.com")
+                .message("Your turn is coming")
+                .build();
+    }
+}
@@ -0,0 +1,227 @@
+package com.smartqueue.aliyun.notify;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.smartqueue.aliyun.model.NotificationLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotificationLogStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void archivesAStatusUpdateOfARecordOutsideTheHotWindow() throws IOException {
+        NotificationLogStore store = open();
+
+        // Never saved here, as after a restart: only the sender's copy has the record
+        store.updateStatus(notification("n1"), NotificationLog.NotificationStatus.FAILED, "timeout");
+
+        List<NotificationLog> found = store.findByTicketId("ticket-n1", 10);
+        assertThat(found).hasSize(1);
+        assertThat(found.get(0).getStatus()).isEqualTo(NotificationLog.NotificationStatus.FAILED);
+        assertThat(found.get(0).getErrorMessage()).isEqualTo("timeout");
+        assertThat(store.findByQueueId("q1", 10)).hasSize(1);
+        store.shutdown();
+    }
+
+    @Test
+    void theArchivedStatusUpdateSupersedesTheEarlierVersion() throws IOException {
+        NotificationLogStore store = open();
+        NotificationLog notification = notification("n1");
+        notification.setStatus(NotificationLog.NotificationStatus.PENDING);
+        store.save(notification);
+        store.shutdown();
+
+        // The record is only in the archive now; the queue delivers the journaled copy
+        store = open();
+        store.updateStatus(notification("n1"), NotificationLog.NotificationStatus.SENT, null);
+
+        List<NotificationLog> found = store.findByTicketId("ticket-n1", 10);
+        assertThat(found).hasSize(1);
+        assertThat(found.get(0).getStatus()).isEqualTo(NotificationLog.NotificationStatus.SENT);
+        assertThat(found.get(0).getSentAt() != null).isTrue();
+        store.shutdown();
+    }
+
+    @Test
+    void updatesTheHotRecordWhileItIsInTheHotWindow() throws IOException {
+        NotificationLogStore store = open();
+        NotificationLog hot = notification("n1");
+        hot.setStatus(NotificationLog.NotificationStatus.PENDING);
+        store.save(hot);
+
+        NotificationLog updated = store.updateStatus(notification("n1"), NotificationLog.NotificationStatus.SENT, null);
+
+        assertThat(updated == hot).isTrue();
+        assertThat(store.findById("n1").orElseThrow().getStatus()).isEqualTo(NotificationLog.NotificationStatus.SENT);
+        store.shutdown();
+    }
+
+    @Test
+    void theHotWindowHoldsAtMostItsMaxSize() throws Exception {
+        NotificationLogStore store = open(3_600_000, 10, 100);
+        for (int i = 0; i < 100; i++) {
+            store.save(pending("n" + i));
+        }
+
+        waitFor(() -> hotCount(store, 100) <= 10);
+        // Evicted records were archived on their way out
+        assertThat(store.findByQueueId("q1", 1_000)).hasSize(100);
+        assertThat(hotIndex(store, "hotByQueue").get("q1")).hasSizeLessThanOrEqualTo(10);
+        store.shutdown();
+    }
+
+    @Test
+    void aRecordLeavesTheHotWindowAfterItsTtl() throws Exception {
+        NotificationLogStore store = open(50, 1_000, 100);
+        store.save(pending("n1"));
+
+        waitFor(() -> store.findById("n1").isEmpty());
+
+        assertThat(store.findByTicketId("ticket-n1", 10)).hasSize(1);
+        assertThat(hotIndex(store, "hotByTicket")).isEmpty();
+        store.shutdown();
+    }
+
+    @Test
+    void findsRecordsInSealedSegments() throws IOException {
+        NotificationLogStore store = open(3_600_000, 1_000, 10);
+        for (int i = 0; i < 35; i++) {
+            NotificationLog sent = notification("n" + i);
+            sent.setStatus(NotificationLog.NotificationStatus.SENT);
+            store.save(sent);
+        }
+        store.shutdown();
+
+        // Reopened with an empty hot window: everything comes from the archive
+        store = open(3_600_000, 1_000, 10);
+        assertThat(sealedSegments()).hasSize(3);
+        assertThat(store.findByQueueId("q1", 1_000)).hasSize(35);
+        assertThat(store.findByTicketId("ticket-n3", 10)).extracting(NotificationLog::getNotificationId).containsExactly("n3");
+        assertThat(store.findByQueueId("q1", 5)).extracting(NotificationLog::getNotificationId)
+                .containsExactly("n34", "n33", "n32", "n31", "n30");
+        store.shutdown();
+    }
+
+    @Test
+    void recoversFromATornRecordAtTheEndOfTheArchive() throws IOException {
+        NotificationLogStore store = open(3_600_000, 1_000, 100);
+        NotificationLog sent = notification("n1");
+        sent.setStatus(NotificationLog.NotificationStatus.SENT);
+        store.save(sent);
+        store.shutdown();
+        // A crash in the middle of an append: a header promising more bytes than were written
+        Path segment = Files.list(directory).filter(file -> file.toString().endsWith(".log")).findFirst().orElseThrow();
+        Files.write(segment, new byte[]{0, 0, 1, 0, 7, 7, 7}, StandardOpenOption.APPEND);
+        long tornSize = Files.size(segment);
+
+        store = open(3_600_000, 1_000, 100);
+        assertThat(Files.size(segment)).isEqualTo(tornSize - 7);
+        NotificationLog next = notification("n2");
+        next.setStatus(NotificationLog.NotificationStatus.SENT);
+        store.save(next);
+        store.shutdown();
+
+        store = open(3_600_000, 1_000, 100);
+        assertThat(store.findByQueueId("q1", 10)).extracting(NotificationLog::getNotificationId).containsExactlyInAnyOrder("n1", "n2");
+        store.shutdown();
+    }
+
+    @Test
+    void statusUpdatesRacingEvictionsKeepTheHotIndexesConsistent() throws Exception {
+        NotificationLogStore store = open(3_600_000, 5, 1_000);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 2_000; i++) {
+            String notificationId = "n" + i % 50;
+            pool.execute(() -> {
+                store.save(pending(notificationId));
+                store.updateStatus(notification(notificationId), NotificationLog.NotificationStatus.PENDING, null);
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        Cache<String, ?> hot = hot(store);
+        hot.cleanUp();
+
+        // Every record in the hot window can be found through its ticket
+        for (String notificationId : hot.asMap().keySet()) {
+            assertThat(hotIndex(store, "hotByTicket").get("ticket-" + notificationId)).contains(notificationId);
+        }
+        store.shutdown();
+    }
+
+    private NotificationLogStore open() {
+        return open(3_600_000, 1_000, 100);
+    }
+
+    private NotificationLogStore open(long hotTtlMillis, long hotMaxSize, int segmentRecords) {
+        return new NotificationLogStore(new SimpleMeterRegistry(), directory.toString(), hotTtlMillis, hotMaxSize,
+                segmentRecords, 200, 30, 500);
+    }
+
+    private List<Path> sealedSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".tidx")).toList();
+        }
+    }
+
+    private static long hotCount(NotificationLogStore store, int records) {
+        return IntStream.range(0, records).filter(i -> store.findById("n" + i).isPresent()).count();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Cache<String, ?> hot(NotificationLogStore store) {
+        return (Cache<String, ?>) ReflectionTestUtils.getField(store, "hot");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Set<String>> hotIndex(NotificationLogStore store, String field) {
+        return (Map<String, Set<String>>) ReflectionTestUtils.getField(store, field);
+    }
+
+    private static NotificationLog pending(String notificationId) {
+        NotificationLog notification = notification(notificationId);
+        notification.setStatus(NotificationLog.NotificationStatus.PENDING);
+        return notification;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis() < deadline).isTrue();
+            Thread.sleep(5);
+        }
+    }
+
+    private static NotificationLog notification(String notificationId) {
+        return NotificationLog.builder()
+                .notificationId(notificationId)
+                .ticketId("ticket-" + notificationId)
+                .queueId("q1")
+                .channel(NotificationLog.NotificationType.EMAIL)
+                .recipient(notificationId + "@example.com")
+                .message("Your turn is coming")
+                .scheduledAt(Instant.now())
+                .build();
+    }
+}
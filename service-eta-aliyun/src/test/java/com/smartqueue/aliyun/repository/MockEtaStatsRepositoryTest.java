@@ -0,0 +1,53 @@
+package com.smartqueue.aliyun.repository;
+
+import com.smartqueue.aliyun.model.EtaStats;
+import com.smartqueue.aliyun.stats.ServedStatsDelta;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MockEtaStatsRepositoryTest {
+
+    private static final String WINDOW = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH").format(Instant.now().atZone(ZoneOffset.UTC));
+
+    private final MockEtaStatsRepository repository = new MockEtaStatsRepository();
+
+    @Test
+    void everyWriteOfAWindowIncrementsItsVersion() {
+        repository.applyServedDeltas(List.of(delta(2)));
+        assertThat(stored().getVersion()).isEqualTo(1L);
+
+        repository.applyServedDeltas(List.of(delta(3)));
+        repository.updateServiceRate("q1", 1, 1.0, 1.0, 0.3, List.of(), 0);
+
+        EtaStats stats = stored();
+        assertThat(stats.getVersion()).isEqualTo(3L);
+        assertThat(stats.getServedCount()).isEqualTo(6);
+    }
+
+    @Test
+    void aRowWithoutVersionStartsCountingFromIt() {
+        repository.save(EtaStats.builder().queueId("q1").timeWindow(WINDOW).windowStart(Instant.now())
+                .servedCount(10).emaServiceRate(2.0).p50WaitTimeMinutes(0).p90WaitTimeMinutes(0).build());
+
+        repository.applyServedDeltas(List.of(delta(1)));
+
+        assertThat(stored().getVersion()).isEqualTo(1L);
+        assertThat(stored().getServedCount()).isEqualTo(11);
+    }
+
+    private static ServedStatsDelta delta(int served) {
+        ServedStatsDelta delta = new ServedStatsDelta("q1", WINDOW, Instant.now(), 1.0);
+        delta.record(served, 2.0, 0.3, List.of(), 0);
+        return delta;
+    }
+
+    private EtaStats stored() {
+        return repository.findByQueueIdAndTimeWindow("q1", WINDOW).orElseThrow();
+    }
+}
@@ -0,0 +1,79 @@
+package com.smartqueue.aliyun.service;
+
+import com.smartqueue.aliyun.repository.MockEtaStatsRepository;
+import com.smartqueue.aliyun.stats.EtaStatsCache;
+import com.smartqueue.aliyun.stats.RateHistoryStore;
+import com.smartqueue.aliyun.stats.SeasonalityModel;
+import com.smartqueue.aliyun.stats.ServedRateEstimators;
+import com.smartqueue.aliyun.stats.ServedStatsAggregator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.OptionalDouble;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EtaServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MockEtaStatsRepository repository = new MockEtaStatsRepository();
+    private final EtaStatsCache cache = new EtaStatsCache(null, repository, meterRegistry, 100, 15_000, 300_000);
+    private final ServedStatsAggregator aggregator = new ServedStatsAggregator(null, repository, meterRegistry, cache, 0.3, 5_000);
+    private final RateHistoryStore history = new RateHistoryStore(null, repository, aggregator, meterRegistry, 0.3, 365, 21_600_000, 0, 10_000, 3_600_000);
+
+    private volatile OptionalDouble liveRate = OptionalDouble.empty();
+
+    @AfterEach
+    void shutdown() {
+        history.shutdown();
+    }
+
+    @Test
+    void aFlatLiveRateGivesTheEtaOfFactorOne() {
+        liveRate = OptionalDouble.of(2.0);
+        EtaService seasonal = service(0.5);
+        EtaService flat = service(1.0);
+
+        // The live rate already includes the current factor: it must not be applied again
+        for (int position : new int[]{1, 5, 20, 200, 5_000}) {
+            assertThat(seasonal.estimateWaitMinutes("eta-test-queue", position))
+                    .isEqualTo(flat.estimateWaitMinutes("eta-test-queue", position));
+        }
+        assertThat(flat.estimateWaitMinutes("eta-test-queue", 20)).isEqualTo(12); // 20 * 1.05 / 2 * 1.1
+    }
+
+    @Test
+    void theStoredRateIsScaledByTheFactor() {
+        // No live rate and no stats: the default rate (1/min) is the deseasonalized baseline
+        EtaService seasonal = service(0.5);
+
+        assertThat(seasonal.estimateWaitMinutes("eta-test-queue", 10)).isEqualTo(21); // 10 * 1.05 / 0.5
+    }
+
+    private EtaService service(double seasonFactor) {
+        EtaService service = new EtaService(1_000, 1_000, 15_000, 10_000, meterRegistry);
+        ReflectionTestUtils.setField(service, "mockEtaStatsRepository", repository);
+        ReflectionTestUtils.setField(service, "servedStatsAggregator", aggregator);
+        ReflectionTestUtils.setField(service, "etaStatsCache", cache);
+        ReflectionTestUtils.setField(service, "rateHistoryStore", history);
+        ReflectionTestUtils.setField(service, "defaultServiceRate", 1.0);
+        ReflectionTestUtils.setField(service, "seasonalityModel",
+                new SeasonalityModel(null, repository, meterRegistry, true, 20, 0.05, 30_000, 10_000, 3_600_000) {
+                    @Override
+                    public double factor(String queueId, LocalDateTime time) {
+                        return seasonFactor;
+                    }
+                });
+        ReflectionTestUtils.setField(service, "servedRateEstimators",
+                new ServedRateEstimators(meterRegistry, 600_000, 60_000, 1.0, 10_000, 3_600_000) {
+                    @Override
+                    public OptionalDouble ratePerMinute(String queueId) {
+                        return liveRate;
+                    }
+                });
+        return service;
+    }
+}
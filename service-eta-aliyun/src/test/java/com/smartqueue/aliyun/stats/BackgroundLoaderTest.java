@@ -0,0 +1,164 @@
+package com.smartqueue.aliyun.stats;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BackgroundLoaderTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private BackgroundLoader<String> loader;
+
+    @AfterEach
+    void shutdown() {
+        loader.shutdown();
+    }
+
+    @Test
+    void returnsEmptyUntilTheValueIsLoaded() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        loader = loader(60_000, queueId -> {
+            await(release);
+            return "profile-" + queueId;
+        });
+
+        assertThat(loader.get("q1")).isEmpty();
+        release.countDown();
+
+        waitFor(() -> loader.get("q1").isPresent());
+        assertThat(loader.get("q1")).isEqualTo(Optional.of("profile-q1"));
+    }
+
+    @Test
+    void runsOneLoadPerQueueAtATime() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        loader = loader(60_000, queueId -> {
+            await(release);
+            return queueId;
+        });
+
+        for (int i = 0; i < 100; i++) {
+            loader.get("q1");
+        }
+        release.countDown();
+        waitFor(() -> loader.get("q1").isPresent());
+
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void waitsBeforeRetryingAFailedLoad() throws Exception {
+        loader = loader(60_000, queueId -> {
+            throw new IllegalStateException("TableStore unavailable");
+        });
+
+        loader.get("q1");
+        waitFor(() -> failures.get() == 1);
+        for (int i = 0; i < 100; i++) {
+            assertThat(loader.get("q1")).isEmpty();
+        }
+
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void retriesAfterTheDelay() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        loader = loader(0, queueId -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("TableStore unavailable");
+            }
+            return queueId;
+        });
+
+        loader.get("q1");
+        waitFor(() -> failures.get() == 1);
+        waitFor(() -> loader.get("q1").isPresent());
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void keepsAtMostMaxEntriesValues() throws Exception {
+        List<String> evicted = new CopyOnWriteArrayList<>();
+        loader = new BackgroundLoader<>("test-load", 2, 0, 2, 60_000, queueId -> queueId,
+                (queueId, e) -> failures.incrementAndGet(), (queueId, value) -> evicted.add(queueId));
+
+        for (String queueId : List.of("q1", "q2", "q3")) {
+            loader.get(queueId);
+            waitFor(() -> loader.get(queueId).isPresent());
+        }
+
+        assertThat(loader.loaded()).hasSize(2);
+        assertThat(evicted).hasSize(1);
+    }
+
+    @Test
+    void dropsAValueThatWasNotReadForTheIdleExpiry() throws Exception {
+        loader = new BackgroundLoader<>("test-load", 2, 0, 100, 50, queueId -> queueId,
+                (queueId, e) -> failures.incrementAndGet());
+
+        loader.get("q1");
+        waitFor(() -> loader.loaded().containsKey("q1"));
+        Thread.sleep(100);
+
+        assertThat(loader.loaded().get("q1")).isNull();
+    }
+
+    @Test
+    void startsNoLoadWhileTooManyAreWaiting() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        loader = new BackgroundLoader<>("test-load", 1, 0, 10_000, 60_000, queueId -> {
+            loads.incrementAndGet();
+            await(release);
+            return queueId;
+        }, (queueId, e) -> failures.incrementAndGet());
+
+        loader.get("running");
+        waitFor(() -> loads.get() == 1);
+        for (int i = 0; i <= BackgroundLoader.MAX_PENDING_LOADS; i++) {
+            assertThat(loader.get("q" + i)).isEmpty();
+        }
+        release.countDown();
+        String dropped = "q" + BackgroundLoader.MAX_PENDING_LOADS;
+        waitFor(() -> loads.get() == BackgroundLoader.MAX_PENDING_LOADS + 1);
+
+        // Not queued when it was asked for; the next get loads it
+        assertThat(loader.loaded()).doesNotContainKey(dropped);
+        waitFor(() -> loader.get(dropped).isPresent());
+    }
+
+    private BackgroundLoader<String> loader(long retryDelayMillis, Function<String, String> load) {
+        return new BackgroundLoader<>("test-load", 2, retryDelayMillis, 10_000, 60_000, queueId -> {
+            loads.incrementAndGet();
+            return load.apply(queueId);
+        }, (queueId, e) -> failures.incrementAndGet());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis() < deadline).isTrue();
+            Thread.sleep(5);
+        }
+    }
+}
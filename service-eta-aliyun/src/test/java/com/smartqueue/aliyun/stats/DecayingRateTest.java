@@ -0,0 +1,77 @@
+package com.smartqueue.aliyun.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DecayingRateTest {
+
+    @Test
+    void decaysContinuouslyWithTheTimeSinceTheEvent() {
+        DecayingRate rate = new DecayingRate(60_000, 1_000, 0);
+
+        rate.record(60, 0);
+
+        assertThat(rate.decayedCount(0)).isCloseTo(60, within(1e-9));
+        assertThat(rate.decayedCount(60_000)).isCloseTo(60 / Math.E, within(1e-9));
+        assertThat(rate.decayedCount(120_000)).isCloseTo(60 / (Math.E * Math.E), within(1e-9));
+    }
+
+    @Test
+    void aSteadyRateSettlesAtThatRate() {
+        DecayingRate rate = new DecayingRate(60_000, 1_000, 0);
+        for (long t = 0; t <= 600_000; t += 1_000) {
+            rate.record(1, t);
+        }
+
+        assertThat(rate.ratePerMinute(600_000)).isCloseTo(60, within(1.0));
+    }
+
+    @Test
+    void aNewQueueIsNotUnderestimated() {
+        DecayingRate rate = new DecayingRate(600_000, 1_000, 0);
+        for (long t = 0; t < 10_000; t += 1_000) {
+            rate.record(1, t);
+        }
+
+        // Ten seconds observed of a ten-minute tau: a plain count / tau would read 1/min
+        assertThat(rate.ratePerMinute(10_000)).isCloseTo(60, within(6.0));
+    }
+
+    @Test
+    void movingTheLandmarkKeepsTheDecayedCount() {
+        DecayingRate rate = new DecayingRate(1_000, 1_000, 0);
+        double expected = 0;
+        for (long t = 0; t <= 200_000; t += 100) {
+            rate.record(1, t);
+            expected = expected * Math.exp(-100 / 1_000.0) + 1;
+        }
+
+        // 200 taus: the landmark moved several times without the weights overflowing
+        assertThat(rate.decayedCount(200_000)).isCloseTo(expected, within(expected * 1e-9));
+        // Long past the first tau the divisor is tau itself
+        assertThat(rate.ratePerMinute(200_000)).isCloseTo(expected * 60, within(expected * 1e-6));
+    }
+
+    @Test
+    void concurrentRecordsAreAllCounted() throws Exception {
+        DecayingRate rate = new DecayingRate(60_000, 1_000, 0);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    rate.record(1, 1_000);
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(rate.decayedCount(1_000)).isCloseTo(40_000, within(1e-6));
+    }
+}
@@ -0,0 +1,119 @@
+package com.smartqueue.aliyun.stats;
+
+import com.smartqueue.aliyun.model.EtaStats;
+import com.smartqueue.aliyun.repository.MockEtaStatsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EtaStatsCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Map<String, EtaStats> rows = new ConcurrentHashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private volatile boolean readsFail;
+
+    private final MockEtaStatsRepository repository = new MockEtaStatsRepository() {
+        @Override
+        public Optional<EtaStats> findByQueueIdAndTimeWindow(String queueId, String timeWindow) {
+            loads.incrementAndGet();
+            if (readsFail) {
+                throw new RuntimeException("TableStore unavailable");
+            }
+            return Optional.ofNullable(rows.get(queueId));
+        }
+    };
+
+    @Test
+    void repeatedReadsAreServedFromTheCache() {
+        EtaStatsCache cache = cache(60_000, 300_000);
+        rows.put("q1", stats(2.0));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(cache.getLatest("q1")).get().extracting(EtaStats::getEmaServiceRate).isEqualTo(2.0);
+            assertThat(cache.getLatest("q2")).isEmpty();
+        }
+
+        // A missing row is cached too
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void anInvalidatedEntryIsReadAgain() {
+        EtaStatsCache cache = cache(60_000, 300_000);
+        rows.put("q1", stats(2.0));
+        cache.getLatest("q1");
+
+        rows.put("q1", stats(3.0));
+        cache.invalidateLatest("q1");
+
+        assertThat(cache.getLatest("q1")).get().extracting(EtaStats::getEmaServiceRate).isEqualTo(3.0);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void aReadErrorGivesDefaultsAndIsNotCached() {
+        EtaStatsCache cache = cache(60_000, 300_000);
+        rows.put("q1", stats(2.0));
+        readsFail = true;
+
+        assertThat(cache.getLatest("q1")).isEmpty();
+        readsFail = false;
+
+        assertThat(cache.getLatest("q1")).isPresent();
+        assertThat(meterRegistry.counter("smartqueue.eta.stats.cache.load.failures").count()).isEqualTo(1);
+    }
+
+    @Test
+    void aStaleEntryIsServedWhileItReloadsInTheBackground() throws Exception {
+        EtaStatsCache cache = cache(50, 300_000);
+        rows.put("q1", stats(2.0));
+        cache.getLatest("q1");
+        Thread.sleep(100);
+        rows.put("q1", stats(3.0));
+
+        // The read that finds it stale still gets the cached value
+        assertThat(cache.getLatest("q1")).get().extracting(EtaStats::getEmaServiceRate).isEqualTo(2.0);
+
+        waitFor(() -> cache.getLatest("q1").map(EtaStats::getEmaServiceRate).orElse(0.0) == 3.0);
+    }
+
+    @Test
+    void aFailedReloadKeepsTheOldValueUntilTheMaxStaleness() throws Exception {
+        EtaStatsCache cache = cache(50, 1_000);
+        rows.put("q1", stats(2.0));
+        cache.getLatest("q1");
+        Thread.sleep(100);
+        readsFail = true;
+
+        cache.getLatest("q1");
+        waitFor(() -> loads.get() >= 2);
+        assertThat(cache.getLatest("q1")).get().extracting(EtaStats::getEmaServiceRate).isEqualTo(2.0);
+
+        // No successful load for max-stale-ms: the entry expires and defaults are used
+        waitFor(() -> cache.getLatest("q1").isEmpty());
+    }
+
+    private EtaStatsCache cache(long refreshAfterMs, long maxStaleMs) {
+        return new EtaStatsCache(null, repository, meterRegistry, 1_000, refreshAfterMs, maxStaleMs);
+    }
+
+    private static EtaStats stats(double emaServiceRate) {
+        return EtaStats.builder().queueId("q1").emaServiceRate(emaServiceRate).build();
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis() < deadline).isTrue();
+            Thread.sleep(5);
+        }
+    }
+}
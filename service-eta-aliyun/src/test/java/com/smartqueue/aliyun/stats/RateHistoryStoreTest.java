@@ -0,0 +1,102 @@
+package com.smartqueue.aliyun.stats;
+
+import com.smartqueue.aliyun.model.EtaStats;
+import com.smartqueue.aliyun.repository.MockEtaStatsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class RateHistoryStoreTest {
+
+    private static final DateTimeFormatter TIME_WINDOW = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH").withZone(ZoneOffset.UTC);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MockEtaStatsRepository repository = new MockEtaStatsRepository();
+    private final ServedStatsAggregator aggregator = new ServedStatsAggregator(null, repository, meterRegistry,
+            new EtaStatsCache(null, repository, meterRegistry, 100, 15_000, 300_000), 0.3, 5_000);
+    private final RateHistoryStore store = new RateHistoryStore(null, repository, aggregator, meterRegistry, 0.3, 365, 21_600_000, 0, 10_000, 3_600_000);
+
+    @AfterEach
+    void shutdown() {
+        store.shutdown();
+    }
+
+    @Test
+    void anEventRecordedBeforeTheLoadIsNotCountedTwice() throws Exception {
+        // Synchronous mode: the stats row is written first, then the history is told
+        Instant now = Instant.now();
+        repository.save(row(TIME_WINDOW.format(now), 5, 2.0));
+        store.record("q1", 5, now.toEpochMilli(), 2.0);
+
+        awaitLoaded("q1");
+        store.record("q1", 2, now.toEpochMilli(), 2.0);
+
+        assertThat(servedInCurrentHour("q1")).isEqualTo(7L);
+    }
+
+    @Test
+    void lookupsDoNotWaitForTheLoad() {
+        // The first lookup of a queue starts its load and returns without it
+        assertThat(store.latestEma("q1")).isEmpty();
+        assertThatThrownBy(() -> store.range("q2", RateHistory.Resolution.HOUR, Instant.now().minus(Duration.ofHours(1)), Instant.now()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void theLoadIncludesBufferedWriteBehindEvents() throws Exception {
+        aggregator.record("q1", 4, 3.0, 3.0, List.of(), 0);
+
+        awaitLoaded("q1");
+
+        assertThat(servedInCurrentHour("q1")).isEqualTo(4L);
+        assertThat(store.latestEma("q1").orElseThrow()).isCloseTo(3.0, within(1e-9));
+    }
+
+    @Test
+    void dayRangesReadOlderRowsOnDemand() throws Exception {
+        Instant tenDaysAgo = Instant.now().minus(Duration.ofDays(10));
+        repository.save(row(TIME_WINDOW.format(tenDaysAgo), 8, 1.0));
+        awaitLoaded("q1");
+
+        assertThat(store.range("q1", RateHistory.Resolution.HOUR, tenDaysAgo.minus(Duration.ofHours(1)), Instant.now())).isEmpty();
+        List<RateHistory.Point> days = store.range("q1", RateHistory.Resolution.DAY, Instant.now().minus(Duration.ofDays(30)), Instant.now());
+
+        assertThat(days).hasSize(1);
+        assertThat(days.get(0).served()).isEqualTo(8L);
+    }
+
+    private void awaitLoaded(String queueId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (true) {
+            try {
+                store.range(queueId, RateHistory.Resolution.HOUR, Instant.now(), Instant.now().plusSeconds(1));
+                return;
+            } catch (IllegalStateException e) {
+                assertThat(System.currentTimeMillis() < deadline).isTrue();
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private long servedInCurrentHour(String queueId) {
+        Instant hour = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        List<RateHistory.Point> points = store.range(queueId, RateHistory.Resolution.HOUR, hour, hour.plus(Duration.ofHours(1)));
+        return points.isEmpty() ? 0 : points.get(0).served();
+    }
+
+    private static EtaStats row(String timeWindow, int served, double ema) {
+        return EtaStats.builder().queueId("q1").timeWindow(timeWindow).windowStart(Instant.now())
+                .servedCount(served).emaServiceRate(ema).p50WaitTimeMinutes(3).p90WaitTimeMinutes(5).build();
+    }
+}
@@ -0,0 +1,67 @@
+package com.smartqueue.aliyun.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RelaySequencesTest {
+
+    @Test
+    void skipsEventsAtOrBelowTheStoredSequence() {
+        RelaySequences sequences = new RelaySequences(queueId -> 10);
+        List<Long> applied = new ArrayList<>();
+
+        assertThat(sequences.applyOnce("q1", 9, () -> applied.add(9L))).isFalse();
+        assertThat(sequences.applyOnce("q1", 10, () -> applied.add(10L))).isFalse();
+        assertThat(sequences.applyOnce("q1", 11, () -> applied.add(11L))).isTrue();
+        assertThat(sequences.applyOnce("q1", 11, () -> applied.add(11L))).isFalse();
+
+        assertThat(applied).containsExactly(11L);
+    }
+
+    @Test
+    void loadsEachQueueOnce() {
+        AtomicInteger loads = new AtomicInteger();
+        RelaySequences sequences = new RelaySequences(queueId -> {
+            loads.incrementAndGet();
+            return 0;
+        });
+
+        sequences.applyOnce("q1", 1, () -> { });
+        sequences.applyOnce("q1", 2, () -> { });
+        sequences.applyOnce("q2", 1, () -> { });
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void failedApplyLeavesTheSequenceForTheResend() {
+        RelaySequences sequences = new RelaySequences(queueId -> 0);
+
+        assertThatThrownBy(() -> sequences.applyOnce("q1", 1, () -> {
+            throw new IllegalStateException("stats write failed");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(sequences.applyOnce("q1", 1, () -> { })).isTrue();
+    }
+
+    @Test
+    void failedLoadIsRetriedOnTheNextEvent() {
+        AtomicInteger loads = new AtomicInteger();
+        RelaySequences sequences = new RelaySequences(queueId -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("TableStore unavailable");
+            }
+            return 5;
+        });
+
+        assertThatThrownBy(() -> sequences.applyOnce("q1", 5, () -> { })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(sequences.applyOnce("q1", 5, () -> { })).isFalse();
+    }
+}
@@ -0,0 +1,80 @@
+package com.smartqueue.aliyun.stats;
+
+import com.smartqueue.aliyun.repository.MockEtaStatsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SeasonalityModelTest {
+
+    // A Monday, 10:00-10:15
+    private static final LocalDateTime SLOT = LocalDateTime.of(2026, 10, 19, 10, 5);
+
+    private final MockEtaStatsRepository repository = new MockEtaStatsRepository();
+    private SeasonalityModel model;
+
+    @AfterEach
+    void shutdown() {
+        model.persistOnShutdown();
+    }
+
+    @Test
+    void keepsTheLearningOfAnEvictedProfileUntilItIsPersisted() throws Exception {
+        model = new SeasonalityModel(null, repository, new SimpleMeterRegistry(), true, 20, 0.05, 30_000, 1, 3_600_000);
+        learn("q1");
+
+        // Loading q2 evicts q1 before anything was written
+        model.factor("q2", SLOT);
+        waitFor(() -> repository.findSeasonalityProfile("q1").isEmpty() && loaded("q2"));
+        model.persist();
+
+        assertThat(repository.findSeasonalityProfile("q1")).isPresent();
+    }
+
+    @Test
+    void aReloadTakesBackTheUnsavedProfile() throws Exception {
+        model = new SeasonalityModel(null, repository, new SimpleMeterRegistry(), true, 20, 0.05, 30_000, 1, 3_600_000);
+        double learned = learn("q1");
+        model.factor("q2", SLOT);
+        waitFor(() -> loaded("q2"));
+
+        model.factor("q1", SLOT);
+        waitFor(() -> loaded("q1"));
+
+        // The stored copy was never written, so this can only be the evicted profile
+        assertThat(repository.findSeasonalityProfile("q1")).isEmpty();
+        assertThat(model.factor("q1", SLOT)).isEqualTo(learned);
+    }
+
+    // Teaches q1 a slow 10:00 slot among fast ones; returns the learned factor
+    private double learn(String queueId) throws InterruptedException {
+        model.factor(queueId, SLOT);
+        waitFor(() -> loaded(queueId));
+        for (int i = 0; i < 50; i++) {
+            model.record(queueId, SLOT, 1.0);
+            model.record(queueId, SLOT.plusHours(2), 4.0);
+        }
+        double learned = model.factor(queueId, SLOT);
+        assertThat(learned).isNotEqualTo(SeasonalityProfile.priorFactor(SeasonalityProfile.slotOf(SLOT)));
+        return learned;
+    }
+
+    private boolean loaded(String queueId) {
+        BackgroundLoader<?> profiles = (BackgroundLoader<?>) ReflectionTestUtils.getField(model, "profiles");
+        return profiles.loaded().containsKey(queueId);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis() < deadline).isTrue();
+            Thread.sleep(5);
+        }
+    }
+}
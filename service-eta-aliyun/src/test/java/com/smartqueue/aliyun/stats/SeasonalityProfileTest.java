@@ -0,0 +1,83 @@
+package com.smartqueue.aliyun.stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class SeasonalityProfileTest {
+
+    // 2024-01-01 is a Monday
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Test
+    void slotsAreFifteenMinutesOfTheWeekFromMonday() {
+        assertThat(SeasonalityProfile.slotOf(MONDAY)).isEqualTo(0);
+        assertThat(SeasonalityProfile.slotOf(MONDAY.plusMinutes(14))).isEqualTo(0);
+        assertThat(SeasonalityProfile.slotOf(MONDAY.plusMinutes(15))).isEqualTo(1);
+        assertThat(SeasonalityProfile.slotOf(MONDAY.plusDays(1).plusHours(9))).isEqualTo(SeasonalityProfile.SLOTS_PER_DAY + 36);
+        assertThat(SeasonalityProfile.slotOf(MONDAY.plusDays(7).minusMinutes(1))).isEqualTo(SeasonalityProfile.SLOTS - 1);
+        assertThat(SeasonalityProfile.slotOf(MONDAY.plusDays(7))).isEqualTo(0);
+    }
+
+    @Test
+    void anUnlearnedSlotUsesThePrior() {
+        SeasonalityProfile profile = new SeasonalityProfile();
+        profile.record(10, 3.0, 0.05);
+
+        assertThat(profile.factor(11, 20)).isEqualTo(SeasonalityProfile.priorFactor(11));
+    }
+
+    @Test
+    void aSlotBlendsItsLearnedRatioWithThePriorBySampleCount() {
+        SeasonalityProfile profile = new SeasonalityProfile();
+        for (int i = 0; i < 20; i++) {
+            profile.record(10, 4.0, 0.05);
+            profile.record(50, 2.0, 0.05);
+        }
+
+        // Slot 10 serves 4/min against a queue-wide 3/min; 20 samples against a prior weight of 20
+        assertThat(profile.factor(10, 0)).isCloseTo(4.0 / 3, within(1e-6));
+        assertThat(profile.factor(10, 20)).isCloseTo(0.5 * 4.0 / 3 + 0.5 * SeasonalityProfile.priorFactor(10), within(1e-6));
+        assertThat(profile.factor(50, 0)).isCloseTo(2.0 / 3, within(1e-6));
+    }
+
+    @Test
+    void aWellSampledSlotFollowsDrift() {
+        SeasonalityProfile profile = new SeasonalityProfile();
+        for (int i = 0; i < 1_000; i++) {
+            profile.record(10, 2.0, 0.05);
+        }
+        for (int i = 0; i < 200; i++) {
+            profile.record(10, 4.0, 0.05);
+        }
+
+        // The slot is back at 4/min while the queue-wide average (7/3) lags behind
+        assertThat(profile.factor(10, 0)).isCloseTo(4.0 / (7.0 / 3), within(0.01));
+    }
+
+    @Test
+    void survivesAnEncodeDecodeRoundTrip() {
+        SeasonalityProfile profile = new SeasonalityProfile();
+        for (int i = 0; i < 30; i++) {
+            profile.record(i % 3, 1.0 + i % 3, 0.05);
+        }
+
+        SeasonalityProfile decoded = SeasonalityProfile.decode(profile.encode());
+
+        for (int slot = 0; slot < 4; slot++) {
+            assertThat(decoded.factor(slot, 20)).isEqualTo(profile.factor(slot, 20));
+        }
+    }
+
+    @Test
+    void rejectsAnotherFormat() {
+        byte[] encoded = new SeasonalityProfile().encode();
+        encoded[0] = 2;
+
+        assertThatThrownBy(() -> SeasonalityProfile.decode(encoded)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,71 @@
+package com.smartqueue.aliyun.stats;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ServedRateEstimatorsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void estimatesASteadyRate() {
+        ServedRateEstimators estimators = estimators(10_000, 3_600_000);
+        long now = System.currentTimeMillis();
+
+        // One customer every 6 s for 10 minutes: 10 per minute
+        for (int i = 100; i >= 0; i--) {
+            estimators.record("q1", 1, now - i * 6_000L);
+        }
+
+        assertThat(estimators.ratePerMinute("q1").orElseThrow()).isCloseTo(10.0, within(1.0));
+    }
+
+    @Test
+    void reportsNothingWithoutEnoughRecentCustomers() {
+        ServedRateEstimators estimators = estimators(10_000, 3_600_000);
+
+        // One customer two hours ago has decayed far below min-decayed-count
+        estimators.record("q1", 1, System.currentTimeMillis() - 7_200_000);
+
+        assertThat(estimators.ratePerMinute("q1")).isEmpty();
+        assertThat(estimators.ratePerMinute("unknown")).isEmpty();
+    }
+
+    @Test
+    void keepsAtMostMaxQueuesEstimators() throws Exception {
+        ServedRateEstimators estimators = estimators(10, 3_600_000);
+
+        for (int i = 0; i < 1_000; i++) {
+            estimators.record("q" + i, 1, System.currentTimeMillis());
+        }
+
+        waitFor(() -> meterRegistry.get("smartqueue.eta.rate.queues").gauge().value() <= 10);
+    }
+
+    @Test
+    void dropsAnEstimatorWithoutEvents() throws Exception {
+        ServedRateEstimators estimators = estimators(10_000, 50);
+        estimators.record("q1", 5, System.currentTimeMillis());
+        assertThat(estimators.ratePerMinute("q1")).isPresent();
+
+        // Reads do not keep it
+        waitFor(() -> estimators.ratePerMinute("q1").isEmpty());
+    }
+
+    private ServedRateEstimators estimators(long maxQueues, long idleExpiryMillis) {
+        return new ServedRateEstimators(meterRegistry, 600_000, 60_000, 1.0, maxQueues, idleExpiryMillis);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis() < deadline).isTrue();
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.smartqueue.aliyun.stats;
+
+import com.smartqueue.aliyun.model.EtaStats;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ServedStatsDeltaTest {
+
+    private static final double ALPHA = 0.3;
+
+    @Test
+    void foldedEventsMatchApplyingThemOneByOne() {
+        EtaStats stored = EtaStats.builder().queueId("q1").timeWindow("2026-01-01T10")
+                .servedCount(10).emaServiceRate(2.0).p50WaitTimeMinutes(3).p90WaitTimeMinutes(5).build();
+        ServedStatsDelta first = delta();
+        first.record(2, 4.0, ALPHA, List.of(), 0);
+        ServedStatsDelta second = delta();
+        second.record(3, 1.0, ALPHA, List.of(), 0);
+        first.append(second);
+
+        double expected = 2.0;
+        for (double rate : new double[]{4.0, 1.0}) {
+            expected = (1 - ALPHA) * expected + ALPHA * rate;
+        }
+        EtaStats updated = first.applyTo(stored);
+        assertThat(updated.getEmaServiceRate()).isCloseTo(expected, within(1e-9));
+        assertThat(updated.getServedCount()).isEqualTo(15);
+    }
+
+    @Test
+    void keepsTheHighestRelaySequence() {
+        ServedStatsDelta delta = delta();
+        delta.record(1, 1.0, ALPHA, List.of(), 7);
+        ServedStatsDelta newer = delta();
+        newer.record(1, 1.0, ALPHA, List.of(), 0); // legacy event without a sequence
+        delta.append(newer);
+
+        assertThat(delta.applyTo(null).getRelaySequence()).isEqualTo(7L);
+        EtaStats ahead = delta.applyTo(null).toBuilder().relaySequence(9L).build();
+        assertThat(delta.applyTo(ahead).getRelaySequence()).isEqualTo(9L);
+    }
+
+    private static ServedStatsDelta delta() {
+        return new ServedStatsDelta("q1", "2026-01-01T10", Instant.parse("2026-01-01T10:00:00Z"), 2.0);
+    }
+}
@@ -0,0 +1,100 @@
+package com.smartqueue.aliyun.stats;
+
+import com.smartqueue.aliyun.model.EtaStats;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class WaitTimeSketchTest {
+
+    @Test
+    void percentilesAreWithinOnePercent() {
+        WaitTimeSketch sketch = new WaitTimeSketch();
+        for (int seconds = 1; seconds <= 60_000; seconds++) {
+            sketch.record(seconds);
+        }
+
+        // True p50 is 30000s (500 min), p90 54000s (900 min)
+        assertThat(sketch.quantileMinutes(0.5)).isCloseTo(500, within(5));
+        assertThat(sketch.quantileMinutes(0.9)).isCloseTo(900, within(9));
+    }
+
+    @Test
+    void mergedSketchesMatchOneSketchOfAllWaits() {
+        WaitTimeSketch all = new WaitTimeSketch();
+        WaitTimeSketch first = new WaitTimeSketch();
+        WaitTimeSketch second = new WaitTimeSketch();
+        for (int seconds = 1; seconds <= 20_000; seconds++) {
+            all.record(seconds);
+            (seconds % 3 == 0 ? first : second).record(seconds);
+        }
+
+        first.merge(second);
+
+        assertThat(first.count()).isEqualTo(all.count());
+        for (double quantile : new double[]{0.1, 0.5, 0.9, 0.99}) {
+            assertThat(first.quantileMinutes(quantile)).isEqualTo(all.quantileMinutes(quantile));
+        }
+    }
+
+    @Test
+    void flushesAccumulateInTheStoredSketch() {
+        EtaStats stats = EtaStats.builder().queueId("q1").p50WaitTimeMinutes(15).p90WaitTimeMinutes(30).build();
+        WaitTimeSketch shortWaits = new WaitTimeSketch();
+        for (int i = 0; i < 90; i++) {
+            shortWaits.record(60);
+        }
+        WaitTimeSketch longWaits = new WaitTimeSketch();
+        for (int i = 0; i < 10; i++) {
+            longWaits.record(3_600);
+        }
+
+        WaitTimeSketch.mergeInto(stats, shortWaits);
+        assertThat(stats.getP90WaitTimeMinutes()).isEqualTo(1);
+        WaitTimeSketch.mergeInto(stats, longWaits);
+
+        // Both flushes count: the second one alone would put p50 at an hour
+        assertThat(stats.getP50WaitTimeMinutes()).isEqualTo(1);
+        assertThat(WaitTimeSketch.decode(stats.getWaitSketch()).count()).isEqualTo(100);
+        assertThat(WaitTimeSketch.decode(stats.getWaitSketch()).quantileMinutes(0.95)).isCloseTo(60, within(1));
+    }
+
+    @Test
+    void anEmptyFlushKeepsTheDefaultPercentiles() {
+        EtaStats stats = EtaStats.builder().queueId("q1").p50WaitTimeMinutes(15).p90WaitTimeMinutes(30).build();
+
+        WaitTimeSketch.mergeInto(stats, new WaitTimeSketch());
+
+        assertThat(stats.getP50WaitTimeMinutes()).isEqualTo(15);
+        assertThat(stats.getWaitSketch()).isNull();
+    }
+
+    @Test
+    void survivesAnEncodeDecodeRoundTrip() {
+        WaitTimeSketch sketch = new WaitTimeSketch();
+        for (int seconds = 30; seconds <= 3_000; seconds += 30) {
+            sketch.record(seconds);
+        }
+
+        WaitTimeSketch decoded = WaitTimeSketch.decode(sketch.encode());
+
+        assertThat(decoded.count()).isEqualTo(100);
+        assertThat(decoded.quantileMinutes(0.9)).isEqualTo(sketch.quantileMinutes(0.9));
+        assertThat(WaitTimeSketch.decode(null).isEmpty()).isTrue();
+        assertThatThrownBy(() -> WaitTimeSketch.decode(new byte[]{1, 2, 3})).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void clampsWaitsOutsideTheTrackableRange() {
+        WaitTimeSketch sketch = new WaitTimeSketch();
+
+        sketch.record(-5);
+        sketch.record(30L * 24 * 3600);
+
+        assertThat(sketch.count()).isEqualTo(2);
+        assertThat(sketch.quantileMinutes(0.0)).isEqualTo(1);
+        assertThat(sketch.quantileMinutes(1.0)).isCloseTo(7 * 24 * 60, within(7 * 24 * 60 / 100));
+    }
+}
@@ -0,0 +1,41 @@
+package com.smartqueue.aws.cluster;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Read-only view of the cluster: members, their share of the ring and queue owners.
+ */
+@RestController
+@RequestMapping("/cluster")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.cluster.enabled", havingValue = "true")
+public class ClusterController {
+
+    private final ClusterMembership membership;
+
+    @GetMapping("/members")
+    public Map<String, Object> getMembers() {
+        return Map.of(
+                "self", membership.getSelfId(),
+                "members", membership.getMembers().values(),
+                "ownership", membership.getRing().ownershipShares());
+    }
+
+    @GetMapping("/owner/{queueId}")
+    public Map<String, Object> getOwner(@PathVariable String queueId) {
+        String owner = membership.getRing().getNodeIds().isEmpty()
+                ? membership.getSelfId()
+                : membership.getRing().ownerOf(queueId);
+        return Map.of(
+                "queueId", queueId,
+                "owner", owner,
+                "local", membership.getSelfId().equals(owner));
+    }
+}
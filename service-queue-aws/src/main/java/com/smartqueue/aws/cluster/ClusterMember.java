@@ -0,0 +1,7 @@
+package com.smartqueue.aws.cluster;
+
+/**
+ * A queue-service node: its id on the hash ring and the base URL requests are forwarded to.
+ */
+public record ClusterMember(String id, String baseUrl) {
+}
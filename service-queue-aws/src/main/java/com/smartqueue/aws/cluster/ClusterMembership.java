@@ -0,0 +1,129 @@
+package com.smartqueue.aws.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Cluster membership and the queue ownership ring (app.cluster.enabled=true).
+ *
+ * Members come from app.cluster.members ("id=url,...") plus, as a stand-in for a discovery
+ * service, app.cluster.members-file: one "id=url" per line, re-read every
+ * app.cluster.discovery-refresh-ms. Editing the file adds or removes nodes at runtime; every
+ * node reading the same list builds the same ring.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.cluster.enabled", havingValue = "true")
+public class ClusterMembership {
+
+    private final String selfId;
+    private final int virtualNodes;
+    private final Map<String, ClusterMember> staticMembers;
+    private final Path membersFile;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private volatile Map<String, ClusterMember> members = Map.of();
+    private volatile ConsistentHashRing ring;
+
+    public ClusterMembership(@Value("${app.cluster.self-id}") String selfId,
+                             @Value("${app.cluster.virtual-nodes:128}") int virtualNodes,
+                             @Value("${app.cluster.members:}") String staticMembers,
+                             @Value("${app.cluster.members-file:}") String membersFile,
+                             ApplicationEventPublisher eventPublisher) {
+        this.selfId = selfId;
+        this.virtualNodes = virtualNodes;
+        this.staticMembers = parse(Arrays.stream(staticMembers.split(",")));
+        this.membersFile = membersFile.isBlank() ? null : Path.of(membersFile);
+        this.eventPublisher = eventPublisher;
+        this.ring = new ConsistentHashRing(List.of(), virtualNodes);
+        refresh();
+    }
+
+    public String getSelfId() {
+        return selfId;
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    public Map<String, ClusterMember> getMembers() {
+        return members;
+    }
+
+    public boolean isOwnedLocally(String queueId) {
+        ConsistentHashRing current = ring;
+        return current.getNodeIds().isEmpty() || selfId.equals(current.ownerOf(queueId));
+    }
+
+    /**
+     * Owner of the queue when it is another node; empty when this node owns it.
+     */
+    public Optional<ClusterMember> remoteOwnerOf(String queueId) {
+        if (isOwnedLocally(queueId)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(members.get(ring.ownerOf(queueId)));
+    }
+
+    @Scheduled(fixedDelayString = "${app.cluster.discovery-refresh-ms:5000}")
+    public synchronized void refresh() {
+        Map<String, ClusterMember> discovered = new LinkedHashMap<>(staticMembers);
+        if (membersFile != null) {
+            try (Stream<String> lines = Files.lines(membersFile)) {
+                discovered.putAll(parse(lines));
+            } catch (IOException | IllegalArgumentException e) {
+                // Keep the current view: a missing or half-written file must not empty the ring
+                log.warn("Could not read cluster members file: {} ({})", membersFile, e.getMessage());
+                return;
+            }
+        }
+        if (discovered.equals(members)) {
+            return;
+        }
+
+        if (!discovered.containsKey(selfId)) {
+            log.warn("This node ({}) is not in the cluster member list; it will forward every queue", selfId);
+        }
+        ConsistentHashRing previous = ring;
+        ConsistentHashRing current = new ConsistentHashRing(discovered.keySet(), virtualNodes);
+        members = Map.copyOf(discovered);
+        ring = current;
+        log.info("Cluster membership changed: {} -> {} (ownership: {})",
+                previous.getNodeIds(), current.getNodeIds(), current.ownershipShares());
+        // The initial view (built during startup) moves nothing
+        if (!previous.getNodeIds().isEmpty()) {
+            eventPublisher.publishEvent(new QueueOwnershipChangedEvent(this, previous, current, selfId));
+        }
+    }
+
+    private static Map<String, ClusterMember> parse(Stream<String> entries) {
+        Map<String, ClusterMember> parsed = new LinkedHashMap<>();
+        entries.map(String::trim)
+                .filter(entry -> !entry.isEmpty() && !entry.startsWith("#"))
+                .forEach(entry -> {
+                    int separator = entry.indexOf('=');
+                    if (separator <= 0) {
+                        throw new IllegalArgumentException("Cluster members must be id=url, got: " + entry);
+                    }
+                    String id = entry.substring(0, separator).trim();
+                    String url = entry.substring(separator + 1).trim();
+                    parsed.put(id, new ClusterMember(id, url.endsWith("/") ? url.substring(0, url.length() - 1) : url));
+                });
+        return parsed;
+    }
+}
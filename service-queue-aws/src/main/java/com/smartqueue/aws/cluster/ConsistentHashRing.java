@@ -0,0 +1,84 @@
+package com.smartqueue.aws.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable consistent-hash ring mapping queue ids to node ids.
+ *
+ * Each node is placed at {@code virtualNodes} points (MD5 of "nodeId#i"); a queue belongs to the
+ * first point at or after its own hash. Adding or removing a node only moves the queues whose
+ * points fall next to that node's points - about 1/N of them - and the virtual nodes keep the
+ * share of each node close to even.
+ */
+public final class ConsistentHashRing {
+
+    private final NavigableMap<Long, String> points;
+    private final Set<String> nodeIds;
+
+    public ConsistentHashRing(Collection<String> nodeIds, int virtualNodes) {
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String nodeId : nodeIds) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On a (very unlikely) collision the smaller id wins, so every node builds the same ring
+                ring.merge(hash(nodeId + "#" + i), nodeId, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+        this.points = ring;
+        this.nodeIds = Set.copyOf(nodeIds);
+    }
+
+    public String ownerOf(String queueId) {
+        if (points.isEmpty()) {
+            throw new IllegalStateException("Cluster ring has no members");
+        }
+        Map.Entry<Long, String> point = points.ceilingEntry(hash(queueId));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    public Set<String> getNodeIds() {
+        return nodeIds;
+    }
+
+    /**
+     * Share of the hash space owned by each node, for the membership endpoint and logs.
+     */
+    public Map<String, Double> ownershipShares() {
+        Map<String, Long> spans = new TreeMap<>();
+        Long previous = points.isEmpty() ? null : points.lastKey();
+        for (Map.Entry<Long, String> point : points.entrySet()) {
+            // Distance from the previous point modulo 2^64 (read as unsigned), wrapping around the ring
+            spans.merge(point.getValue(), point.getKey() - previous, Long::sum);
+            previous = point.getKey();
+        }
+        return spans.entrySet().stream().collect(Collectors.toMap(
+                Map.Entry::getKey,
+                entry -> nodeIds.size() == 1 ? 1.0 : unsignedToDouble(entry.getValue()) / Math.pow(2, 64),
+                (a, b) -> a,
+                TreeMap::new));
+    }
+
+    private static double unsignedToDouble(long value) {
+        return (double) (value >>> 1) * 2.0 + (value & 1);
+    }
+
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
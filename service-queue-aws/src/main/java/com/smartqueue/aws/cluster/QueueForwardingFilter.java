@@ -0,0 +1,157 @@
+package com.smartqueue.aws.cluster;
+
+import com.smartqueue.aws.config.SecurityConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Forwards /queues/{queueId}/... requests to the node owning the queue, so per-queue state
+ * (snapshots, versions, long-poll waiters, in-memory repositories) lives on exactly one node.
+ *
+ * A forwarded request carries X-SmartQueue-Forwarded-By and is always handled where it lands,
+ * so nodes with briefly different member lists cannot bounce a request around. The header is
+ * only honoured together with app.internal.token in X-Internal-Token, which the forwarding node
+ * adds; from a client it is ignored and the request is routed to the owner. If the owner is
+ * unreachable, reads are served locally (storage is shared); writes fail with 502 because their
+ * body has already been streamed to the owner.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.cluster.enabled", havingValue = "true")
+public class QueueForwardingFilter implements WebFilter, Ordered {
+
+    static final String FORWARDED_BY_HEADER = "X-SmartQueue-Forwarded-By";
+
+    private static final String QUEUES_PREFIX = "/queues/";
+    // /queues/{x} routes that are not about a single queue
+    private static final Set<String> NON_QUEUE_SEGMENTS = Set.of("summaries", "tickets", "test");
+    private static final Set<HttpMethod> SAFE_METHODS = Set.of(HttpMethod.GET, HttpMethod.HEAD);
+
+    private final ClusterMembership membership;
+    private final WebClient forwardingClient;
+    private final MeterRegistry meterRegistry;
+    private final Duration forwardTimeout;
+    private final Duration longPollForwardTimeout;
+    private final String internalToken;
+
+    public QueueForwardingFilter(ClusterMembership membership,
+                                 WebClient.Builder webClientBuilder,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.cluster.forward-timeout-ms:5000}") long forwardTimeoutMs,
+                                 @Value("${app.longpoll.max-timeout-ms:60000}") long longPollMaxTimeoutMs,
+                                 @Value("${app.internal.token:}") String internalToken) {
+        this.membership = membership;
+        this.forwardingClient = webClientBuilder.build();
+        this.meterRegistry = meterRegistry;
+        this.forwardTimeout = Duration.ofMillis(forwardTimeoutMs);
+        this.longPollForwardTimeout = Duration.ofMillis(longPollMaxTimeoutMs + forwardTimeoutMs);
+        this.internalToken = internalToken;
+        if (internalToken.isEmpty()) {
+            log.warn("app.internal.token is empty: other nodes will not accept the requests this node forwards");
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        // Before routing, after Spring Security's WebFilterChainProxy (-100)
+        return 0;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (request.getHeaders().containsKey(FORWARDED_BY_HEADER)) {
+            if (SecurityConfig.isInternalToken(internalToken, request.getHeaders().getFirst(SecurityConfig.INTERNAL_TOKEN_HEADER))) {
+                return chain.filter(exchange);
+            }
+            // Not from a node: routed like any client request
+            record("untrusted");
+        }
+        Optional<ClusterMember> owner = queueIdOf(request.getPath().pathWithinApplication().value())
+                .flatMap(membership::remoteOwnerOf);
+        if (owner.isEmpty()) {
+            return chain.filter(exchange);
+        }
+        return forward(exchange, owner.get())
+                .onErrorResume(e -> {
+                    ServerHttpResponse response = exchange.getResponse();
+                    if (SAFE_METHODS.contains(request.getMethod()) && !response.isCommitted()) {
+                        log.warn("Owner {} unreachable for {}, serving locally: {}", owner.get().id(), request.getPath(), e.toString());
+                        record("local_fallback");
+                        return chain.filter(exchange);
+                    }
+                    log.error("Failed to forward {} {} to owner {}", request.getMethod(), request.getPath(), owner.get().id(), e);
+                    record("failure");
+                    if (!response.isCommitted()) {
+                        response.setStatusCode(HttpStatus.BAD_GATEWAY);
+                    }
+                    return response.setComplete();
+                });
+    }
+
+    private Mono<Void> forward(ServerWebExchange exchange, ClusterMember owner) {
+        ServerHttpRequest request = exchange.getRequest();
+        String uri = owner.baseUrl() + request.getURI().getRawPath()
+                + (request.getURI().getRawQuery() != null ? "?" + request.getURI().getRawQuery() : "");
+        boolean longPoll = request.getPath().value().endsWith("/status/poll");
+
+        return forwardingClient
+                .method(request.getMethod())
+                .uri(uri)
+                .headers(headers -> {
+                    headers.addAll(request.getHeaders());
+                    headers.remove(HttpHeaders.HOST);
+                    headers.set(FORWARDED_BY_HEADER, membership.getSelfId());
+                    headers.set(SecurityConfig.INTERNAL_TOKEN_HEADER, internalToken);
+                })
+                .body(BodyInserters.fromDataBuffers(request.getBody()))
+                .exchangeToMono(ownerResponse -> {
+                    ServerHttpResponse response = exchange.getResponse();
+                    response.setStatusCode(ownerResponse.statusCode());
+                    response.getHeaders().putAll(ownerResponse.headers().asHttpHeaders());
+                    response.getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+                    record("forwarded");
+                    return response.writeWith(ownerResponse.bodyToFlux(DataBuffer.class));
+                })
+                .timeout(longPoll ? longPollForwardTimeout : forwardTimeout);
+    }
+
+    static Optional<String> queueIdOf(String path) {
+        if (!path.startsWith(QUEUES_PREFIX)) {
+            return Optional.empty();
+        }
+        String rest = path.substring(QUEUES_PREFIX.length());
+        int slash = rest.indexOf('/');
+        String queueId = slash < 0 ? rest : rest.substring(0, slash);
+        if (queueId.isEmpty() || NON_QUEUE_SEGMENTS.contains(queueId)) {
+            return Optional.empty();
+        }
+        return Optional.of(UriUtils.decode(queueId, StandardCharsets.UTF_8));
+    }
+
+    private void record(String outcome) {
+        meterRegistry.counter("smartqueue.cluster.forwarded", "outcome", outcome).increment();
+    }
+}
@@ -0,0 +1,32 @@
+package com.smartqueue.aws.cluster;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when cluster membership changes. Comparing the owners of a queue on the two rings
+ * tells whether it moved; consistent hashing keeps that to the queues next to the joined or
+ * departed node's points.
+ */
+@Getter
+public class QueueOwnershipChangedEvent extends ApplicationEvent {
+
+    private final ConsistentHashRing previousRing;
+    private final ConsistentHashRing currentRing;
+    private final String selfId;
+
+    public QueueOwnershipChangedEvent(Object source, ConsistentHashRing previousRing,
+                                      ConsistentHashRing currentRing, String selfId) {
+        super(source);
+        this.previousRing = previousRing;
+        this.currentRing = currentRing;
+        this.selfId = selfId;
+    }
+
+    public boolean movedAway(String queueId) {
+        if (previousRing.getNodeIds().isEmpty() || currentRing.getNodeIds().isEmpty()) {
+            return false;
+        }
+        return selfId.equals(previousRing.ownerOf(queueId)) && !selfId.equals(currentRing.ownerOf(queueId));
+    }
+}
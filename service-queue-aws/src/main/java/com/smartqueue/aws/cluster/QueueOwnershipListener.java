@@ -0,0 +1,43 @@
+package com.smartqueue.aws.cluster;
+
+import com.smartqueue.aws.snapshot.QueueSnapshotCache;
+import com.smartqueue.aws.snapshot.QueueVersions;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops the per-queue state this node holds for queues that moved to another node. Only queues
+ * next to the joined or departed node's ring points move; every other snapshot stays warm.
+ * Queues moving to this node need nothing: their snapshot is built on the first forwarded read.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.cluster.enabled", havingValue = "true")
+public class QueueOwnershipListener {
+
+    private final QueueSnapshotCache queueSnapshotCache;
+    private final QueueVersions queueVersions;
+    private final MeterRegistry meterRegistry;
+
+    @EventListener
+    public void onOwnershipChanged(QueueOwnershipChangedEvent event) {
+        int cached = 0;
+        int moved = 0;
+        for (String queueId : queueSnapshotCache.cachedQueueIds()) {
+            cached++;
+            if (event.movedAway(queueId)) {
+                queueSnapshotCache.evict(queueId);
+                // Tags handed out while this node owned the queue must not match if it comes back
+                queueVersions.bump(queueId);
+                moved++;
+            }
+        }
+        meterRegistry.counter("smartqueue.cluster.queues.moved").increment(moved);
+        log.info("Rebalanced after membership change: {} of {} locally cached queues moved away", moved, cached);
+    }
+}
@@ -26,6 +26,15 @@ public class AwsConfig {
     @Value("${aws.dynamodb.queues-table}")
     private String queuesTableName;
     
+    @Value("${aws.dynamodb.outbox-table}")
+    private String outboxTableName;
+    
+    @Value("${aws.dynamodb.join-guards-table}")
+    private String joinGuardsTableName;
+    
+    @Value("${aws.dynamodb.queue-shards-table}")
+    private String queueShardsTableName;
+    
     @Bean
     public DynamoDbClient dynamoDbClient() {
         DynamoDbClientBuilder builder = DynamoDbClient.builder()
@@ -56,4 +65,19 @@ public class AwsConfig {
     public String queuesTableName() {
         return queuesTableName;
     }
+    
+    @Bean
+    public String outboxTableName() {
+        return outboxTableName;
+    }
+    
+    @Bean
+    public String joinGuardsTableName() {
+        return joinGuardsTableName;
+    }
+    
+    @Bean
+    public String queueShardsTableName() {
+        return queueShardsTableName;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.smartqueue.aws.config;
+
+import com.smartqueue.aws.dto.request.BulkJoinRequest;
+import com.smartqueue.aws.dto.request.CreateQueueRequest;
+import com.smartqueue.aws.dto.request.JoinQueueRequest;
+import com.smartqueue.aws.dto.request.ProcessNextRequest;
+import com.smartqueue.aws.dto.request.UpdateQueueRequest;
+import com.smartqueue.aws.dto.response.JoinQueueResponse;
+import com.smartqueue.aws.dto.response.ProcessNextResponse;
+import com.smartqueue.aws.dto.response.QueueStatusResponse;
+import com.smartqueue.aws.dto.response.QueueSummaryResponse;
+import com.smartqueue.aws.dto.user.CreateUserRequest;
+import com.smartqueue.aws.dto.user.LoginRequest;
+import com.smartqueue.aws.dto.user.UserResponse;
+import com.smartqueue.aws.model.JoinGuard;
+import com.smartqueue.aws.model.OutboxEvent;
+import com.smartqueue.aws.model.OutboxLease;
+import com.smartqueue.aws.model.OutboxSequence;
+import com.smartqueue.aws.model.QueueInfo;
+import com.smartqueue.aws.model.Ticket;
+import com.smartqueue.aws.model.User;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+import java.util.List;
+
+/**
+ * Reflection hints for the AOT / native-image build (mvn -Pnative).
+ * Only consulted at build time; no effect on a regular JVM run.
+ */
+@Configuration
+@ImportRuntimeHints(NativeHintsConfig.SmartQueueRuntimeHints.class)
+@RegisterReflectionForBinding({
+        // Jackson DTOs - also nested inside Map/ResponseEntity<?> bodies that AOT cannot infer
+        JoinQueueRequest.class, ProcessNextRequest.class, BulkJoinRequest.class,
+        CreateQueueRequest.class, UpdateQueueRequest.class,
+        JoinQueueResponse.class, ProcessNextResponse.class, QueueStatusResponse.class, QueueSummaryResponse.class,
+        CreateUserRequest.class, LoginRequest.class, UserResponse.class,
+        QueueInfo.class, Ticket.class
+})
+public class NativeHintsConfig {
+
+    // DynamoDB enhanced client beans: TableSchema.fromBean introspects getters/setters reflectively
+    static final List<Class<?>> DYNAMODB_BEANS = List.of(QueueInfo.class, Ticket.class, User.class,
+            OutboxEvent.class, OutboxLease.class, OutboxSequence.class, JoinGuard.class);
+
+    static class SmartQueueRuntimeHints implements RuntimeHintsRegistrar {
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            for (Class<?> bean : DYNAMODB_BEANS) {
+                hints.reflection().registerType(bean, MemberCategory.values());
+                // Lombok @Builder classes
+                for (Class<?> nested : bean.getDeclaredClasses()) {
+                    hints.reflection().registerType(nested, MemberCategory.values());
+                }
+            }
+            hints.reflection().registerType(Ticket.TicketStatus.class, MemberCategory.values());
+        }
+    }
+}
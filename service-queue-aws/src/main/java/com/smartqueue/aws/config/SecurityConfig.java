@@ -1,17 +1,30 @@
 package com.smartqueue.aws.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 
 @Configuration
 @EnableWebFluxSecurity
 public class SecurityConfig {
 
+    public static final String INTERNAL_TOKEN_HEADER = "X-Internal-Token";
+
+    @Value("${app.internal.token:}")
+    private String internalToken;
+
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder();
@@ -27,9 +40,28 @@ public class SecurityConfig {
                         .pathMatchers("/queues/**").permitAll() // Queue operations
                         .pathMatchers("/eta").permitAll() // ETA endpoint
                         .pathMatchers("/stats/**").permitAll() // Stats endpoints
+                        .pathMatchers("/actuator/traces", "/actuator/traces/**").access(internalTokenRequired()) // Spans carry queue/ticket ids
+                        .pathMatchers("/internal/**").access(internalTokenRequired()) // Replication gossip and partition drills
                         .pathMatchers("/actuator/**").permitAll() // Health checks and metrics
                         .anyExchange().permitAll() // Allow all for development
                 )
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Grants access only to requests whose X-Internal-Token header equals app.internal.token;
+     * denies everything while no token is configured.
+     */
+    private ReactiveAuthorizationManager<AuthorizationContext> internalTokenRequired() {
+        return (authentication, context) -> Mono.just(new AuthorizationDecision(
+                isInternalToken(internalToken, context.getExchange().getRequest().getHeaders().getFirst(INTERNAL_TOKEN_HEADER))));
+    }
+
+    /**
+     * Constant-time check of a presented X-Internal-Token; false while no token is configured.
+     */
+    public static boolean isInternalToken(String expected, String presented) {
+        return !expected.isEmpty() && presented != null
+                && MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), presented.getBytes(StandardCharsets.UTF_8));
+    }
+}
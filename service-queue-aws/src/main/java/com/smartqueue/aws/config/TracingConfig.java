@@ -0,0 +1,46 @@
+package com.smartqueue.aws.config;
+
+import com.smartqueue.aws.tracing.LocalSpanExporter;
+import com.smartqueue.aws.tracing.TracesEndpoint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * Local span exporter used as a stand-in for a tracing backend.
+ * app.tracing.exporter: memory keeps recent spans for /actuator/traces,
+ * file also appends them as JSON lines to app.tracing.file, none (default) disables it.
+ * Span attributes carry queueId and ticketId, so /actuator/traces answers only requests with
+ * the X-Internal-Token header set to app.internal.token (and nothing while it is empty).
+ * Building with -Potlp additionally ships spans to an OTLP collector.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnExpression("'${app.tracing.exporter:none}' != 'none'")
+public class TracingConfig {
+
+    @Value("${app.tracing.exporter:none}")
+    private String exporter;
+
+    @Value("${app.tracing.buffer-size:2000}")
+    private int bufferSize;
+
+    @Value("${app.tracing.file:traces/spans.jsonl}")
+    private String traceFile;
+
+    @Bean
+    public LocalSpanExporter localSpanExporter() {
+        Path file = "file".equalsIgnoreCase(exporter) ? Path.of(traceFile) : null;
+        log.info("Local span exporter enabled (buffer: {}, file: {})", bufferSize, file);
+        return new LocalSpanExporter(bufferSize, file);
+    }
+
+    @Bean
+    public TracesEndpoint tracesEndpoint(LocalSpanExporter localSpanExporter) {
+        return new TracesEndpoint(localSpanExporter);
+    }
+}
@@ -16,9 +16,10 @@ public class WebClientConfig {
     @Value("${service.eta.timeout:5000}")
     private int timeoutMillis;
     
+    // Use the auto-configured builder so calls are recorded as http.client.requests
     @Bean
-    public WebClient etaServiceWebClient() {
-        return WebClient.builder()
+    public WebClient etaServiceWebClient(WebClient.Builder webClientBuilder) {
+        return webClientBuilder
                 .baseUrl(etaServiceBaseUrl)
                 .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(1024 * 1024)) // 1MB
                 .build();
@@ -8,21 +8,36 @@ import com.smartqueue.aws.dto.request.ProcessNextRequest;
 import com.smartqueue.aws.dto.response.JoinQueueResponse;
 import com.smartqueue.aws.dto.response.ProcessNextResponse;
 import com.smartqueue.aws.dto.response.QueueStatusResponse;
+import com.smartqueue.aws.dto.response.QueueSummaryResponse;
+import com.smartqueue.aws.repository.JoinGuardConflictException;
 import com.smartqueue.aws.service.QueueService;
+import com.smartqueue.aws.snapshot.QueueVersions;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 
+import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @RestController
@@ -32,20 +47,52 @@ import java.util.Map;
 public class QueueController {
     
     private final QueueService queueService;
+    private final QueueVersions queueVersions;
+    
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final Set<String> SUMMARY_FIELDS = Set.of(
+            "queueId", "queueName", "isActive", "openSlots", "maxCapacity", "waitingCount");
     
     @Value("${test.api-key}")
     private String testApiKey;
     
+    @Value("${app.longpoll.default-timeout-ms:30000}")
+    private long longPollDefaultTimeoutMs;
+    
+    @Value("${app.longpoll.max-timeout-ms:60000}")
+    private long longPollMaxTimeoutMs;
+    
     @PostMapping("/{queueId}/join")
     public ResponseEntity<JoinQueueResponse> joinQueue(
             @PathVariable @NotBlank String queueId,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @RequestBody @Valid JoinQueueRequest request) {
         
         log.info("Join queue request received for queueId: {}", queueId);
         
+        if (request.getIdempotencyKey() == null && idempotencyKey != null) {
+            if (idempotencyKey.length() > 128) {
+                return ResponseEntity.badRequest().body(
+                    JoinQueueResponse.builder()
+                        .queueId(queueId)
+                        .message("Idempotency key must be at most 128 characters")
+                        .build()
+                );
+            }
+            request.setIdempotencyKey(idempotencyKey);
+        }
+        
         try {
             JoinQueueResponse response = queueService.joinQueue(queueId, request);
             return ResponseEntity.ok(response);
+        } catch (JoinGuardConflictException e) {
+            // Kept losing to concurrent joins of the same user or key; safe to retry
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                JoinQueueResponse.builder()
+                    .queueId(queueId)
+                    .message("Concurrent join in progress, retry: " + e.getMessage())
+                    .build()
+            );
         } catch (Exception e) {
             log.error("Error in join queue", e);
             return ResponseEntity.badRequest().body(
@@ -58,8 +105,14 @@ public class QueueController {
     }
 
     @GetMapping
-    public ResponseEntity<List<Map<String, Object>>> getAllQueues() {
+    public ResponseEntity<List<Map<String, Object>>> getAllQueues(ServerWebExchange exchange) {
         log.info("Get all queues request received");
+        
+        // Read before building the response: a concurrent change leaves the tag behind the body, never ahead
+        String etag = queueVersions.listingETag();
+        if (exchange.checkNotModified(etag)) {
+            return notModified(etag);
+        }
         try {
             List<com.smartqueue.aws.model.QueueInfo> queues = queueService.getAllQueues();
             
@@ -76,13 +129,87 @@ public class QueueController {
                 response.add(queueMap);
             }
             
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag).body(response);
         } catch (Exception e) {
             log.error("Error getting all queues", e);
             return ResponseEntity.internalServerError().build();
         }
     }
     
+    /**
+     * Typed, streamed queue listing.
+     * - limit: page size; the next page's cursor is returned in X-Next-Cursor
+     * - cursor: opaque value from a previous X-Next-Cursor
+     * - fields: comma-separated subset of the summary fields (queueId is always included);
+     *   without it every stored field is returned, waitingCount only when listed (and omitted for
+     *   queues without a current status snapshot on this instance)
+     * Without limit every queue after the cursor is streamed page by page.
+     */
+    @GetMapping(value = "/summaries", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Mono<ResponseEntity<Flux<QueueSummaryResponse>>> getQueueSummaries(
+            @RequestParam(required = false) @Min(1) @Max(500) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) List<String> fields) {
+        
+        log.info("Queue summaries request received: limit={}, cursor={}, fields={}", limit, cursor, fields);
+        
+        Set<String> selected = fields != null ? Set.copyOf(fields) : Set.of();
+        String startAfter;
+        try {
+            if (!SUMMARY_FIELDS.containsAll(selected)) {
+                throw new IllegalArgumentException("Unknown fields, allowed: " + SUMMARY_FIELDS);
+            }
+            startAfter = decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid queue summaries request: {}", e.getMessage());
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        
+        if (limit == null) {
+            Flux<QueueSummaryResponse> body = queueService.streamQueues(startAfter, selected)
+                    .map(queue -> queueService.toSummary(queue, selected));
+            return Mono.just(ResponseEntity.ok(body));
+        }
+        
+        return queueService.getQueuePage(startAfter, limit, selected)
+                .map(page -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (page.hasMore()) {
+                        response.header(NEXT_CURSOR_HEADER, encodeCursor(page.getLastEvaluatedQueueId()));
+                    }
+                    return response.body(Flux.fromIterable(page.getItems())
+                            .map(queue -> queueService.toSummary(queue, selected)));
+                })
+                .onErrorResume(e -> {
+                    log.error("Error getting queue summaries", e);
+                    return Mono.just(ResponseEntity.internalServerError().build());
+                });
+    }
+    
+    /**
+     * Out-of-range request parameters (@Min/@Max on limit, timeoutMs, ...) are client errors.
+     */
+    @ExceptionHandler(ConstraintViolationException.class)
+    public ResponseEntity<Map<String, String>> handleConstraintViolation(ConstraintViolationException e) {
+        log.warn("Invalid request parameters: {}", e.getMessage());
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+    
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(CacheControl.noCache()).eTag(etag).build();
+    }
+    
+    private static String encodeCursor(String queueId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(queueId.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    }
+    
     @PostMapping
     public ResponseEntity<?> createQueue(@RequestBody @Valid CreateQueueRequest request) {
         log.info("Create queue request received: {}", request.getQueueId());
@@ -100,12 +227,16 @@ public class QueueController {
     }
     
     @GetMapping("/{queueId}")
-    public ResponseEntity<?> getQueueDetail(@PathVariable @NotBlank String queueId) {
+    public ResponseEntity<?> getQueueDetail(@PathVariable @NotBlank String queueId, ServerWebExchange exchange) {
         log.info("Get queue detail request for: {}", queueId);
         
+        String etag = queueVersions.queueETag(queueId);
+        if (exchange.checkNotModified(etag)) {
+            return notModified(etag);
+        }
         try {
             com.smartqueue.aws.model.QueueInfo queue = queueService.getQueueById(queueId);
-            return ResponseEntity.ok(queue);
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag).body(queue);
         } catch (Exception e) {
             log.error("Error getting queue detail", e);
             return ResponseEntity.notFound().build();
@@ -150,12 +281,22 @@ public class QueueController {
     @GetMapping("/{queueId}/status")
     public Mono<ResponseEntity<QueueStatusResponse>> getStatus(
             @PathVariable @NotBlank String queueId,
-            @RequestParam @NotBlank String ticketId) {
+            @RequestParam @NotBlank String ticketId,
+            ServerWebExchange exchange) {
         
         log.info("Status request received for queueId: {}, ticketId: {}", queueId, ticketId);
         
+        // Unchanged queue: answered without touching the snapshot, the repositories or the ETA service
+        String etag = queueVersions.queueETag(queueId);
+        if (exchange.checkNotModified(etag)) {
+            return Mono.just(notModified(etag));
+        }
+        
         return queueService.getQueueStatus(queueId, ticketId)
-            .map(ResponseEntity::ok)
+            .doOnNext(status -> status.setVersion(etag))
+            .map(status -> "remote".equals(status.getEtaSource())
+                ? ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag).body(status)
+                : ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(status))
             .onErrorResume(e -> {
                 log.error("Error getting queue status", e);
                 return Mono.just(ResponseEntity.badRequest().body(
@@ -168,6 +309,40 @@ public class QueueController {
             });
     }
     
+    /**
+     * Long-poll status for clients that cannot hold an SSE connection. Pass back the version,
+     * position and status of the previous response; the request is parked until one of them
+     * would change, or for timeoutMs (capped by app.longpoll.max-timeout-ms), then returns the
+     * current status. Without a previous version it answers immediately.
+     */
+    @GetMapping("/{queueId}/status/poll")
+    public Mono<ResponseEntity<QueueStatusResponse>> pollStatus(
+            @PathVariable @NotBlank String queueId,
+            @RequestParam @NotBlank String ticketId,
+            @RequestParam(required = false) String version,
+            @RequestParam(required = false) Integer position,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) @Min(0) Long timeoutMs) {
+        
+        Duration timeout = Duration.ofMillis(Math.min(
+                timeoutMs != null ? timeoutMs : longPollDefaultTimeoutMs, longPollMaxTimeoutMs));
+        // Accept the version with or without the ETag quotes
+        String seenVersion = version == null || version.startsWith("\"") ? version : "\"" + version + "\"";
+        
+        return queueService.pollQueueStatus(queueId, ticketId, seenVersion, position, status, timeout)
+            .map(response -> ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(response))
+            .onErrorResume(e -> {
+                log.error("Error long-polling queue status", e);
+                return Mono.just(ResponseEntity.badRequest().body(
+                    QueueStatusResponse.builder()
+                        .queueId(queueId)
+                        .ticketId(ticketId)
+                        .message("Failed to get status: " + e.getMessage())
+                        .build()
+                ));
+            });
+    }
+    
     @PostMapping("/{queueId}/next")
     public ResponseEntity<ProcessNextResponse> processNext(
             @PathVariable @NotBlank String queueId,
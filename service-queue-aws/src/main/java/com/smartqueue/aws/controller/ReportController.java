@@ -0,0 +1,37 @@
+package com.smartqueue.aws.controller;
+
+import com.smartqueue.aws.scan.ParallelTicketScanner;
+import com.smartqueue.aws.scan.TicketAggregators;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Back-office reports computed with a full parallel scan of the tickets table.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/reports")
+@RequiredArgsConstructor
+public class ReportController {
+    
+    private final ParallelTicketScanner parallelTicketScanner;
+    
+    @GetMapping("/tickets/by-status")
+    public Mono<ResponseEntity<Map<String, Map<String, Long>>>> ticketsByStatus() {
+        log.info("Ticket status report requested");
+        
+        return Mono.fromFuture(() -> parallelTicketScanner.scan(TicketAggregators.countByQueueAndStatus()))
+                .map(ResponseEntity::ok)
+                .onErrorResume(e -> {
+                    log.error("Error building ticket status report", e);
+                    return Mono.just(ResponseEntity.internalServerError().build());
+                });
+    }
+}
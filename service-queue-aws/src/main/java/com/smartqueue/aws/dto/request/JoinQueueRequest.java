@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
 
 @Data
 @Builder
@@ -15,4 +16,9 @@ public class JoinQueueRequest {
     
     @NotBlank(message = "User ID is required")
     private String userId;
+    
+    // Optional client-generated key; retries with the same key return the original ticket.
+    // The Idempotency-Key header is used when this is not set.
+    @Size(max = 128, message = "Idempotency key must be at most 128 characters")
+    private String idempotencyKey;
 }
\ No newline at end of file
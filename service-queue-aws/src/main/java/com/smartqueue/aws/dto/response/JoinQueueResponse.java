@@ -15,4 +15,5 @@ public class JoinQueueResponse {
     private Integer position;
     private String queueId;
     private String message;
+    private Boolean duplicate; // true when an earlier join was returned instead of a new ticket
 }
\ No newline at end of file
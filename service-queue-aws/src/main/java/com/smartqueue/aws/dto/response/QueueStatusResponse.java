@@ -17,4 +17,6 @@ public class QueueStatusResponse {
     private Integer estimatedWaitMinutes;
     private String status;
     private String message;
+    private String etaSource; // "remote" or "fallback"; only remote estimates are given an ETag
+    private String version; // queue version (ETag value) the status was read at; echo it back to /status/poll
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.smartqueue.aws.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL) // unselected fields are omitted
+public class QueueSummaryResponse {
+    
+    private String queueId;
+    private String queueName;
+    private Boolean isActive;
+    private Integer openSlots;
+    private Integer maxCapacity;
+    private Integer waitingCount;
+}
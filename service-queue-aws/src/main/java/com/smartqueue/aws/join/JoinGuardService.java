@@ -0,0 +1,205 @@
+package com.smartqueue.aws.join;
+
+import com.smartqueue.aws.model.JoinGuard;
+import com.smartqueue.aws.model.Ticket;
+import com.smartqueue.aws.repository.JoinGuardClaim;
+import com.smartqueue.aws.repository.JoinGuardRepository;
+import com.smartqueue.aws.repository.TicketRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Duplicate detection for joins. Uniqueness is enforced by the guard items written with the ticket
+ * (conditional put); the local Bloom filter only decides whether a guard lookup is worth a round trip.
+ *
+ * The filter holds the guard keys this instance has written or seen conflict on. A negative answer
+ * skips the lookup - if another instance (or a previous run) owns the guard, the conditional write
+ * fails and the caller re-plans with the key now marked in the filter.
+ */
+@Slf4j
+@Component
+public class JoinGuardService {
+
+    private final JoinGuardRepository joinGuardRepository;
+    private final TicketRepository ticketRepository;
+    private final MeterRegistry meterRegistry;
+    private final boolean oneActiveTicketPerUser;
+    private final long guardTtlSeconds;
+    private final long bloomExpectedInsertions;
+    private final double bloomFalsePositiveRate;
+
+    // Two generations: when the current filter is full it becomes the previous one and a fresh
+    // filter takes over, so stale keys age out without a false negative for recent ones
+    private volatile BloomFilter currentFilter;
+    private volatile BloomFilter previousFilter;
+
+    public JoinGuardService(JoinGuardRepository joinGuardRepository,
+                            TicketRepository ticketRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.join.one-active-ticket-per-user:true}") boolean oneActiveTicketPerUser,
+                            @Value("${app.join.guard-ttl-hours:24}") long guardTtlHours,
+                            @Value("${app.join.bloom.expected-insertions:1000000}") long bloomExpectedInsertions,
+                            @Value("${app.join.bloom.false-positive-rate:0.01}") double bloomFalsePositiveRate) {
+        this.joinGuardRepository = joinGuardRepository;
+        this.ticketRepository = ticketRepository;
+        this.meterRegistry = meterRegistry;
+        this.oneActiveTicketPerUser = oneActiveTicketPerUser;
+        this.guardTtlSeconds = guardTtlHours * 3600;
+        this.bloomExpectedInsertions = bloomExpectedInsertions;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.currentFilter = new BloomFilter(bloomExpectedInsertions, bloomFalsePositiveRate);
+        this.previousFilter = new BloomFilter(1, bloomFalsePositiveRate);
+    }
+
+    /**
+     * Outcome of duplicate detection for one join attempt: either the ticket the join resolves to,
+     * or the guards to claim together with a new ticket.
+     */
+    @Getter
+    public static class JoinPlan {
+        private final String queueId;
+        private final String userId;
+        private Ticket existingTicket;
+        private String duplicateReason;
+        // guard key -> ticketId of a stale guard it may overwrite (null: key must be free)
+        private final Map<String, String> guardKeys = new LinkedHashMap<>();
+
+        private JoinPlan(String queueId, String userId) {
+            this.queueId = queueId;
+            this.userId = userId;
+        }
+
+        public boolean isDuplicate() {
+            return existingTicket != null;
+        }
+
+        private List<JoinGuardClaim> claimsFor(String ticketId, long ttlSeconds) {
+            Instant now = Instant.now();
+            List<JoinGuardClaim> claims = new ArrayList<>(guardKeys.size());
+            guardKeys.forEach((key, staleTicketId) -> claims.add(new JoinGuardClaim(
+                    JoinGuard.builder()
+                            .guardKey(key)
+                            .ticketId(ticketId)
+                            .queueId(queueId)
+                            .userId(userId)
+                            .createdAt(now)
+                            .expiresAt(now.getEpochSecond() + ttlSeconds)
+                            .build(),
+                    staleTicketId)));
+            return claims;
+        }
+    }
+
+    public JoinPlan plan(String queueId, String userId, String idempotencyKey) {
+        JoinPlan plan = new JoinPlan(queueId, userId);
+
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            String key = JoinGuard.idempotencyKey(queueId, idempotencyKey);
+            Optional<JoinGuard> guard = lookup(key);
+            Optional<Ticket> ticket = guard.filter(this::notExpired)
+                    .flatMap(this::guardedTicket);
+            if (ticket.isPresent()) {
+                return duplicate(plan, ticket.get(), "idempotency_key");
+            }
+            // Expired (not yet removed by TTL) or orphaned guards - ticket confirmed gone - may be taken over
+            plan.guardKeys.put(key, guard.map(JoinGuard::getTicketId).orElse(null));
+        }
+
+        if (oneActiveTicketPerUser) {
+            String key = JoinGuard.activeKey(queueId, userId);
+            Optional<JoinGuard> guard = lookup(key);
+            if (guard.isPresent()) {
+                Optional<Ticket> ticket = guardedTicket(guard.get());
+                if (ticket.isPresent() && ticket.get().getStatus() == Ticket.TicketStatus.WAITING) {
+                    return duplicate(plan, ticket.get(), "active_ticket");
+                }
+            }
+            // A guard whose ticket is confirmed gone or no longer waiting is stale and may be taken over
+            plan.guardKeys.put(key, guard.map(JoinGuard::getTicketId).orElse(null));
+        }
+        return plan;
+    }
+
+    public List<JoinGuardClaim> claimsFor(JoinPlan plan, String ticketId) {
+        return plan.claimsFor(ticketId, guardTtlSeconds);
+    }
+
+    /**
+     * Marks guard keys as present, after writing them or losing a conditional write on them.
+     */
+    public void remember(Collection<String> guardKeys) {
+        BloomFilter filter = currentFilter;
+        if (filter.insertions() >= bloomExpectedInsertions) {
+            synchronized (this) {
+                if (currentFilter == filter) {
+                    previousFilter = filter;
+                    currentFilter = new BloomFilter(bloomExpectedInsertions, bloomFalsePositiveRate);
+                    log.info("Join guard Bloom filter rotated after {} insertions", filter.insertions());
+                }
+                filter = currentFilter;
+            }
+        }
+        guardKeys.forEach(filter::put);
+    }
+
+    public BloomFilter currentFilter() {
+        return currentFilter;
+    }
+
+    /**
+     * Adds guard keys remembered before a restart. A filter of another geometry (changed
+     * app.join.bloom.* settings) is skipped: a missing key only costs a conditional-write retry.
+     */
+    public boolean restoreFilter(long numBits, int numHashes, long insertions, long[] words) {
+        BloomFilter filter = currentFilter;
+        if (filter.numBits() != numBits || filter.numHashes() != numHashes) {
+            log.info("Not restoring join guard Bloom filter: {} bits / {} hashes, configured {} / {}",
+                    numBits, numHashes, filter.numBits(), filter.numHashes());
+            return false;
+        }
+        filter.putAll(words, insertions);
+        return true;
+    }
+
+    private Optional<JoinGuard> lookup(String guardKey) {
+        if (!currentFilter.mightContain(guardKey) && !previousFilter.mightContain(guardKey)) {
+            recordLookup("bloom_negative");
+            return Optional.empty();
+        }
+        Optional<JoinGuard> guard = joinGuardRepository.findByKey(guardKey);
+        recordLookup(guard.isPresent() ? "hit" : "false_positive");
+        return guard;
+    }
+
+    // Strongly consistent, so a ticket saved with its guard moments ago is seen; a failed read
+    // throws rather than reading as an orphaned guard, which would let the join create a second ticket
+    private Optional<Ticket> guardedTicket(JoinGuard guard) {
+        return ticketRepository.findById(guard.getTicketId(), true);
+    }
+
+    private boolean notExpired(JoinGuard guard) {
+        return guard.getExpiresAt() == 0 || guard.getExpiresAt() > Instant.now().getEpochSecond();
+    }
+
+    private JoinPlan duplicate(JoinPlan plan, Ticket ticket, String reason) {
+        plan.existingTicket = ticket;
+        plan.duplicateReason = reason;
+        meterRegistry.counter("smartqueue.join.duplicates", "reason", reason).increment();
+        return plan;
+    }
+
+    private void recordLookup(String result) {
+        meterRegistry.counter("smartqueue.join.guard.lookups", "result", result).increment();
+    }
+}
@@ -0,0 +1,155 @@
+package com.smartqueue.aws.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-queue gauges for waiting count and join rate.
+ * At most {@code app.metrics.max-queue-tags} tags are used: the first queues get their own tag
+ * and, once only one slot is left, the rest are folded into queue="other" so Prometheus series
+ * stay bounded.
+ */
+@Slf4j
+@Component
+public class QueueMetrics {
+
+    static final String OVERFLOW_TAG = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final int maxQueueTags;
+
+    private final Map<String, QueueGroup> groupsByQueue = new ConcurrentHashMap<>();
+    private final Map<String, QueueGroup> groupsByTag = new ConcurrentHashMap<>();
+
+    public QueueMetrics(MeterRegistry meterRegistry,
+                        @Value("${app.metrics.max-queue-tags:50}") int maxQueueTags) {
+        this.meterRegistry = meterRegistry;
+        this.maxQueueTags = maxQueueTags;
+    }
+
+    public void recordJoin(String queueId, int waitingCount) {
+        QueueGroup group = setWaiting(queueId, waitingCount);
+        group.joins.increment();
+        group.joinRate.record(System.currentTimeMillis());
+    }
+
+    public void recordWaiting(String queueId, int waitingCount) {
+        setWaiting(queueId, waitingCount);
+    }
+
+    /**
+     * Drops the queue from its group; once a group has no queue left, its meters are removed
+     * from the registry and its tag slot is free for another queue.
+     */
+    public synchronized void removeQueue(String queueId) {
+        QueueGroup group = groupsByQueue.remove(queueId);
+        if (group == null) {
+            return;
+        }
+        group.waitingByQueue.remove(queueId);
+        if (group.waitingByQueue.isEmpty() && !groupsByQueue.containsValue(group)) {
+            groupsByTag.remove(group.tag, group);
+            for (Meter meter : group.meters) {
+                meterRegistry.remove(meter);
+            }
+        }
+    }
+
+    // Under the lock removeQueue takes: a removal can neither free a tag slot while it is handed
+    // out nor leave the waiting count in a group whose meters are gone
+    private synchronized QueueGroup setWaiting(String queueId, int waitingCount) {
+        QueueGroup group = groupsByQueue.computeIfAbsent(queueId, id -> {
+            int ownTags = groupsByTag.size() - (groupsByTag.containsKey(OVERFLOW_TAG) ? 1 : 0);
+            // The last slot is kept for the overflow group
+            String tag = ownTags < maxQueueTags - 1 ? id : OVERFLOW_TAG;
+            return groupsByTag.computeIfAbsent(tag, this::registerGroup);
+        });
+        group.waitingByQueue.computeIfAbsent(queueId, id -> new AtomicInteger()).set(waitingCount);
+        return group;
+    }
+
+    private QueueGroup registerGroup(String tag) {
+        if (OVERFLOW_TAG.equals(tag)) {
+            log.warn("Queue metric tag limit ({}) reached, further queues are reported as '{}'", maxQueueTags, OVERFLOW_TAG);
+        }
+        QueueGroup group = new QueueGroup(tag, Counter.builder("smartqueue.queue.joins")
+                .description("Tickets created per queue")
+                .tag("queue", tag)
+                .register(meterRegistry));
+
+        group.meters.add(group.joins);
+        group.meters.add(Gauge.builder("smartqueue.queue.waiting", group, QueueGroup::totalWaiting)
+                .description("Tickets currently waiting in the queue")
+                .tag("queue", tag)
+                .register(meterRegistry));
+        group.meters.add(Gauge.builder("smartqueue.queue.join.rate", group, g -> g.joinRate.perMinute(System.currentTimeMillis()))
+                .description("Joins during the last full minute")
+                .baseUnit("joins/min")
+                .tag("queue", tag)
+                .register(meterRegistry));
+        return group;
+    }
+
+    private static final class QueueGroup {
+        final String tag;
+        final Map<String, AtomicInteger> waitingByQueue = new ConcurrentHashMap<>();
+        final Counter joins;
+        final List<Meter> meters = new ArrayList<>(3);
+        final MinuteWindow joinRate = new MinuteWindow();
+
+        QueueGroup(String tag, Counter joins) {
+            this.tag = tag;
+            this.joins = joins;
+        }
+
+        double totalWaiting() {
+            int total = 0;
+            for (AtomicInteger waiting : waitingByQueue.values()) {
+                total += waiting.get();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Counts events in the current wall-clock minute and remembers the previous one.
+     * The thread that moves the minute index forward (CAS) is the one that rolls the count, so
+     * counting a join takes no lock.
+     */
+    private static final class MinuteWindow {
+        private final AtomicLong current = new AtomicLong();
+        private final AtomicLong currentMinute = new AtomicLong();
+        private volatile long previousCount;
+
+        void record(long nowMillis) {
+            roll(nowMillis / 60_000);
+            current.incrementAndGet();
+        }
+
+        double perMinute(long nowMillis) {
+            roll(nowMillis / 60_000);
+            return previousCount;
+        }
+
+        private void roll(long minute) {
+            long seen = currentMinute.get();
+            if (minute <= seen || !currentMinute.compareAndSet(seen, minute)) {
+                return;
+            }
+            long count = current.getAndSet(0);
+            previousCount = minute == seen + 1 ? count : 0;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.smartqueue.aws.metrics;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every public repository operation (DynamoDB and in-memory alike).
+ * Recorded as "smartqueue.repository" tagged by repository, operation and backend.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class RepositoryMetricsAspect {
+
+    private static final String IN_MEMORY_PREFIX = "InMemory";
+
+    private final ObservationRegistry observationRegistry;
+
+    @Around("within(com.smartqueue.aws.repository..*) && execution(public * *(..))")
+    public Object observeRepositoryCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        String implementation = joinPoint.getTarget().getClass().getSimpleName();
+        boolean inMemory = implementation.startsWith(IN_MEMORY_PREFIX);
+        String repository = inMemory ? implementation.substring(IN_MEMORY_PREFIX.length()) : implementation;
+        String operation = joinPoint.getSignature().getName();
+
+        Observation observation = Observation.createNotStarted("smartqueue.repository", observationRegistry)
+                .contextualName(repository + "." + operation)
+                .lowCardinalityKeyValue("repository", repository)
+                .lowCardinalityKeyValue("operation", operation)
+                .lowCardinalityKeyValue("backend", inMemory ? "memory" : "dynamodb")
+                .start();
+
+        try (Observation.Scope scope = observation.openScope()) {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+}
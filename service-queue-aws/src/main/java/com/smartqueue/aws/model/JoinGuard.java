@@ -0,0 +1,44 @@
+package com.smartqueue.aws.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+
+import java.time.Instant;
+
+/**
+ * Uniqueness item for joins: at most one guard per key, written with a conditional put.
+ * - active#{queueId}#{userId}: the user's WAITING ticket in that queue
+ * - idem#{queueId}#{idempotencyKey}: the ticket created for a client idempotency key
+ * expiresAt (epoch seconds) is the DynamoDB TTL attribute.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class JoinGuard {
+    
+    private String guardKey;
+    private String ticketId;
+    private String queueId;
+    private String userId;
+    private Instant createdAt;
+    private long expiresAt;
+    
+    @DynamoDbPartitionKey
+    public String getGuardKey() {
+        return guardKey;
+    }
+    
+    public static String activeKey(String queueId, String userId) {
+        return "active#" + queueId + "#" + userId;
+    }
+    
+    public static String idempotencyKey(String queueId, String idempotencyKey) {
+        return "idem#" + queueId + "#" + idempotencyKey;
+    }
+}
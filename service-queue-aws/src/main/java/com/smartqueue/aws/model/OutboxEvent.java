@@ -0,0 +1,72 @@
+package com.smartqueue.aws.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Event waiting in the outbox table to be relayed to the ETA service.
+ * Events of one stream (the queueId) are delivered in sequence order; delivered events are deleted,
+ * events the ETA service rejects are moved to the stream's dead-letter stream (dead#{queueId}).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class OutboxEvent {
+    
+    public static final String TYPE_SERVED = "SERVED";
+    
+    private String stream;
+    private long sequence;
+    private String eventId;
+    private String eventType;
+    private String queueId;
+    private int count;
+    private int windowSec;
+    private Instant occurredAt;
+    private List<Long> waitSeconds; // joinedAt -> servedAt of each served ticket, null on events written before it existed
+    private String error; // why the ETA service rejected it, on dead-lettered events only
+    
+    @DynamoDbPartitionKey
+    public String getStream() {
+        return stream;
+    }
+    
+    @DynamoDbSortKey
+    public long getSequence() {
+        return sequence;
+    }
+    
+    /**
+     * Served event for the tickets; occurredAt is their servedAt, so waits match the stored tickets.
+     */
+    public static OutboxEvent served(String queueId, List<Ticket> tickets, int windowSec, long sequence) {
+        Instant servedAt = Instant.now();
+        return OutboxEvent.builder()
+                .stream(queueId)
+                .sequence(sequence)
+                .eventId(UUID.randomUUID().toString())
+                .eventType(TYPE_SERVED)
+                .queueId(queueId)
+                .count(tickets.size())
+                .windowSec(windowSec)
+                .occurredAt(servedAt)
+                .waitSeconds(tickets.stream()
+                        .filter(ticket -> ticket.getJoinedAt() != null)
+                        // Clock skew between nodes must not produce negative waits
+                        .map(ticket -> Math.max(0, Duration.between(ticket.getJoinedAt(), servedAt).toSeconds()))
+                        .toList())
+                .build();
+    }
+}
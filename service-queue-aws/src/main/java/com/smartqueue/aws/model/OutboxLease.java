@@ -0,0 +1,36 @@
+package com.smartqueue.aws.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+/**
+ * Lease of the outbox relay, kept in the outbox table at sort key 0: only its owner relays
+ * until expiresAt (epoch milliseconds), and renews it on every pass.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class OutboxLease {
+    
+    private String stream;
+    private long sequence;
+    private String owner;
+    private long expiresAt;
+    
+    @DynamoDbPartitionKey
+    public String getStream() {
+        return stream;
+    }
+    
+    @DynamoDbSortKey
+    public long getSequence() {
+        return sequence;
+    }
+}
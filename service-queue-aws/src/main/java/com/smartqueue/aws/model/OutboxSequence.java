@@ -0,0 +1,37 @@
+package com.smartqueue.aws.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+/**
+ * Last sequence committed to an outbox stream, kept in the outbox table at the stream's sort
+ * key 0 (below every event). It is updated in the transaction that writes the event, on
+ * condition that the new sequence is higher, so events of a stream commit in sequence order
+ * whichever node writes them.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@DynamoDbBean
+public class OutboxSequence {
+    
+    private String stream;
+    private long sequence;
+    private Long lastSequence;
+    
+    @DynamoDbPartitionKey
+    public String getStream() {
+        return stream;
+    }
+    
+    @DynamoDbSortKey
+    public long getSequence() {
+        return sequence;
+    }
+}
@@ -7,6 +7,8 @@ import lombok.NoArgsConstructor;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondarySortKey;
 
 import java.time.Instant;
 import java.util.UUID;
@@ -18,6 +20,9 @@ import java.util.UUID;
 @DynamoDbBean
 public class Ticket {
     
+    // Sparse index over waiting tickets of sharded (hot) queues, see QueueShardingPolicy
+    public static final String WAITING_SHARD_INDEX = "waitingShard-sequence-index";
+    
     private String ticketId;
     private String queueId;
     private String userId;
@@ -34,6 +39,9 @@ public class Ticket {
     private double estimatedWaitMinutes;
     private boolean emailNotificationEnabled;
     private boolean smsNotificationEnabled;
+    private String waitingShard; // "queueId#shard" while WAITING in a sharded queue, removed once served
+    private long sequence; // arrival order across shards of a sharded queue
+    private Long joinSequence; // replicated join sequence (app.replication.enabled), null otherwise
     
     @DynamoDbPartitionKey
     public String getTicketId() {
@@ -75,6 +83,16 @@ public class Ticket {
         return smsNotificationEnabled;
     }
 
+    @DynamoDbSecondaryPartitionKey(indexNames = WAITING_SHARD_INDEX)
+    public String getWaitingShard() {
+        return waitingShard;
+    }
+    
+    @DynamoDbSecondarySortKey(indexNames = WAITING_SHARD_INDEX)
+    public long getSequence() {
+        return sequence;
+    }
+
     public static String generateTicketId() {
         return UUID.randomUUID().toString();
     }
@@ -0,0 +1,325 @@
+package com.smartqueue.aws.outbox;
+
+import com.smartqueue.aws.model.OutboxEvent;
+import com.smartqueue.aws.repository.OutboxPage;
+import com.smartqueue.aws.repository.OutboxRepository;
+import com.smartqueue.aws.snapshot.QueueVersions;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Ships outbox events to the ETA service (POST /stats/served/batch).
+ *
+ * One node relays at a time: each pass takes or renews the relay lease
+ * (app.outbox.relay.lease-ms) and a node without it does nothing. A pass reads the next page of
+ * the outbox after the previous pass's cursor, so the whole table is covered over successive
+ * passes however many events are pending.
+ *
+ * Per stream (queue) events go out in sequence order, in batches; a failed batch stops that
+ * stream for the rest of the sweep and is retried with exponential backoff, so later events
+ * never overtake it. Events are deleted only after the ETA service acknowledged them - a crash
+ * in between re-sends them, and the ETA service drops what it already applied (at-least-once
+ * delivery). A 4xx answer other than 401, 403, 408 and 429 means the ETA service will never
+ * take the batch: it is re-sent event by event and the events still rejected are moved to the
+ * dead-letter stream instead of blocking their queue forever.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.outbox.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelay {
+
+    private final OutboxRepository outboxRepository;
+    private final WebClient etaServiceWebClient;
+    private final Duration etaServiceTimeout;
+    private final MeterRegistry meterRegistry;
+    private final QueueVersions queueVersions;
+    private final int batchSize;
+    private final int scanLimit;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final Duration leaseDuration;
+    private final String owner = UUID.randomUUID().toString();
+
+    // Streams that failed recently: no delivery attempt before nextAttemptAt
+    private final Map<String, StreamBackoff> backoffs = new ConcurrentHashMap<>();
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicLong oldestPendingEpochMs = new AtomicLong();
+
+    // Sweep state, only touched by the scheduled relay() (a single thread)
+    private long leaseExpiresAtMs;
+    private String cursorStream;
+    private Long cursorSequence;
+    private final Set<String> stoppedStreams = new HashSet<>();
+    private long sweepPending;
+    private long sweepOldestEpochMs;
+
+    private record StreamBackoff(int failures, Instant nextAttemptAt) {
+    }
+
+    private enum Outcome { DELIVERED, RETRY, REJECTED }
+
+    private record Delivery(Outcome outcome, String error) {
+    }
+
+    public OutboxRelay(OutboxRepository outboxRepository,
+                       WebClient etaServiceWebClient,
+                       Duration etaServiceTimeout,
+                       MeterRegistry meterRegistry,
+                       QueueVersions queueVersions,
+                       @Value("${app.outbox.batch-size:50}") int batchSize,
+                       @Value("${app.outbox.scan-limit:1000}") int scanLimit,
+                       @Value("${app.outbox.retry.initial-backoff-ms:1000}") long initialBackoffMs,
+                       @Value("${app.outbox.retry.max-backoff-ms:300000}") long maxBackoffMs,
+                       @Value("${app.outbox.relay.lease-ms:30000}") long leaseMs) {
+        this.outboxRepository = outboxRepository;
+        this.etaServiceWebClient = etaServiceWebClient;
+        this.etaServiceTimeout = etaServiceTimeout;
+        this.meterRegistry = meterRegistry;
+        this.queueVersions = queueVersions;
+        this.batchSize = batchSize;
+        this.scanLimit = scanLimit;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.leaseDuration = Duration.ofMillis(leaseMs);
+
+        Gauge.builder("smartqueue.outbox.pending", pendingEvents, AtomicLong::get)
+                .description("Outbox events not yet acknowledged by the ETA service (as of the last full sweep of the lease holder)")
+                .register(meterRegistry);
+        Gauge.builder("smartqueue.outbox.oldest.age", oldestPendingEpochMs,
+                        oldest -> oldest.get() == 0 ? 0 : (System.currentTimeMillis() - oldest.get()) / 1000.0)
+                .description("Age in seconds of the oldest undelivered outbox event")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:1000}")
+    public void relay() {
+        long passStarted = System.currentTimeMillis();
+        if (!holdLease()) {
+            // Another node relays and reports the gauges
+            leaseExpiresAtMs = 0;
+            resetSweep();
+            pendingEvents.set(0);
+            oldestPendingEpochMs.set(0);
+            return;
+        }
+        leaseExpiresAtMs = passStarted + leaseDuration.toMillis();
+
+        OutboxPage page;
+        try {
+            page = outboxRepository.findPending(scanLimit, cursorStream, cursorSequence);
+        } catch (Exception e) {
+            log.warn("Outbox relay could not read pending events", e);
+            return;
+        }
+
+        List<OutboxEvent> pending = page.getItems();
+        sweepPending += pending.size();
+        pending.stream()
+                .filter(event -> event.getOccurredAt() != null)
+                .mapToLong(event -> event.getOccurredAt().toEpochMilli())
+                .min()
+                .ifPresent(oldest -> sweepOldestEpochMs = sweepOldestEpochMs == 0 ? oldest : Math.min(sweepOldestEpochMs, oldest));
+
+        Map<String, List<OutboxEvent>> byStream = pending.stream()
+                .sorted(Comparator.comparingLong(OutboxEvent::getSequence))
+                .collect(Collectors.groupingBy(OutboxEvent::getStream, LinkedHashMap::new, Collectors.toList()));
+
+        Instant now = Instant.now();
+        byStream.forEach((stream, events) -> {
+            if (stoppedStreams.contains(stream)) {
+                return; // an earlier event of the stream is still undelivered
+            }
+            StreamBackoff backoff = backoffs.get(stream);
+            if ((backoff != null && now.isBefore(backoff.nextAttemptAt())) || !relayStream(stream, events)) {
+                stoppedStreams.add(stream);
+            }
+        });
+
+        if (page.hasMore()) {
+            cursorStream = page.getLastEvaluatedStream();
+            cursorSequence = page.getLastEvaluatedSequence();
+        } else {
+            pendingEvents.set(sweepPending);
+            oldestPendingEpochMs.set(sweepOldestEpochMs);
+            resetSweep();
+        }
+    }
+
+    @PreDestroy
+    public void releaseLease() {
+        try {
+            outboxRepository.releaseLease(owner);
+        } catch (Exception e) {
+            log.debug("Could not release the outbox relay lease", e);
+        }
+    }
+
+    private boolean holdLease() {
+        try {
+            return outboxRepository.tryAcquireLease(owner, leaseDuration);
+        } catch (Exception e) {
+            log.warn("Outbox relay could not renew its lease", e);
+            return false;
+        }
+    }
+
+    private void resetSweep() {
+        cursorStream = null;
+        cursorSequence = null;
+        stoppedStreams.clear();
+        sweepPending = 0;
+        sweepOldestEpochMs = 0;
+    }
+
+    // True if every event was delivered (or dead-lettered) and deleted
+    private boolean relayStream(String stream, List<OutboxEvent> events) {
+        for (int from = 0; from < events.size(); from += batchSize) {
+            // Another node may take the lease over once it expires: stop before a delivery could outlive it
+            if (System.currentTimeMillis() + etaServiceTimeout.toMillis() >= leaseExpiresAtMs) {
+                return false;
+            }
+            List<OutboxEvent> batch = events.subList(from, Math.min(from + batchSize, events.size()));
+            Delivery delivery = deliver(stream, batch);
+            boolean done = switch (delivery.outcome()) {
+                case DELIVERED -> acknowledged(stream, batch);
+                case REJECTED -> batch.size() == 1
+                        ? deadLetter(stream, batch.get(0), delivery.error())
+                        : isolateRejected(stream, batch);
+                case RETRY -> false;
+            };
+            if (!done) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Re-sends a rejected batch event by event, so only the events refused on their own are dead-lettered
+    private boolean isolateRejected(String stream, List<OutboxEvent> batch) {
+        for (OutboxEvent event : batch) {
+            Delivery delivery = deliver(stream, List.of(event));
+            boolean done = switch (delivery.outcome()) {
+                case DELIVERED -> acknowledged(stream, List.of(event));
+                case REJECTED -> deadLetter(stream, event, delivery.error());
+                case RETRY -> false;
+            };
+            if (!done) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean acknowledged(String stream, List<OutboxEvent> batch) {
+        backoffs.remove(stream);
+        // The ETA service now estimates from these events: cached status responses are stale
+        queueVersions.bump(stream);
+        try {
+            outboxRepository.deleteAll(batch);
+            return true;
+        } catch (Exception e) {
+            // Delivered but still in the outbox: re-sent next sweep and skipped by the ETA service
+            log.warn("Failed to delete {} delivered outbox events for stream: {}", batch.size(), stream, e);
+            return false;
+        }
+    }
+
+    private boolean deadLetter(String stream, OutboxEvent event, String error) {
+        try {
+            outboxRepository.deadLetter(event, error);
+        } catch (Exception e) {
+            log.warn("Failed to dead-letter outbox event {} of stream: {}", event.getEventId(), stream, e);
+            return false;
+        }
+        backoffs.remove(stream);
+        meterRegistry.counter("smartqueue.outbox.dead.letters").increment();
+        log.error("ETA service rejected outbox event {} of stream: {}, moved to {}{}: {}",
+                event.getEventId(), stream, OutboxRepository.DEAD_LETTER_PREFIX, stream, error);
+        return true;
+    }
+
+    private Delivery deliver(String stream, List<OutboxEvent> batch) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            etaServiceWebClient
+                    .post()
+                    .uri("/stats/served/batch")
+                    .bodyValue(Map.of("events", batch.stream().map(this::toPayload).toList()))
+                    .retrieve()
+                    .toBodilessEntity()
+                    .block(etaServiceTimeout);
+
+            sample.stop(meterRegistry.timer("smartqueue.eta.notify", "outcome", "success"));
+            meterRegistry.counter("smartqueue.outbox.delivered").increment(batch.size());
+            log.debug("Relayed {} served events for stream: {}", batch.size(), stream);
+            return new Delivery(Outcome.DELIVERED, null);
+        } catch (Exception e) {
+            if (isRejection(e)) {
+                sample.stop(meterRegistry.timer("smartqueue.eta.notify", "outcome", "rejected"));
+                return new Delivery(Outcome.REJECTED, rejectionReason((WebClientResponseException) e));
+            }
+            sample.stop(meterRegistry.timer("smartqueue.eta.notify", "outcome", "failure"));
+            StreamBackoff backoff = backoffs.merge(stream, nextBackoff(1),
+                    (previous, ignored) -> nextBackoff(previous.failures() + 1));
+            log.warn("Failed to relay {} served events for stream: {} (failures: {}, next attempt: {})",
+                    batch.size(), stream, backoff.failures(), backoff.nextAttemptAt(), e);
+            return new Delivery(Outcome.RETRY, null);
+        }
+    }
+
+    // A 4xx is about the request itself, except auth (configuration), timeout and throttling
+    private static boolean isRejection(Exception e) {
+        if (!(e instanceof WebClientResponseException response) || !response.getStatusCode().is4xxClientError()) {
+            return false;
+        }
+        int status = response.getStatusCode().value();
+        return status != 401 && status != 403 && status != 408 && status != 429;
+    }
+
+    private static String rejectionReason(WebClientResponseException e) {
+        String body = e.getResponseBodyAsString();
+        return e.getStatusCode().value() + (body.isEmpty() ? "" : " " + body.substring(0, Math.min(body.length(), 500)));
+    }
+
+    // Exponential backoff capped at maxBackoffMs, with jitter so instances do not retry in lockstep
+    private StreamBackoff nextBackoff(int failures) {
+        long delay = Math.min(maxBackoffMs, initialBackoffMs << Math.min(failures - 1, 20));
+        long jittered = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        return new StreamBackoff(failures, Instant.now().plusMillis(jittered));
+    }
+
+    private Map<String, Object> toPayload(OutboxEvent event) {
+        return Map.of(
+                "eventId", event.getEventId(),
+                "queueId", event.getQueueId(),
+                "count", event.getCount(),
+                "windowSec", event.getWindowSec(),
+                "sequence", event.getSequence(),
+                "occurredAt", event.getOccurredAt().toString(),
+                "waitSeconds", event.getWaitSeconds() != null ? event.getWaitSeconds() : List.of());
+    }
+}
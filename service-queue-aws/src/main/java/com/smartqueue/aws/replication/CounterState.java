@@ -0,0 +1,9 @@
+package com.smartqueue.aws.replication;
+
+import java.util.Map;
+
+/**
+ * Wire form of a GCounter: per-replica counts, and the amounts folded out of retired replicas.
+ */
+public record CounterState(Map<String, Long> counts, Map<String, Long> folded) {
+}
@@ -0,0 +1,116 @@
+package com.smartqueue.aws.replication;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Grow-only counter: one non-decreasing count per replica, value is their sum.
+ *
+ * Merge takes the per-replica maximum, so merging is commutative, associative and idempotent -
+ * replicas can exchange states (or deltas) in any order, any number of times, and converge.
+ *
+ * A retired replica (an earlier incarnation of a restarted node) is compacted by folding its
+ * count into its successor's entry and recording how much was folded; the retired entry then
+ * counts only what exceeds the folded amount (updates it made that the successor had not seen),
+ * and is dropped once it has nothing left. Folded amounts merge by maximum as well.
+ * Not thread-safe; ReplicatedQueueCounters guards every instance.
+ */
+public final class GCounter {
+
+    private final Map<String, Long> counts;
+    private final Map<String, Long> folded;
+
+    public GCounter() {
+        this(new HashMap<>(), new HashMap<>());
+    }
+
+    private GCounter(Map<String, Long> counts, Map<String, Long> folded) {
+        this.counts = counts;
+        this.folded = folded;
+    }
+
+    public static GCounter of(CounterState state) {
+        if (state == null) {
+            return new GCounter();
+        }
+        return new GCounter(copyOf(state.counts()), copyOf(state.folded()));
+    }
+
+    /**
+     * Adds to this replica's count and returns the delta: this replica's entry alone.
+     */
+    public GCounter increment(String replicaId, long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("GCounter cannot decrease, got: " + amount);
+        }
+        long count = counts.merge(replicaId, amount, Long::sum);
+        return new GCounter(new HashMap<>(Map.of(replicaId, count)), new HashMap<>());
+    }
+
+    public long value() {
+        long value = 0;
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            value += Math.max(0, entry.getValue() - folded.getOrDefault(entry.getKey(), 0L));
+        }
+        return value;
+    }
+
+    public void merge(GCounter other) {
+        other.counts.forEach((replicaId, count) -> counts.merge(replicaId, count, Math::max));
+        other.folded.forEach((replicaId, amount) -> folded.merge(replicaId, amount, Math::max));
+        dropFolded();
+    }
+
+    /**
+     * Moves what {@code retired} counts beyond its folded amount into {@code successor}'s entry;
+     * returns the delta (both changes), or null if there was nothing to fold.
+     */
+    public GCounter fold(String retired, String successor) {
+        long count = counts.getOrDefault(retired, 0L);
+        long amount = count - folded.getOrDefault(retired, 0L);
+        if (amount <= 0) {
+            return null;
+        }
+        long successorCount = counts.merge(successor, amount, Long::sum);
+        folded.put(retired, count);
+        counts.remove(retired);
+        return new GCounter(new HashMap<>(Map.of(successor, successorCount)), new HashMap<>(Map.of(retired, count)));
+    }
+
+    /**
+     * Drops every trace of the replica, once its folding is known everywhere.
+     */
+    public void forget(String replicaId) {
+        counts.remove(replicaId);
+        folded.remove(replicaId);
+    }
+
+    public Set<String> replicaIds() {
+        Set<String> replicaIds = new HashSet<>(counts.keySet());
+        replicaIds.addAll(folded.keySet());
+        return replicaIds;
+    }
+
+    public boolean isEmpty() {
+        return counts.isEmpty() && folded.isEmpty();
+    }
+
+    public CounterState toState() {
+        return new CounterState(Map.copyOf(counts), Map.copyOf(folded));
+    }
+
+    public GCounter copy() {
+        return new GCounter(new HashMap<>(counts), new HashMap<>(folded));
+    }
+
+    // A retired entry fully covered by its folded amount adds nothing
+    private void dropFolded() {
+        counts.entrySet().removeIf(entry -> entry.getValue() <= folded.getOrDefault(entry.getKey(), -1L));
+    }
+
+    private static Map<String, Long> copyOf(Map<String, Long> map) {
+        return map == null ? new HashMap<>() : new HashMap<>(map);
+    }
+}
@@ -0,0 +1,27 @@
+package com.smartqueue.aws.replication;
+
+/**
+ * Hybrid logical clock: wall-clock milliseconds in the high 48 bits, a logical counter in the
+ * low 16. Every reading is above the previous one and above every timestamp observed from a
+ * peer, so a write ordered after another one it has seen always gets the later timestamp, even
+ * with clock skew between nodes.
+ */
+public final class HybridLogicalClock {
+
+    private static final int LOGICAL_BITS = 16;
+
+    private long last;
+
+    public synchronized long tick() {
+        last = Math.max(last + 1, System.currentTimeMillis() << LOGICAL_BITS);
+        return last;
+    }
+
+    public synchronized void observe(long timestamp) {
+        last = Math.max(last, timestamp);
+    }
+
+    public static long millisOf(long timestamp) {
+        return timestamp >>> LOGICAL_BITS;
+    }
+}
@@ -0,0 +1,37 @@
+package com.smartqueue.aws.replication;
+
+/**
+ * Register holding the largest value any replica has written; merge keeps the maximum.
+ */
+public final class MaxRegister {
+
+    private long value;
+
+    public MaxRegister() {
+        this(0);
+    }
+
+    public MaxRegister(long value) {
+        this.value = value;
+    }
+
+    public long get() {
+        return value;
+    }
+
+    /**
+     * Raises the register to at least {@code candidate}; returns the delta (the new value).
+     */
+    public MaxRegister raise(long candidate) {
+        value = Math.max(value, candidate);
+        return new MaxRegister(value);
+    }
+
+    public void merge(MaxRegister other) {
+        value = Math.max(value, other.value);
+    }
+
+    public MaxRegister copy() {
+        return new MaxRegister(value);
+    }
+}
@@ -0,0 +1,107 @@
+package com.smartqueue.aws.replication;
+
+import java.util.Set;
+
+/**
+ * Open slots of a queue: a last-writer-wins register for absolute values (queue created or
+ * updated) plus a PNCounter of the relative changes (serves) made since that value was set.
+ *
+ * Each set is stamped with a hybrid logical clock reading and the writing node's id; merge keeps
+ * the register with the higher stamp and, with it, only the changes made on top of it. Two
+ * concurrent sets therefore resolve to one of them on every node (never their sum), and a change
+ * made on a node that had not yet seen a later set is superseded by that set.
+ */
+public final class OpenSlotsRegister {
+
+    private long base;
+    private long clock;
+    private String node;
+    private PNCounter changes;
+
+    public OpenSlotsRegister() {
+        this(0, 0, "", new PNCounter());
+    }
+
+    public OpenSlotsRegister(long base, long clock, String node, PNCounter changes) {
+        this.base = base;
+        this.clock = clock;
+        this.node = node != null ? node : "";
+        this.changes = changes;
+    }
+
+    /**
+     * Sets the value with a new stamp, dropping the changes made on top of the old one; returns
+     * the delta (the new register).
+     */
+    public OpenSlotsRegister set(long value, long clock, String node) {
+        this.base = value;
+        this.clock = clock;
+        this.node = node;
+        this.changes = new PNCounter();
+        return new OpenSlotsRegister(value, clock, node, new PNCounter());
+    }
+
+    /**
+     * Adds on this replica on top of the current value; returns the delta.
+     */
+    public OpenSlotsRegister add(String replicaId, long delta) {
+        return new OpenSlotsRegister(base, clock, node, changes.add(replicaId, delta));
+    }
+
+    public long value() {
+        return base + changes.value();
+    }
+
+    public void merge(OpenSlotsRegister other) {
+        int order = compareStamp(other);
+        if (order < 0) {
+            base = other.base;
+            clock = other.clock;
+            node = other.node;
+            changes = other.changes.copy();
+        } else if (order == 0) {
+            changes.merge(other.changes);
+        }
+    }
+
+    /**
+     * Folds a retired replica's changes into its successor; returns the delta, or null.
+     */
+    public OpenSlotsRegister fold(String retired, String successor) {
+        PNCounter delta = changes.fold(retired, successor);
+        return delta != null ? new OpenSlotsRegister(base, clock, node, delta) : null;
+    }
+
+    public void forget(String replicaId) {
+        changes.forget(replicaId);
+    }
+
+    public Set<String> replicaIds() {
+        return changes.replicaIds();
+    }
+
+    public long getBase() {
+        return base;
+    }
+
+    public long getClock() {
+        return clock;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public PNCounter getChanges() {
+        return changes;
+    }
+
+    public OpenSlotsRegister copy() {
+        return new OpenSlotsRegister(base, clock, node, changes.copy());
+    }
+
+    private int compareStamp(OpenSlotsRegister other) {
+        int order = Long.compare(clock, other.clock);
+        return order != 0 ? order : node.compareTo(other.node);
+    }
+}
@@ -0,0 +1,80 @@
+package com.smartqueue.aws.replication;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Counter that can go up and down: a grow-only counter of increments and one of decrements.
+ */
+public final class PNCounter {
+
+    private final GCounter added;
+    private final GCounter removed;
+
+    public PNCounter() {
+        this(new GCounter(), new GCounter());
+    }
+
+    public PNCounter(GCounter added, GCounter removed) {
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * Adds (or, when negative, subtracts) on this replica and returns the delta.
+     */
+    public PNCounter add(String replicaId, long amount) {
+        return amount >= 0
+                ? new PNCounter(added.increment(replicaId, amount), new GCounter())
+                : new PNCounter(new GCounter(), removed.increment(replicaId, -amount));
+    }
+
+    public long value() {
+        return added.value() - removed.value();
+    }
+
+    public void merge(PNCounter other) {
+        added.merge(other.added);
+        removed.merge(other.removed);
+    }
+
+    /**
+     * Folds a retired replica into its successor in both halves; returns the delta, or null.
+     */
+    public PNCounter fold(String retired, String successor) {
+        GCounter addedDelta = added.fold(retired, successor);
+        GCounter removedDelta = removed.fold(retired, successor);
+        if (addedDelta == null && removedDelta == null) {
+            return null;
+        }
+        return new PNCounter(addedDelta != null ? addedDelta : new GCounter(),
+                removedDelta != null ? removedDelta : new GCounter());
+    }
+
+    public void forget(String replicaId) {
+        added.forget(replicaId);
+        removed.forget(replicaId);
+    }
+
+    public Set<String> replicaIds() {
+        Set<String> replicaIds = new HashSet<>(added.replicaIds());
+        replicaIds.addAll(removed.replicaIds());
+        return replicaIds;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    public GCounter getAdded() {
+        return added;
+    }
+
+    public GCounter getRemoved() {
+        return removed;
+    }
+
+    public PNCounter copy() {
+        return new PNCounter(added.copy(), removed.copy());
+    }
+}
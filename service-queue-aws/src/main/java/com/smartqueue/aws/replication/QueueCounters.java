@@ -0,0 +1,171 @@
+package com.smartqueue.aws.replication;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replicated counters of one queue: joins and serves (grow-only), open slots (last-writer-wins
+ * value plus changes) and the join sequence high-water mark. Each local operation returns its
+ * delta - a QueueCounters holding only what changed - which is merged into the gossip buffer.
+ *
+ * Retired replicas (earlier incarnations of a restarted node) are folded into their successor
+ * by {@link #compact}, which records when each was retired; the fold markers are forgotten after
+ * the retention period, by when every peer has merged the fold.
+ */
+public final class QueueCounters {
+
+    private final GCounter joins;
+    private final GCounter served;
+    private final OpenSlotsRegister openSlots;
+    private final MaxRegister joinSequence;
+    private final Map<String, Long> retiredAt;
+
+    public QueueCounters() {
+        this(new GCounter(), new GCounter(), new OpenSlotsRegister(), new MaxRegister(), new HashMap<>());
+    }
+
+    private QueueCounters(GCounter joins, GCounter served, OpenSlotsRegister openSlots, MaxRegister joinSequence,
+                          Map<String, Long> retiredAt) {
+        this.joins = joins;
+        this.served = served;
+        this.openSlots = openSlots;
+        this.joinSequence = joinSequence;
+        this.retiredAt = retiredAt;
+    }
+
+    /**
+     * Counts a join and issues its sequence: one past the highest sequence seen on any replica,
+     * and at least {@code waitingAhead} past the served count, so a ticket behind tickets that
+     * joined before the counters existed still gets a position behind them. Joins on different
+     * replicas between two gossip rounds can get the same sequence.
+     */
+    public QueueCounters join(String replicaId, long waitingAhead) {
+        long sequence = Math.max(joinSequence.get(), served.value() + waitingAhead) + 1;
+        return new QueueCounters(joins.increment(replicaId, 1), new GCounter(), new OpenSlotsRegister(),
+                joinSequence.raise(sequence), new HashMap<>());
+    }
+
+    public QueueCounters serve(String replicaId, int count) {
+        return new QueueCounters(new GCounter(), served.increment(replicaId, count), new OpenSlotsRegister(),
+                new MaxRegister(), new HashMap<>());
+    }
+
+    public QueueCounters addOpenSlots(String replicaId, long delta) {
+        return new QueueCounters(new GCounter(), new GCounter(), openSlots.add(replicaId, delta),
+                new MaxRegister(), new HashMap<>());
+    }
+
+    public QueueCounters setOpenSlots(long value, long clock, String node) {
+        return new QueueCounters(new GCounter(), new GCounter(), openSlots.set(value, clock, node),
+                new MaxRegister(), new HashMap<>());
+    }
+
+    public void merge(QueueCounters other) {
+        joins.merge(other.joins);
+        served.merge(other.served);
+        openSlots.merge(other.openSlots);
+        joinSequence.merge(other.joinSequence);
+        other.retiredAt.forEach((replicaId, at) -> retiredAt.merge(replicaId, at, Math::max));
+    }
+
+    /**
+     * Folds every other incarnation of this node ({@code incarnationPrefix} + start time) into
+     * {@code replicaId} and forgets replicas retired before {@code forgetBefore}. Returns the
+     * delta to gossip, or null if nothing was folded.
+     */
+    public QueueCounters compact(String replicaId, String incarnationPrefix, long now, long forgetBefore) {
+        retiredAt.entrySet().removeIf(retired -> {
+            if (retired.getValue() >= forgetBefore) {
+                return false;
+            }
+            joins.forget(retired.getKey());
+            served.forget(retired.getKey());
+            openSlots.forget(retired.getKey());
+            return true;
+        });
+
+        Set<String> replicaIds = new HashSet<>(joins.replicaIds());
+        replicaIds.addAll(served.replicaIds());
+        replicaIds.addAll(openSlots.replicaIds());
+
+        QueueCounters delta = new QueueCounters();
+        boolean folded = false;
+        for (String retired : replicaIds) {
+            if (retired.equals(replicaId) || !retired.startsWith(incarnationPrefix)) {
+                continue;
+            }
+            GCounter joinsDelta = joins.fold(retired, replicaId);
+            GCounter servedDelta = served.fold(retired, replicaId);
+            OpenSlotsRegister openSlotsDelta = openSlots.fold(retired, replicaId);
+            if (joinsDelta == null && servedDelta == null && openSlotsDelta == null) {
+                continue;
+            }
+            folded = true;
+            long at = retiredAt.computeIfAbsent(retired, id -> now);
+            delta.retiredAt.put(retired, at);
+            if (joinsDelta != null) {
+                delta.joins.merge(joinsDelta);
+            }
+            if (servedDelta != null) {
+                delta.served.merge(servedDelta);
+            }
+            if (openSlotsDelta != null) {
+                delta.openSlots.merge(openSlotsDelta);
+            }
+        }
+        return folded ? delta : null;
+    }
+
+    /**
+     * Position of the ticket that got {@code sequence} at join: tickets issued a lower sequence
+     * and not yet served are ahead of it.
+     */
+    public long positionOf(long sequence) {
+        return Math.max(1, sequence - served.value());
+    }
+
+    public long getJoins() {
+        return joins.value();
+    }
+
+    public long getServed() {
+        return served.value();
+    }
+
+    public long getWaiting() {
+        return Math.max(0, joins.value() - served.value());
+    }
+
+    public long getOpenSlots() {
+        return openSlots.value();
+    }
+
+    public long getOpenSlotsClock() {
+        return openSlots.getClock();
+    }
+
+    public long getJoinSequence() {
+        return joinSequence.get();
+    }
+
+    public QueueCounters copy() {
+        return new QueueCounters(joins.copy(), served.copy(), openSlots.copy(), joinSequence.copy(), new HashMap<>(retiredAt));
+    }
+
+    public QueueCountersState toState() {
+        return new QueueCountersState(joins.toState(), served.toState(),
+                openSlots.getBase(), openSlots.getClock(), openSlots.getNode(),
+                openSlots.getChanges().getAdded().toState(), openSlots.getChanges().getRemoved().toState(),
+                joinSequence.get(), Map.copyOf(retiredAt));
+    }
+
+    public static QueueCounters fromState(QueueCountersState state) {
+        return new QueueCounters(GCounter.of(state.joins()), GCounter.of(state.served()),
+                new OpenSlotsRegister(state.openSlotsBase(), state.openSlotsClock(), state.openSlotsNode(),
+                        new PNCounter(GCounter.of(state.openSlotsAdded()), GCounter.of(state.openSlotsRemoved()))),
+                new MaxRegister(state.joinSequence()),
+                state.retiredAt() == null ? new HashMap<>() : new HashMap<>(state.retiredAt()));
+    }
+}
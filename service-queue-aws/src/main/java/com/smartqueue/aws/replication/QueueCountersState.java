@@ -0,0 +1,18 @@
+package com.smartqueue.aws.replication;
+
+import java.util.Map;
+
+/**
+ * Wire form of QueueCounters: joins and serves, the open slots register (value, stamp and the
+ * changes on top of it), the join sequence, and when each retired replica was folded.
+ */
+public record QueueCountersState(CounterState joins,
+                                 CounterState served,
+                                 long openSlotsBase,
+                                 long openSlotsClock,
+                                 String openSlotsNode,
+                                 CounterState openSlotsAdded,
+                                 CounterState openSlotsRemoved,
+                                 long joinSequence,
+                                 Map<String, Long> retiredAt) {
+}
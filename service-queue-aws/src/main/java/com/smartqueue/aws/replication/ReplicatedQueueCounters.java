@@ -0,0 +1,277 @@
+package com.smartqueue.aws.replication;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This node's replica of the per-queue counters (joins, serves, open slots, join sequence).
+ *
+ * Local operations update the replica without talking to other nodes and leave their delta in a
+ * buffer; ReplicationGossip drains it and ships it to the peers, which merge it in. Because the
+ * counters are CRDTs, every node ends up with the same values once it has seen the same
+ * operations, whatever the order or duplication of the messages. QueueService reports positions
+ * from them: a ticket keeps the join sequence it was issued, and its position is that sequence
+ * minus the converged served count.
+ *
+ * The replica id is the node id plus the process start time, so a restarted node never reuses the
+ * entries it wrote before the restart (it gets them back from its peers' full state). Every
+ * app.replication.compact-interval-ms the entries of earlier incarnations of this node are folded
+ * into the current one, and fold markers older than app.replication.retired-retention-ms are
+ * forgotten, so the counters hold one entry per node rather than one per restart. A peer that
+ * stays partitioned for longer than the retention can bring a forgotten entry back, which would
+ * then be counted twice.
+ *
+ * Deleting a queue drops its counters here and, through gossip, on the peers, leaving a tombstone
+ * stamped with the hybrid clock. A state stamped before the tombstone (a delta or full state sent
+ * before the peer learnt of the delete) is ignored; a later one - the queue was re-created and its
+ * open slots set again - replaces the tombstone. Tombstones are kept for
+ * app.replication.retired-retention-ms.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.replication.enabled", havingValue = "true")
+public class ReplicatedQueueCounters {
+
+    private final String nodeId;
+    private final String replicaId;
+    private final Duration retiredRetention;
+    private final HybridLogicalClock clock = new HybridLogicalClock();
+    private final ConcurrentMap<String, QueueCounters> states = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, QueueCounters> pendingDeltas = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> deleted = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> pendingDeletes = new ConcurrentHashMap<>();
+
+    public ReplicatedQueueCounters(@Value("${app.replication.node-id:node-1}") String nodeId,
+                                   @Value("${app.replication.retired-retention-ms:604800000}") long retiredRetentionMs) {
+        this.nodeId = nodeId;
+        this.replicaId = nodeId + "@" + Long.toString(System.currentTimeMillis(), 36);
+        this.retiredRetention = Duration.ofMillis(retiredRetentionMs);
+    }
+
+    public String getReplicaId() {
+        return replicaId;
+    }
+
+    /**
+     * Counts a join of the queue and returns its join sequence. {@code waitingAhead} is the
+     * number of tickets this node knows to be ahead of the new one.
+     */
+    public long recordJoin(String queueId, long waitingAhead) {
+        QueueCounters counters = counters(queueId);
+        QueueCounters delta;
+        synchronized (counters) {
+            delta = counters.join(replicaId, waitingAhead);
+        }
+        addDelta(queueId, delta);
+        return delta.getJoinSequence();
+    }
+
+    /**
+     * Converged position of the ticket issued {@code joinSequence}; empty if the queue has no
+     * counters yet.
+     */
+    public Optional<Long> positionOf(String queueId, long joinSequence) {
+        QueueCounters counters = states.get(queueId);
+        if (counters == null) {
+            return Optional.empty();
+        }
+        synchronized (counters) {
+            return Optional.of(counters.positionOf(joinSequence));
+        }
+    }
+
+    public void recordServed(String queueId, int count) {
+        if (count <= 0) {
+            return;
+        }
+        QueueCounters counters = counters(queueId);
+        QueueCounters delta;
+        synchronized (counters) {
+            delta = counters.serve(replicaId, count);
+        }
+        addDelta(queueId, delta);
+    }
+
+    public void addOpenSlots(String queueId, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        QueueCounters counters = counters(queueId);
+        QueueCounters change;
+        synchronized (counters) {
+            change = counters.addOpenSlots(replicaId, delta);
+        }
+        addDelta(queueId, change);
+    }
+
+    /**
+     * Sets open slots to an absolute value (create/update queue). Of concurrent sets on two
+     * nodes, the one with the later hybrid clock stamp wins everywhere.
+     */
+    public void setOpenSlots(String queueId, long openSlots) {
+        QueueCounters counters = counters(queueId);
+        QueueCounters change;
+        synchronized (counters) {
+            change = counters.setOpenSlots(openSlots, clock.tick(), nodeId);
+        }
+        // Re-created: the stamp is above every tombstone this node has seen
+        deleted.remove(queueId);
+        addDelta(queueId, change);
+    }
+
+    /**
+     * Drops the counters of a deleted queue; the delete is gossiped to the peers.
+     */
+    public void forget(String queueId) {
+        long stamp = clock.tick();
+        applyDelete(queueId, stamp);
+        pendingDeletes.merge(queueId, stamp, Math::max);
+    }
+
+    public Optional<QueueCounters> get(String queueId) {
+        QueueCounters counters = states.get(queueId);
+        if (counters == null) {
+            return Optional.empty();
+        }
+        synchronized (counters) {
+            return Optional.of(counters.copy());
+        }
+    }
+
+    /**
+     * Merges deltas or full states received from a peer.
+     */
+    public void merge(Map<String, QueueCountersState> received) {
+        received.forEach((queueId, state) -> {
+            clock.observe(state.openSlotsClock());
+            Long tombstone = deleted.get(queueId);
+            if (tombstone != null) {
+                if (state.openSlotsClock() <= tombstone) {
+                    return;
+                }
+                deleted.remove(queueId, tombstone);
+            }
+            QueueCounters counters = counters(queueId);
+            synchronized (counters) {
+                counters.merge(QueueCounters.fromState(state));
+            }
+        });
+    }
+
+    /**
+     * Applies queue deletions received from a peer; to be called before merging the states that
+     * came with them.
+     */
+    public void mergeDeletes(Map<String, Long> received) {
+        received.forEach((queueId, stamp) -> {
+            clock.observe(stamp);
+            applyDelete(queueId, stamp);
+        });
+    }
+
+    /**
+     * Folds earlier incarnations of this node into the current replica id and forgets fold
+     * markers past the retention; the folds are gossiped like any other change.
+     */
+    @Scheduled(fixedDelayString = "${app.replication.compact-interval-ms:60000}")
+    public void compact() {
+        long now = System.currentTimeMillis();
+        long forgetBefore = now - retiredRetention.toMillis();
+        int compacted = 0;
+        for (Map.Entry<String, QueueCounters> entry : states.entrySet()) {
+            QueueCounters counters = entry.getValue();
+            QueueCounters delta;
+            synchronized (counters) {
+                delta = counters.compact(replicaId, nodeId + "@", now, forgetBefore);
+            }
+            if (delta != null) {
+                addDelta(entry.getKey(), delta);
+                compacted++;
+            }
+        }
+        if (compacted > 0) {
+            log.info("Folded earlier incarnations of {} into {} in {} queue(s)", nodeId, replicaId, compacted);
+        }
+        deleted.values().removeIf(stamp -> HybridLogicalClock.millisOf(stamp) < forgetBefore);
+    }
+
+    /**
+     * Takes the deltas accumulated since the last call. The caller owns them from then on.
+     */
+    public Map<String, QueueCounters> drainDeltas() {
+        Map<String, QueueCounters> drained = new HashMap<>();
+        for (String queueId : pendingDeltas.keySet()) {
+            QueueCounters delta = pendingDeltas.remove(queueId);
+            if (delta != null) {
+                drained.put(queueId, delta);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Takes the queue deletions made here since the last call.
+     */
+    public Map<String, Long> drainDeletes() {
+        Map<String, Long> drained = new HashMap<>();
+        for (String queueId : pendingDeletes.keySet()) {
+            Long stamp = pendingDeletes.remove(queueId);
+            if (stamp != null) {
+                drained.put(queueId, stamp);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Tombstones of the deleted queues, sent with the full state.
+     */
+    public Map<String, Long> deletes() {
+        return new HashMap<>(deleted);
+    }
+
+    public Map<String, QueueCountersState> fullState() {
+        Map<String, QueueCountersState> full = new HashMap<>();
+        states.forEach((queueId, counters) -> {
+            synchronized (counters) {
+                full.put(queueId, counters.toState());
+            }
+        });
+        return full;
+    }
+
+    // A state set after the delete (by a peer that re-created the queue) is kept
+    private void applyDelete(String queueId, long stamp) {
+        long tombstone = deleted.merge(queueId, stamp, Math::max);
+        states.computeIfPresent(queueId, (id, counters) -> {
+            synchronized (counters) {
+                return counters.getOpenSlotsClock() > tombstone ? counters : null;
+            }
+        });
+        if (!states.containsKey(queueId)) {
+            pendingDeltas.remove(queueId);
+        }
+    }
+
+    private QueueCounters counters(String queueId) {
+        return states.computeIfAbsent(queueId, id -> new QueueCounters());
+    }
+
+    // Atomic per queue: a delta merged here is either drained whole or still pending
+    private void addDelta(String queueId, QueueCounters delta) {
+        pendingDeltas.merge(queueId, delta, (pending, added) -> {
+            pending.merge(added);
+            return pending;
+        });
+    }
+}
@@ -0,0 +1,81 @@
+package com.smartqueue.aws.replication;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Gossip endpoint between replicas, the converged counters of a queue, and - with
+ * app.replication.fault-injection=true - a switch simulating a partition between zones.
+ */
+@RestController
+@ConditionalOnProperty(name = "app.replication.enabled", havingValue = "true")
+public class ReplicationController {
+
+    private final ReplicatedQueueCounters replica;
+    private final ReplicationGossip gossip;
+    private final boolean faultInjection;
+
+    public ReplicationController(ReplicatedQueueCounters replica,
+                                 ReplicationGossip gossip,
+                                 @Value("${app.replication.fault-injection:false}") boolean faultInjection) {
+        this.replica = replica;
+        this.gossip = gossip;
+        this.faultInjection = faultInjection;
+    }
+
+    @PostMapping("/internal/replication/deltas")
+    public ResponseEntity<Void> receive(@RequestBody ReplicationMessage message) {
+        return gossip.receive(message)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
+    @GetMapping("/replication/queues/{queueId}")
+    public ResponseEntity<?> getCounters(@PathVariable String queueId) {
+        return replica.get(queueId)
+                .<ResponseEntity<?>>map(counters -> ResponseEntity.ok(Map.of(
+                        "queueId", queueId,
+                        "joins", counters.getJoins(),
+                        "served", counters.getServed(),
+                        "waiting", counters.getWaiting(),
+                        "openSlots", counters.getOpenSlots(),
+                        "joinSequence", counters.getJoinSequence())))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/replication/status")
+    public Map<String, Object> getStatus() {
+        return Map.of(
+                "replicaId", replica.getReplicaId(),
+                "partitioned", gossip.isPartitioned(),
+                "pendingByPeer", gossip.pendingByPeer());
+    }
+
+    @PostMapping("/internal/replication/partition")
+    public ResponseEntity<Void> startPartition() {
+        return setPartitioned(true);
+    }
+
+    @DeleteMapping("/internal/replication/partition")
+    public ResponseEntity<Void> endPartition() {
+        return setPartitioned(false);
+    }
+
+    private ResponseEntity<Void> setPartitioned(boolean partitioned) {
+        if (!faultInjection) {
+            return ResponseEntity.notFound().build();
+        }
+        gossip.setPartitioned(partitioned);
+        return ResponseEntity.noContent().build();
+    }
+}
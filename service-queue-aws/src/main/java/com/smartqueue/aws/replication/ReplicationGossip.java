@@ -0,0 +1,187 @@
+package com.smartqueue.aws.replication;
+
+import com.smartqueue.aws.config.SecurityConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Delta gossip between active-active nodes (app.replication.enabled=true).
+ *
+ * Every app.replication.gossip-interval-ms the deltas of local operations are drained from the
+ * replica into one buffer per peer and each buffer is sent to its peer. A buffer is cleared only
+ * once the peer acknowledged it; while a peer is unreachable (zone partition, restart) its deltas
+ * keep merging into the buffer, which stays one entry per queue however long the outage lasts.
+ * Every app.replication.full-sync-interval-ms the full state goes out instead, which also brings
+ * a restarted peer back up to date. Queue deletions are buffered and acknowledged the same way,
+ * and the full state carries every tombstone. Messages carry app.internal.token in the X-Internal-Token
+ * header, which /internal/** requires.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.replication.enabled", havingValue = "true")
+public class ReplicationGossip {
+
+    private final ReplicatedQueueCounters replica;
+    private final WebClient gossipClient;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, String> peers;
+    private final Duration sendTimeout;
+    private final long fullSyncIntervalMs;
+    private final String internalToken;
+
+    // Unacknowledged deltas per peer; written by the gossip thread, sized by the gauge and /replication/status
+    private final Map<String, Map<String, QueueCounters>> outgoing = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Long>> outgoingDeletes = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastFullSyncMs = new ConcurrentHashMap<>();
+
+    // Fault injection: drop gossip in both directions, as during a partition between zones
+    private volatile boolean partitioned;
+
+    public ReplicationGossip(ReplicatedQueueCounters replica,
+                             WebClient.Builder webClientBuilder,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.replication.peers:}") String peers,
+                             @Value("${app.replication.send-timeout-ms:2000}") long sendTimeoutMs,
+                             @Value("${app.replication.full-sync-interval-ms:60000}") long fullSyncIntervalMs,
+                             @Value("${app.internal.token:}") String internalToken) {
+        this.replica = replica;
+        this.gossipClient = webClientBuilder.build();
+        this.meterRegistry = meterRegistry;
+        this.peers = parsePeers(peers);
+        this.sendTimeout = Duration.ofMillis(sendTimeoutMs);
+        this.fullSyncIntervalMs = fullSyncIntervalMs;
+        this.internalToken = internalToken;
+        this.peers.keySet().forEach(peer -> {
+            outgoing.put(peer, new ConcurrentHashMap<>());
+            outgoingDeletes.put(peer, new ConcurrentHashMap<>());
+        });
+        if (internalToken.isEmpty() && !this.peers.isEmpty()) {
+            log.warn("app.internal.token is empty: peers will refuse the replication messages of this node");
+        }
+
+        Gauge.builder("smartqueue.replication.pending", outgoing,
+                        buffers -> buffers.values().stream().mapToInt(Map::size).sum())
+                .description("Queue deltas not yet acknowledged, summed over peers")
+                .register(meterRegistry);
+        log.info("Replication enabled as {} with peers {}", replica.getReplicaId(), this.peers);
+    }
+
+    @Scheduled(fixedDelayString = "${app.replication.gossip-interval-ms:500}")
+    public void gossip() {
+        Map<String, Long> deletes = replica.drainDeletes();
+        Map<String, QueueCounters> drained = replica.drainDeltas();
+        peers.keySet().forEach(peer -> {
+            Map<String, QueueCounters> buffer = outgoing.get(peer);
+            // Deltas of the deleted queue must not reach the peer merged into those of a re-created one
+            buffer.keySet().removeAll(deletes.keySet());
+            deletes.forEach((queueId, stamp) -> outgoingDeletes.get(peer).merge(queueId, stamp, Math::max));
+            drained.forEach((queueId, delta) -> buffer.merge(queueId, delta.copy(), (pending, added) -> {
+                pending.merge(added);
+                return pending;
+            }));
+        });
+        if (partitioned) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        peers.forEach((peer, url) -> {
+            Map<String, QueueCounters> buffer = outgoing.get(peer);
+            Map<String, Long> deleteBuffer = outgoingDeletes.get(peer);
+            boolean full = now - lastFullSyncMs.getOrDefault(peer, 0L) >= fullSyncIntervalMs;
+            if (!full && buffer.isEmpty() && deleteBuffer.isEmpty()) {
+                return;
+            }
+            Map<String, QueueCountersState> payload = full
+                    ? replica.fullState()
+                    : buffer.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().toState()));
+            Map<String, Long> deletePayload = full ? replica.deletes() : Map.copyOf(deleteBuffer);
+            if (send(peer, url, new ReplicationMessage(replica.getReplicaId(), full, payload, deletePayload))) {
+                // The full state includes everything buffered for this peer
+                buffer.clear();
+                deleteBuffer.clear();
+                if (full) {
+                    lastFullSyncMs.put(peer, now);
+                }
+            }
+        });
+    }
+
+    /**
+     * Merges a peer's message; refused while a partition is simulated.
+     */
+    public boolean receive(ReplicationMessage message) {
+        if (partitioned) {
+            meterRegistry.counter("smartqueue.replication.messages", "outcome", "rejected").increment();
+            return false;
+        }
+        replica.mergeDeletes(message.deleted());
+        replica.merge(message.queues());
+        meterRegistry.counter("smartqueue.replication.messages", "outcome", "received").increment();
+        log.debug("Merged {} from {} ({} queues, {} deleted)", message.full() ? "full state" : "deltas", message.from(),
+                message.queues().size(), message.deleted().size());
+        return true;
+    }
+
+    public void setPartitioned(boolean partitioned) {
+        log.warn("Replication partition simulation {}", partitioned ? "started" : "ended");
+        this.partitioned = partitioned;
+    }
+
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    public Map<String, Integer> pendingByPeer() {
+        return outgoing.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().size()));
+    }
+
+    private boolean send(String peer, String url, ReplicationMessage message) {
+        try {
+            gossipClient
+                    .post()
+                    .uri(url + "/internal/replication/deltas")
+                    .header(SecurityConfig.INTERNAL_TOKEN_HEADER, internalToken)
+                    .bodyValue(message)
+                    .retrieve()
+                    .toBodilessEntity()
+                    .block(sendTimeout);
+            meterRegistry.counter("smartqueue.replication.messages", "outcome", "sent").increment();
+            return true;
+        } catch (Exception e) {
+            meterRegistry.counter("smartqueue.replication.messages", "outcome", "failed").increment();
+            log.warn("Replication to {} failed, keeping {} queue deltas for the next round: {}",
+                    peer, outgoing.get(peer).size(), e.toString());
+            return false;
+        }
+    }
+
+    private static Map<String, String> parsePeers(String peers) {
+        Map<String, String> parsed = new LinkedHashMap<>();
+        Arrays.stream(peers.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .forEach(entry -> {
+                    int separator = entry.indexOf('=');
+                    if (separator <= 0) {
+                        throw new IllegalArgumentException("Replication peers must be id=url, got: " + entry);
+                    }
+                    String url = entry.substring(separator + 1).trim();
+                    parsed.put(entry.substring(0, separator).trim(), url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+                });
+        return parsed;
+    }
+}
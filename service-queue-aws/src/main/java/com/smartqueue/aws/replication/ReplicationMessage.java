@@ -0,0 +1,17 @@
+package com.smartqueue.aws.replication;
+
+import java.util.Map;
+
+/**
+ * Gossip payload (POST /internal/replication/deltas): per-queue deltas, or the full state when
+ * {@code full} is set. Both are merged the same way. {@code deleted} holds the clock stamps of
+ * queue deletions, applied before the queues. A missing map (older peer, empty body) is empty.
+ */
+public record ReplicationMessage(String from, boolean full, Map<String, QueueCountersState> queues,
+                                 Map<String, Long> deleted) {
+
+    public ReplicationMessage {
+        queues = queues == null ? Map.of() : queues;
+        deleted = deleted == null ? Map.of() : deleted;
+    }
+}
@@ -0,0 +1,50 @@
+package com.smartqueue.aws.repository;
+
+import com.smartqueue.aws.model.JoinGuard;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory implementation for development/testing
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "app.use-in-memory", havingValue = "true")
+@Slf4j
+public class InMemoryJoinGuardRepository extends JoinGuardRepository {
+    
+    private final ConcurrentMap<String, JoinGuard> guardStore = new ConcurrentHashMap<>();
+    
+    public InMemoryJoinGuardRepository() {
+        super(null, null);
+        log.info("🧪 InMemoryJoinGuardRepository initialized for development mode");
+    }
+    
+    @Override
+    public Optional<JoinGuard> findByKey(String guardKey) {
+        log.debug("🔍 [IN-MEMORY] Finding join guard: {}", guardKey);
+        return Optional.ofNullable(guardStore.get(guardKey));
+    }
+    
+    /**
+     * Claims all guards or none - the in-memory counterpart of the guard puts in the ticket transaction.
+     */
+    public synchronized void claimAll(List<JoinGuardClaim> claims) {
+        for (JoinGuardClaim claim : claims) {
+            JoinGuard existing = guardStore.get(claim.getGuard().getGuardKey());
+            if (existing != null && !Objects.equals(existing.getTicketId(), claim.getReplacesTicketId())) {
+                throw new JoinGuardConflictException("Join guard already claimed: " + claim.getGuard().getGuardKey(), null);
+            }
+        }
+        claims.forEach(claim -> guardStore.put(claim.getGuard().getGuardKey(), claim.getGuard()));
+        log.debug("💾 [IN-MEMORY] Claimed {} join guards", claims.size());
+    }
+}
@@ -0,0 +1,115 @@
+package com.smartqueue.aws.repository;
+
+import com.smartqueue.aws.model.OutboxEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory implementation for development/testing
+ */
+@Repository
+@Primary
+@ConditionalOnProperty(name = "app.use-in-memory", havingValue = "true")
+@Slf4j
+public class InMemoryOutboxRepository extends OutboxRepository {
+    
+    // Keyed by stream then zero-padded sequence, i.e. the DynamoDB (partition, sort) order
+    private final ConcurrentSkipListMap<String, OutboxEvent> outboxStore = new ConcurrentSkipListMap<>();
+    private final Map<String, Long> lastSequences = new ConcurrentHashMap<>();
+    
+    public InMemoryOutboxRepository() {
+        super(null, null);
+        log.info("🧪 InMemoryOutboxRepository initialized for development mode");
+    }
+    
+    @Override
+    public long nextSequence(String stream) {
+        Long last = lastSequences.get(stream);
+        return last != null ? last + 1 : TimeUnit.MILLISECONDS.toMicros(Instant.now().toEpochMilli());
+    }
+    
+    /**
+     * Appends the event and advances its stream's counter, failing like the DynamoDB
+     * transaction when another writer already committed the sequence.
+     */
+    @Override
+    public OutboxEvent append(OutboxEvent event) {
+        log.debug("💾 [IN-MEMORY] Appending outbox event: {} (stream: {}, sequence: {})",
+                event.getEventId(), event.getStream(), event.getSequence());
+        lastSequences.compute(event.getStream(), (stream, last) -> {
+            if (last != null && last >= event.getSequence()) {
+                throw new IllegalStateException("Outbox sequence " + event.getSequence() + " already taken in stream " + stream);
+            }
+            return event.getSequence();
+        });
+        outboxStore.put(key(event.getStream(), event.getSequence()), event);
+        return event;
+    }
+    
+    @Override
+    public OutboxPage findPending(int limit, String exclusiveStartStream, Long exclusiveStartSequence) {
+        Map<String, OutboxEvent> remaining = exclusiveStartStream != null
+                ? outboxStore.tailMap(key(exclusiveStartStream, exclusiveStartSequence), false)
+                : outboxStore;
+        List<OutboxEvent> pending = new ArrayList<>(Math.min(limit, outboxStore.size()));
+        Iterator<OutboxEvent> events = remaining.values().iterator();
+        OutboxEvent last = null;
+        while (events.hasNext() && pending.size() < limit) {
+            last = events.next();
+            if (!last.getStream().startsWith(DEAD_LETTER_PREFIX)) {
+                pending.add(last);
+            }
+        }
+        return events.hasNext()
+                ? new OutboxPage(pending, last.getStream(), last.getSequence())
+                : new OutboxPage(pending, null, null);
+    }
+    
+    @Override
+    public void deleteAll(List<OutboxEvent> events) {
+        log.debug("🗑️  [IN-MEMORY] Deleting {} delivered outbox events", events.size());
+        events.forEach(event -> outboxStore.remove(key(event.getStream(), event.getSequence())));
+    }
+    
+    @Override
+    public void deadLetter(OutboxEvent event, String error) {
+        log.debug("💾 [IN-MEMORY] Dead-lettering outbox event: {} (stream: {})", event.getEventId(), event.getStream());
+        OutboxEvent deadLetter = deadLetterOf(event, error);
+        outboxStore.put(key(deadLetter.getStream(), deadLetter.getSequence()), deadLetter);
+        outboxStore.remove(key(event.getStream(), event.getSequence()));
+    }
+    
+    // A single process: the lease is always ours
+    @Override
+    public boolean tryAcquireLease(String owner, Duration duration) {
+        return true;
+    }
+    
+    @Override
+    public void releaseLease(String owner) {
+    }
+    
+    /**
+     * Dead letters of the queue, oldest first.
+     */
+    public List<OutboxEvent> findDeadLetters(String stream) {
+        String prefix = DEAD_LETTER_PREFIX + stream + '\u0000';
+        return List.copyOf(outboxStore.subMap(prefix, prefix + '\uffff').values());
+    }
+    
+    private static String key(String stream, long sequence) {
+        return stream + '\u0000' + String.format("%020d", sequence);
+    }
+}
@@ -9,7 +9,7 @@ import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.stream.Collectors;
 
 /**
@@ -21,10 +21,11 @@ import java.util.stream.Collectors;
 @Slf4j
 public class InMemoryQueueRepository extends QueueRepository {
     
-    private final Map<String, QueueInfo> queueStore = new ConcurrentHashMap<>();
+    // Sorted by queueId so cursor pagination can resume with tailMap
+    private final ConcurrentSkipListMap<String, QueueInfo> queueStore = new ConcurrentSkipListMap<>();
 
     public InMemoryQueueRepository() {
-        super(null, null);
+        super(null, null, null, null, null);
         log.info("🧪 InMemoryQueueRepository initialized for development mode");
         initializeDefaultQueues();
     }
@@ -79,6 +80,28 @@ public class InMemoryQueueRepository extends QueueRepository {
         return Optional.ofNullable(queue);
     }
 
+    @Override
+    public void addOpenSlots(String queueId, int delta) {
+        log.debug("💾 [IN-MEMORY] Adding {} open slots to queue: {}", delta, queueId);
+        queueStore.compute(queueId, (id, queue) -> {
+            if (queue == null) {
+                return QueueInfo.builder()
+                        .queueId(queueId)
+                        .queueName("Queue " + queueId)
+                        .openSlots(delta)
+                        .serviceRateEma(1.0)
+                        .isActive(true)
+                        .maxCapacity(100)
+                        .createdAt(Instant.now())
+                        .updatedAt(Instant.now())
+                        .build();
+            }
+            queue.setOpenSlots((queue.getOpenSlots() != null ? queue.getOpenSlots() : 0) + delta);
+            queue.setUpdatedAt(Instant.now());
+            return queue;
+        });
+    }
+
     public void delete(String queueId) {
         log.debug("🗑️  [IN-MEMORY] Deleting queue: {}", queueId);
         queueStore.remove(queueId);
@@ -89,6 +112,23 @@ public class InMemoryQueueRepository extends QueueRepository {
         return new ArrayList<>(queueStore.values());
     }
 
+    @Override
+    public QueuePage findPage(int limit, String exclusiveStartQueueId, Collection<String> attributes) {
+        log.debug("📋 [IN-MEMORY] Finding queue page: limit={}, after={}", limit, exclusiveStartQueueId);
+        NavigableMap<String, QueueInfo> tail = exclusiveStartQueueId == null
+                ? queueStore
+                : queueStore.tailMap(exclusiveStartQueueId, false);
+        
+        List<QueueInfo> items = new ArrayList<>(Math.min(limit, 64));
+        Iterator<QueueInfo> iterator = tail.values().iterator();
+        while (iterator.hasNext() && items.size() < limit) {
+            items.add(iterator.next());
+        }
+        
+        String lastQueueId = iterator.hasNext() ? items.get(items.size() - 1).getQueueId() : null;
+        return new QueuePage(items, lastQueueId);
+    }
+
     public List<QueueInfo> findActiveQueues() {
         log.debug("📋 [IN-MEMORY] Finding active queues");
         return queueStore.values().stream()
@@ -1,5 +1,6 @@
 package com.smartqueue.aws.repository;
 
+import com.smartqueue.aws.model.OutboxEvent;
 import com.smartqueue.aws.model.Ticket;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -9,6 +10,7 @@ import org.springframework.stereotype.Repository;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.stream.Collectors;
 
 /**
@@ -20,11 +22,16 @@ import java.util.stream.Collectors;
 @Slf4j
 public class InMemoryTicketRepository extends TicketRepository {
     
-    private final Map<String, Ticket> ticketStore = new ConcurrentHashMap<>();
+    // Sorted by ticketId so segment scans can resume after a cursor like DynamoDB
+    private final ConcurrentSkipListMap<String, Ticket> ticketStore = new ConcurrentSkipListMap<>();
     private final Map<String, List<String>> queueTicketsIndex = new ConcurrentHashMap<>();
+    private final OutboxRepository outboxRepository;
+    private final InMemoryJoinGuardRepository joinGuardRepository;
 
-    public InMemoryTicketRepository() {
-        super(null, null);
+    public InMemoryTicketRepository(OutboxRepository outboxRepository, InMemoryJoinGuardRepository joinGuardRepository) {
+        super(null, null, null, null, null);
+        this.outboxRepository = outboxRepository;
+        this.joinGuardRepository = joinGuardRepository;
         log.info("🧪 InMemoryTicketRepository initialized for development mode");
     }
 
@@ -51,7 +58,36 @@ public class InMemoryTicketRepository extends TicketRepository {
     }
 
     @Override
-    public Optional<Ticket> findById(String ticketId) {
+    public Ticket saveWithGuards(Ticket ticket, List<JoinGuardClaim> claims) {
+        log.debug("💾 [IN-MEMORY] Saving ticket: {} with {} join guards", ticket.getTicketId(), claims.size());
+        joinGuardRepository.claimAll(claims);
+        return save(ticket);
+    }
+
+    @Override
+    public synchronized void markServed(List<Ticket> tickets, OutboxEvent event) {
+        log.debug("💾 [IN-MEMORY] Marking {} tickets served with outbox event: {}", tickets.size(), event.getEventId());
+        for (Ticket ticket : tickets) {
+            Ticket stored = ticketStore.get(ticket.getTicketId());
+            if (stored == null || stored.getStatus() != Ticket.TicketStatus.WAITING) {
+                throw new RuntimeException("Ticket is no longer waiting: " + ticket.getTicketId());
+            }
+        }
+        
+        // Appended first: a sequence already taken fails the whole call, like the transaction
+        outboxRepository.append(event);
+        Instant now = event.getOccurredAt();
+        for (Ticket ticket : tickets) {
+            Ticket stored = ticketStore.get(ticket.getTicketId());
+            stored.setStatus(Ticket.TicketStatus.SERVED);
+            stored.setServedAt(now);
+            stored.setUpdatedAt(now);
+        }
+        log.info("✅ [IN-MEMORY] Marked {} tickets served (Queue: {})", tickets.size(), event.getQueueId());
+    }
+
+    @Override
+    public Optional<Ticket> findById(String ticketId, boolean consistentRead) {
         log.debug("🔍 [IN-MEMORY] Finding ticket by ID: {}", ticketId);
         Ticket ticket = ticketStore.get(ticketId);
         return Optional.ofNullable(ticket);
@@ -110,6 +146,32 @@ public class InMemoryTicketRepository extends TicketRepository {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Partitions tickets by ticketId hash, so each segment sees a disjoint slice
+     * just like a DynamoDB parallel scan.
+     */
+    @Override
+    public TicketScanPage scanSegmentPage(int segment, int totalSegments, int pageSize, String exclusiveStartTicketId) {
+        log.debug("📋 [IN-MEMORY] Scanning ticket segment {}/{} after: {}", segment, totalSegments, exclusiveStartTicketId);
+        NavigableMap<String, Ticket> tail = exclusiveStartTicketId == null
+                ? ticketStore
+                : ticketStore.tailMap(exclusiveStartTicketId, false);
+        
+        List<Ticket> items = new ArrayList<>();
+        String lastTicketId = null;
+        for (Map.Entry<String, Ticket> entry : tail.entrySet()) {
+            if (Math.floorMod(entry.getKey().hashCode(), totalSegments) != segment) {
+                continue;
+            }
+            if (items.size() == pageSize) {
+                lastTicketId = items.get(items.size() - 1).getTicketId();
+                break;
+            }
+            items.add(entry.getValue());
+        }
+        return new TicketScanPage(items, lastTicketId, 0.0);
+    }
+
     public int countActiveTickets(String queueId) {
         return (int) findByQueueId(queueId).stream()
                 .filter(ticket -> "WAITING".equals(ticket.getStatus()) || "CALLED".equals(ticket.getStatus()))
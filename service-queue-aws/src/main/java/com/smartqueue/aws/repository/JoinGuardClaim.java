@@ -0,0 +1,17 @@
+package com.smartqueue.aws.repository;
+
+import com.smartqueue.aws.model.JoinGuard;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A guard to write together with a new ticket. The write succeeds if no guard exists for the key,
+ * or if the existing one still points at {@code replacesTicketId} (a ticket known to be stale).
+ */
+@Data
+@AllArgsConstructor
+public class JoinGuardClaim {
+    
+    private JoinGuard guard;
+    private String replacesTicketId;
+}
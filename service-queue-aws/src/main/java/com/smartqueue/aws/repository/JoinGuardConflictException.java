@@ -0,0 +1,11 @@
+package com.smartqueue.aws.repository;
+
+/**
+ * A join guard was claimed concurrently by another request (conditional write failed).
+ */
+public class JoinGuardConflictException extends RuntimeException {
+    
+    public JoinGuardConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
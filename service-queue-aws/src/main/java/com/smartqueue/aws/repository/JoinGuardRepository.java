@@ -0,0 +1,42 @@
+package com.smartqueue.aws.repository;
+
+import com.smartqueue.aws.model.JoinGuard;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+
+import java.util.Optional;
+
+@Slf4j
+@Repository
+public class JoinGuardRepository {
+    
+    private final DynamoDbEnhancedClient dynamoDbClient;
+    private final String joinGuardsTableName;
+    
+    public JoinGuardRepository(DynamoDbEnhancedClient dynamoDbClient, String joinGuardsTableName) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.joinGuardsTableName = joinGuardsTableName;
+    }
+    
+    private DynamoDbTable<JoinGuard> getJoinGuardsTable() {
+        return dynamoDbClient.table(joinGuardsTableName, TableSchema.fromBean(JoinGuard.class));
+    }
+    
+    public Optional<JoinGuard> findByKey(String guardKey) {
+        log.debug("Finding join guard: {}", guardKey);
+        
+        try {
+            JoinGuard guard = getJoinGuardsTable().getItem(Key.builder()
+                    .partitionValue(guardKey)
+                    .build());
+            return Optional.ofNullable(guard);
+        } catch (Exception e) {
+            log.error("Error finding join guard: {}", guardKey, e);
+            throw new RuntimeException("Failed to read join guard", e);
+        }
+    }
+}
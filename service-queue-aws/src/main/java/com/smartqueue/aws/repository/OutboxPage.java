@@ -0,0 +1,25 @@
+package com.smartqueue.aws.repository;
+
+import com.smartqueue.aws.model.OutboxEvent;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of a scan over pending outbox events. {@code lastEvaluatedStream} and
+ * {@code lastEvaluatedSequence} are the DynamoDB LastEvaluatedKey (null when the scan is
+ * exhausted); a page may be empty and still have more.
+ */
+@Data
+@AllArgsConstructor
+public class OutboxPage {
+
+    private List<OutboxEvent> items;
+    private String lastEvaluatedStream;
+    private Long lastEvaluatedSequence;
+
+    public boolean hasMore() {
+        return lastEvaluatedStream != null;
+    }
+}
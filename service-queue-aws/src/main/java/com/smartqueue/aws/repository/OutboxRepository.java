@@ -0,0 +1,253 @@
+package com.smartqueue.aws.repository;
+
+import com.smartqueue.aws.model.OutboxEvent;
+import com.smartqueue.aws.model.OutboxLease;
+import com.smartqueue.aws.model.OutboxSequence;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.DeleteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactUpdateItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactWriteItemsEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbox table: events keyed by (stream, sequence), plus control items at sort key 0 - each
+ * stream's sequence counter (OutboxSequence) and the relay lease (OutboxLease). Scans for
+ * pending events skip the control items and the dead-letter streams.
+ */
+@Slf4j
+@Repository
+public class OutboxRepository {
+    
+    public static final String DEAD_LETTER_PREFIX = "dead#";
+    
+    // Sort key of the control items; event sequences are epoch-microsecond based, far above it
+    static final long CONTROL_SEQUENCE = 0;
+    static final String LEASE_STREAM = "relay#lease";
+    
+    // DynamoDB BatchWriteItem limit
+    private static final int MAX_BATCH_WRITE = 25;
+    
+    private final DynamoDbEnhancedClient dynamoDbClient;
+    private final String outboxTableName;
+    
+    public OutboxRepository(DynamoDbEnhancedClient dynamoDbClient, String outboxTableName) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.outboxTableName = outboxTableName;
+    }
+    
+    private DynamoDbTable<OutboxEvent> getOutboxTable() {
+        return dynamoDbClient.table(outboxTableName, TableSchema.fromBean(OutboxEvent.class));
+    }
+    
+    private DynamoDbTable<OutboxSequence> getSequenceTable() {
+        return dynamoDbClient.table(outboxTableName, TableSchema.fromBean(OutboxSequence.class));
+    }
+    
+    private DynamoDbTable<OutboxLease> getLeaseTable() {
+        return dynamoDbClient.table(outboxTableName, TableSchema.fromBean(OutboxLease.class));
+    }
+    
+    /**
+     * Next sequence of the stream: one above the last committed one (strongly consistent read),
+     * or the current epoch microseconds for a stream without a counter yet, which stays above
+     * the time-based sequences of events written before the counters existed. The event only
+     * commits if no other writer took the sequence first (see {@link #sequenceClaim}).
+     */
+    public long nextSequence(String stream) {
+        OutboxSequence counter = getSequenceTable().getItem(GetItemEnhancedRequest.builder()
+                .key(controlKey(stream))
+                .consistentRead(true)
+                .build());
+        if (counter != null && counter.getLastSequence() != null) {
+            return counter.getLastSequence() + 1;
+        }
+        return TimeUnit.MILLISECONDS.toMicros(Instant.now().toEpochMilli());
+    }
+    
+    /**
+     * Transaction item that advances the stream's counter to the event's sequence, on condition
+     * that it is below it; a concurrent writer that committed the same or a higher sequence
+     * cancels the transaction.
+     */
+    public static TransactUpdateItemEnhancedRequest<OutboxSequence> sequenceClaim(OutboxEvent event) {
+        return TransactUpdateItemEnhancedRequest.builder(OutboxSequence.class)
+                .item(OutboxSequence.builder()
+                        .stream(event.getStream())
+                        .sequence(CONTROL_SEQUENCE)
+                        .lastSequence(event.getSequence())
+                        .build())
+                .ignoreNulls(true)
+                .conditionExpression(Expression.builder()
+                        .expression("attribute_not_exists(#last) OR #last < :sequence")
+                        .putExpressionName("#last", "lastSequence")
+                        .putExpressionValue(":sequence", AttributeValue.builder().n(Long.toString(event.getSequence())).build())
+                        .build())
+                .build();
+    }
+    
+    public OutboxEvent append(OutboxEvent event) {
+        log.debug("Appending outbox event: {} (stream: {}, sequence: {})", event.getEventId(), event.getStream(), event.getSequence());
+        getOutboxTable().putItem(event);
+        return event;
+    }
+    
+    /**
+     * Next page of pending events after the given key (null: from the start), from a scan of
+     * up to {@code limit} items. A scan returns each stream's events in sequence order, so a
+     * stream cut off by the page continues at the start of the next one.
+     */
+    public OutboxPage findPending(int limit, String exclusiveStartStream, Long exclusiveStartSequence) {
+        log.debug("Finding pending outbox events (limit: {}, after: {}/{})", limit, exclusiveStartStream, exclusiveStartSequence);
+        
+        try {
+            ScanEnhancedRequest.Builder request = ScanEnhancedRequest.builder()
+                    .limit(limit)
+                    .filterExpression(Expression.builder()
+                            .expression("#sequence > :control AND NOT begins_with(#stream, :dead)")
+                            .putExpressionName("#sequence", "sequence")
+                            .putExpressionName("#stream", "stream")
+                            .putExpressionValue(":control", AttributeValue.builder().n(Long.toString(CONTROL_SEQUENCE)).build())
+                            .putExpressionValue(":dead", AttributeValue.builder().s(DEAD_LETTER_PREFIX).build())
+                            .build());
+            if (exclusiveStartStream != null) {
+                request.exclusiveStartKey(Map.of(
+                        "stream", AttributeValue.builder().s(exclusiveStartStream).build(),
+                        "sequence", AttributeValue.builder().n(Long.toString(exclusiveStartSequence)).build()));
+            }
+            
+            Page<OutboxEvent> page = getOutboxTable().scan(request.build()).iterator().next();
+            Map<String, AttributeValue> lastKey = page.lastEvaluatedKey();
+            if (lastKey == null || !lastKey.containsKey("stream")) {
+                return new OutboxPage(page.items(), null, null);
+            }
+            return new OutboxPage(page.items(), lastKey.get("stream").s(), Long.parseLong(lastKey.get("sequence").n()));
+        } catch (Exception e) {
+            log.error("Error finding pending outbox events", e);
+            throw new RuntimeException("Failed to read outbox", e);
+        }
+    }
+    
+    public void deleteAll(List<OutboxEvent> events) {
+        log.debug("Deleting {} delivered outbox events", events.size());
+        
+        DynamoDbTable<OutboxEvent> table = getOutboxTable();
+        for (int from = 0; from < events.size(); from += MAX_BATCH_WRITE) {
+            WriteBatch.Builder<OutboxEvent> batch = WriteBatch.builder(OutboxEvent.class).mappedTableResource(table);
+            for (OutboxEvent event : events.subList(from, Math.min(from + MAX_BATCH_WRITE, events.size()))) {
+                batch.addDeleteItem(key(event));
+            }
+            dynamoDbClient.batchWriteItem(BatchWriteItemEnhancedRequest.builder()
+                    .writeBatches(batch.build())
+                    .build());
+        }
+    }
+    
+    /**
+     * Moves an event the ETA service rejected to the stream's dead-letter stream, with the
+     * reason, in one transaction; dead letters are kept for inspection and never relayed.
+     */
+    public void deadLetter(OutboxEvent event, String error) {
+        log.debug("Dead-lettering outbox event: {} (stream: {})", event.getEventId(), event.getStream());
+        
+        DynamoDbTable<OutboxEvent> table = getOutboxTable();
+        dynamoDbClient.transactWriteItems(TransactWriteItemsEnhancedRequest.builder()
+                .addPutItem(table, deadLetterOf(event, error))
+                .addDeleteItem(table, key(event))
+                .build());
+    }
+    
+    /**
+     * Takes or renews the relay lease for {@code duration}; false while another owner holds
+     * an unexpired one. Expiry is compared with this node's clock, so the lease should be
+     * much longer than the clock skew between nodes.
+     */
+    public boolean tryAcquireLease(String owner, Duration duration) {
+        long now = System.currentTimeMillis();
+        try {
+            getLeaseTable().putItem(PutItemEnhancedRequest.builder(OutboxLease.class)
+                    .item(OutboxLease.builder()
+                            .stream(LEASE_STREAM)
+                            .sequence(CONTROL_SEQUENCE)
+                            .owner(owner)
+                            .expiresAt(now + duration.toMillis())
+                            .build())
+                    .conditionExpression(Expression.builder()
+                            .expression("attribute_not_exists(#owner) OR #owner = :owner OR #expiresAt < :now")
+                            .putExpressionName("#owner", "owner")
+                            .putExpressionName("#expiresAt", "expiresAt")
+                            .putExpressionValue(":owner", AttributeValue.builder().s(owner).build())
+                            .putExpressionValue(":now", AttributeValue.builder().n(Long.toString(now)).build())
+                            .build())
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Gives the lease up if this owner still holds it, so another node takes over right away.
+     */
+    public void releaseLease(String owner) {
+        try {
+            getLeaseTable().deleteItem(DeleteItemEnhancedRequest.builder()
+                    .key(controlKey(LEASE_STREAM))
+                    .conditionExpression(Expression.builder()
+                            .expression("#owner = :owner")
+                            .putExpressionName("#owner", "owner")
+                            .putExpressionValue(":owner", AttributeValue.builder().s(owner).build())
+                            .build())
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            log.debug("Outbox relay lease already taken over, nothing to release");
+        }
+    }
+    
+    protected static OutboxEvent deadLetterOf(OutboxEvent event, String error) {
+        return OutboxEvent.builder()
+                .stream(DEAD_LETTER_PREFIX + event.getStream())
+                .sequence(event.getSequence())
+                .eventId(event.getEventId())
+                .eventType(event.getEventType())
+                .queueId(event.getQueueId())
+                .count(event.getCount())
+                .windowSec(event.getWindowSec())
+                .occurredAt(event.getOccurredAt())
+                .waitSeconds(event.getWaitSeconds())
+                .error(error)
+                .build();
+    }
+    
+    private static Key key(OutboxEvent event) {
+        return Key.builder()
+                .partitionValue(event.getStream())
+                .sortValue(event.getSequence())
+                .build();
+    }
+    
+    private static Key controlKey(String stream) {
+        return Key.builder()
+                .partitionValue(stream)
+                .sortValue(CONTROL_SEQUENCE)
+                .build();
+    }
+}
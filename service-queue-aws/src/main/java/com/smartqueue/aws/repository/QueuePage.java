@@ -0,0 +1,23 @@
+package com.smartqueue.aws.repository;
+
+import com.smartqueue.aws.model.QueueInfo;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of a queue listing. {@code lastEvaluatedQueueId} is the DynamoDB
+ * LastEvaluatedKey (null when the listing is exhausted).
+ */
+@Data
+@AllArgsConstructor
+public class QueuePage {
+
+    private List<QueueInfo> items;
+    private String lastEvaluatedQueueId;
+
+    public boolean hasMore() {
+        return lastEvaluatedQueueId != null;
+    }
+}
@@ -1,6 +1,7 @@
 package com.smartqueue.aws.repository;
 
 import com.smartqueue.aws.model.QueueInfo;
+import com.smartqueue.aws.sharding.QueueShardingPolicy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
@@ -8,8 +9,16 @@ import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
 import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 @Slf4j
@@ -17,11 +26,19 @@ import java.util.Optional;
 public class QueueRepository {
     
     private final DynamoDbEnhancedClient dynamoDbClient;
+    // Low-level client for update expressions the enhanced client cannot express (ADD)
+    private final DynamoDbClient dynamoDbLowLevelClient;
     private final String queuesTableName;
+    private final QueueShardCounterRepository shardCounterRepository;
+    private final QueueShardingPolicy shardingPolicy;
     
-    public QueueRepository(DynamoDbEnhancedClient dynamoDbClient, String queuesTableName) {
+    public QueueRepository(DynamoDbEnhancedClient dynamoDbClient, DynamoDbClient dynamoDbLowLevelClient, String queuesTableName,
+                           QueueShardCounterRepository shardCounterRepository, QueueShardingPolicy shardingPolicy) {
         this.dynamoDbClient = dynamoDbClient;
+        this.dynamoDbLowLevelClient = dynamoDbLowLevelClient;
         this.queuesTableName = queuesTableName;
+        this.shardCounterRepository = shardCounterRepository;
+        this.shardingPolicy = shardingPolicy;
     }
     
     private DynamoDbTable<QueueInfo> getQueuesTable() {
@@ -36,7 +53,16 @@ public class QueueRepository {
             queueInfo.setCreatedAt(Instant.now());
         }
         
-        getQueuesTable().putItem(queueInfo);
+        Integer openSlots = queueInfo.getOpenSlots();
+        if (isSharded(queueInfo.getQueueId()) && openSlots != null) {
+            // Callers see openSlots including the shard deltas; the item stores the base
+            queueInfo.setOpenSlots((int) (openSlots - sumShardDeltas(queueInfo.getQueueId())));
+        }
+        try {
+            getQueuesTable().putItem(queueInfo);
+        } finally {
+            queueInfo.setOpenSlots(openSlots);
+        }
         
         log.info("Queue info saved successfully: {}", queueInfo.getQueueId());
         return queueInfo;
@@ -51,7 +77,7 @@ public class QueueRepository {
                     .build();
             
             QueueInfo queueInfo = getQueuesTable().getItem(key);
-            return Optional.ofNullable(queueInfo);
+            return Optional.ofNullable(queueInfo).map(this::withShardDeltas);
         } catch (Exception e) {
             log.error("Error finding queue info by ID: {}", queueId, e);
             return Optional.empty();
@@ -87,6 +113,36 @@ public class QueueRepository {
         }
     }
     
+    /**
+     * Adds {@code delta} to the queue's openSlots. Hot queues add to one counter shard instead of
+     * rewriting the queue item; other queues get an atomic ADD on the queue item, so concurrent
+     * serves never overwrite each other's counts.
+     */
+    public void addOpenSlots(String queueId, int delta) {
+        if (isSharded(queueId)) {
+            shardCounterRepository.addOpenSlots(queueId, shardingPolicy.pickShard(queueId), delta);
+            return;
+        }
+        
+        try {
+            dynamoDbLowLevelClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(queuesTableName)
+                    .key(Map.of("queueId", AttributeValue.builder().s(queueId).build()))
+                    .updateExpression("ADD openSlots :delta SET updatedAt = :now")
+                    .conditionExpression("attribute_exists(queueId)")
+                    .expressionAttributeValues(Map.of(
+                            ":delta", AttributeValue.builder().n(Integer.toString(delta)).build(),
+                            ":now", AttributeValue.builder().s(Instant.now().toString()).build()))
+                    .build());
+        } catch (ConditionalCheckFailedException e) {
+            // No queue item yet: created with defaults, as updateOpenSlots does
+            updateOpenSlots(queueId, delta);
+        } catch (Exception e) {
+            log.error("Error adding open slots for queue: {}", queueId, e);
+            throw new RuntimeException("Failed to update open slots", e);
+        }
+    }
+    
     public QueueInfo updateServiceRate(String queueId, double serviceRate) {
         log.debug("Updating service rate for queue: {} to {}", queueId, serviceRate);
         
@@ -128,6 +184,9 @@ public class QueueRepository {
                     .build();
             
             getQueuesTable().deleteItem(key);
+            if (isSharded(queueId)) {
+                shardCounterRepository.deleteAll(queueId, shardingPolicy.shardCount(queueId));
+            }
             log.info("Queue deleted successfully: {}", queueId);
         } catch (Exception e) {
             log.error("Error deleting queue: {}", queueId, e);
@@ -139,10 +198,52 @@ public class QueueRepository {
         log.debug("Finding all queues");
         try {
             return getQueuesTable().scan().items().stream()
+                    .map(this::withShardDeltas)
                     .collect(java.util.stream.Collectors.toList());
         } catch (Exception e) {
             log.error("Error finding all queues", e);
             throw new RuntimeException("Failed to find all queues", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads a single scan page of at most {@code limit} queues starting after
+     * {@code exclusiveStartQueueId}. When {@code attributes} is non-empty only those
+     * attributes are read (queueId is always included).
+     */
+    public QueuePage findPage(int limit, String exclusiveStartQueueId, Collection<String> attributes) {
+        log.debug("Finding queue page: limit={}, after={}", limit, exclusiveStartQueueId);
+        try {
+            ScanEnhancedRequest.Builder request = ScanEnhancedRequest.builder().limit(limit);
+            if (exclusiveStartQueueId != null) {
+                request.exclusiveStartKey(Map.of("queueId", AttributeValue.builder().s(exclusiveStartQueueId).build()));
+            }
+            if (attributes != null && !attributes.isEmpty()) {
+                request.attributesToProject(attributes);
+            }
+            
+            Page<QueueInfo> page = getQueuesTable().scan(request.build()).iterator().next();
+            Map<String, AttributeValue> lastKey = page.lastEvaluatedKey();
+            String lastQueueId = lastKey != null && lastKey.containsKey("queueId") ? lastKey.get("queueId").s() : null;
+            return new QueuePage(page.items().stream().map(this::withShardDeltas).toList(), lastQueueId);
+        } catch (Exception e) {
+            log.error("Error finding queue page after: {}", exclusiveStartQueueId, e);
+            throw new RuntimeException("Failed to find queue page", e);
+        }
+    }
+
+    private boolean isSharded(String queueId) {
+        return shardingPolicy != null && shardingPolicy.isSharded(queueId);
+    }
+    
+    private long sumShardDeltas(String queueId) {
+        return shardCounterRepository.sumOpenSlots(queueId, shardingPolicy.shardCount(queueId));
+    }
+    
+    private QueueInfo withShardDeltas(QueueInfo queueInfo) {
+        if (isSharded(queueInfo.getQueueId()) && queueInfo.getOpenSlots() != null) {
+            queueInfo.setOpenSlots((int) (queueInfo.getOpenSlots() + sumShardDeltas(queueInfo.getQueueId())));
+        }
+        return queueInfo;
+    }
+}
@@ -0,0 +1,102 @@
+package com.smartqueue.aws.repository;
+
+import com.smartqueue.aws.sharding.QueueShardingPolicy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * openSlots deltas of sharded queues, one counter item per shard ("queueId#shard").
+ * Updates are atomic ADDs on a single shard item, so concurrent serves do not contend on one key;
+ * a queue's openSlots is the queue item's base value plus the sum over its shards.
+ */
+@Slf4j
+@Repository
+public class QueueShardCounterRepository {
+    
+    private static final String SHARD_KEY = "shardKey";
+    private static final String OPEN_SLOTS_DELTA = "openSlotsDelta";
+    
+    private final DynamoDbClient dynamoDbClient;
+    private final String queueShardsTableName;
+    
+    public QueueShardCounterRepository(DynamoDbClient dynamoDbClient, String queueShardsTableName) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.queueShardsTableName = queueShardsTableName;
+    }
+    
+    public void addOpenSlots(String queueId, int shard, long delta) {
+        log.debug("Adding {} open slots to queue: {} shard: {}", delta, queueId, shard);
+        
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(queueShardsTableName)
+                    .key(shardKey(queueId, shard))
+                    .updateExpression("ADD " + OPEN_SLOTS_DELTA + " :delta SET queueId = :queueId")
+                    .expressionAttributeValues(Map.of(
+                            ":delta", AttributeValue.builder().n(Long.toString(delta)).build(),
+                            ":queueId", AttributeValue.builder().s(queueId).build()))
+                    .build());
+        } catch (Exception e) {
+            log.error("Error adding open slots for queue: {} shard: {}", queueId, shard, e);
+            throw new RuntimeException("Failed to update shard counter", e);
+        }
+    }
+    
+    public long sumOpenSlots(String queueId, int shardCount) {
+        List<Map<String, AttributeValue>> keys = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            keys.add(shardKey(queueId, shard));
+        }
+        
+        try {
+            long sum = 0;
+            Map<String, KeysAndAttributes> request = Map.of(queueShardsTableName, KeysAndAttributes.builder()
+                    .keys(keys)
+                    .projectionExpression(OPEN_SLOTS_DELTA)
+                    .build());
+            // Shard count is capped at 64, within one BatchGetItem; loop only for unprocessed keys
+            while (!request.isEmpty()) {
+                BatchGetItemResponse response = dynamoDbClient.batchGetItem(BatchGetItemRequest.builder()
+                        .requestItems(request)
+                        .build());
+                for (Map<String, AttributeValue> item : response.responses().getOrDefault(queueShardsTableName, List.of())) {
+                    AttributeValue delta = item.get(OPEN_SLOTS_DELTA);
+                    if (delta != null && delta.n() != null) {
+                        sum += Long.parseLong(delta.n());
+                    }
+                }
+                request = response.unprocessedKeys();
+            }
+            return sum;
+        } catch (Exception e) {
+            log.error("Error reading shard counters for queue: {}", queueId, e);
+            throw new RuntimeException("Failed to read shard counters", e);
+        }
+    }
+    
+    public void deleteAll(String queueId, int shardCount) {
+        log.debug("Deleting {} shard counters of queue: {}", shardCount, queueId);
+        
+        for (int shard = 0; shard < shardCount; shard++) {
+            dynamoDbClient.deleteItem(DeleteItemRequest.builder()
+                    .tableName(queueShardsTableName)
+                    .key(shardKey(queueId, shard))
+                    .build());
+        }
+    }
+    
+    private static Map<String, AttributeValue> shardKey(String queueId, int shard) {
+        return Map.of(SHARD_KEY, AttributeValue.builder().s(QueueShardingPolicy.shardKey(queueId, shard)).build());
+    }
+}
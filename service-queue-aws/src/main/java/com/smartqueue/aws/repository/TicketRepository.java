@@ -1,17 +1,31 @@
 package com.smartqueue.aws.repository;
 
+import com.smartqueue.aws.model.JoinGuard;
+import com.smartqueue.aws.model.OutboxEvent;
+import com.smartqueue.aws.model.OutboxSequence;
 import com.smartqueue.aws.model.Ticket;
+import com.smartqueue.aws.sharding.QueueShardingPolicy;
+import com.smartqueue.aws.sharding.ShardMerge;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbIndex;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactPutItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactUpdateItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactWriteItemsEnhancedRequest;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 
 import java.time.Instant;
 import java.util.ArrayList;
@@ -24,29 +38,109 @@ import java.util.stream.Collectors;
 @Repository
 public class TicketRepository {
     
+    // DynamoDB TransactWriteItems allows 100 items; two are the outbox event and its stream's counter
+    public static final int MAX_TICKETS_PER_TRANSACTION = 98;
+    
     private final DynamoDbEnhancedClient dynamoDbClient;
     private final String ticketsTableName;
+    private final String outboxTableName;
+    private final String joinGuardsTableName;
+    private final QueueShardingPolicy shardingPolicy;
     
-    public TicketRepository(DynamoDbEnhancedClient dynamoDbClient, String ticketsTableName) {
+    public TicketRepository(DynamoDbEnhancedClient dynamoDbClient, String ticketsTableName,
+                            String outboxTableName, String joinGuardsTableName,
+                            QueueShardingPolicy shardingPolicy) {
         this.dynamoDbClient = dynamoDbClient;
         this.ticketsTableName = ticketsTableName;
+        this.outboxTableName = outboxTableName;
+        this.joinGuardsTableName = joinGuardsTableName;
+        this.shardingPolicy = shardingPolicy;
     }
     
     private DynamoDbTable<Ticket> getTicketsTable() {
         return dynamoDbClient.table(ticketsTableName, TableSchema.fromBean(Ticket.class));
     }
     
+    private DynamoDbTable<OutboxEvent> getOutboxTable() {
+        return dynamoDbClient.table(outboxTableName, TableSchema.fromBean(OutboxEvent.class));
+    }
+    
+    private DynamoDbTable<OutboxSequence> getOutboxSequenceTable() {
+        return dynamoDbClient.table(outboxTableName, TableSchema.fromBean(OutboxSequence.class));
+    }
+    
+    private DynamoDbTable<JoinGuard> getJoinGuardsTable() {
+        return dynamoDbClient.table(joinGuardsTableName, TableSchema.fromBean(JoinGuard.class));
+    }
+    
     public Ticket save(Ticket ticket) {
         log.debug("Saving ticket: {}", ticket.getTicketId());
         
-        ticket.setJoinedAt(Instant.now());
+        // Keep the original join time on re-saves: it orders the queue (and fixes sharded sequences)
+        if (ticket.getJoinedAt() == null) {
+            ticket.setJoinedAt(Instant.now());
+        }
         getTicketsTable().putItem(ticket);
         
         log.info("Ticket saved successfully: {}", ticket.getTicketId());
         return ticket;
     }
     
+    /**
+     * Saves a new ticket together with its join guards in one transaction. Throws
+     * JoinGuardConflictException if a guard is held by another ticket (a concurrent duplicate join).
+     */
+    public Ticket saveWithGuards(Ticket ticket, List<JoinGuardClaim> claims) {
+        log.debug("Saving ticket: {} with {} join guards", ticket.getTicketId(), claims.size());
+        
+        if (ticket.getJoinedAt() == null) {
+            ticket.setJoinedAt(Instant.now());
+        }
+        TransactWriteItemsEnhancedRequest.Builder transaction = TransactWriteItemsEnhancedRequest.builder()
+                .addPutItem(getTicketsTable(), ticket);
+        
+        DynamoDbTable<JoinGuard> guardsTable = getJoinGuardsTable();
+        for (JoinGuardClaim claim : claims) {
+            Expression.Builder condition = Expression.builder()
+                    .putExpressionName("#guardKey", "guardKey");
+            if (claim.getReplacesTicketId() == null) {
+                condition.expression("attribute_not_exists(#guardKey)");
+            } else {
+                condition.expression("attribute_not_exists(#guardKey) OR ticketId = :staleTicketId")
+                        .putExpressionValue(":staleTicketId", AttributeValue.builder().s(claim.getReplacesTicketId()).build());
+            }
+            transaction.addPutItem(guardsTable, TransactPutItemEnhancedRequest.builder(JoinGuard.class)
+                    .item(claim.getGuard())
+                    .conditionExpression(condition.build())
+                    .build());
+        }
+        
+        try {
+            dynamoDbClient.transactWriteItems(transaction.build());
+        } catch (TransactionCanceledException e) {
+            boolean guardConflict = e.hasCancellationReasons() && e.cancellationReasons().stream()
+                    .anyMatch(reason -> "ConditionalCheckFailed".equals(reason.code()));
+            if (guardConflict) {
+                throw new JoinGuardConflictException("Join guard already claimed for ticket: " + ticket.getTicketId(), e);
+            }
+            log.error("Error saving ticket with join guards: {}", ticket.getTicketId(), e);
+            throw new RuntimeException("Failed to save ticket", e);
+        }
+        
+        log.info("Ticket saved successfully with join guards: {}", ticket.getTicketId());
+        return ticket;
+    }
+    
     public Optional<Ticket> findById(String ticketId) {
+        return findById(ticketId, false);
+    }
+    
+    /**
+     * Reads one ticket; empty only if it does not exist. A failed read throws - callers such as
+     * join guard takeover must not mistake it for a missing ticket. {@code consistentRead} sees
+     * every write acknowledged before the read (e.g. a ticket saved with its guard just now).
+     */
+    public Optional<Ticket> findById(String ticketId, boolean consistentRead) {
         log.debug("Finding ticket by ID: {}", ticketId);
         
         try {
@@ -54,11 +148,14 @@ public class TicketRepository {
                     .partitionValue(ticketId)
                     .build();
             
-            Ticket ticket = getTicketsTable().getItem(key);
+            Ticket ticket = getTicketsTable().getItem(GetItemEnhancedRequest.builder()
+                    .key(key)
+                    .consistentRead(consistentRead)
+                    .build());
             return Optional.ofNullable(ticket);
         } catch (Exception e) {
             log.error("Error finding ticket by ID: {}", ticketId, e);
-            return Optional.empty();
+            throw new RuntimeException("Failed to read ticket " + ticketId, e);
         }
     }
     
@@ -82,15 +179,49 @@ public class TicketRepository {
                     .stream()
                     .collect(Collectors.toList());
         } catch (Exception e) {
+            // An empty list would read as "nobody waiting" to snapshots, processNext and queue deletion
             log.error("Error finding tickets by queue ID and status", e);
-            return List.of();
+            throw new RuntimeException("Failed to find tickets of queue " + queueId, e);
         }
     }
     
     public List<Ticket> findWaitingTicketsByQueue(String queueId) {
+        if (shardingPolicy != null && shardingPolicy.isSharded(queueId)) {
+            return findWaitingTicketsByShards(queueId, shardingPolicy.shardCount(queueId));
+        }
         return findByQueueIdAndStatus(queueId, Ticket.TicketStatus.WAITING);
     }
     
+    /**
+     * Waiting tickets of a sharded queue in arrival order: one query per shard of the sparse
+     * waiting index (each already sorted by sequence), then a k-way merge by sequence.
+     */
+    private List<Ticket> findWaitingTicketsByShards(String queueId, int shardCount) {
+        log.debug("Finding waiting tickets of sharded queue: {} ({} shards)", queueId, shardCount);
+        
+        try {
+            DynamoDbIndex<Ticket> waitingIndex = getTicketsTable().index(Ticket.WAITING_SHARD_INDEX);
+            List<List<Ticket>> runs = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                QueryEnhancedRequest query = QueryEnhancedRequest.builder()
+                        .queryConditional(QueryConditional.keyEqualTo(Key.builder()
+                                .partitionValue(QueueShardingPolicy.shardKey(queueId, shard))
+                                .build()))
+                        .scanIndexForward(true)
+                        .build();
+                runs.add(waitingIndex.query(query).stream()
+                        .flatMap(page -> page.items().stream())
+                        // The index is eventually consistent: drop tickets served moments ago
+                        .filter(ticket -> ticket.getStatus() == Ticket.TicketStatus.WAITING)
+                        .toList());
+            }
+            return ShardMerge.bySequence(runs, Ticket::getSequence);
+        } catch (Exception e) {
+            log.error("Error finding waiting tickets of sharded queue: {}", queueId, e);
+            throw new RuntimeException("Failed to find waiting tickets of queue " + queueId, e);
+        }
+    }
+    
     public Ticket updateStatus(String ticketId, Ticket.TicketStatus newStatus) {
         log.debug("Updating ticket status: {} to {}", ticketId, newStatus);
         
@@ -113,6 +244,49 @@ public class TicketRepository {
         }
     }
     
+    /**
+     * Marks the tickets SERVED and appends {@code event} to the outbox in one transaction,
+     * so the served-stats event exists if and only if the tickets changed. Fails if any ticket
+     * is no longer WAITING (e.g. served concurrently by another call).
+     */
+    public void markServed(List<Ticket> tickets, OutboxEvent event) {
+        log.debug("Marking {} tickets served with outbox event: {}", tickets.size(), event.getEventId());
+        
+        if (tickets.size() > MAX_TICKETS_PER_TRANSACTION) {
+            throw new IllegalArgumentException("At most " + MAX_TICKETS_PER_TRANSACTION + " tickets per transaction");
+        }
+        
+        try {
+            Instant now = event.getOccurredAt(); // the wait times in the event end here
+            Expression stillWaiting = Expression.builder()
+                    .expression("#status = :waiting")
+                    .putExpressionName("#status", "status")
+                    .putExpressionValue(":waiting", AttributeValue.builder().s(Ticket.TicketStatus.WAITING.name()).build())
+                    .build();
+            
+            DynamoDbTable<Ticket> ticketsTable = getTicketsTable();
+            TransactWriteItemsEnhancedRequest.Builder transaction = TransactWriteItemsEnhancedRequest.builder();
+            for (Ticket ticket : tickets) {
+                ticket.setStatus(Ticket.TicketStatus.SERVED);
+                ticket.setServedAt(now);
+                ticket.setUpdatedAt(now);
+                ticket.setWaitingShard(null); // leaves the sparse waiting index
+                transaction.addUpdateItem(ticketsTable, TransactUpdateItemEnhancedRequest.builder(Ticket.class)
+                        .item(ticket)
+                        .conditionExpression(stillWaiting)
+                        .build());
+            }
+            transaction.addPutItem(getOutboxTable(), event);
+            transaction.addUpdateItem(getOutboxSequenceTable(), OutboxRepository.sequenceClaim(event));
+            
+            dynamoDbClient.transactWriteItems(transaction.build());
+            log.info("Marked {} tickets served, outbox event: {}", tickets.size(), event.getEventId());
+        } catch (Exception e) {
+            log.error("Error marking tickets served for queue: {}", event.getQueueId(), e);
+            throw new RuntimeException("Failed to mark tickets served", e);
+        }
+    }
+    
     public void updateLastNotified(String ticketId) {
         log.debug("Updating last notified time for ticket: {}", ticketId);
         
@@ -161,4 +335,34 @@ public class TicketRepository {
             throw new RuntimeException("Failed to delete ticket", e);
         }
     }
+
+    /**
+     * Reads one page of a parallel scan segment ({@code segment} of {@code totalSegments}),
+     * reporting the consumed read capacity so callers can throttle themselves.
+     */
+    public TicketScanPage scanSegmentPage(int segment, int totalSegments, int pageSize, String exclusiveStartTicketId) {
+        log.debug("Scanning ticket segment {}/{} after: {}", segment, totalSegments, exclusiveStartTicketId);
+        
+        try {
+            ScanEnhancedRequest.Builder request = ScanEnhancedRequest.builder()
+                    .segment(segment)
+                    .totalSegments(totalSegments)
+                    .limit(pageSize)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+            if (exclusiveStartTicketId != null) {
+                request.exclusiveStartKey(Map.of("ticketId", AttributeValue.builder().s(exclusiveStartTicketId).build()));
+            }
+            
+            Page<Ticket> page = getTicketsTable().scan(request.build()).iterator().next();
+            Map<String, AttributeValue> lastKey = page.lastEvaluatedKey();
+            String lastTicketId = lastKey != null && lastKey.containsKey("ticketId") ? lastKey.get("ticketId").s() : null;
+            double consumed = page.consumedCapacity() != null && page.consumedCapacity().capacityUnits() != null
+                    ? page.consumedCapacity().capacityUnits()
+                    : 0.0;
+            return new TicketScanPage(page.items(), lastTicketId, consumed);
+        } catch (Exception e) {
+            log.error("Error scanning ticket segment {}/{}", segment, totalSegments, e);
+            throw new RuntimeException("Failed to scan ticket segment", e);
+        }
+    }
 }
@@ -0,0 +1,23 @@
+package com.smartqueue.aws.repository;
+
+import com.smartqueue.aws.model.Ticket;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of a segmented ticket scan plus the read capacity it consumed.
+ */
+@Data
+@AllArgsConstructor
+public class TicketScanPage {
+
+    private List<Ticket> items;
+    private String lastEvaluatedTicketId;
+    private double consumedCapacityUnits;
+
+    public boolean hasMore() {
+        return lastEvaluatedTicketId != null;
+    }
+}
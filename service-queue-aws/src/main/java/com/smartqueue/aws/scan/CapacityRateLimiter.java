@@ -0,0 +1,52 @@
+package com.smartqueue.aws.scan;
+
+/**
+ * Token bucket over DynamoDB read capacity units. Workers wait until the bucket is
+ * non-negative, then pay for what the page actually consumed, so the limiter tracks
+ * real consumption instead of guessing the cost up front.
+ */
+public class CapacityRateLimiter {
+
+    private final double unitsPerSecond;
+    private final double burst;
+    private double available;
+    private long lastRefillNanos;
+
+    public CapacityRateLimiter(double unitsPerSecond) {
+        this.unitsPerSecond = unitsPerSecond;
+        this.burst = unitsPerSecond;
+        this.available = unitsPerSecond;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Blocks until capacity is available again.
+     */
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitMillis;
+            synchronized (this) {
+                refill();
+                if (available >= 0) {
+                    return;
+                }
+                waitMillis = (long) Math.ceil(-available / unitsPerSecond * 1000);
+            }
+            Thread.sleep(Math.max(1, waitMillis));
+        }
+    }
+
+    /**
+     * Charges capacity consumed by a finished request (may drive the bucket negative).
+     */
+    public synchronized void consume(double units) {
+        refill();
+        available -= units;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(burst, available + (now - lastRefillNanos) / 1e9 * unitsPerSecond);
+        lastRefillNanos = now;
+    }
+}
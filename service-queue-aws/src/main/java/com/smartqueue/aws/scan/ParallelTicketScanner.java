@@ -0,0 +1,114 @@
+package com.smartqueue.aws.scan;
+
+import com.smartqueue.aws.model.Ticket;
+import com.smartqueue.aws.repository.TicketRepository;
+import com.smartqueue.aws.repository.TicketScanPage;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collector;
+
+/**
+ * Full-table ticket scan for back-office jobs (reports, reconciliation, purging).
+ * The table is split into DynamoDB scan segments, read by a bounded worker pool and
+ * throttled on consumed read capacity so live traffic keeps its share of the table. The
+ * limiter is shared by every scan of this instance, so concurrent jobs split the budget
+ * instead of each getting a full one.
+ * Each segment feeds its own accumulator of the supplied {@link Collector}; the
+ * results are combined once all segments finish.
+ */
+@Slf4j
+@Component
+public class ParallelTicketScanner {
+
+    private final TicketRepository ticketRepository;
+    private final int totalSegments;
+    private final int pageSize;
+    private final double maxReadUnitsPerSecond;
+    private final CapacityRateLimiter rateLimiter;
+    private final ExecutorService workers;
+
+    public ParallelTicketScanner(TicketRepository ticketRepository,
+                                 @Value("${app.scan.total-segments:16}") int totalSegments,
+                                 @Value("${app.scan.max-workers:4}") int maxWorkers,
+                                 @Value("${app.scan.page-size:500}") int pageSize,
+                                 @Value("${app.scan.max-read-units-per-second:200}") double maxReadUnitsPerSecond) {
+        this.ticketRepository = ticketRepository;
+        this.totalSegments = totalSegments;
+        this.pageSize = pageSize;
+        this.maxReadUnitsPerSecond = maxReadUnitsPerSecond;
+        this.rateLimiter = new CapacityRateLimiter(maxReadUnitsPerSecond);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(maxWorkers, maxWorkers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ticket-scan-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Scans every ticket, feeding each one to {@code collector}.
+     */
+    public <A, R> CompletableFuture<R> scan(Collector<Ticket, A, R> collector) {
+        long startedAt = System.currentTimeMillis();
+        log.info("Starting parallel ticket scan: {} segments, page size {}, max {} RCU/s",
+                totalSegments, pageSize, maxReadUnitsPerSecond);
+
+        List<CompletableFuture<A>> segments = new ArrayList<>(totalSegments);
+        for (int segment = 0; segment < totalSegments; segment++) {
+            int current = segment;
+            segments.add(CompletableFuture.supplyAsync(() -> scanSegment(current, collector), workers));
+        }
+
+        return CompletableFuture.allOf(segments.toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    A combined = segments.get(0).join();
+                    for (int i = 1; i < segments.size(); i++) {
+                        combined = collector.combiner().apply(combined, segments.get(i).join());
+                    }
+                    log.info("Parallel ticket scan finished in {} ms", System.currentTimeMillis() - startedAt);
+                    return collector.finisher().apply(combined);
+                });
+    }
+
+    private <A> A scanSegment(int segment, Collector<Ticket, A, ?> collector) {
+        A accumulator = collector.supplier().get();
+        String cursor = null;
+        long scanned = 0;
+        try {
+            do {
+                rateLimiter.acquire();
+                TicketScanPage page = ticketRepository.scanSegmentPage(segment, totalSegments, pageSize, cursor);
+                rateLimiter.consume(page.getConsumedCapacityUnits());
+                for (Ticket ticket : page.getItems()) {
+                    collector.accumulator().accept(accumulator, ticket);
+                }
+                scanned += page.getItems().size();
+                cursor = page.getLastEvaluatedTicketId();
+            } while (cursor != null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Ticket scan interrupted at segment " + segment, e);
+        }
+        log.debug("Ticket scan segment {}/{} done: {} tickets", segment, totalSegments, scanned);
+        return accumulator;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,28 @@
+package com.smartqueue.aws.scan;
+
+import com.smartqueue.aws.model.Ticket;
+
+import java.util.Map;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * Ready-made aggregators for {@link ParallelTicketScanner}. Any
+ * {@link Collector} over tickets can be plugged in the same way.
+ */
+public final class TicketAggregators {
+
+    private TicketAggregators() {
+    }
+
+    /**
+     * queueId -> status -> ticket count.
+     */
+    public static Collector<Ticket, ?, Map<String, Map<String, Long>>> countByQueueAndStatus() {
+        return Collectors.groupingBy(
+                ticket -> ticket.getQueueId() != null ? ticket.getQueueId() : "unknown",
+                Collectors.groupingBy(
+                        ticket -> ticket.getStatus() != null ? ticket.getStatus().name() : "UNKNOWN",
+                        Collectors.counting()));
+    }
+}
@@ -7,24 +7,44 @@ import com.smartqueue.aws.dto.request.ProcessNextRequest;
 import com.smartqueue.aws.dto.response.JoinQueueResponse;
 import com.smartqueue.aws.dto.response.ProcessNextResponse;
 import com.smartqueue.aws.dto.response.QueueStatusResponse;
+import com.smartqueue.aws.dto.response.QueueSummaryResponse;
+import com.smartqueue.aws.join.JoinGuardService;
+import com.smartqueue.aws.metrics.QueueMetrics;
+import com.smartqueue.aws.model.OutboxEvent;
 import com.smartqueue.aws.model.QueueInfo;
 import com.smartqueue.aws.model.Ticket;
 import com.smartqueue.aws.model.User;
+import com.smartqueue.aws.replication.ReplicatedQueueCounters;
+import com.smartqueue.aws.repository.JoinGuardConflictException;
+import com.smartqueue.aws.repository.OutboxRepository;
+import com.smartqueue.aws.repository.QueuePage;
 import com.smartqueue.aws.repository.QueueRepository;
 import com.smartqueue.aws.repository.TicketRepository;
 import com.smartqueue.aws.repository.UserRepository;
+import com.smartqueue.aws.sharding.QueueShardingPolicy;
+import com.smartqueue.aws.snapshot.QueueSnapshot;
+import com.smartqueue.aws.snapshot.QueueSnapshotCache;
+import com.smartqueue.aws.snapshot.QueueVersions;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @Service
@@ -34,8 +54,26 @@ public class QueueService {
     private final TicketRepository ticketRepository;
     private final QueueRepository queueRepository;
     private final UserRepository userRepository;
+    private final OutboxRepository outboxRepository;
     private final WebClient etaServiceWebClient;
     private final Duration etaServiceTimeout;
+    private final MeterRegistry meterRegistry;
+    private final QueueMetrics queueMetrics;
+    private final JoinGuardService joinGuardService;
+    private final QueueSnapshotCache queueSnapshotCache;
+    private final QueueVersions queueVersions;
+    private final QueueShardingPolicy queueShardingPolicy;
+    // Present with app.replication.enabled=true
+    private final Optional<ReplicatedQueueCounters> replicatedQueueCounters;
+    
+    // Page size used when streaming a full listing
+    private static final int QUEUE_STREAM_PAGE_SIZE = 100;
+    
+    // Re-plans after losing a join guard to a concurrent request before giving up
+    private static final int MAX_JOIN_ATTEMPTS = 3;
+    
+    // Window reported with each served-stats event
+    private static final int SERVED_STATS_WINDOW_SEC = 60;
     
     public JoinQueueResponse joinQueue(String queueId, JoinQueueRequest request) {
         log.info("Processing join queue request for queueId: {} by user: {}", queueId, request.getUserId());
@@ -49,50 +87,175 @@ public class QueueService {
             
             User user = userOpt.get();
             
-            // Create ticket with full user information (position will be calculated after save)
-            Ticket ticket = Ticket.builder()
-                    .ticketId(Ticket.generateTicketId())
-                    .queueId(queueId)
-                    .status(Ticket.TicketStatus.WAITING)
-                    .userId(user.getUserId())
-                    .userEmail(user.getEmail())
-                    .userPhone(user.getPhone())
-                    .userName(user.getName())
-                    .position(0) // Will be calculated after save
-                    .joinedAt(Instant.now())
-                    .emailNotificationEnabled(user.isEmailNotificationEnabled())
-                    .smsNotificationEnabled(user.isSmsNotificationEnabled())
-                    .build();
-            
-            // Save ticket first to get it in the system
-            ticket = ticketRepository.save(ticket);
-            
-            // Then calculate position based on all waiting tickets (including this one)
-            int position = calculatePosition(queueId, ticket.getTicketId());
-            ticket.setPosition(position);
-            
-            // Update the saved ticket with correct position (single update, not double save)
-            ticket = ticketRepository.save(ticket);
-            
-            log.info("User joined queue successfully. TicketId: {}, Position: {}", ticket.getTicketId(), position);
-            
-            return JoinQueueResponse.builder()
-                    .ticketId(ticket.getTicketId())
-                    .queueId(queueId)
-                    .position(position)
-                    .message("Successfully joined queue")
-                    .build();
+            for (int attempt = 1; ; attempt++) {
+                // Retried join (idempotency key) or user already waiting: answer with the existing ticket
+                JoinGuardService.JoinPlan plan = joinGuardService.plan(queueId, user.getUserId(), request.getIdempotencyKey());
+                if (plan.isDuplicate()) {
+                    return duplicateJoin(queueId, plan);
+                }
+                
+                // Create ticket with full user information (position will be calculated after save)
+                Ticket ticket = Ticket.builder()
+                        .ticketId(Ticket.generateTicketId())
+                        .queueId(queueId)
+                        .status(Ticket.TicketStatus.WAITING)
+                        .userId(user.getUserId())
+                        .userEmail(user.getEmail())
+                        .userPhone(user.getPhone())
+                        .userName(user.getName())
+                        .position(0) // Will be calculated after save
+                        .joinedAt(Instant.now())
+                        .emailNotificationEnabled(user.isEmailNotificationEnabled())
+                        .smsNotificationEnabled(user.isSmsNotificationEnabled())
+                        .build();
+                // Hot queues: spread over the shards of the waiting index
+                queueShardingPolicy.assign(ticket);
+                
+                // Save ticket first, together with its join guards, to get it in the system
+                try {
+                    ticket = ticketRepository.saveWithGuards(ticket, joinGuardService.claimsFor(plan, ticket.getTicketId()));
+                    joinGuardService.remember(plan.getGuardKeys().keySet());
+                    // Replicated join sequence, stored with the ticket: positions are reported from it
+                    String ticketId = ticket.getTicketId();
+                    Long joinSequence = replicatedQueueCounters
+                            .map(counters -> counters.recordJoin(queueId, waitingAhead(queueSnapshotCache.get(queueId), ticketId)))
+                            .orElse(null);
+                    ticket.setJoinSequence(joinSequence);
+                    queueSnapshotCache.onJoined(queueId, ticketId, joinSequence);
+                    queueVersions.bump(queueId);
+                } catch (JoinGuardConflictException e) {
+                    // A concurrent join took a guard: the next plan looks it up and returns that ticket
+                    joinGuardService.remember(plan.getGuardKeys().keySet());
+                    if (attempt >= MAX_JOIN_ATTEMPTS) {
+                        // Out of attempts: answer with the winner's ticket if it can be found, else 409
+                        JoinGuardService.JoinPlan winner = joinGuardService.plan(queueId, user.getUserId(), request.getIdempotencyKey());
+                        if (winner.isDuplicate()) {
+                            return duplicateJoin(queueId, winner);
+                        }
+                        throw e;
+                    }
+                    log.info("Join guard conflict for queueId: {}, user: {} (attempt {})", queueId, user.getUserId(), attempt);
+                    continue;
+                }
+                
+                // Then calculate position based on all waiting tickets (including this one)
+                int position = calculatePosition(queueId, ticket.getTicketId());
+                ticket.setPosition(position);
+                
+                // Update the saved ticket with correct position (single update, not double save)
+                ticket = ticketRepository.save(ticket);
+                queueMetrics.recordJoin(queueId, position);
+                
+                log.info("User joined queue successfully. TicketId: {}, Position: {}", ticket.getTicketId(), position);
+                
+                return JoinQueueResponse.builder()
+                        .ticketId(ticket.getTicketId())
+                        .queueId(queueId)
+                        .position(position)
+                        .duplicate(false)
+                        .message("Successfully joined queue")
+                        .build();
+            }
                     
+        } catch (JoinGuardConflictException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error joining queue: {}", queueId, e);
             throw new RuntimeException("Failed to join queue", e);
         }
     }
     
+    // Retried join (idempotency key) or user already waiting: the existing ticket
+    private JoinQueueResponse duplicateJoin(String queueId, JoinGuardService.JoinPlan plan) {
+        Ticket existing = plan.getExistingTicket();
+        int position = existing.getStatus() == Ticket.TicketStatus.WAITING
+                ? calculatePosition(queueId, existing.getTicketId())
+                : existing.getPosition();
+        log.info("Duplicate join ({}) for queueId: {}, returning ticket: {}", plan.getDuplicateReason(), queueId, existing.getTicketId());
+        return JoinQueueResponse.builder()
+                .ticketId(existing.getTicketId())
+                .queueId(queueId)
+                .position(position)
+                .duplicate(true)
+                .message("Already joined queue")
+                .build();
+    }
+    
     public Mono<QueueStatusResponse> getQueueStatus(String queueId, String ticketId) {
         log.info("Getting queue status for queueId: {}, ticketId: {}", queueId, ticketId);
         
+        return resolvePosition(queueId, ticketId)
+            .flatMap(current -> toStatusResponse(queueId, ticketId, current))
+            .onErrorResume(e -> {
+                log.error("Error getting queue status", e);
+                return Mono.error(new RuntimeException("Failed to get queue status", e));
+            });
+    }
+    
+    /**
+     * Long-poll variant of {@link #getQueueStatus}: parks until the ticket's position or status
+     * differs from what the client last saw, or until {@code timeout}, then answers with the
+     * current status. No thread is held while parked - the wait is a subscription to the queue's
+     * change signal, re-checked (snapshot only, no ETA call) each time the queue changes.
+     */
+    public Mono<QueueStatusResponse> pollQueueStatus(String queueId, String ticketId, String seenVersion,
+                                                     Integer seenPosition, String seenStatus, Duration timeout) {
+        log.debug("Long-poll status for queueId: {}, ticketId: {}, seen: {}/{}/{}", queueId, ticketId, seenVersion, seenPosition, seenStatus);
+        
+        long deadline = System.nanoTime() + timeout.toNanos();
+        return awaitChange(queueId, ticketId, seenVersion, seenPosition, seenStatus, deadline)
+            .onErrorResume(e -> {
+                log.error("Error long-polling queue status", e);
+                return Mono.error(new RuntimeException("Failed to get queue status", e));
+            });
+    }
+    
+    private Mono<QueueStatusResponse> awaitChange(String queueId, String ticketId, String seenVersion,
+                                                  Integer seenPosition, String seenStatus, long deadline) {
+        return Mono.defer(() -> {
+            // Subscribe to the signal before reading the version, so a change in between is not missed
+            Mono<Void> nextChange = queueVersions.nextChange(queueId);
+            String version = queueVersions.queueETag(queueId);
+            long remaining = deadline - System.nanoTime();
+            
+            if (version.equals(seenVersion) && remaining > 0) {
+                // Changes through other instances raise no signal: wake up at least every max-age,
+                // when the version has aged out and the position is re-read. Both wake-ups (the
+                // coalesced signal and the timer) run on boundedElastic, where re-checking may block.
+                Duration wait = Duration.ofNanos(Math.min(remaining, queueVersions.maxAge().toNanos()));
+                return nextChange
+                    .timeout(wait, Mono.empty(), Schedulers.boundedElastic())
+                    .then(Mono.defer(() -> awaitChange(queueId, ticketId, seenVersion, seenPosition, seenStatus, deadline)));
+            }
+            
+            return resolvePosition(queueId, ticketId).flatMap(current -> {
+                boolean changed = seenPosition == null || seenStatus == null
+                        || current.position() != seenPosition
+                        || !current.status().name().equals(seenStatus);
+                if (!changed && remaining > 0) {
+                    // The queue changed but not in a way this ticket can see (e.g. a join behind it)
+                    return awaitChange(queueId, ticketId, version, seenPosition, seenStatus, deadline);
+                }
+                meterRegistry.counter("smartqueue.status.longpoll", "outcome", changed ? "changed" : "timeout").increment();
+                return toStatusResponse(queueId, ticketId, current)
+                    .doOnNext(response -> response.setVersion(version));
+            });
+        });
+    }
+    
+    private record TicketPosition(Ticket.TicketStatus status, int position) {
+    }
+    
+    private Mono<TicketPosition> resolvePosition(String queueId, String ticketId) {
         return Mono.fromCallable(() -> {
+            // Waiting tickets are answered from the shared queue snapshot without a ticket read
+            QueueSnapshot snapshot = queueSnapshotCache.get(queueId);
+            OptionalInt snapshotPosition = positionOf(snapshot, ticketId);
+            if (snapshotPosition.isPresent()) {
+                queueVersions.track(queueId);
+                return new TicketPosition(Ticket.TicketStatus.WAITING, snapshotPosition.getAsInt());
+            }
+            
             Optional<Ticket> ticketOpt = ticketRepository.findById(ticketId);
             if (ticketOpt.isEmpty()) {
                 throw new RuntimeException("Ticket not found: " + ticketId);
@@ -103,53 +266,88 @@ public class QueueService {
                 throw new RuntimeException("Ticket does not belong to this queue");
             }
             
-            // Calculate current position
-            int currentPosition = calculatePosition(queueId, ticketId);
-            return new Object[] { ticket, currentPosition };
-        })
-        .flatMap(data -> {
-            Ticket ticket = (Ticket) ((Object[]) data)[0];
-            int currentPosition = (int) ((Object[]) data)[1];
-            
-            // Get ETA from Service B - now reactive
-            return getEstimatedWaitTime(queueId, ticketId, currentPosition)
-                .map(estimatedWaitMinutes -> QueueStatusResponse.builder()
-                    .ticketId(ticketId)
-                    .queueId(queueId)
-                    .position(currentPosition)
-                    .estimatedWaitMinutes(estimatedWaitMinutes)
-                    .status(ticket.getStatus().name())
-                    .message("Queue status retrieved successfully")
-                    .build());
-        })
-        .onErrorResume(e -> {
-            log.error("Error getting queue status", e);
-            return Mono.error(new RuntimeException("Failed to get queue status", e));
+            // Waiting but unknown to the snapshot: joined through another instance
+            if (ticket.getStatus() == Ticket.TicketStatus.WAITING) {
+                snapshot = queueSnapshotCache.rebuild(queueId);
+            }
+            int currentPosition = positionOf(snapshot, ticketId).orElse(snapshot.getWaitingCount() + 1);
+            queueVersions.track(queueId);
+            return new TicketPosition(ticket.getStatus(), currentPosition);
         });
     }
     
+    private Mono<QueueStatusResponse> toStatusResponse(String queueId, String ticketId, TicketPosition current) {
+        // Get ETA from Service B - now reactive
+        return getEstimatedWaitTime(queueId, ticketId, current.position())
+            .map(estimate -> QueueStatusResponse.builder()
+                .ticketId(ticketId)
+                .queueId(queueId)
+                .position(current.position())
+                .estimatedWaitMinutes(estimate.minutes())
+                .etaSource(estimate.source())
+                .status(current.status().name())
+                .message("Queue status retrieved successfully")
+                .build());
+    }
+    
     public ProcessNextResponse processNext(String queueId, ProcessNextRequest request) {
         log.info("Processing next {} customers for queueId: {}", request.getCount(), queueId);
         
         try {
-            List<Ticket> waitingTickets = ticketRepository.findWaitingTicketsByQueue(queueId);
+            // Serve in arrival order, the same order the status snapshot reports positions in
+            List<Ticket> waitingTickets = new ArrayList<>(ticketRepository.findWaitingTicketsByQueue(queueId));
+            waitingTickets.sort(Comparator.comparing(Ticket::getJoinedAt, Comparator.nullsLast(Comparator.naturalOrder())));
             
             int processCount = Math.min(request.getCount(), waitingTickets.size());
             int processed = 0;
+            RuntimeException failure = null;
             
-            for (int i = 0; i < processCount; i++) {
-                Ticket ticket = waitingTickets.get(i);
-                ticketRepository.updateStatus(ticket.getTicketId(), Ticket.TicketStatus.SERVED);
-                processed++;
+            // Tickets and their served-stats outbox event commit together; OutboxRelay ships the event
+            while (processed < processCount) {
+                int chunkSize = Math.min(processCount - processed, TicketRepository.MAX_TICKETS_PER_TRANSACTION);
+                List<Ticket> chunk = waitingTickets.subList(processed, processed + chunkSize);
+                try {
+                    OutboxEvent event = OutboxEvent.served(queueId, chunk, SERVED_STATS_WINDOW_SEC, outboxRepository.nextSequence(queueId));
+                    ticketRepository.markServed(chunk, event);
+                } catch (RuntimeException e) {
+                    failure = e;
+                    break;
+                }
+                processed += chunkSize;
+            }
+            if (failure != null && processed == 0) {
+                throw failure;
             }
             
-            // Update open slots
+            // Committed chunks stay served even if a later one failed: account for them either way
             Optional<QueueInfo> queueInfoOpt = queueRepository.findById(queueId);
             int newOpenSlots = queueInfoOpt.map(QueueInfo::getOpenSlots).orElse(0) + processed;
-            queueRepository.updateOpenSlots(queueId, newOpenSlots);
+            queueRepository.addOpenSlots(queueId, processed);
+            int served = processed;
+            replicatedQueueCounters.ifPresent(counters -> {
+                counters.recordServed(queueId, served);
+                counters.addOpenSlots(queueId, served);
+            });
+            if (failure == null) {
+                queueSnapshotCache.onRemoved(queueId,
+                        waitingTickets.subList(0, processed).stream().map(Ticket::getTicketId).toList(),
+                        newOpenSlots);
+            } else {
+                // The failed chunk may have lost to a concurrent change: rebuild positions from the table
+                queueSnapshotCache.invalidate(queueId);
+            }
+            queueVersions.bump(queueId);
+            queueMetrics.recordWaiting(queueId, waitingTickets.size() - processed);
             
-            // Notify Service B about the processing
-            notifyServiceB(queueId, processed);
+            if (failure != null) {
+                log.warn("Processed {} of {} customers for queueId: {}, the rest failed", processed, processCount, queueId, failure);
+                return ProcessNextResponse.builder()
+                        .queueId(queueId)
+                        .dequeuedCount(processed)
+                        .newOpenSlots(newOpenSlots)
+                        .message("Processed " + processed + " of " + processCount + " customers; the rest failed: " + failure.getMessage())
+                        .build();
+            }
             
             log.info("Processed {} customers for queueId: {}", processed, queueId);
             
@@ -167,23 +365,37 @@ public class QueueService {
     }
     
     private int calculatePosition(String queueId, String ticketId) {
-        List<Ticket> waitingTickets = ticketRepository.findWaitingTicketsByQueue(queueId);
-        
-        // Sort by joinedAt timestamp (create mutable copy first)
-        List<Ticket> sortedTickets = new ArrayList<>(waitingTickets);
-        sortedTickets.sort((t1, t2) -> t1.getJoinedAt().compareTo(t2.getJoinedAt()));
-        
-        // Find position of current ticket
-        for (int i = 0; i < sortedTickets.size(); i++) {
-            if (sortedTickets.get(i).getTicketId().equals(ticketId)) {
-                return i + 1; // 1-based position
-            }
+        QueueSnapshot snapshot = queueSnapshotCache.get(queueId);
+        return positionOf(snapshot, ticketId).orElse(snapshot.getWaitingCount() + 1); // If not found, put at end
+    }
+    
+    /**
+     * Position of a waiting ticket. With replication, tickets that joined through another zone
+     * may be ahead of it without being in this snapshot yet, so the converged position (join
+     * sequence minus the replicated served count) is used when it is further back.
+     */
+    private OptionalInt positionOf(QueueSnapshot snapshot, String ticketId) {
+        OptionalInt local = snapshot.positionOf(ticketId);
+        OptionalLong joinSequence = snapshot.joinSequenceOf(ticketId);
+        if (local.isEmpty() || joinSequence.isEmpty() || replicatedQueueCounters.isEmpty()) {
+            return local;
         }
-        
-        return sortedTickets.size() + 1; // If not found, put at end
+        long replicated = replicatedQueueCounters.get()
+                .positionOf(snapshot.getQueueId(), joinSequence.getAsLong())
+                .orElse(0L);
+        return OptionalInt.of((int) Math.min(Integer.MAX_VALUE, Math.max(local.getAsInt(), replicated)));
     }
     
-    private Mono<Integer> getEstimatedWaitTime(String queueId, String ticketId, int position) {
+    // Tickets this instance knows to be ahead of a new one (it may already be in the snapshot)
+    private static long waitingAhead(QueueSnapshot snapshot, String ticketId) {
+        OptionalInt position = snapshot.positionOf(ticketId);
+        return position.isPresent() ? position.getAsInt() - 1 : snapshot.getWaitingCount();
+    }
+    
+    private record EtaEstimate(int minutes, String source) {
+    }
+    
+    private Mono<EtaEstimate> getEstimatedWaitTime(String queueId, String ticketId, int position) {
         return etaServiceWebClient
                 .get()
                 .uri("/eta?queueId={queueId}&ticketId={ticketId}&position={position}", queueId, ticketId, position)
@@ -193,37 +405,24 @@ public class QueueService {
                 .map(response -> {
                     // Aliyun returns {estimatedWaitTimeMinutes: X, ...}
                     Object waitTime = response.get("estimatedWaitTimeMinutes");
-                    if (waitTime instanceof Integer) {
-                        return (Integer) waitTime;
-                    } else if (waitTime instanceof Number) {
-                        return ((Number) waitTime).intValue();
+                    if (waitTime instanceof Number) {
+                        recordEtaOutcome("remote", "none");
+                        return new EtaEstimate(((Number) waitTime).intValue(), "remote");
                     }
-                    return position * 5; // Fallback
+                    recordEtaOutcome("fallback", "invalid_response");
+                    return new EtaEstimate(position * 5, "fallback"); // Fallback
                 })
                 .onErrorResume(e -> {
                     log.warn("Failed to get ETA from service B, using fallback calculation", e);
-                    return Mono.just(position * 5); // Fallback: 5 minutes per position
+                    recordEtaOutcome("fallback", e instanceof TimeoutException ? "timeout" : "error");
+                    return Mono.just(new EtaEstimate(position * 5, "fallback")); // Fallback: 5 minutes per position
                 });
     }
     
-    private void notifyServiceB(String queueId, int servedCount) {
-        try {
-            etaServiceWebClient
-                    .post()
-                    .uri("/stats/served")
-                    .bodyValue(Map.of("queueId", queueId, "count", servedCount, "windowSec", 60))
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .timeout(etaServiceTimeout)
-                    .subscribe(
-                        response -> log.debug("Successfully notified service B: {}", response),
-                        error -> log.warn("Failed to notify service B", error)
-                    );
-        } catch (Exception e) {
-            log.warn("Error notifying service B", e);
-        }
+    private void recordEtaOutcome(String outcome, String reason) {
+        meterRegistry.counter("smartqueue.eta.requests", "outcome", outcome, "reason", reason).increment();
     }
-
+    
     private int getNextPosition(String queueId) {
         try {
             List<Ticket> waitingTickets = ticketRepository.findByQueueIdAndStatus(queueId, Ticket.TicketStatus.WAITING);
@@ -242,6 +441,7 @@ public class QueueService {
             for (QueueInfo queue : queues) {
                 int waitingCount = ticketRepository.countWaitingTickets(queue.getQueueId());
                 queue.setWaitingCount(waitingCount);
+                queueMetrics.recordWaiting(queue.getQueueId(), waitingCount);
                 log.debug("Queue: {}, waitingCount: {}", queue.getQueueId(), waitingCount);
             }
             return queues;
@@ -251,6 +451,68 @@ public class QueueService {
         }
     }
     
+    /**
+     * Reads one page of queues. Empty {@code fields} means all fields.
+     */
+    public Mono<QueuePage> getQueuePage(String startAfterQueueId, int limit, Set<String> fields) {
+        return Mono.fromCallable(() -> queueRepository.findPage(limit, startAfterQueueId, storedAttributes(fields)))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    /**
+     * Streams every queue after {@code startAfterQueueId}, one scan page at a time,
+     * so memory stays bounded by the page size regardless of how many queues exist.
+     */
+    public Flux<QueueInfo> streamQueues(String startAfterQueueId, Set<String> fields) {
+        Set<String> attributes = storedAttributes(fields);
+        return Mono.fromCallable(() -> queueRepository.findPage(QUEUE_STREAM_PAGE_SIZE, startAfterQueueId, attributes))
+                .expand(page -> page.hasMore()
+                        ? Mono.fromCallable(() -> queueRepository.findPage(QUEUE_STREAM_PAGE_SIZE, page.getLastEvaluatedQueueId(), attributes))
+                        : Mono.empty())
+                .concatMapIterable(QueuePage::getItems)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+    
+    /**
+     * Projects a queue onto the selected summary fields; empty {@code fields} means every stored
+     * field. waitingCount is not stored on the queue, so it is only included when selected, and
+     * then only from a current status snapshot already cached here: a listing never rebuilds or
+     * counts tickets, and a queue without one is listed with waitingCount unknown (omitted).
+     */
+    public QueueSummaryResponse toSummary(QueueInfo queue, Set<String> fields) {
+        boolean all = fields.isEmpty();
+        QueueSummaryResponse.QueueSummaryResponseBuilder summary = QueueSummaryResponse.builder()
+                .queueId(queue.getQueueId());
+        if (all || fields.contains("queueName")) {
+            summary.queueName(queue.getQueueName());
+        }
+        if (all || fields.contains("isActive")) {
+            summary.isActive(queue.getIsActive());
+        }
+        if (all || fields.contains("openSlots")) {
+            summary.openSlots(queue.getOpenSlots());
+        }
+        if (all || fields.contains("maxCapacity")) {
+            summary.maxCapacity(queue.getMaxCapacity());
+        }
+        if (fields.contains("waitingCount")) {
+            queueSnapshotCache.getIfCurrent(queue.getQueueId())
+                    .ifPresent(snapshot -> summary.waitingCount(snapshot.getWaitingCount()));
+        }
+        return summary.build();
+    }
+    
+    // DynamoDB attributes to project for the selected summary fields (empty = all)
+    private Set<String> storedAttributes(Set<String> fields) {
+        if (fields.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> attributes = new java.util.HashSet<>(fields);
+        attributes.remove("waitingCount"); // derived from tickets, not stored on the queue
+        attributes.add("queueId");
+        return attributes;
+    }
+    
     public QueueInfo createQueue(CreateQueueRequest request) {
         log.info("Creating new queue: {}", request.getQueueId());
         
@@ -271,7 +533,12 @@ public class QueueService {
                 .updatedAt(Instant.now())
                 .build();
         
-        return queueRepository.save(queue);
+        QueueInfo saved = queueRepository.save(queue);
+        queueVersions.bump(saved.getQueueId());
+        if (saved.getOpenSlots() != null) {
+            replicatedQueueCounters.ifPresent(counters -> counters.setOpenSlots(saved.getQueueId(), saved.getOpenSlots()));
+        }
+        return saved;
     }
     
     public QueueInfo getQueueById(String queueId) {
@@ -279,6 +546,7 @@ public class QueueService {
         if (queue.isEmpty()) {
             throw new RuntimeException("Queue not found: " + queueId);
         }
+        queueVersions.track(queueId);
         return queue.get();
     }
     
@@ -300,6 +568,7 @@ public class QueueService {
         }
         if (request.getOpenSlots() != null) {
             queue.setOpenSlots(request.getOpenSlots());
+            replicatedQueueCounters.ifPresent(counters -> counters.setOpenSlots(queueId, request.getOpenSlots()));
         }
         if (request.getIsActive() != null) {
             queue.setIsActive(request.getIsActive());
@@ -307,7 +576,10 @@ public class QueueService {
         
         queue.setUpdatedAt(Instant.now());
         
-        return queueRepository.save(queue);
+        QueueInfo saved = queueRepository.save(queue);
+        queueSnapshotCache.invalidate(queueId);
+        queueVersions.bump(queueId);
+        return saved;
     }
     
     public void deleteQueue(String queueId) {
@@ -325,6 +597,10 @@ public class QueueService {
         }
         
         queueRepository.deleteById(queueId);
+        queueMetrics.removeQueue(queueId);
+        queueSnapshotCache.evict(queueId);
+        queueVersions.forget(queueId);
+        replicatedQueueCounters.ifPresent(counters -> counters.forget(queueId));
     }
 
     public List<Ticket> getTicketsByQueueAndUserId(String queueId, String userId) {
@@ -0,0 +1,90 @@
+package com.smartqueue.aws.sharding;
+
+import com.smartqueue.aws.model.Ticket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Write-sharded layout for hot queues (app.sharding.hot-queues=queueId:shards,...).
+ *
+ * A hot queue's waiting tickets are spread over N index partitions ("queueId#shard") and its
+ * openSlots counter over N counter items, so joins and serves no longer all hit one partition.
+ * Each ticket gets a sequence derived from its join time, with the shard in the low bits; merging
+ * the per-shard (sequence-ordered) results by sequence restores arrival order across shards.
+ * Queues not listed keep the unsharded layout.
+ */
+@Slf4j
+@Component
+public class QueueShardingPolicy {
+
+    public static final int MAX_SHARDS = 64;
+
+    private final Map<String, Integer> shardCounts;
+
+    public QueueShardingPolicy(@Value("${app.sharding.hot-queues:}") String hotQueues) {
+        this.shardCounts = Arrays.stream(hotQueues.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .map(entry -> entry.split(":"))
+                .collect(Collectors.toUnmodifiableMap(entry -> entry[0].trim(), QueueShardingPolicy::parseShardCount));
+        if (!shardCounts.isEmpty()) {
+            log.info("Sharded layout for hot queues: {}", shardCounts);
+        }
+    }
+
+    private static int parseShardCount(String[] entry) {
+        if (entry.length != 2) {
+            throw new IllegalArgumentException("app.sharding.hot-queues entries must be queueId:shards, got: " + String.join(":", entry));
+        }
+        int shards = Integer.parseInt(entry[1].trim());
+        if (shards < 1 || shards > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count for " + entry[0] + " must be between 1 and " + MAX_SHARDS);
+        }
+        return shards;
+    }
+
+    public boolean isSharded(String queueId) {
+        return shardCounts.containsKey(queueId);
+    }
+
+    /**
+     * Number of shards of the queue; 1 for queues using the unsharded layout.
+     */
+    public int shardCount(String queueId) {
+        return shardCounts.getOrDefault(queueId, 1);
+    }
+
+    public int pickShard(String queueId) {
+        return ThreadLocalRandom.current().nextInt(shardCount(queueId));
+    }
+
+    public static String shardKey(String queueId, int shard) {
+        return queueId + "#" + shard;
+    }
+
+    /**
+     * Places a new ticket of a hot queue on a random shard. Needs joinedAt, which fixes its sequence.
+     */
+    public void assign(Ticket ticket) {
+        if (!isSharded(ticket.getQueueId())) {
+            return;
+        }
+        int shard = pickShard(ticket.getQueueId());
+        ticket.setWaitingShard(shardKey(ticket.getQueueId(), shard));
+        ticket.setSequence(sequence(ticket.getJoinedAt(), shard));
+    }
+
+    // Join time in microseconds with the shard in the low bits: orders like joinedAt, ties broken by shard
+    static long sequence(Instant joinedAt, int shard) {
+        long micros = TimeUnit.SECONDS.toMicros(joinedAt.getEpochSecond()) + joinedAt.getNano() / 1_000;
+        return micros * MAX_SHARDS + shard;
+    }
+}
@@ -0,0 +1,52 @@
+package com.smartqueue.aws.sharding;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * K-way merge of per-shard results that are each already sorted by sequence.
+ */
+public final class ShardMerge {
+
+    private ShardMerge() {
+    }
+
+    // Position of the merge within one shard's run
+    private static final class Cursor<T> {
+        private final List<T> run;
+        private int index;
+        private long head;
+
+        private Cursor(List<T> run) {
+            this.run = run;
+        }
+    }
+
+    public static <T> List<T> bySequence(List<List<T>> runs, ToLongFunction<T> sequence) {
+        int total = runs.stream().mapToInt(List::size).sum();
+        List<T> merged = new ArrayList<>(total);
+        PriorityQueue<Cursor<T>> heads = new PriorityQueue<>(Math.max(1, runs.size()),
+                Comparator.comparingLong((Cursor<T> cursor) -> cursor.head));
+        for (List<T> run : runs) {
+            if (!run.isEmpty()) {
+                Cursor<T> cursor = new Cursor<>(run);
+                cursor.head = sequence.applyAsLong(run.get(0));
+                heads.add(cursor);
+            }
+        }
+
+        // O(total * log(shards)): take the smallest head, advance that run
+        while (!heads.isEmpty()) {
+            Cursor<T> cursor = heads.poll();
+            merged.add(cursor.run.get(cursor.index++));
+            if (cursor.index < cursor.run.size()) {
+                cursor.head = sequence.applyAsLong(cursor.run.get(cursor.index));
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,121 @@
+package com.smartqueue.aws.snapshot;
+
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Set;
+
+/**
+ * Immutable view of one queue: waiting tickets in service order, their 1-based positions and
+ * the queue-level ETA inputs. Changes produce a new snapshot (copy-on-write), so readers never lock.
+ * Patched snapshots keep the builtAt of the repository scan they derive from. With replication on,
+ * it also holds the replicated join sequence of each waiting ticket that has one.
+ *
+ * A restored snapshot comes from the state file written before the last restart: it is served
+ * for at most app.snapshot.max-age-ms after the restore, but never patched, so the first change
+ * forces a rebuild.
+ */
+@Getter
+public final class QueueSnapshot {
+
+    private final String queueId;
+    // Change generation of the queue this snapshot reflects (see QueueSnapshotCache)
+    private final long generation;
+    private final List<String> order;
+    private final Map<String, Integer> positions;
+    private final Map<String, Long> joinSequences;
+    private final Double serviceRateEma;
+    private final Integer openSlots;
+    private final Instant builtAt;
+    private final boolean restored;
+
+    private QueueSnapshot(String queueId, long generation, List<String> order, Map<String, Long> joinSequences,
+                          Double serviceRateEma, Integer openSlots, Instant builtAt, boolean restored) {
+        this.queueId = queueId;
+        this.generation = generation;
+        this.order = Collections.unmodifiableList(order);
+        Map<String, Integer> positions = new HashMap<>(Math.max(16, order.size() * 4 / 3 + 1));
+        for (int i = 0; i < order.size(); i++) {
+            positions.put(order.get(i), i + 1);
+        }
+        this.positions = Collections.unmodifiableMap(positions);
+        this.joinSequences = Collections.unmodifiableMap(joinSequences);
+        this.serviceRateEma = serviceRateEma;
+        this.openSlots = openSlots;
+        this.builtAt = builtAt;
+        this.restored = restored;
+    }
+
+    static QueueSnapshot of(String queueId, long generation, List<String> waitingTicketIdsInOrder,
+                            Map<String, Long> joinSequences, Double serviceRateEma, Integer openSlots) {
+        return new QueueSnapshot(queueId, generation, new ArrayList<>(waitingTicketIdsInOrder), new HashMap<>(joinSequences),
+                serviceRateEma, openSlots, Instant.now(), false);
+    }
+
+    static QueueSnapshot restored(String queueId, long generation, List<String> waitingTicketIdsInOrder,
+                                  Double serviceRateEma, Integer openSlots) {
+        return new QueueSnapshot(queueId, generation, new ArrayList<>(waitingTicketIdsInOrder), Map.of(),
+                serviceRateEma, openSlots, Instant.now(), true);
+    }
+
+    /**
+     * A newly joined ticket goes to the back of the queue.
+     */
+    QueueSnapshot withJoined(String ticketId, Long joinSequence, long newGeneration) {
+        Map<String, Long> newJoinSequences = joinSequences;
+        if (joinSequence != null) {
+            newJoinSequences = new HashMap<>(joinSequences);
+            newJoinSequences.put(ticketId, joinSequence);
+        }
+        if (positions.containsKey(ticketId)) {
+            return new QueueSnapshot(queueId, newGeneration, order, newJoinSequences, serviceRateEma, openSlots, builtAt, false);
+        }
+        List<String> newOrder = new ArrayList<>(order.size() + 1);
+        newOrder.addAll(order);
+        newOrder.add(ticketId);
+        return new QueueSnapshot(queueId, newGeneration, newOrder, newJoinSequences, serviceRateEma, openSlots, builtAt, false);
+    }
+
+    /**
+     * Served or cancelled tickets leave the queue; everyone behind them moves up.
+     */
+    QueueSnapshot withRemoved(Collection<String> ticketIds, Integer newOpenSlots, long newGeneration) {
+        Set<String> removed = new HashSet<>(ticketIds);
+        List<String> newOrder = new ArrayList<>(order.size());
+        for (String ticketId : order) {
+            if (!removed.contains(ticketId)) {
+                newOrder.add(ticketId);
+            }
+        }
+        Map<String, Long> newJoinSequences = joinSequences;
+        if (!joinSequences.isEmpty()) {
+            newJoinSequences = new HashMap<>(joinSequences);
+            newJoinSequences.keySet().removeAll(removed);
+        }
+        return new QueueSnapshot(queueId, newGeneration, newOrder, newJoinSequences, serviceRateEma,
+                newOpenSlots != null ? newOpenSlots : openSlots, builtAt, false);
+    }
+
+    public OptionalInt positionOf(String ticketId) {
+        Integer position = positions.get(ticketId);
+        return position != null ? OptionalInt.of(position) : OptionalInt.empty();
+    }
+
+    public OptionalLong joinSequenceOf(String ticketId) {
+        Long joinSequence = joinSequences.get(ticketId);
+        return joinSequence != null ? OptionalLong.of(joinSequence) : OptionalLong.empty();
+    }
+
+    public int getWaitingCount() {
+        return order.size();
+    }
+}
@@ -0,0 +1,221 @@
+package com.smartqueue.aws.snapshot;
+
+import com.smartqueue.aws.model.QueueInfo;
+import com.smartqueue.aws.model.Ticket;
+import com.smartqueue.aws.repository.QueueRepository;
+import com.smartqueue.aws.repository.TicketRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Materialized per-queue status, shared by every status poll of that queue.
+ *
+ * Reads are a lock-free map lookup. Each queue has a change generation, bumped on every join,
+ * serve or cancel: joins and serves patch the current snapshot (copy-on-write) under the map's
+ * per-key lock, anything else only bumps the generation and the next read rebuilds from the
+ * repositories. Concurrent rebuilds of one queue are single-flighted onto one repository scan.
+ *
+ * Changes made by other instances are only seen on rebuild, so snapshots older than
+ * app.snapshot.max-age-ms are rebuilt even if this instance saw no change.
+ */
+@Slf4j
+@Component
+public class QueueSnapshotCache {
+
+    private final TicketRepository ticketRepository;
+    private final QueueRepository queueRepository;
+    private final MeterRegistry meterRegistry;
+    private final Duration maxAge;
+
+    private final ConcurrentMap<String, QueueSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<QueueSnapshot>> rebuildsInFlight = new ConcurrentHashMap<>();
+
+    public QueueSnapshotCache(TicketRepository ticketRepository,
+                              QueueRepository queueRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.snapshot.max-age-ms:5000}") long maxAgeMs) {
+        this.ticketRepository = ticketRepository;
+        this.queueRepository = queueRepository;
+        this.meterRegistry = meterRegistry;
+        this.maxAge = Duration.ofMillis(maxAgeMs);
+    }
+
+    /**
+     * Current snapshot of the queue, rebuilt first if a change was recorded since it was built.
+     */
+    public QueueSnapshot get(String queueId) {
+        QueueSnapshot snapshot = snapshots.get(queueId);
+        if (snapshot != null && isCurrent(snapshot)) {
+            meterRegistry.counter("smartqueue.snapshot.reads", "result", "hit").increment();
+            return snapshot;
+        }
+        meterRegistry.counter("smartqueue.snapshot.reads", "result", "rebuild").increment();
+        return rebuild(queueId);
+    }
+
+    /**
+     * The queue's snapshot if this instance has a current one; never rebuilds.
+     */
+    public Optional<QueueSnapshot> getIfCurrent(String queueId) {
+        QueueSnapshot snapshot = snapshots.get(queueId);
+        boolean current = snapshot != null && isCurrent(snapshot);
+        meterRegistry.counter("smartqueue.snapshot.reads", "result", current ? "hit" : "skipped").increment();
+        return current ? Optional.of(snapshot) : Optional.empty();
+    }
+
+    /**
+     * Rebuilds from the repositories, joining a rebuild already running for the queue.
+     */
+    public QueueSnapshot rebuild(String queueId) {
+        CompletableFuture<QueueSnapshot> mine = new CompletableFuture<>();
+        CompletableFuture<QueueSnapshot> running = rebuildsInFlight.putIfAbsent(queueId, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException runtimeException
+                        ? runtimeException
+                        : new RuntimeException("Failed to rebuild queue snapshot", e.getCause());
+            }
+        }
+
+        try {
+            QueueSnapshot snapshot = load(queueId);
+            // Keep whichever is newer if a patch landed while we were scanning
+            QueueSnapshot installed = snapshots.merge(queueId, snapshot,
+                    (current, built) -> current.getGeneration() > built.getGeneration() ? current : built);
+            mine.complete(installed);
+            return installed;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            rebuildsInFlight.remove(queueId, mine);
+        }
+    }
+
+    /**
+     * Adds a joined ticket; {@code joinSequence} is its replicated join sequence, null without replication.
+     */
+    public void onJoined(String queueId, String ticketId, Long joinSequence) {
+        snapshots.compute(queueId, (id, current) -> {
+            long generation = generation(id).incrementAndGet();
+            return patchable(current, generation) ? current.withJoined(ticketId, joinSequence, generation) : current;
+        });
+        meterRegistry.counter("smartqueue.snapshot.changes", "type", "join").increment();
+    }
+
+    public void onRemoved(String queueId, Collection<String> ticketIds, Integer newOpenSlots) {
+        snapshots.compute(queueId, (id, current) -> {
+            long generation = generation(id).incrementAndGet();
+            return patchable(current, generation) ? current.withRemoved(ticketIds, newOpenSlots, generation) : current;
+        });
+        meterRegistry.counter("smartqueue.snapshot.changes", "type", "remove").increment();
+    }
+
+    /**
+     * Marks the queue changed without patching; the next read rebuilds it.
+     */
+    public void invalidate(String queueId) {
+        generation(queueId).incrementAndGet();
+    }
+
+    /**
+     * Queues with a snapshot on this instance.
+     */
+    public Set<String> cachedQueueIds() {
+        return Set.copyOf(snapshots.keySet());
+    }
+
+    /**
+     * Current snapshots, for the state file.
+     */
+    public List<QueueSnapshot> exportSnapshots() {
+        return List.copyOf(snapshots.values());
+    }
+
+    /**
+     * Installs a snapshot read from the state file, unless the queue already has one. Returns
+     * whether it was installed; the caller rebuilds restored queues in the background. Until
+     * then it is served for at most app.snapshot.max-age-ms after the restore, like a snapshot
+     * built from the repositories; a read after that rebuilds it.
+     */
+    public boolean restore(String queueId, List<String> waitingTicketIdsInOrder, Double serviceRateEma, Integer openSlots) {
+        QueueSnapshot restored = QueueSnapshot.restored(queueId, generation(queueId).get(),
+                waitingTicketIdsInOrder, serviceRateEma, openSlots);
+        return snapshots.putIfAbsent(queueId, restored) == null;
+    }
+
+    /**
+     * Rebuilds the queue if it still has its restored snapshot; a change since then already did.
+     */
+    public void catchUp(String queueId) {
+        QueueSnapshot current = snapshots.get(queueId);
+        if (current != null && current.isRestored()) {
+            rebuild(queueId);
+        }
+    }
+
+    public void evict(String queueId) {
+        snapshots.remove(queueId);
+        generations.remove(queueId);
+    }
+
+    private QueueSnapshot load(String queueId) {
+        // Generation read before the scan: a change racing with it leaves the result non-current
+        long generation = generation(queueId).get();
+        long started = System.nanoTime();
+
+        List<Ticket> waiting = ticketRepository.findWaitingTicketsByQueue(queueId).stream()
+                .sorted(Comparator.comparing(Ticket::getJoinedAt, Comparator.nullsLast(Comparator.naturalOrder())))
+                .toList();
+        List<String> order = waiting.stream().map(Ticket::getTicketId).toList();
+        Map<String, Long> joinSequences = new HashMap<>();
+        for (Ticket ticket : waiting) {
+            if (ticket.getJoinSequence() != null) {
+                joinSequences.put(ticket.getTicketId(), ticket.getJoinSequence());
+            }
+        }
+        Optional<QueueInfo> queueInfo = queueRepository.findById(queueId);
+        QueueSnapshot snapshot = QueueSnapshot.of(queueId, generation, order, joinSequences,
+                queueInfo.map(QueueInfo::getServiceRateEma).orElse(null),
+                queueInfo.map(QueueInfo::getOpenSlots).orElse(null));
+
+        meterRegistry.timer("smartqueue.snapshot.rebuild").record(Duration.ofNanos(System.nanoTime() - started));
+        log.debug("Rebuilt snapshot for queue: {} ({} waiting, generation {})", queueId, order.size(), generation);
+        return snapshot;
+    }
+
+    // A snapshot can be patched only if it reflects every change before this one
+    private boolean patchable(QueueSnapshot current, long generation) {
+        return current != null && !current.isRestored() && current.getGeneration() == generation - 1;
+    }
+
+    private boolean isCurrent(QueueSnapshot snapshot) {
+        // Restored snapshots age like built ones, from the restore: at most max-age-ms of warm reads
+        return snapshot.getGeneration() == generation(snapshot.getQueueId()).get()
+                && snapshot.getBuiltAt().plus(maxAge).isAfter(Instant.now());
+    }
+
+    private AtomicLong generation(String queueId) {
+        return generations.computeIfAbsent(queueId, id -> new AtomicLong());
+    }
+}
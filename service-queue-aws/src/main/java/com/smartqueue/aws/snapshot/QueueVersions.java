@@ -0,0 +1,144 @@
+package com.smartqueue.aws.snapshot;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Version counters behind the ETags of /queues, /queues/{id} and /queues/{id}/status.
+ *
+ * Every mutation of a queue bumps that queue's version and the global (listing) version. An ETag
+ * is the instance epoch plus the version read before the response was built, so a poll can be
+ * answered with 304 from memory. The epoch is random per process: after a restart, or behind a
+ * load balancer, a tag from another instance never matches.
+ *
+ * This instance only sees its own mutations, so a version older than app.etag.max-age-ms is
+ * bumped on read; a cached response is then revalidated against the repositories at least that
+ * often, bounding how long another instance's change can stay hidden.
+ *
+ * Each queue also has a one-shot change signal for long-polls: bump completes it, and the next
+ * waiter creates a fresh one. The signal is completed app.longpoll.coalesce-ms after the bump on
+ * a boundedElastic worker, so a burst of bumps wakes a queue's waiters once, all on that worker,
+ * instead of once per bump on the thread that changed the queue. Waiters also have to re-check
+ * at least every max-age (see maxAge()), since changes made through other instances never
+ * complete the signal.
+ *
+ * Queue ids come from requests, so a queue gets a version and a change signal only once track
+ * is called for it - after a read found the queue - and loses both in forget, when it is
+ * deleted. An untracked queue is tagged with a fresh value every time, which never matches, and
+ * its long-polls wait on the max-age timer alone. Version values come from one sequence and are
+ * never reused, so a queue deleted and created again cannot match a tag of its earlier life.
+ */
+@Component
+public class QueueVersions {
+
+    private static final String GLOBAL = "";
+
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
+    private final long maxAgeNanos;
+    private final long coalesceMs;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentMap<String, Version> versions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Sinks.Empty<Void>> changeSignals = new ConcurrentHashMap<>();
+
+    private record Version(long value, long issuedAtNanos) {
+    }
+
+    public QueueVersions(@Value("${app.etag.max-age-ms:10000}") long maxAgeMs,
+                         @Value("${app.longpoll.coalesce-ms:20}") long coalesceMs) {
+        this.maxAgeNanos = maxAgeMs * 1_000_000;
+        this.coalesceMs = coalesceMs;
+        versions.put(GLOBAL, next());
+    }
+
+    public void bump(String queueId) {
+        versions.computeIfPresent(queueId, (id, current) -> next());
+        versions.put(GLOBAL, next());
+        
+        // After the version moved: a waiter that missed this signal sees the new version instead
+        Sinks.Empty<Void> signal = changeSignals.remove(queueId);
+        if (signal != null) {
+            // Bumps until it fires find no signal: a waiter arriving meanwhile sees the new version
+            Schedulers.boundedElastic().schedule(signal::tryEmitEmpty, coalesceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Gives a queue a read has just found a version, if it has none yet. The fresh tag handed
+     * out before this does not match it, so a change in between is not hidden.
+     */
+    public void track(String queueId) {
+        if (!versions.containsKey(queueId)) {
+            versions.putIfAbsent(queueId, next());
+        }
+    }
+    
+    /**
+     * Drops the version and change signal of a deleted queue; its waiters wake up at once.
+     */
+    public void forget(String queueId) {
+        versions.remove(queueId);
+        versions.put(GLOBAL, next());
+        Sinks.Empty<Void> signal = changeSignals.remove(queueId);
+        if (signal != null) {
+            signal.tryEmitEmpty();
+        }
+    }
+    
+    /**
+     * How long a version may hide a change made through another instance.
+     */
+    public Duration maxAge() {
+        return Duration.ofNanos(maxAgeNanos);
+    }
+
+    /**
+     * Completes shortly after the queue's next bump, on a boundedElastic worker; never for an
+     * untracked queue. Take it before reading the version to compare against.
+     */
+    public Mono<Void> nextChange(String queueId) {
+        // Under the version's entry lock, so a forget cannot slip in and leave a signal behind
+        AtomicReference<Sinks.Empty<Void>> signal = new AtomicReference<>();
+        versions.computeIfPresent(queueId, (id, version) -> {
+            signal.set(changeSignals.computeIfAbsent(id, key -> Sinks.empty()));
+            return version;
+        });
+        return signal.get() != null ? signal.get().asMono() : Mono.never();
+    }
+
+    /**
+     * Strong ETag for the queue's detail and status responses.
+     */
+    public String queueETag(String queueId) {
+        return "\"" + epoch + ".q" + current(queueId) + "\"";
+    }
+
+    /**
+     * Strong ETag for the queue listing.
+     */
+    public String listingETag() {
+        return "\"" + epoch + ".g" + current(GLOBAL) + "\"";
+    }
+
+    // A fresh value for an untracked queue
+    private long current(String key) {
+        long now = System.nanoTime();
+        Version current = versions.computeIfPresent(key,
+                (id, version) -> now - version.issuedAtNanos() > maxAgeNanos ? next() : version);
+        return current != null ? current.value() : sequence.incrementAndGet();
+    }
+
+    private Version next() {
+        return new Version(sequence.incrementAndGet(), System.nanoTime());
+    }
+}
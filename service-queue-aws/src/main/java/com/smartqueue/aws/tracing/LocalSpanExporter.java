@@ -0,0 +1,144 @@
+package com.smartqueue.aws.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process span collector: keeps the most recent spans in a bounded buffer and,
+ * when a file is configured, appends every span as one JSON line for offline analysis.
+ *
+ * The same class exists in service-queue-aws and service-eta-aliyun on purpose: the two
+ * services are separate Maven builds with their own Docker context and deploy pipeline and no
+ * parent POM, and a module shared through a repository would tie their releases together for
+ * one dev-only class. Keep the two copies identical apart from the package.
+ */
+@Slf4j
+public class LocalSpanExporter implements SpanExporter {
+
+    private static final AttributeKey<String> SERVICE_NAME = AttributeKey.stringKey("service.name");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int capacity;
+    private final Deque<Map<String, Object>> recent = new ArrayDeque<>();
+    private final BufferedWriter fileWriter;
+
+    public LocalSpanExporter(int capacity, Path file) {
+        this.capacity = capacity;
+        this.fileWriter = file != null ? openWriter(file) : null;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        try {
+            for (SpanData span : spans) {
+                Map<String, Object> record = toRecord(span);
+                synchronized (recent) {
+                    if (recent.size() >= capacity) {
+                        recent.removeFirst();
+                    }
+                    recent.addLast(record);
+                }
+                if (fileWriter != null) {
+                    synchronized (fileWriter) {
+                        fileWriter.write(objectMapper.writeValueAsString(record));
+                        fileWriter.newLine();
+                    }
+                }
+            }
+            if (fileWriter != null) {
+                synchronized (fileWriter) {
+                    fileWriter.flush();
+                }
+            }
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            log.warn("Failed to write spans to local trace file", e);
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        if (fileWriter != null) {
+            try {
+                synchronized (fileWriter) {
+                    fileWriter.close();
+                }
+            } catch (IOException e) {
+                log.warn("Failed to close local trace file", e);
+                return CompletableResultCode.ofFailure();
+            }
+        }
+        return CompletableResultCode.ofSuccess();
+    }
+
+    /**
+     * Recent spans grouped by trace id, newest trace last.
+     */
+    public Map<String, List<Map<String, Object>>> recentTraces(int maxTraces) {
+        List<Map<String, Object>> snapshot;
+        synchronized (recent) {
+            snapshot = new ArrayList<>(recent);
+        }
+        Map<String, List<Map<String, Object>>> traces = new LinkedHashMap<>();
+        for (Map<String, Object> span : snapshot) {
+            traces.computeIfAbsent((String) span.get("traceId"), id -> new ArrayList<>()).add(span);
+        }
+        while (traces.size() > maxTraces) {
+            traces.remove(traces.keySet().iterator().next());
+        }
+        return traces;
+    }
+
+    private Map<String, Object> toRecord(SpanData span) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("traceId", span.getTraceId());
+        record.put("spanId", span.getSpanId());
+        record.put("parentSpanId", span.getParentSpanId());
+        record.put("service", span.getResource().getAttribute(SERVICE_NAME));
+        record.put("name", span.getName());
+        record.put("kind", span.getKind().name());
+        record.put("startEpochMicros", span.getStartEpochNanos() / 1_000);
+        record.put("durationMicros", (span.getEndEpochNanos() - span.getStartEpochNanos()) / 1_000);
+        record.put("status", span.getStatus().getStatusCode().name());
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), value));
+        record.put("attributes", attributes);
+        return record;
+    }
+
+    private static BufferedWriter openWriter(Path file) {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            return Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open trace file " + file, e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.smartqueue.aws.tracing;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * /actuator/traces - recent spans held by the local collector, grouped by trace.
+ */
+@Endpoint(id = "traces")
+@RequiredArgsConstructor
+public class TracesEndpoint {
+
+    private final LocalSpanExporter localSpanExporter;
+
+    @ReadOperation
+    public Map<String, List<Map<String, Object>>> traces(@Nullable Integer limit) {
+        return localSpanExporter.recentTraces(limit != null ? limit : 20);
+    }
+}
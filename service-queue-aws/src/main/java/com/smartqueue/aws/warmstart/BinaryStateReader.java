@@ -0,0 +1,85 @@
+package com.smartqueue.aws.warmstart;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads what BinaryStateWriter wrote, straight from a (possibly memory-mapped) buffer.
+ */
+class BinaryStateReader {
+
+    private final ByteBuffer buffer;
+
+    BinaryStateReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in state snapshot");
+    }
+
+    long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readLength() throws IOException {
+        long length = readVarLong();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Length " + length + " exceeds the " + buffer.remaining() + " bytes left in the state snapshot");
+        }
+        return (int) length;
+    }
+
+    String readString() throws IOException {
+        int length = readLength();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Next length-prefixed block as a view of the underlying buffer (no copy).
+     */
+    ByteBuffer readBlock() throws IOException {
+        int length = readLength();
+        ByteBuffer block = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return block;
+    }
+
+    long readFixedLong() throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            throw new IOException("Truncated state snapshot");
+        }
+        return buffer.getLong();
+    }
+
+    boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+
+    int remaining() {
+        return buffer.remaining();
+    }
+
+    private byte readByte() throws IOException {
+        if (!buffer.hasRemaining()) {
+            throw new IOException("Truncated state snapshot");
+        }
+        return buffer.get();
+    }
+}
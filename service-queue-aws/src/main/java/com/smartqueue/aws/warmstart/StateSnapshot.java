@@ -0,0 +1,23 @@
+package com.smartqueue.aws.warmstart;
+
+import com.smartqueue.aws.replication.QueueCountersState;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory state saved across restarts: queue status snapshots, replicated counters and the
+ * join guard Bloom filter (null when not saved).
+ */
+public record StateSnapshot(Instant createdAt,
+                            List<QueueState> queues,
+                            Map<String, QueueCountersState> counters,
+                            JoinFilterState joinFilter) {
+
+    public record QueueState(String queueId, List<String> waitingTicketIds, Double serviceRateEma, Integer openSlots) {
+    }
+
+    public record JoinFilterState(long numBits, int numHashes, long insertions, long[] words) {
+    }
+}
@@ -0,0 +1,345 @@
+package com.smartqueue.aws.warmstart;
+
+import com.smartqueue.aws.replication.CounterState;
+import com.smartqueue.aws.replication.QueueCountersState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Versioned binary format of the state file.
+ *
+ * Header (22 bytes): magic "SQSS", format version, flags (bit 0: body deflated), creation time
+ * (epoch millis), uncompressed body length, CRC32 of the uncompressed body. The body is a list
+ * of sections, each a varint tag followed by a length-prefixed payload, so a reader skips
+ * sections it does not know and later versions can add some without breaking older readers.
+ * Numbers are varints; UUID ticket ids are stored as 16 raw bytes instead of 36 characters.
+ *
+ * Files are read through a memory mapping: an uncompressed body is parsed in place, a
+ * compressed one is inflated from the mapping in one pass.
+ */
+final class StateSnapshotCodec {
+
+    static final int MAGIC = 0x53515353; // "SQSS"
+    static final int FORMAT_VERSION = 1;
+
+    private static final int FLAG_DEFLATE = 1;
+    private static final int HEADER_BYTES = 4 + 1 + 1 + 8 + 4 + 4;
+    // Checked before the body is allocated, so a corrupt header cannot exhaust the heap
+    private static final int MAX_BODY_BYTES = 256 << 20;
+    // Deflate never compresses better than about 1032:1
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final int SECTION_QUEUES = 1;
+    // 2 held the counters before the open slots register and replica folding; skipped if found
+    private static final int SECTION_JOIN_FILTER = 3;
+    private static final int SECTION_COUNTERS = 4;
+
+    private static final int TICKET_ID_STRING = 0;
+    private static final int TICKET_ID_UUID = 1;
+
+    private StateSnapshotCodec() {
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to {@code path}, forces it to disk and
+     * renames it over {@code path}, so a crash never leaves a half-written state file.
+     * Returns the file size.
+     */
+    static long write(StateSnapshot snapshot, Path path, boolean compress) throws IOException {
+        byte[] body = encodeBody(snapshot);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        byte[] payload = compress ? deflate(body) : body;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .put((byte) FORMAT_VERSION)
+                .put((byte) (compress ? FLAG_DEFLATE : 0))
+                .putLong(snapshot.createdAt().toEpochMilli())
+                .putInt(body.length)
+                .putInt((int) crc.getValue())
+                .flip();
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer data = ByteBuffer.wrap(payload);
+            while (header.hasRemaining() || data.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, data});
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return HEADER_BYTES + payload.length;
+    }
+
+    static StateSnapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("State snapshot too short: " + channel.size() + " bytes");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != MAGIC) {
+                throw new IOException("Not a state snapshot: " + path);
+            }
+            int version = mapped.get();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported state snapshot version " + version + ", expected " + FORMAT_VERSION);
+            }
+            int flags = mapped.get();
+            Instant createdAt = Instant.ofEpochMilli(mapped.getLong());
+            int bodyLength = mapped.getInt();
+            int expectedCrc = mapped.getInt();
+
+            boolean deflated = (flags & FLAG_DEFLATE) != 0;
+            long maxBodyLength = deflated ? Math.min(MAX_BODY_BYTES, (long) mapped.remaining() * MAX_DEFLATE_RATIO) : mapped.remaining();
+            if (bodyLength < 0 || bodyLength > maxBodyLength) {
+                throw new IOException("State snapshot header says " + bodyLength + " body bytes, at most " + maxBodyLength + " possible");
+            }
+            ByteBuffer body = deflated ? inflate(mapped.slice(), bodyLength) : mapped.slice();
+            if (body.remaining() != bodyLength) {
+                throw new IOException("State snapshot body is " + body.remaining() + " bytes, header says " + bodyLength);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                throw new IOException("State snapshot checksum mismatch: " + path);
+            }
+            return decodeBody(createdAt, new BinaryStateReader(body));
+        }
+    }
+
+    private static byte[] encodeBody(StateSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        BinaryStateWriter writer = new BinaryStateWriter(body);
+
+        writer.writeVarLong(SECTION_QUEUES);
+        writer.writeBytes(section(out -> {
+            out.writeVarLong(snapshot.queues().size());
+            for (StateSnapshot.QueueState queue : snapshot.queues()) {
+                out.writeString(queue.queueId());
+                out.writeBoolean(queue.serviceRateEma() != null);
+                if (queue.serviceRateEma() != null) {
+                    out.writeFixedLong(Double.doubleToRawLongBits(queue.serviceRateEma()));
+                }
+                out.writeBoolean(queue.openSlots() != null);
+                if (queue.openSlots() != null) {
+                    out.writeSignedVarLong(queue.openSlots());
+                }
+                out.writeVarLong(queue.waitingTicketIds().size());
+                for (String ticketId : queue.waitingTicketIds()) {
+                    writeTicketId(out, ticketId);
+                }
+            }
+        }));
+
+        writer.writeVarLong(SECTION_COUNTERS);
+        writer.writeBytes(section(out -> {
+            out.writeVarLong(snapshot.counters().size());
+            for (Map.Entry<String, QueueCountersState> entry : snapshot.counters().entrySet()) {
+                QueueCountersState state = entry.getValue();
+                out.writeString(entry.getKey());
+                writeCounter(out, state.joins());
+                writeCounter(out, state.served());
+                out.writeSignedVarLong(state.openSlotsBase());
+                out.writeVarLong(state.openSlotsClock());
+                out.writeString(state.openSlotsNode() != null ? state.openSlotsNode() : "");
+                writeCounter(out, state.openSlotsAdded());
+                writeCounter(out, state.openSlotsRemoved());
+                out.writeVarLong(state.joinSequence());
+                writeCounts(out, state.retiredAt());
+            }
+        }));
+
+        if (snapshot.joinFilter() != null) {
+            StateSnapshot.JoinFilterState filter = snapshot.joinFilter();
+            writer.writeVarLong(SECTION_JOIN_FILTER);
+            writer.writeBytes(section(out -> {
+                out.writeVarLong(filter.numBits());
+                out.writeVarLong(filter.numHashes());
+                out.writeVarLong(filter.insertions());
+                out.writeVarLong(filter.words().length);
+                for (long word : filter.words()) {
+                    out.writeFixedLong(word);
+                }
+            }));
+        }
+        return body.toByteArray();
+    }
+
+    private static StateSnapshot decodeBody(Instant createdAt, BinaryStateReader reader) throws IOException {
+        List<StateSnapshot.QueueState> queues = new ArrayList<>();
+        Map<String, QueueCountersState> counters = new HashMap<>();
+        StateSnapshot.JoinFilterState joinFilter = null;
+
+        while (reader.hasRemaining()) {
+            long tag = reader.readVarLong();
+            BinaryStateReader in = new BinaryStateReader(reader.readBlock());
+            if (tag == SECTION_QUEUES) {
+                long count = in.readVarLong();
+                for (long i = 0; i < count; i++) {
+                    String queueId = in.readString();
+                    Double serviceRateEma = in.readBoolean() ? Double.longBitsToDouble(in.readFixedLong()) : null;
+                    Integer openSlots = in.readBoolean() ? (int) in.readSignedVarLong() : null;
+                    int waiting = (int) in.readVarLong();
+                    List<String> ticketIds = new ArrayList<>(Math.min(waiting, 1 << 16));
+                    for (int t = 0; t < waiting; t++) {
+                        ticketIds.add(readTicketId(in));
+                    }
+                    queues.add(new StateSnapshot.QueueState(queueId, ticketIds, serviceRateEma, openSlots));
+                }
+            } else if (tag == SECTION_COUNTERS) {
+                long count = in.readVarLong();
+                for (long i = 0; i < count; i++) {
+                    String queueId = in.readString();
+                    counters.put(queueId, new QueueCountersState(readCounter(in), readCounter(in),
+                            in.readSignedVarLong(), in.readVarLong(), in.readString(),
+                            readCounter(in), readCounter(in), in.readVarLong(), readCounts(in)));
+                }
+            } else if (tag == SECTION_JOIN_FILTER) {
+                long numBits = in.readVarLong();
+                int numHashes = (int) in.readVarLong();
+                long insertions = in.readVarLong();
+                long wordCount = in.readVarLong();
+                if (wordCount < 0 || wordCount > in.remaining() / Long.BYTES) {
+                    throw new IOException("Join filter of " + wordCount + " words exceeds the " + in.remaining() + " bytes left");
+                }
+                long[] words = new long[(int) wordCount];
+                for (int w = 0; w < words.length; w++) {
+                    words[w] = in.readFixedLong();
+                }
+                joinFilter = new StateSnapshot.JoinFilterState(numBits, numHashes, insertions, words);
+            }
+            // Unknown sections were written by a newer version and are skipped
+        }
+        return new StateSnapshot(createdAt, queues, counters, joinFilter);
+    }
+
+    private interface SectionBody {
+        void write(BinaryStateWriter out) throws IOException;
+    }
+
+    private static byte[] section(SectionBody body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        body.write(new BinaryStateWriter(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static void writeTicketId(BinaryStateWriter out, String ticketId) throws IOException {
+        UUID uuid = parseUuid(ticketId);
+        if (uuid != null) {
+            out.writeVarLong(TICKET_ID_UUID);
+            out.writeFixedLong(uuid.getMostSignificantBits());
+            out.writeFixedLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeVarLong(TICKET_ID_STRING);
+            out.writeString(ticketId);
+        }
+    }
+
+    private static String readTicketId(BinaryStateReader in) throws IOException {
+        long kind = in.readVarLong();
+        if (kind == TICKET_ID_UUID) {
+            return new UUID(in.readFixedLong(), in.readFixedLong()).toString();
+        }
+        if (kind == TICKET_ID_STRING) {
+            return in.readString();
+        }
+        throw new IOException("Unknown ticket id encoding: " + kind);
+    }
+
+    // Only canonical lower-case UUIDs round-trip through 16 bytes unchanged
+    private static UUID parseUuid(String value) {
+        if (value.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(value);
+            return uuid.toString().equals(value) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void writeCounts(BinaryStateWriter out, Map<String, Long> counts) throws IOException {
+        Map<String, Long> entries = counts == null ? Map.of() : counts;
+        out.writeVarLong(entries.size());
+        for (Map.Entry<String, Long> entry : entries.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeVarLong(entry.getValue());
+        }
+    }
+
+    private static void writeCounter(BinaryStateWriter out, CounterState counter) throws IOException {
+        writeCounts(out, counter != null ? counter.counts() : null);
+        writeCounts(out, counter != null ? counter.folded() : null);
+    }
+
+    private static CounterState readCounter(BinaryStateReader in) throws IOException {
+        return new CounterState(readCounts(in), readCounts(in));
+    }
+
+    private static Map<String, Long> readCounts(BinaryStateReader in) throws IOException {
+        long size = in.readVarLong();
+        Map<String, Long> counts = new HashMap<>();
+        for (long i = 0; i < size; i++) {
+            counts.put(in.readString(), in.readVarLong());
+        }
+        return counts;
+    }
+
+    private static byte[] deflate(byte[] body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 2 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+            out.write(body);
+        } finally {
+            deflater.end();
+        }
+        return compressed.toByteArray();
+    }
+
+    private static ByteBuffer inflate(ByteBuffer compressed, int bodyLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] body = new byte[bodyLength];
+            int length = 0;
+            while (length < bodyLength && !inflater.finished()) {
+                int inflated = inflater.inflate(body, length, bodyLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated compressed state snapshot");
+                }
+                length += inflated;
+            }
+            return ByteBuffer.wrap(body, 0, length);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed state snapshot", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
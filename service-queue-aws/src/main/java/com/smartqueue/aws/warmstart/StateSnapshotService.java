@@ -0,0 +1,202 @@
+package com.smartqueue.aws.warmstart;
+
+import com.smartqueue.aws.join.BloomFilter;
+import com.smartqueue.aws.join.JoinGuardService;
+import com.smartqueue.aws.replication.ReplicatedQueueCounters;
+import com.smartqueue.aws.snapshot.QueueSnapshot;
+import com.smartqueue.aws.snapshot.QueueSnapshotCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves in-memory state to a local file and restores it on startup (app.state-snapshot.enabled=true),
+ * so a restarted instance does not rebuild every queue from DynamoDB before it is warm.
+ *
+ * The file is rewritten every app.state-snapshot.interval-ms and on shutdown. On startup:
+ * the join guard Bloom filter is restored as it is (safe at any age); replicated counters are
+ * merged in unless the file is older than app.replication.retired-retention-ms, past which it
+ * may hold entries of retired replicas that the peers have already forgotten; queue snapshots
+ * younger than app.state-snapshot.max-restore-age-ms are installed as restored snapshots and
+ * served right away, then rebuilt from the repositories in the background at
+ * app.state-snapshot.catch-up-queues-per-second on a single scheduled thread, stopped at
+ * shutdown. A queue that changes before its turn, or is read after app.snapshot.max-age-ms, is
+ * rebuilt by that read instead.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.state-snapshot.enabled", havingValue = "true")
+public class StateSnapshotService {
+
+    private final QueueSnapshotCache queueSnapshotCache;
+    // Present with app.replication.enabled=true
+    private final Optional<ReplicatedQueueCounters> replicatedQueueCounters;
+    private final JoinGuardService joinGuardService;
+    private final MeterRegistry meterRegistry;
+    private final Path path;
+    private final boolean compress;
+    private final Duration maxRestoreAge;
+    private final Duration maxCountersAge;
+    private final int catchUpQueuesPerSecond;
+
+    private final AtomicLong lastFileBytes = new AtomicLong();
+    private final ScheduledExecutorService catchUpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "state-snapshot-catch-up");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StateSnapshotService(QueueSnapshotCache queueSnapshotCache,
+                                Optional<ReplicatedQueueCounters> replicatedQueueCounters,
+                                JoinGuardService joinGuardService,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.state-snapshot.path:state/smartqueue.snap}") String path,
+                                @Value("${app.state-snapshot.compress:true}") boolean compress,
+                                @Value("${app.state-snapshot.max-restore-age-ms:600000}") long maxRestoreAgeMs,
+                                @Value("${app.replication.retired-retention-ms:604800000}") long maxCountersAgeMs,
+                                @Value("${app.state-snapshot.catch-up-queues-per-second:20}") int catchUpQueuesPerSecond) {
+        this.queueSnapshotCache = queueSnapshotCache;
+        this.replicatedQueueCounters = replicatedQueueCounters;
+        this.joinGuardService = joinGuardService;
+        this.meterRegistry = meterRegistry;
+        this.path = Path.of(path);
+        this.compress = compress;
+        this.maxRestoreAge = Duration.ofMillis(maxRestoreAgeMs);
+        this.maxCountersAge = Duration.ofMillis(maxCountersAgeMs);
+        this.catchUpQueuesPerSecond = Math.max(1, catchUpQueuesPerSecond);
+
+        meterRegistry.gauge("smartqueue.state.snapshot.bytes", lastFileBytes, AtomicLong::get);
+    }
+
+    @PostConstruct
+    public void restore() {
+        if (!Files.exists(path)) {
+            log.info("No state snapshot at {}, starting cold", path);
+            return;
+        }
+        long started = System.nanoTime();
+        StateSnapshot snapshot;
+        try {
+            snapshot = StateSnapshotCodec.read(path);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable state snapshot {}: {}", path, e.getMessage());
+            meterRegistry.counter("smartqueue.state.snapshot.restores", "outcome", "unreadable").increment();
+            return;
+        }
+
+        Duration age = Duration.between(snapshot.createdAt(), Instant.now());
+        boolean countersRestored = replicatedQueueCounters.isPresent() && age.compareTo(maxCountersAge) <= 0;
+        if (countersRestored) {
+            replicatedQueueCounters.get().merge(snapshot.counters());
+        }
+        StateSnapshot.JoinFilterState filter = snapshot.joinFilter();
+        boolean filterRestored = filter != null && joinGuardService.restoreFilter(
+                filter.numBits(), filter.numHashes(), filter.insertions(), filter.words());
+
+        List<String> restoredQueues = new ArrayList<>();
+        if (age.compareTo(maxRestoreAge) <= 0) {
+            for (StateSnapshot.QueueState queue : snapshot.queues()) {
+                if (queueSnapshotCache.restore(queue.queueId(), queue.waitingTicketIds(), queue.serviceRateEma(), queue.openSlots())) {
+                    restoredQueues.add(queue.queueId());
+                }
+            }
+        } else {
+            log.info("State snapshot is {}s old (max {}s), not restoring queue snapshots", age.toSeconds(), maxRestoreAge.toSeconds());
+        }
+
+        Duration took = Duration.ofNanos(System.nanoTime() - started);
+        meterRegistry.timer("smartqueue.state.snapshot.restore").record(took);
+        meterRegistry.counter("smartqueue.state.snapshot.restores", "outcome", "restored").increment();
+        log.info("🔄 Restored state snapshot from {} ({}s old) in {} ms: {} queues, {} counters, join filter {}",
+                path, age.toSeconds(), took.toMillis(), restoredQueues.size(), countersRestored ? snapshot.counters().size() : 0,
+                filterRestored ? "restored" : "skipped");
+
+        if (!restoredQueues.isEmpty()) {
+            catchUpExecutor.execute(() -> catchUp(restoredQueues, 0, System.nanoTime(), 0));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.state-snapshot.interval-ms:60000}",
+               initialDelayString = "${app.state-snapshot.interval-ms:60000}")
+    public synchronized void save() {
+        long started = System.nanoTime();
+        try {
+            List<StateSnapshot.QueueState> queues = queueSnapshotCache.exportSnapshots().stream()
+                    .map(this::toQueueState)
+                    .toList();
+            BloomFilter filter = joinGuardService.currentFilter();
+            StateSnapshot snapshot = new StateSnapshot(Instant.now(), queues,
+                    replicatedQueueCounters.map(ReplicatedQueueCounters::fullState).orElse(Map.of()),
+                    new StateSnapshot.JoinFilterState(filter.numBits(), filter.numHashes(), filter.insertions(), filter.toWords()));
+
+            long bytes = StateSnapshotCodec.write(snapshot, path, compress);
+            lastFileBytes.set(bytes);
+            meterRegistry.timer("smartqueue.state.snapshot.write").record(Duration.ofNanos(System.nanoTime() - started));
+            log.debug("Wrote state snapshot {} ({} bytes, {} queues)", path, bytes, queues.size());
+        } catch (IOException | RuntimeException e) {
+            meterRegistry.counter("smartqueue.state.snapshot.write.failures").increment();
+            log.warn("Failed to write state snapshot {}", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void saveOnShutdown() throws InterruptedException {
+        // A rebuild in progress finishes; the remaining queues are left to their next read
+        catchUpExecutor.shutdownNow();
+        catchUpExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        save();
+    }
+
+    private StateSnapshot.QueueState toQueueState(QueueSnapshot snapshot) {
+        return new StateSnapshot.QueueState(snapshot.getQueueId(), snapshot.getOrder(),
+                snapshot.getServiceRateEma(), snapshot.getOpenSlots());
+    }
+
+    // Rebuilds restored queues one per step, each step scheduled after the previous one so
+    // warm-up does not burst read capacity
+    private void catchUp(List<String> queueIds, int next, long started, int failures) {
+        if (next < queueIds.size()) {
+            String queueId = queueIds.get(next);
+            try {
+                queueSnapshotCache.catchUp(queueId);
+            } catch (RuntimeException e) {
+                // Drop the restored snapshot: the queue's next read retries the rebuild
+                queueSnapshotCache.invalidate(queueId);
+                failures++;
+                log.warn("Catch-up rebuild failed for queue: {}", queueId, e);
+            }
+            int failed = failures;
+            try {
+                catchUpExecutor.schedule(() -> catchUp(queueIds, next + 1, started, failed),
+                        1000L / catchUpQueuesPerSecond, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.info("State snapshot catch-up stopped at shutdown after {} of {} queues", next + 1, queueIds.size());
+            }
+            return;
+        }
+        Duration took = Duration.ofNanos(System.nanoTime() - started);
+        meterRegistry.timer("smartqueue.state.snapshot.catchup").record(took);
+        log.info("✅ State snapshot catch-up done: {} queues rebuilt in {} s ({} failed)",
+                queueIds.size() - failures, took.toSeconds(), failures);
+    }
+}
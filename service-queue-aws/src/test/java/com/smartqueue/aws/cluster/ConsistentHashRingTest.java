@@ -0,0 +1,89 @@
+package com.smartqueue.aws.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class ConsistentHashRingTest {
+
+    private static final List<String> QUEUES = IntStream.range(0, 10_000).mapToObj(i -> "queue-" + i).toList();
+
+    @Test
+    void everyNodeBuildsTheSameRing() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing reordered = new ConsistentHashRing(List.of("c", "a", "b"), 128);
+
+        for (String queueId : QUEUES) {
+            assertThat(reordered.ownerOf(queueId)).isEqualTo(ring.ownerOf(queueId));
+        }
+    }
+
+    @Test
+    void virtualNodesKeepTheSharesCloseToEven() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+
+        Map<String, Double> shares = ring.ownershipShares();
+        assertThat(shares.values().stream().mapToDouble(Double::doubleValue).sum()).isCloseTo(1.0, within(1e-9));
+        assertThat(shares.values()).allSatisfy(share -> assertThat(share).isCloseTo(1.0 / 3, within(0.1)));
+        assertThat(owners(ring).values()).allSatisfy(count -> assertThat(count).isBetween(2_300, 4_300));
+    }
+
+    @Test
+    void aJoiningNodeTakesQueuesOnlyForItself() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+
+        int moved = 0;
+        for (String queueId : QUEUES) {
+            if (!after.ownerOf(queueId).equals(before.ownerOf(queueId))) {
+                assertThat(after.ownerOf(queueId)).isEqualTo("d");
+                moved++;
+            }
+        }
+        // About 1/4 of the queues, not a reshuffle
+        assertThat(moved).isBetween(1_500, 3_500);
+    }
+
+    @Test
+    void aLeavingNodeHandsOverOnlyItsOwnQueues() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("a", "b"), 128);
+
+        for (String queueId : QUEUES) {
+            if (!before.ownerOf(queueId).equals("c")) {
+                assertThat(after.ownerOf(queueId)).isEqualTo(before.ownerOf(queueId));
+            }
+        }
+    }
+
+    @Test
+    void aSingleNodeOwnsEverything() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("a"), 128);
+
+        assertThat(ring.ownershipShares()).containsExactly(Map.entry("a", 1.0));
+        assertThat(owners(ring)).containsExactly(Map.entry("a", QUEUES.size()));
+    }
+
+    @Test
+    void anEmptyRingHasNoOwner() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of(), 128);
+
+        assertThatThrownBy(() -> ring.ownerOf("queue-1")).isInstanceOf(IllegalStateException.class);
+        assertThat(ring.ownershipShares()).isEmpty();
+    }
+
+    private static Map<String, Integer> owners(ConsistentHashRing ring) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String queueId : QUEUES) {
+            counts.merge(ring.ownerOf(queueId), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
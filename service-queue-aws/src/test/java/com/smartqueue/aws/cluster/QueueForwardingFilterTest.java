@@ -0,0 +1,71 @@
+package com.smartqueue.aws.cluster;
+
+import com.smartqueue.aws.config.SecurityConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueueForwardingFilterTest {
+
+    // node-a is unreachable: a forwarded write fails with 502
+    private final ClusterMembership membership = new ClusterMembership("node-b", 16,
+            "node-a=http://127.0.0.1:1,node-b=http://127.0.0.1:2", "", event -> { });
+    private final QueueForwardingFilter filter = new QueueForwardingFilter(membership, WebClient.builder(),
+            new SimpleMeterRegistry(), 2_000, 60_000, "secret");
+    private final String remoteQueue = IntStream.range(0, 1_000).mapToObj(i -> "q" + i)
+            .filter(queueId -> membership.remoteOwnerOf(queueId).isPresent())
+            .findFirst().orElseThrow();
+
+    @Test
+    void handlesARequestForwardedByANodeLocally() {
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.post("/queues/" + remoteQueue + "/join")
+                .header(QueueForwardingFilter.FORWARDED_BY_HEADER, "node-a")
+                .header(SecurityConfig.INTERNAL_TOKEN_HEADER, "secret"));
+
+        assertThat(handledLocally(exchange)).isTrue();
+    }
+
+    @Test
+    void routesAClientRequestCarryingTheForwardedHeaderToTheOwner() {
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.post("/queues/" + remoteQueue + "/join")
+                .header(QueueForwardingFilter.FORWARDED_BY_HEADER, "node-a")
+                .header(SecurityConfig.INTERNAL_TOKEN_HEADER, "guess"));
+
+        assertThat(handledLocally(exchange)).isFalse();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.BAD_GATEWAY);
+    }
+
+    @Test
+    void handlesQueuesThisNodeOwnsLocally() {
+        String localQueue = IntStream.range(0, 1_000).mapToObj(i -> "q" + i)
+                .filter(membership::isOwnedLocally)
+                .findFirst().orElseThrow();
+
+        assertThat(handledLocally(exchange(MockServerHttpRequest.post("/queues/" + localQueue + "/join")))).isTrue();
+    }
+
+    private boolean handledLocally(MockServerWebExchange exchange) {
+        AtomicBoolean local = new AtomicBoolean();
+        WebFilterChain chain = ignored -> {
+            local.set(true);
+            return Mono.empty();
+        };
+        filter.filter(exchange, chain).block(Duration.ofSeconds(5));
+        return local.get();
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        return MockServerWebExchange.from(request.build());
+    }
+}
@@ -0,0 +1,44 @@
+package com.smartqueue.aws.config;
+
+import com.smartqueue.aws.model.Ticket;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NativeHintsConfigTest {
+
+    @Test
+    void everyDynamoDbBeanHasReflectionHints() {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(DynamoDbBean.class));
+
+        List<String> beans = scanner.findCandidateComponents("com.smartqueue.aws").stream()
+                .map(BeanDefinition::getBeanClassName)
+                .toList();
+
+        assertThat(beans).isNotEmpty();
+        assertThat(NativeHintsConfig.DYNAMODB_BEANS).extracting(Class::getName).containsAll(beans);
+    }
+
+    @Test
+    void registersTheBeansTheirBuildersAndTheTicketStatus() {
+        RuntimeHints hints = new RuntimeHints();
+        new NativeHintsConfig.SmartQueueRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        for (Class<?> bean : NativeHintsConfig.DYNAMODB_BEANS) {
+            assertThat(RuntimeHintsPredicates.reflection().onType(bean).withMemberCategory(MemberCategory.INVOKE_PUBLIC_METHODS))
+                    .accepts(hints);
+        }
+        assertThat(RuntimeHintsPredicates.reflection().onType(Ticket.TicketBuilder.class)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(Ticket.TicketStatus.class)).accepts(hints);
+    }
+}
@@ -0,0 +1,129 @@
+package com.smartqueue.aws.controller;
+
+import com.smartqueue.aws.dto.response.QueueStatusResponse;
+import com.smartqueue.aws.model.QueueInfo;
+import com.smartqueue.aws.service.QueueService;
+import com.smartqueue.aws.snapshot.QueueVersions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueueControllerTest {
+
+    private final QueueVersions versions = new QueueVersions(60_000, 0);
+    private final AtomicInteger reads = new AtomicInteger();
+    private volatile String etaSource = "remote";
+
+    private final QueueService queueService = new QueueService(null, null, null, null, null, null, null, null, null,
+            null, versions, null, Optional.empty()) {
+        @Override
+        public QueueInfo getQueueById(String queueId) {
+            reads.incrementAndGet();
+            versions.track(queueId);
+            return QueueInfo.builder().queueId(queueId).queueName("Counter 1").build();
+        }
+
+        @Override
+        public List<QueueInfo> getAllQueues() {
+            reads.incrementAndGet();
+            return List.of(QueueInfo.builder().queueId("q1").queueName("Counter 1").build());
+        }
+
+        @Override
+        public Mono<QueueStatusResponse> getQueueStatus(String queueId, String ticketId) {
+            reads.incrementAndGet();
+            versions.track(queueId);
+            return Mono.just(QueueStatusResponse.builder().queueId(queueId).ticketId(ticketId)
+                    .position(2).etaSource(etaSource).build());
+        }
+    };
+
+    private final QueueController controller = new QueueController(queueService, versions);
+
+    @Test
+    void anUnchangedQueueDetailIsAnsweredWith304WithoutARead() {
+        // The first read tracks the queue; its tag is the one clients keep
+        controller.getQueueDetail("q1", get("/queues/q1", null));
+        ResponseEntity<?> first = controller.getQueueDetail("q1", get("/queues/q1", null));
+        String etag = first.getHeaders().getETag();
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(first.getHeaders().getCacheControl()).isEqualTo("no-cache");
+
+        ResponseEntity<?> revalidated = controller.getQueueDetail("q1", get("/queues/q1", etag));
+
+        assertThat(revalidated.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(revalidated.getHeaders().getETag()).isEqualTo(etag);
+        assertThat(revalidated.getBody()).isNull();
+        assertThat(reads).hasValue(2);
+    }
+
+    @Test
+    void aChangedQueueDetailIsReadAgain() {
+        controller.getQueueDetail("q1", get("/queues/q1", null));
+        String etag = controller.getQueueDetail("q1", get("/queues/q1", null)).getHeaders().getETag();
+
+        versions.bump("q1");
+        ResponseEntity<?> changed = controller.getQueueDetail("q1", get("/queues/q1", etag));
+
+        assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changed.getHeaders().getETag()).isNotEqualTo(etag);
+    }
+
+    @Test
+    void theListingIsRevalidatedUntilAnyQueueChanges() {
+        String etag = controller.getAllQueues(get("/queues", null)).getHeaders().getETag();
+
+        assertThat(controller.getAllQueues(get("/queues", etag)).getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(reads).hasValue(1);
+
+        versions.bump("q2");
+        assertThat(controller.getAllQueues(get("/queues", etag)).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void aRemoteEtaStatusCarriesItsVersionAndRevalidates() {
+        status(null);
+        ResponseEntity<QueueStatusResponse> first = status(null);
+        String etag = first.getHeaders().getETag();
+        assertThat(first.getBody().getVersion()).isEqualTo(etag);
+
+        ResponseEntity<QueueStatusResponse> revalidated = status(etag);
+
+        assertThat(revalidated.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(reads).hasValue(2);
+    }
+
+    @Test
+    void aFallbackEtaStatusIsNeitherTaggedNorStored() {
+        etaSource = "fallback";
+
+        ResponseEntity<QueueStatusResponse> response = status(null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getETag()).isNull();
+        assertThat(response.getHeaders().getCacheControl()).isEqualTo("no-store");
+    }
+
+    private ResponseEntity<QueueStatusResponse> status(String ifNoneMatch) {
+        return controller.getStatus("q1", "t1", get("/queues/q1/status?ticketId=t1", ifNoneMatch))
+                .block(Duration.ofSeconds(5));
+    }
+
+    private static MockServerWebExchange get(String path, String ifNoneMatch) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get(path);
+        if (ifNoneMatch != null) {
+            request.ifNoneMatch(ifNoneMatch);
+        }
+        return MockServerWebExchange.from(request);
+    }
+}
@@ -0,0 +1,74 @@
+package com.smartqueue.aws.join;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTest {
+
+    private static final int INSERTIONS = 10_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    void hasNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+        for (int i = 0; i < INSERTIONS; i++) {
+            filter.put("active#q1#user-" + i);
+        }
+
+        for (int i = 0; i < INSERTIONS; i++) {
+            assertThat(filter.mightContain("active#q1#user-" + i)).isTrue();
+        }
+        assertThat(filter.insertions()).isEqualTo(INSERTIONS);
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheConfiguredRateAtCapacity() {
+        BloomFilter filter = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+        for (int i = 0; i < INSERTIONS; i++) {
+            filter.put("active#q1#user-" + i);
+        }
+
+        int probes = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("active#q2#other-" + i)) {
+                falsePositives++;
+            }
+        }
+        // Expected about 1%; twice that leaves room for hashing variance
+        assertThat((double) falsePositives / probes).isLessThan(2 * FALSE_POSITIVE_RATE);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+
+        assertThat(filter.mightContain("active#q1#user-1")).isFalse();
+        assertThat(filter.mightContain("")).isFalse();
+    }
+
+    @Test
+    void putAllAddsTheKeysOfAFilterWithTheSameGeometry() {
+        BloomFilter saved = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+        saved.put("idem#q1#key-1");
+        BloomFilter restored = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+        restored.put("idem#q1#key-2");
+
+        restored.putAll(saved.toWords(), saved.insertions());
+
+        assertThat(restored.mightContain("idem#q1#key-1")).isTrue();
+        assertThat(restored.mightContain("idem#q1#key-2")).isTrue();
+        assertThat(restored.insertions()).isEqualTo(2);
+    }
+
+    @Test
+    void putAllRejectsADifferentGeometry() {
+        BloomFilter small = new BloomFilter(100, FALSE_POSITIVE_RATE);
+        BloomFilter large = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+
+        assertThatThrownBy(() -> large.putAll(small.toWords(), small.insertions()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,100 @@
+package com.smartqueue.aws.join;
+
+import com.smartqueue.aws.model.JoinGuard;
+import com.smartqueue.aws.model.Ticket;
+import com.smartqueue.aws.repository.InMemoryJoinGuardRepository;
+import com.smartqueue.aws.repository.JoinGuardClaim;
+import com.smartqueue.aws.repository.TicketRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JoinGuardServiceTest {
+
+    private final InMemoryJoinGuardRepository guards = new InMemoryJoinGuardRepository();
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private volatile boolean ticketReadsFail;
+
+    private final TicketRepository ticketRepository = new TicketRepository(null, null, null, null, null) {
+        @Override
+        public Optional<Ticket> findById(String ticketId, boolean consistentRead) {
+            if (ticketReadsFail) {
+                throw new RuntimeException("Failed to read ticket " + ticketId);
+            }
+            return Optional.ofNullable(tickets.get(ticketId));
+        }
+    };
+
+    private final JoinGuardService service = new JoinGuardService(guards, ticketRepository, new SimpleMeterRegistry(),
+            true, 24, 1_000, 0.01);
+
+    @Test
+    void aFailedTicketReadDoesNotTakeOverTheGuard() {
+        claim(JoinGuard.activeKey("q1", "u1"), "t1");
+        tickets.put("t1", ticket("t1", Ticket.TicketStatus.WAITING));
+        ticketReadsFail = true;
+
+        // Must not plan a takeover: the conditional write would succeed and create a second ticket
+        assertThatThrownBy(() -> service.plan("q1", "u1", null)).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void aWaitingTicketMakesTheJoinADuplicate() {
+        claim(JoinGuard.activeKey("q1", "u1"), "t1");
+        tickets.put("t1", ticket("t1", Ticket.TicketStatus.WAITING));
+
+        JoinGuardService.JoinPlan plan = service.plan("q1", "u1", null);
+
+        assertThat(plan.isDuplicate()).isTrue();
+        assertThat(plan.getExistingTicket().getTicketId()).isEqualTo("t1");
+        assertThat(plan.getDuplicateReason()).isEqualTo("active_ticket");
+    }
+
+    @Test
+    void aGuardOfAServedOrMissingTicketIsTakenOver() {
+        claim(JoinGuard.activeKey("q1", "u1"), "t1");
+        tickets.put("t1", ticket("t1", Ticket.TicketStatus.SERVED));
+        claim(JoinGuard.idempotencyKey("q1", "retry-1"), "gone");
+
+        JoinGuardService.JoinPlan plan = service.plan("q1", "u1", "retry-1");
+
+        assertThat(plan.isDuplicate()).isFalse();
+        assertThat(plan.getGuardKeys()).containsEntry(JoinGuard.activeKey("q1", "u1"), "t1");
+        assertThat(plan.getGuardKeys()).containsEntry(JoinGuard.idempotencyKey("q1", "retry-1"), "gone");
+    }
+
+    @Test
+    void anIdempotencyKeyReturnsItsTicketWhateverItsStatus() {
+        claim(JoinGuard.idempotencyKey("q1", "retry-1"), "t1");
+        tickets.put("t1", ticket("t1", Ticket.TicketStatus.SERVED));
+
+        JoinGuardService.JoinPlan plan = service.plan("q1", "u1", "retry-1");
+
+        assertThat(plan.isDuplicate()).isTrue();
+        assertThat(plan.getDuplicateReason()).isEqualTo("idempotency_key");
+    }
+
+    private void claim(String guardKey, String ticketId) {
+        guards.claimAll(List.of(new JoinGuardClaim(JoinGuard.builder()
+                .guardKey(guardKey)
+                .ticketId(ticketId)
+                .queueId("q1")
+                .userId("u1")
+                .createdAt(Instant.now())
+                .expiresAt(0)
+                .build(), null)));
+        service.remember(List.of(guardKey));
+    }
+
+    private static Ticket ticket(String ticketId, Ticket.TicketStatus status) {
+        return Ticket.builder().ticketId(ticketId).queueId("q1").userId("u1").status(status).build();
+    }
+}
@@ -0,0 +1,74 @@
+package com.smartqueue.aws.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueueMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final QueueMetrics metrics = new QueueMetrics(registry, 3);
+
+    @Test
+    void theOverflowGroupCountsWithinTheTagLimit() {
+        for (int i = 0; i < 10; i++) {
+            metrics.recordJoin("q" + i, 1);
+        }
+
+        assertThat(queueTags()).containsExactlyInAnyOrder("q0", "q1", QueueMetrics.OVERFLOW_TAG);
+        assertThat(waiting(QueueMetrics.OVERFLOW_TAG)).isEqualTo(8);
+    }
+
+    @Test
+    void aRemovedQueueFreesItsTag() {
+        metrics.recordJoin("q0", 4);
+        metrics.recordJoin("q1", 2);
+
+        metrics.removeQueue("q0");
+        metrics.recordWaiting("q2", 7);
+
+        assertThat(queueTags()).containsExactlyInAnyOrder("q1", "q2");
+        assertThat(waiting("q2")).isEqualTo(7);
+    }
+
+    @Test
+    void updatesRacingARemovalLeaveNoOrphanedGroup() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 10_000; i++) {
+            boolean remove = i % 2 == 0;
+            pool.execute(() -> {
+                if (remove) {
+                    metrics.removeQueue("q1");
+                } else {
+                    metrics.recordWaiting("q1", 1);
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        metrics.removeQueue("q1");
+
+        assertThat(queueTags()).isEmpty();
+    }
+
+    private Set<String> queueTags() {
+        return registry.find("smartqueue.queue.waiting").gauges().stream()
+                .map(gauge -> gauge.getId().getTag("queue"))
+                .collect(Collectors.toSet());
+    }
+
+    private double waiting(String tag) {
+        Gauge gauge = registry.find("smartqueue.queue.waiting").tag("queue", tag).gauge();
+        assertThat(gauge).isNotNull();
+        return gauge.value();
+    }
+}
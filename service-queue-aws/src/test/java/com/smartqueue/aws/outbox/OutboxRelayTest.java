@@ -0,0 +1,176 @@
+package com.smartqueue.aws.outbox;
+
+import com.smartqueue.aws.model.OutboxEvent;
+import com.smartqueue.aws.repository.InMemoryOutboxRepository;
+import com.smartqueue.aws.snapshot.QueueVersions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutboxRelayTest {
+
+    private final InMemoryOutboxRepository outbox = new InMemoryOutboxRepository();
+    private final List<String> requestBodies = new ArrayList<>();
+
+    @Test
+    void deliversEachStreamInSequenceOrderAndDeletesDelivered() {
+        outbox.append(event("q1", 1, "e1"));
+        outbox.append(event("q2", 1, "f1"));
+        outbox.append(event("q1", 3, "e3"));
+        OutboxRelay relay = relay(outbox, body -> HttpStatus.OK, 50, 1000);
+
+        relay.relay();
+
+        assertThat(requestBodies).hasSize(2);
+        String q1 = requestBodies.stream().filter(body -> body.contains("e3")).findFirst().orElseThrow();
+        assertThat(q1.indexOf("e1")).isLessThan(q1.indexOf("e3"));
+        assertThat(outbox.findPending(100, null, null).getItems()).isEmpty();
+    }
+
+    @Test
+    void serverErrorKeepsEventsAndStopsTheStream() {
+        outbox.append(event("q1", 1, "e1"));
+        outbox.append(event("q1", 2, "e2"));
+        OutboxRelay relay = relay(outbox, body -> HttpStatus.SERVICE_UNAVAILABLE, 1, 1000);
+
+        relay.relay();
+        relay.relay(); // in backoff: no new attempt
+
+        assertThat(requestBodies).hasSize(1);
+        assertThat(requestBodies.get(0)).contains("e1");
+        assertThat(outbox.findPending(100, null, null).getItems()).extracting(OutboxEvent::getEventId)
+                .containsExactly("e1", "e2");
+        assertThat(outbox.findDeadLetters("q1")).isEmpty();
+    }
+
+    @Test
+    void rejectedEventIsDeadLetteredAndTheRestDelivered() {
+        outbox.append(event("q1", 1, "e1"));
+        outbox.append(event("q1", 2, "bad"));
+        outbox.append(event("q1", 3, "e3"));
+        OutboxRelay relay = relay(outbox, body -> body.contains("bad") ? HttpStatus.BAD_REQUEST : HttpStatus.OK, 50, 1000);
+
+        relay.relay();
+
+        // The batch, then each event on its own
+        assertThat(requestBodies).hasSize(4);
+        assertThat(outbox.findPending(100, null, null).getItems()).isEmpty();
+        List<OutboxEvent> deadLetters = outbox.findDeadLetters("q1");
+        assertThat(deadLetters).extracting(OutboxEvent::getEventId).containsExactly("bad");
+        assertThat(deadLetters.get(0).getError()).startsWith("400");
+    }
+
+    @Test
+    void throttlingIsRetriedNotDeadLettered() {
+        outbox.append(event("q1", 1, "e1"));
+        OutboxRelay relay = relay(outbox, body -> HttpStatus.TOO_MANY_REQUESTS, 50, 1000);
+
+        relay.relay();
+
+        assertThat(outbox.findPending(100, null, null).getItems()).hasSize(1);
+        assertThat(outbox.findDeadLetters("q1")).isEmpty();
+    }
+
+    @Test
+    void pagesThroughTheOutboxAcrossPasses() {
+        for (int i = 1; i <= 5; i++) {
+            outbox.append(event("q" + i, 1, "e" + i));
+        }
+        OutboxRelay relay = relay(outbox, body -> HttpStatus.OK, 50, 2);
+
+        relay.relay();
+        assertThat(outbox.findPending(100, null, null).getItems()).hasSize(3);
+        relay.relay();
+        relay.relay();
+
+        assertThat(requestBodies).hasSize(5);
+        assertThat(outbox.findPending(100, null, null).getItems()).isEmpty();
+    }
+
+    @Test
+    void doesNothingWithoutTheLease() {
+        InMemoryOutboxRepository leasedElsewhere = new InMemoryOutboxRepository() {
+            @Override
+            public boolean tryAcquireLease(String owner, Duration duration) {
+                return false;
+            }
+        };
+        leasedElsewhere.append(event("q1", 1, "e1"));
+        OutboxRelay relay = relay(leasedElsewhere, body -> HttpStatus.OK, 50, 1000);
+
+        relay.relay();
+
+        assertThat(requestBodies).isEmpty();
+        assertThat(leasedElsewhere.findPending(100, null, null).getItems()).hasSize(1);
+    }
+
+    private OutboxRelay relay(InMemoryOutboxRepository repository, Function<String, HttpStatus> responder,
+                              int batchSize, int scanLimit) {
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://eta")
+                .exchangeFunction(request -> {
+                    String body = bodyOf(request);
+                    requestBodies.add(body);
+                    HttpStatusCode status = responder.apply(body);
+                    return Mono.just(ClientResponse.create(status).build());
+                })
+                .build();
+        return new OutboxRelay(repository, webClient, Duration.ofSeconds(5), new SimpleMeterRegistry(),
+                new QueueVersions(10000, 0), batchSize, scanLimit, 60000, 60000, 30000);
+    }
+
+    private static OutboxEvent event(String stream, long sequence, String eventId) {
+        return OutboxEvent.builder()
+                .stream(stream)
+                .sequence(sequence)
+                .eventId(eventId)
+                .eventType(OutboxEvent.TYPE_SERVED)
+                .queueId(stream)
+                .count(1)
+                .windowSec(60)
+                .occurredAt(Instant.now())
+                .waitSeconds(List.of(30L))
+                .build();
+    }
+
+    private static String bodyOf(ClientRequest request) {
+        MockClientHttpRequest http = new MockClientHttpRequest(request.method(), request.url());
+        request.body().insert(http, new BodyInserter.Context() {
+            @Override
+            public List<HttpMessageWriter<?>> messageWriters() {
+                return ExchangeStrategies.withDefaults().messageWriters();
+            }
+
+            @Override
+            public Optional<ServerHttpRequest> serverRequest() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Map<String, Object> hints() {
+                return Map.of();
+            }
+        }).block();
+        return http.getBodyAsString().block();
+    }
+}
@@ -0,0 +1,142 @@
+package com.smartqueue.aws.replication;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueueCountersTest {
+
+    @Test
+    void replicasConvergeWhateverTheOrderAndDuplicationOfDeltas() {
+        QueueCounters a = new QueueCounters();
+        QueueCounters b = new QueueCounters();
+        List<QueueCounters> fromA = List.of(a.join("a", 0), a.join("a", 0), a.serve("a", 1), a.addOpenSlots("a", 1));
+        List<QueueCounters> fromB = List.of(b.join("b", 0), b.addOpenSlots("b", -2));
+
+        for (int i = fromA.size() - 1; i >= 0; i--) {
+            b.merge(fromA.get(i));
+            b.merge(fromA.get(i));
+        }
+        fromB.forEach(a::merge);
+
+        for (QueueCounters counters : List.of(a, b)) {
+            assertThat(counters.getJoins()).isEqualTo(3);
+            assertThat(counters.getServed()).isEqualTo(1);
+            assertThat(counters.getWaiting()).isEqualTo(2);
+            assertThat(counters.getOpenSlots()).isEqualTo(-1);
+            assertThat(counters.getJoinSequence()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void concurrentSetsResolveToTheLaterStampNotTheirSum() {
+        QueueCounters a = new QueueCounters();
+        QueueCounters b = new QueueCounters();
+        QueueCounters setOnA = a.setOpenSlots(10, 100, "a");
+        QueueCounters setOnB = b.setOpenSlots(20, 200, "b");
+
+        a.merge(setOnB);
+        b.merge(setOnA);
+
+        assertThat(a.getOpenSlots()).isEqualTo(20);
+        assertThat(b.getOpenSlots()).isEqualTo(20);
+    }
+
+    @Test
+    void changesApplyOnTopOfTheirSetAndAreSupersededByALaterOne() {
+        QueueCounters a = new QueueCounters();
+        QueueCounters b = new QueueCounters();
+        b.merge(a.setOpenSlots(10, 100, "a"));
+
+        QueueCounters servedOnB = b.addOpenSlots("b", 3);
+        a.merge(servedOnB);
+        assertThat(a.getOpenSlots()).isEqualTo(13);
+        assertThat(b.getOpenSlots()).isEqualTo(13);
+
+        // A change made before B saw a later set is dropped with the set it was made on
+        QueueCounters resetOnA = a.setOpenSlots(5, 300, "a");
+        QueueCounters staleOnB = b.addOpenSlots("b", 1);
+        b.merge(resetOnA);
+        a.merge(staleOnB);
+        assertThat(a.getOpenSlots()).isEqualTo(5);
+        assertThat(b.getOpenSlots()).isEqualTo(5);
+    }
+
+    @Test
+    void joinSequencesStartBehindTicketsWaitingBeforeTheCounters() {
+        QueueCounters counters = new QueueCounters();
+
+        QueueCounters delta = counters.join("a", 4);
+
+        assertThat(delta.getJoinSequence()).isEqualTo(5);
+        counters.serve("a", 2);
+        assertThat(counters.positionOf(5)).isEqualTo(3);
+    }
+
+    @Test
+    void compactionFoldsEarlierIncarnationsAndPeersConverge() {
+        QueueCounters old = new QueueCounters();
+        old.join("n1@1", 0);
+        old.join("n1@1", 0);
+        old.serve("n1@1", 1);
+        QueueCounters peer = old.copy();
+        QueueCounters restarted = old.copy();
+        restarted.join("n1@2", 0);
+
+        QueueCounters fold = restarted.compact("n1@2", "n1@", 1_000, 0);
+        peer.merge(fold);
+
+        for (QueueCounters counters : List.of(restarted, peer)) {
+            assertThat(counters.getJoins()).isEqualTo(3);
+            assertThat(counters.getServed()).isEqualTo(1);
+            assertThat(counters.toState().joins().counts()).doesNotContainKey("n1@1");
+        }
+        // Merging the pre-fold state again changes nothing
+        restarted.merge(old);
+        assertThat(restarted.getJoins()).isEqualTo(3);
+    }
+
+    @Test
+    void updatesTheSuccessorHadNotSeenSurviveTheFold() {
+        QueueCounters restarted = new QueueCounters();
+        restarted.join("n1@1", 0);
+        QueueCounters peer = restarted.copy();
+        peer.merge(peerSawOneMoreJoinOf("n1@1", 2));
+
+        restarted.merge(restarted.compact("n1@2", "n1@", 1_000, 0));
+        restarted.merge(peer);
+        peer.merge(restarted);
+        assertThat(restarted.getJoins()).isEqualTo(2);
+        assertThat(peer.getJoins()).isEqualTo(2);
+
+        // The next compaction folds the late update too
+        peer.merge(restarted.compact("n1@2", "n1@", 2_000, 0));
+        assertThat(restarted.getJoins()).isEqualTo(2);
+        assertThat(peer.getJoins()).isEqualTo(2);
+        assertThat(restarted.toState().joins().counts()).containsOnlyKeys("n1@2");
+    }
+
+    @Test
+    void foldMarkersAreForgottenAfterTheRetention() {
+        QueueCounters counters = new QueueCounters();
+        counters.join("n1@1", 0);
+        counters.compact("n1@2", "n1@", 1_000, 0);
+
+        counters.compact("n1@2", "n1@", 5_000, 2_000);
+
+        QueueCountersState state = counters.toState();
+        assertThat(state.retiredAt()).isEmpty();
+        assertThat(state.joins().folded()).isEmpty();
+        assertThat(counters.getJoins()).isEqualTo(1);
+    }
+
+    private static QueueCounters peerSawOneMoreJoinOf(String replicaId, long joins) {
+        QueueCounters counters = new QueueCounters();
+        for (int i = 0; i < joins; i++) {
+            counters.join(replicaId, 0);
+        }
+        return counters;
+    }
+}
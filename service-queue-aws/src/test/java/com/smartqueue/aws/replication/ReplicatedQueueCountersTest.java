@@ -0,0 +1,146 @@
+package com.smartqueue.aws.replication;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplicatedQueueCountersTest {
+
+    private final ReplicatedQueueCounters zoneA = new ReplicatedQueueCounters("az-a", 604_800_000L);
+    private final ReplicatedQueueCounters zoneB = new ReplicatedQueueCounters("az-b", 604_800_000L);
+
+    @Test
+    void zonesConvergeAfterAPartition() {
+        zoneA.setOpenSlots("q1", 5);
+        exchange();
+
+        // Partitioned: both zones keep taking joins and serves, deltas pile up
+        Map<String, QueueCountersState> pendingA = new HashMap<>();
+        Map<String, QueueCountersState> pendingB = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            zoneA.recordJoin("q1", i);
+            zoneB.recordJoin("q1", i);
+        }
+        zoneA.recordServed("q1", 2);
+        zoneA.addOpenSlots("q1", 2);
+        zoneB.recordServed("q1", 1);
+        zoneB.addOpenSlots("q1", 1);
+        zoneA.drainDeltas().forEach((queueId, delta) -> pendingA.put(queueId, delta.toState()));
+        zoneB.drainDeltas().forEach((queueId, delta) -> pendingB.put(queueId, delta.toState()));
+
+        // Healed: the buffered deltas are delivered, some twice
+        zoneB.merge(pendingA);
+        zoneB.merge(pendingA);
+        zoneA.merge(pendingB);
+
+        QueueCounters a = zoneA.get("q1").orElseThrow();
+        QueueCounters b = zoneB.get("q1").orElseThrow();
+        for (QueueCounters counters : new QueueCounters[]{a, b}) {
+            assertThat(counters.getJoins()).isEqualTo(6);
+            assertThat(counters.getServed()).isEqualTo(3);
+            assertThat(counters.getWaiting()).isEqualTo(3);
+            assertThat(counters.getOpenSlots()).isEqualTo(8);
+        }
+        assertThat(zoneA.fullState()).isEqualTo(zoneB.fullState());
+    }
+
+    @Test
+    void laterSetWinsOnBothZones() {
+        zoneA.setOpenSlots("q1", 10);
+        zoneB.setOpenSlots("q1", 20); // later clock reading
+        exchange();
+
+        assertThat(zoneA.get("q1").orElseThrow().getOpenSlots()).isEqualTo(20);
+        assertThat(zoneB.get("q1").orElseThrow().getOpenSlots()).isEqualTo(20);
+    }
+
+    @Test
+    void positionsComeFromTheConvergedServedCount() {
+        long first = zoneA.recordJoin("q1", 0);
+        long second = zoneA.recordJoin("q1", 0);
+        exchange();
+        zoneB.recordServed("q1", 1);
+        exchange();
+
+        assertThat(zoneA.positionOf("q1", first)).contains(1L);
+        assertThat(zoneA.positionOf("q1", second)).contains(1L);
+        assertThat(zoneA.positionOf("q2", 1)).isEmpty();
+    }
+
+    @Test
+    void aRestartedNodeFoldsItsEarlierIncarnation() throws InterruptedException {
+        zoneA.recordJoin("q1", 0);
+        exchange();
+        Thread.sleep(2); // a distinct start time
+        ReplicatedQueueCounters restarted = new ReplicatedQueueCounters("az-a", 604_800_000L);
+        restarted.merge(zoneB.fullState());
+        restarted.recordJoin("q1", 0);
+
+        restarted.compact();
+        zoneB.merge(toStates(restarted.drainDeltas()));
+
+        assertThat(zoneB.get("q1").orElseThrow().getJoins()).isEqualTo(2);
+        assertThat(zoneB.fullState().get("q1").joins().counts()).containsOnlyKeys(restarted.getReplicaId());
+    }
+
+    @Test
+    void aDeletedQueueIsForgottenOnEveryZone() {
+        zoneA.setOpenSlots("q1", 5);
+        zoneA.recordJoin("q1", 0);
+        exchange();
+        // Not yet delivered to A when the queue is deleted there
+        zoneB.recordJoin("q1", 1);
+        Map<String, QueueCountersState> late = toStates(zoneB.drainDeltas());
+
+        zoneA.forget("q1");
+        zoneB.mergeDeletes(zoneA.drainDeletes());
+        zoneA.merge(late);
+        zoneA.merge(zoneB.fullState());
+
+        assertThat(zoneA.get("q1")).isEmpty();
+        assertThat(zoneB.get("q1")).isEmpty();
+        assertThat(zoneA.fullState()).isEmpty();
+    }
+
+    @Test
+    void aReCreatedQueueStartsFromItsNewCounters() {
+        zoneA.setOpenSlots("q1", 5);
+        zoneA.recordJoin("q1", 0);
+        exchange();
+        zoneA.forget("q1");
+        zoneB.mergeDeletes(zoneA.drainDeletes());
+
+        zoneA.setOpenSlots("q1", 2);
+        zoneA.recordJoin("q1", 0);
+        exchange();
+
+        for (ReplicatedQueueCounters zone : new ReplicatedQueueCounters[]{zoneA, zoneB}) {
+            assertThat(zone.get("q1").orElseThrow().getJoins()).isEqualTo(1);
+            assertThat(zone.get("q1").orElseThrow().getOpenSlots()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void aMessageWithoutQueuesIsEmpty() {
+        ReplicationMessage message = new ReplicationMessage("az-b", false, null, null);
+
+        assertThat(message.queues()).isEmpty();
+        assertThat(message.deleted()).isEmpty();
+    }
+
+    private void exchange() {
+        Map<String, QueueCountersState> fromA = toStates(zoneA.drainDeltas());
+        Map<String, QueueCountersState> fromB = toStates(zoneB.drainDeltas());
+        zoneB.merge(fromA);
+        zoneA.merge(fromB);
+    }
+
+    private static Map<String, QueueCountersState> toStates(Map<String, QueueCounters> deltas) {
+        Map<String, QueueCountersState> states = new HashMap<>();
+        deltas.forEach((queueId, delta) -> states.put(queueId, delta.toState()));
+        return states;
+    }
+}
@@ -0,0 +1,63 @@
+package com.smartqueue.aws.repository;
+
+import com.smartqueue.aws.model.OutboxEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryOutboxRepositoryTest {
+
+    private final InMemoryOutboxRepository outbox = new InMemoryOutboxRepository();
+
+    @Test
+    void sequencesContinueFromTheLastCommittedOne() {
+        long first = outbox.nextSequence("q1");
+        outbox.append(event("q1", first));
+
+        assertThat(outbox.nextSequence("q1")).isEqualTo(first + 1);
+    }
+
+    @Test
+    void sequenceTakenByAnotherWriterIsRejected() {
+        long sequence = outbox.nextSequence("q1");
+        long concurrent = outbox.nextSequence("q1"); // read before either commit
+        outbox.append(event("q1", sequence));
+
+        assertThatThrownBy(() -> outbox.append(event("q1", concurrent)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(outbox.findPending(10, null, null).getItems()).hasSize(1);
+    }
+
+    @Test
+    void pagesResumeAfterTheLastEvaluatedKeyAndSkipDeadLetters() {
+        outbox.append(event("q1", 1));
+        outbox.append(event("q1", 2));
+        outbox.append(event("q2", 1));
+        outbox.deadLetter(event("q1", 2), "400");
+
+        OutboxPage first = outbox.findPending(1, null, null);
+        assertThat(first.hasMore()).isTrue();
+        OutboxPage second = outbox.findPending(10, first.getLastEvaluatedStream(), first.getLastEvaluatedSequence());
+
+        assertThat(first.getItems()).extracting(OutboxEvent::getSequence).containsExactly(1L);
+        assertThat(second.getItems()).extracting(OutboxEvent::getStream).containsExactly("q2");
+        assertThat(second.hasMore()).isFalse();
+        assertThat(outbox.findDeadLetters("q1")).extracting(OutboxEvent::getError).containsExactly("400");
+    }
+
+    private static OutboxEvent event(String stream, long sequence) {
+        return OutboxEvent.builder()
+                .stream(stream)
+                .sequence(sequence)
+                .eventId(stream + "-" + sequence)
+                .eventType(OutboxEvent.TYPE_SERVED)
+                .queueId(stream)
+                .count(1)
+                .windowSec(60)
+                .occurredAt(Instant.now())
+                .build();
+    }
+}
@@ -0,0 +1,34 @@
+package com.smartqueue.aws.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryQueueRepositoryTest {
+
+    private final InMemoryQueueRepository queues = new InMemoryQueueRepository();
+
+    @Test
+    void concurrentAddsAreNotLost() throws InterruptedException {
+        int before = queues.getOpenSlots("hospital-queue-1");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            executor.execute(() -> queues.addOpenSlots("hospital-queue-1", 1));
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(queues.getOpenSlots("hospital-queue-1")).isEqualTo(before + 1000);
+    }
+
+    @Test
+    void addToUnknownQueueCreatesIt() {
+        queues.addOpenSlots("new-queue", 3);
+
+        assertThat(queues.getOpenSlots("new-queue")).isEqualTo(3);
+    }
+}
@@ -0,0 +1,72 @@
+package com.smartqueue.aws.scan;
+
+import com.smartqueue.aws.model.Ticket;
+import com.smartqueue.aws.repository.InMemoryJoinGuardRepository;
+import com.smartqueue.aws.repository.InMemoryOutboxRepository;
+import com.smartqueue.aws.repository.InMemoryTicketRepository;
+import com.smartqueue.aws.repository.TicketRepository;
+import com.smartqueue.aws.repository.TicketScanPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelTicketScannerTest {
+
+    private ParallelTicketScanner scanner;
+
+    @AfterEach
+    void tearDown() {
+        scanner.shutdown();
+    }
+
+    @Test
+    void countsEveryTicketExactlyOnceAcrossSegmentsAndPages() throws Exception {
+        InMemoryTicketRepository tickets = new InMemoryTicketRepository(new InMemoryOutboxRepository(), new InMemoryJoinGuardRepository());
+        for (int i = 0; i < 500; i++) {
+            tickets.save(Ticket.builder()
+                    .ticketId("t" + i)
+                    .queueId("q" + i % 3)
+                    .status(i % 5 == 0 ? Ticket.TicketStatus.SERVED : Ticket.TicketStatus.WAITING)
+                    .build());
+        }
+        scanner = new ParallelTicketScanner(tickets, 4, 2, 7, 1_000);
+
+        Map<String, Map<String, Long>> counts = scanner.scan(TicketAggregators.countByQueueAndStatus()).get(10, TimeUnit.SECONDS);
+        List<String> ids = scanner.scan(Collectors.mapping(Ticket::getTicketId, Collectors.toList())).get(10, TimeUnit.SECONDS);
+
+        assertThat(ids).hasSize(500).doesNotHaveDuplicates();
+        assertThat(counts).containsOnlyKeys("q0", "q1", "q2");
+        assertThat(counts.values().stream().flatMap(byStatus -> byStatus.values().stream()).mapToLong(Long::longValue).sum()).isEqualTo(500);
+        assertThat(counts.values().stream().mapToLong(byStatus -> byStatus.getOrDefault("SERVED", 0L)).sum()).isEqualTo(100);
+    }
+
+    @Test
+    void throttlesOnTheReadCapacityThePagesConsumed() throws Exception {
+        AtomicInteger pages = new AtomicInteger();
+        // Two pages of 2,000 units per segment: 16,000 units against 10,000/s with a 10,000 burst
+        TicketRepository costly = new TicketRepository(null, null, null, null, null) {
+            @Override
+            public TicketScanPage scanSegmentPage(int segment, int totalSegments, int pageSize, String exclusiveStartTicketId) {
+                pages.incrementAndGet();
+                Ticket ticket = Ticket.builder().ticketId(segment + "-" + (exclusiveStartTicketId == null ? 0 : 1)).build();
+                return new TicketScanPage(List.of(ticket), exclusiveStartTicketId == null ? ticket.getTicketId() : null, 2_000);
+            }
+        };
+        scanner = new ParallelTicketScanner(costly, 4, 4, 1, 10_000);
+
+        long started = System.nanoTime();
+        List<Ticket> scanned = scanner.scan(Collectors.toList()).get(10, TimeUnit.SECONDS);
+
+        assertThat(scanned).hasSize(8);
+        assertThat(pages).hasValue(8);
+        // The last page starts at >= 0 units, so at least 16,000 - 10,000 - 2,000 units were refilled: 0.4 s
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isGreaterThanOrEqualTo(300);
+    }
+}
@@ -0,0 +1,156 @@
+package com.smartqueue.aws.service;
+
+import com.smartqueue.aws.dto.response.QueueStatusResponse;
+import com.smartqueue.aws.model.Ticket;
+import com.smartqueue.aws.repository.InMemoryQueueRepository;
+import com.smartqueue.aws.repository.TicketRepository;
+import com.smartqueue.aws.snapshot.QueueSnapshotCache;
+import com.smartqueue.aws.snapshot.QueueVersions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueueServiceTest {
+
+    private final List<String> waiting = new CopyOnWriteArrayList<>(List.of("t1", "t2"));
+    private final Map<String, Ticket.TicketStatus> statuses = new ConcurrentHashMap<>();
+
+    private final TicketRepository tickets = new TicketRepository(null, null, null, null, null) {
+        @Override
+        public List<Ticket> findWaitingTicketsByQueue(String queueId) {
+            Instant joinedAt = Instant.now();
+            return waiting.stream()
+                    .map(ticketId -> Ticket.builder().ticketId(ticketId).queueId(queueId)
+                            .status(Ticket.TicketStatus.WAITING).joinedAt(joinedAt.plusMillis(waiting.indexOf(ticketId))).build())
+                    .toList();
+        }
+
+        @Override
+        public Optional<Ticket> findById(String ticketId) {
+            return Optional.of(Ticket.builder().ticketId(ticketId).queueId("q1")
+                    .status(statuses.getOrDefault(ticketId, Ticket.TicketStatus.WAITING)).build());
+        }
+    };
+
+    // ETA service answering 3 minutes for every ticket
+    private final WebClient etaService = WebClient.builder()
+            .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .body("{\"estimatedWaitTimeMinutes\":3}")
+                    .build()))
+            .build();
+
+    @Test
+    void aServeAheadOfTheTicketWakesItsPoll() throws Exception {
+        QueueVersions versions = new QueueVersions(60_000, 0);
+        QueueSnapshotCache snapshots = snapshots(60_000);
+        QueueService service = service(snapshots, versions);
+        QueueStatusResponse seen = service.getQueueStatus("q1", "t2").block(Duration.ofSeconds(5));
+        assertThat(seen.getPosition()).isEqualTo(2);
+
+        CompletableFuture<QueueStatusResponse> poll = poll(service, seen, Duration.ofSeconds(10));
+        Thread.sleep(100);
+        assertThat(poll).isNotDone();
+
+        // What serving t1 does on this instance
+        waiting.remove("t1");
+        snapshots.onRemoved("q1", List.of("t1"), null);
+        versions.bump("q1");
+
+        QueueStatusResponse changed = poll.get(5, TimeUnit.SECONDS);
+        assertThat(changed.getPosition()).isEqualTo(1);
+        assertThat(changed.getVersion()).isNotEqualTo(seen.getVersion());
+    }
+
+    @Test
+    void aJoinBehindTheTicketKeepsItsPollParked() throws Exception {
+        QueueVersions versions = new QueueVersions(60_000, 0);
+        QueueSnapshotCache snapshots = snapshots(60_000);
+        QueueService service = service(snapshots, versions);
+        QueueStatusResponse seen = service.getQueueStatus("q1", "t2").block(Duration.ofSeconds(5));
+
+        long started = System.nanoTime();
+        CompletableFuture<QueueStatusResponse> poll = poll(service, seen, Duration.ofMillis(500));
+        Thread.sleep(100);
+        waiting.add("t3");
+        snapshots.onJoined("q1", "t3", null);
+        versions.bump("q1");
+
+        QueueStatusResponse timedOut = poll.get(5, TimeUnit.SECONDS);
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isGreaterThanOrEqualTo(Duration.ofMillis(500));
+        assertThat(timedOut.getPosition()).isEqualTo(2);
+    }
+
+    @Test
+    void aPollWithoutAPreviousVersionAnswersAtOnce() {
+        QueueService service = service(snapshots(60_000), new QueueVersions(60_000, 0));
+
+        QueueStatusResponse response = service.pollQueueStatus("q1", "t1", null, null, null, Duration.ofSeconds(30))
+                .block(Duration.ofSeconds(5));
+
+        assertThat(response.getPosition()).isEqualTo(1);
+        assertThat(response.getEstimatedWaitMinutes()).isEqualTo(3);
+        assertThat(response.getVersion()).isNotNull();
+    }
+
+    @Test
+    void aChangeThroughAnotherInstanceIsPickedUpAfterTheMaxAge() throws Exception {
+        QueueVersions versions = new QueueVersions(100, 0);
+        QueueSnapshotCache snapshots = snapshots(100);
+        QueueService service = service(snapshots, versions);
+        QueueStatusResponse seen = service.getQueueStatus("q1", "t2").block(Duration.ofSeconds(5));
+
+        CompletableFuture<QueueStatusResponse> poll = poll(service, seen, Duration.ofSeconds(10));
+        // Served elsewhere: this instance raises no change signal
+        waiting.remove("t1");
+
+        assertThat(poll.get(5, TimeUnit.SECONDS).getPosition()).isEqualTo(1);
+    }
+
+    @Test
+    void aServedTicketEndsItsPoll() throws Exception {
+        QueueVersions versions = new QueueVersions(60_000, 0);
+        QueueSnapshotCache snapshots = snapshots(60_000);
+        QueueService service = service(snapshots, versions);
+        QueueStatusResponse seen = service.getQueueStatus("q1", "t1").block(Duration.ofSeconds(5));
+
+        CompletableFuture<QueueStatusResponse> poll = poll(service, seen, Duration.ofSeconds(10));
+        waiting.remove("t1");
+        statuses.put("t1", Ticket.TicketStatus.SERVED);
+        snapshots.onRemoved("q1", List.of("t1"), null);
+        versions.bump("q1");
+
+        assertThat(poll.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo("SERVED");
+    }
+
+    private CompletableFuture<QueueStatusResponse> poll(QueueService service, QueueStatusResponse seen, Duration timeout) {
+        return service.pollQueueStatus("q1", seen.getTicketId(), seen.getVersion(), seen.getPosition(), seen.getStatus(), timeout)
+                .toFuture();
+    }
+
+    private QueueSnapshotCache snapshots(long maxAgeMs) {
+        return new QueueSnapshotCache(tickets, new InMemoryQueueRepository(), new SimpleMeterRegistry(), maxAgeMs);
+    }
+
+    private QueueService service(QueueSnapshotCache snapshots, QueueVersions versions) {
+        return new QueueService(tickets, new InMemoryQueueRepository(), null, null, etaService, Duration.ofSeconds(5),
+                new SimpleMeterRegistry(), null, null, snapshots, versions, null, Optional.empty());
+    }
+}
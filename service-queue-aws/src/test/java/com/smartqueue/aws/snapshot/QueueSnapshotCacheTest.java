@@ -0,0 +1,148 @@
+package com.smartqueue.aws.snapshot;
+
+import com.smartqueue.aws.model.Ticket;
+import com.smartqueue.aws.repository.InMemoryQueueRepository;
+import com.smartqueue.aws.repository.TicketRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueueSnapshotCacheTest {
+
+    private final AtomicInteger scans = new AtomicInteger();
+    private final CountDownLatch scanStarted = new CountDownLatch(1);
+    private volatile CountDownLatch scanGate = new CountDownLatch(0);
+
+    private final TicketRepository tickets = new TicketRepository(null, null, null, null, null) {
+        @Override
+        public List<Ticket> findWaitingTicketsByQueue(String queueId) {
+            scans.incrementAndGet();
+            scanStarted.countDown();
+            try {
+                scanGate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of(Ticket.builder().ticketId("t1").queueId(queueId).joinedAt(Instant.now()).build());
+        }
+    };
+
+    private final QueueSnapshotCache cache = new QueueSnapshotCache(tickets, new InMemoryQueueRepository(),
+            new SimpleMeterRegistry(), 60_000);
+
+    @Test
+    void getIfCurrentNeverRebuilds() {
+        assertThat(cache.getIfCurrent("q1")).isEmpty();
+        assertThat(scans).hasValue(0);
+
+        cache.get("q1");
+
+        assertThat(cache.getIfCurrent("q1")).get().extracting(QueueSnapshot::getWaitingCount).isEqualTo(1);
+        assertThat(scans).hasValue(1);
+    }
+
+    @Test
+    void getIfCurrentSkipsASnapshotWithAnUnappliedChange() {
+        cache.get("q1");
+
+        cache.invalidate("q1");
+
+        assertThat(cache.getIfCurrent("q1")).isEmpty();
+        assertThat(scans).hasValue(1);
+    }
+
+    @Test
+    void getIfCurrentSkipsASnapshotPastItsMaxAge() {
+        QueueSnapshotCache expiring = new QueueSnapshotCache(tickets, new InMemoryQueueRepository(), new SimpleMeterRegistry(), 0);
+        expiring.get("q1");
+
+        assertThat(expiring.getIfCurrent("q1")).isEmpty();
+    }
+
+    @Test
+    void joinsAndRemovalsPatchTheSnapshotWithoutARescan() {
+        cache.get("q1");
+
+        cache.onJoined("q1", "t2", 7L);
+        QueueSnapshot joined = cache.get("q1");
+        assertThat(joined.getOrder()).containsExactly("t1", "t2");
+        assertThat(joined.joinSequenceOf("t2")).hasValue(7L);
+
+        cache.onRemoved("q1", List.of("t1"), 3);
+        QueueSnapshot removed = cache.get("q1");
+        assertThat(removed.positionOf("t2")).hasValue(1);
+        assertThat(removed.positionOf("t1")).isEmpty();
+        assertThat(removed.getOpenSlots()).isEqualTo(3);
+        assertThat(scans).hasValue(1);
+    }
+
+    @Test
+    void aChangeAfterAnUnappliedOneForcesARebuild() {
+        cache.get("q1");
+        cache.invalidate("q1");
+
+        // The snapshot misses the invalidated change, so it cannot be patched
+        cache.onJoined("q1", "t2", null);
+
+        assertThat(cache.get("q1").getOrder()).containsExactly("t1");
+        assertThat(scans).hasValue(2);
+    }
+
+    @Test
+    void concurrentRebuildsOfAQueueShareOneScan() throws Exception {
+        scanGate = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<QueueSnapshot> first = pool.submit(() -> cache.get("q1"));
+            assertThat(scanStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            List<Future<QueueSnapshot>> joiners = List.of(pool.submit(() -> cache.get("q1")),
+                    pool.submit(() -> cache.get("q1")), pool.submit(() -> cache.get("q1")));
+            Thread.sleep(50);
+            scanGate.countDown();
+
+            QueueSnapshot built = first.get(5, TimeUnit.SECONDS);
+            for (Future<QueueSnapshot> joiner : joiners) {
+                assertThat(joiner.get(5, TimeUnit.SECONDS)).isSameAs(built);
+            }
+            assertThat(scans).hasValue(1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void aRestoredSnapshotIsServedUntilTheFirstChange() {
+        assertThat(cache.restore("q1", List.of("t9", "t1"), 1.5, 2)).isTrue();
+
+        assertThat(cache.get("q1").positionOf("t1")).hasValue(2);
+        assertThat(scans).hasValue(0);
+
+        // Restored snapshots are never patched: the join is picked up by a rebuild
+        cache.onJoined("q1", "t2", null);
+        assertThat(cache.get("q1").getOrder()).containsExactly("t1");
+        assertThat(scans).hasValue(1);
+    }
+
+    @Test
+    void catchUpRebuildsOnlyARestoredSnapshot() {
+        cache.restore("q1", List.of("t9"), null, null);
+        cache.catchUp("q1");
+
+        assertThat(cache.get("q1").isRestored()).isFalse();
+        assertThat(scans).hasValue(1);
+
+        cache.catchUp("q1");
+        assertThat(scans).hasValue(1);
+        assertThat(cache.restore("q1", List.of("t9"), null, null)).isFalse();
+    }
+}
@@ -0,0 +1,115 @@
+package com.smartqueue.aws.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueueVersionsTest {
+
+    private final QueueVersions versions = new QueueVersions(60_000, 0);
+
+    @Test
+    void aTrackedQueueKeepsItsTagUntilItChanges() {
+        versions.track("q1");
+        String tag = versions.queueETag("q1");
+
+        assertThat(versions.queueETag("q1")).isEqualTo(tag);
+        versions.bump("q1");
+        assertThat(versions.queueETag("q1")).isNotEqualTo(tag);
+    }
+
+    @Test
+    void anUntrackedQueueGetsATagThatNeverMatches() {
+        String first = versions.queueETag("unknown");
+
+        assertThat(versions.queueETag("unknown")).isNotEqualTo(first);
+        // Tracking after the read: the tag handed out before is not the tracked version
+        versions.track("unknown");
+        assertThat(versions.queueETag("unknown")).isNotEqualTo(first);
+    }
+
+    @Test
+    void requestsForUnknownQueuesLeaveNoVersionsOrSignals() {
+        for (int i = 0; i < 1_000; i++) {
+            versions.queueETag("unknown-" + i);
+            versions.nextChange("unknown-" + i);
+            versions.bump("unknown-" + i);
+        }
+
+        assertThat(entries("versions")).hasSize(1); // the listing version
+        assertThat(entries("changeSignals")).isEmpty();
+    }
+
+    @Test
+    void forgetDropsTheQueueAndWakesItsWaiters() {
+        versions.track("q1");
+        String tag = versions.queueETag("q1");
+        Mono<Void> waiter = versions.nextChange("q1");
+
+        versions.forget("q1");
+
+        assertThat(completes(waiter, Duration.ofSeconds(1))).isTrue();
+        assertThat(entries("versions")).doesNotContainKey("q1");
+        assertThat(entries("changeSignals")).isEmpty();
+        // Created again: a tag of the deleted queue does not match
+        versions.track("q1");
+        assertThat(versions.queueETag("q1")).isNotEqualTo(tag);
+    }
+
+    @Test
+    void aBumpWakesTheQueuesWaiters() {
+        versions.track("q1");
+        Mono<Void> waiter = versions.nextChange("q1");
+        Mono<Void> other = versions.nextChange("q1");
+
+        versions.bump("q1");
+
+        assertThat(completes(waiter, Duration.ofSeconds(1))).isTrue();
+        assertThat(completes(other, Duration.ofSeconds(1))).isTrue();
+    }
+
+    @Test
+    void anUntrackedQueueIsNeverSignalled() {
+        Mono<Void> waiter = versions.nextChange("unknown");
+
+        versions.bump("unknown");
+
+        assertThat(completes(waiter, Duration.ofMillis(100))).isFalse();
+    }
+
+    @Test
+    void aVersionOlderThanTheMaxAgeMovesOnRead() throws InterruptedException {
+        QueueVersions shortLived = new QueueVersions(1, 0);
+        shortLived.track("q1");
+        String tag = shortLived.queueETag("q1");
+        String listing = shortLived.listingETag();
+
+        Thread.sleep(5);
+
+        assertThat(shortLived.queueETag("q1")).isNotEqualTo(tag);
+        assertThat(shortLived.listingETag()).isNotEqualTo(listing);
+    }
+
+    @Test
+    void anyQueueChangeMovesTheListingTag() {
+        String listing = versions.listingETag();
+
+        versions.bump("q1");
+
+        assertThat(versions.listingETag()).isNotEqualTo(listing);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ?> entries(String field) {
+        return (Map<String, ?>) ReflectionTestUtils.getField(versions, field);
+    }
+
+    private static boolean completes(Mono<Void> signal, Duration within) {
+        return Boolean.TRUE.equals(signal.then(Mono.just(true)).timeout(within, Mono.just(false)).block());
+    }
+}
@@ -0,0 +1,148 @@
+package com.smartqueue.aws.tracing;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.handler.DefaultTracingObservationHandler;
+import io.micrometer.tracing.handler.PropagatingSenderTracingObservationHandler;
+import io.micrometer.tracing.otel.bridge.OtelBaggageManager;
+import io.micrometer.tracing.otel.bridge.OtelCurrentTraceContext;
+import io.micrometer.tracing.otel.bridge.OtelPropagator;
+import io.micrometer.tracing.otel.bridge.OtelTracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TracePropagationTest {
+
+    @TempDir
+    Path directory;
+
+    private final AtomicReference<String> receivedTraceparent = new AtomicReference<>();
+    private HttpServer etaService;
+    private LocalSpanExporter exporter;
+    private SdkTracerProvider tracerProvider;
+    private Tracer tracer;
+    private ObservationRegistry observationRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        etaService = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        etaService.createContext("/eta", exchange -> {
+            receivedTraceparent.set(exchange.getRequestHeaders().getFirst("traceparent"));
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        etaService.start();
+
+        exporter = new LocalSpanExporter(100, directory.resolve("spans.jsonl"));
+        tracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(exporter)).build();
+        ContextPropagators propagators = ContextPropagators.create(W3CTraceContextPropagator.getInstance());
+        OpenTelemetrySdk openTelemetry = OpenTelemetrySdk.builder()
+                .setTracerProvider(tracerProvider)
+                .setPropagators(propagators)
+                .build();
+        io.opentelemetry.api.trace.Tracer otelTracer = openTelemetry.getTracer("test");
+        OtelCurrentTraceContext currentTraceContext = new OtelCurrentTraceContext();
+        tracer = new OtelTracer(otelTracer, currentTraceContext, event -> { },
+                new OtelBaggageManager(currentTraceContext, List.of(), List.of()));
+
+        observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new ObservationHandler.FirstMatchingCompositeObservationHandler(
+                new PropagatingSenderTracingObservationHandler<>(tracer, new OtelPropagator(propagators, otelTracer)),
+                new DefaultTracingObservationHandler(tracer)));
+        ObservationThreadLocalAccessor.getInstance().setObservationRegistry(observationRegistry);
+        Hooks.enableAutomaticContextPropagation();
+    }
+
+    @AfterEach
+    void tearDown() {
+        Hooks.disableAutomaticContextPropagation();
+        tracerProvider.shutdown();
+        etaService.stop(0);
+    }
+
+    @Test
+    void theEtaCallCarriesTheTraceOfTheRequest() throws IOException {
+        WebClient etaServiceWebClient = WebClient.builder()
+                .baseUrl("http://127.0.0.1:" + etaService.getAddress().getPort())
+                .observationRegistry(observationRegistry)
+                .build();
+
+        String traceId = inRequest(() -> etaServiceWebClient.get().uri("/eta").retrieve().toBodilessEntity()
+                .block(Duration.ofSeconds(5)));
+
+        assertThat(receivedTraceparent.get()).startsWith("00-" + traceId + "-");
+        Map<String, List<Map<String, Object>>> traces = exporter.recentTraces(10);
+        assertThat(traces).containsOnlyKeys(traceId);
+        assertThat(traces.get(traceId)).extracting(span -> span.get("kind")).contains("CLIENT", "INTERNAL");
+        assertThat(Files.readAllLines(directory.resolve("spans.jsonl"))).hasSize(traces.get(traceId).size());
+    }
+
+    @Test
+    void aRepositoryCallOnAnotherThreadStaysInTheRequestTrace() {
+        AtomicReference<String> seen = new AtomicReference<>();
+
+        String traceId = inRequest(() -> Mono.fromCallable(() -> {
+                    seen.set(tracer.currentSpan() != null ? tracer.currentSpan().context().traceId() : null);
+                    return true;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .block(Duration.ofSeconds(5)));
+
+        assertThat(seen.get()).isEqualTo(traceId);
+    }
+
+    @Test
+    void theSpanBufferKeepsTheMostRecentSpans() {
+        LocalSpanExporter small = new LocalSpanExporter(2, null);
+        tracerProvider.shutdown();
+        tracerProvider = SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(small)).build();
+        io.opentelemetry.api.trace.Tracer otelTracer = tracerProvider.get("test");
+
+        for (int i = 0; i < 5; i++) {
+            otelTracer.spanBuilder("span-" + i).startSpan().end();
+        }
+
+        assertThat(small.recentTraces(10).values()).flatExtracting(spans -> spans)
+                .extracting(span -> span.get("name"))
+                .containsExactly("span-3", "span-4");
+        assertThat(small.recentTraces(1)).hasSize(1);
+    }
+
+    // Runs the call inside a server-like observation and returns its trace id
+    private String inRequest(Runnable call) {
+        Observation request = Observation.start("http.server.requests", observationRegistry);
+        try (Observation.Scope ignored = request.openScope()) {
+            String traceId = tracer.currentSpan().context().traceId();
+            call.run();
+            return traceId;
+        } finally {
+            request.stop();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.smartqueue.aws.warmstart;
+
+import com.smartqueue.aws.replication.CounterState;
+import com.smartqueue.aws.replication.QueueCountersState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StateSnapshotCodecTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsUncompressed() throws IOException {
+        assertRoundTrip(false);
+    }
+
+    @Test
+    void roundTripsCompressed() throws IOException {
+        assertRoundTrip(true);
+    }
+
+    @Test
+    void rejectsACorruptedBody() throws IOException {
+        Path path = directory.resolve("state.snap");
+        StateSnapshotCodec.write(snapshot(), path, false);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 1] ^= 0x01;
+        Files.write(path, bytes);
+
+        assertThatThrownBy(() -> StateSnapshotCodec.read(path))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("checksum");
+    }
+
+    @Test
+    void rejectsATruncatedFile() throws IOException {
+        Path path = directory.resolve("state.snap");
+        Files.write(path, new byte[]{0x53, 0x51});
+
+        assertThatThrownBy(() -> StateSnapshotCodec.read(path)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void rejectsABodyLengthTheFileCannotHoldBeforeAllocatingIt() throws IOException {
+        for (boolean compress : new boolean[]{false, true}) {
+            Path path = directory.resolve("state-" + compress + ".snap");
+            StateSnapshotCodec.write(snapshot(), path, compress);
+            byte[] bytes = Files.readAllBytes(path);
+            // Uncompressed body length at offset 14
+            ByteBuffer.wrap(bytes).putInt(14, Integer.MAX_VALUE);
+            Files.write(path, bytes);
+
+            assertThatThrownBy(() -> StateSnapshotCodec.read(path))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("body bytes");
+        }
+    }
+
+    private void assertRoundTrip(boolean compress) throws IOException {
+        Path path = directory.resolve("state-" + compress + ".snap");
+        StateSnapshot written = snapshot();
+
+        long bytes = StateSnapshotCodec.write(written, path, compress);
+        StateSnapshot read = StateSnapshotCodec.read(path);
+
+        assertThat(bytes).isEqualTo(Files.size(path));
+        assertThat(read.createdAt()).isEqualTo(written.createdAt());
+        assertThat(read.queues()).isEqualTo(written.queues());
+        assertThat(read.counters()).isEqualTo(written.counters());
+        assertThat(read.joinFilter().numBits()).isEqualTo(written.joinFilter().numBits());
+        assertThat(read.joinFilter().numHashes()).isEqualTo(written.joinFilter().numHashes());
+        assertThat(read.joinFilter().insertions()).isEqualTo(written.joinFilter().insertions());
+        assertThat(read.joinFilter().words()).isEqualTo(written.joinFilter().words());
+    }
+
+    private static StateSnapshot snapshot() {
+        List<StateSnapshot.QueueState> queues = List.of(
+                // UUID ids are stored as 16 bytes, anything else as a string
+                new StateSnapshot.QueueState("hospital-queue-1",
+                        List.of("0f8fad5b-d9cb-469f-a165-70867728950e", "legacy-ticket-7", "7C9E6679-7425-40DE-944B-E07FC1F90AE7"),
+                        1.25, -3),
+                new StateSnapshot.QueueState("empty-queue", List.of(), null, null));
+        Map<String, QueueCountersState> counters = Map.of("hospital-queue-1", new QueueCountersState(
+                new CounterState(Map.of("az-a@k1", 12L, "az-b@k2", 7L), Map.of("az-a@k0", 4L)),
+                new CounterState(Map.of("az-a@k1", 5L), Map.of()),
+                -2, 123_456_789L << 16, "az-b",
+                new CounterState(Map.of("az-b@k2", 3L), Map.of()),
+                new CounterState(Map.of(), Map.of()),
+                19, Map.of("az-a@k0", 1_700_000_000_000L)));
+        return new StateSnapshot(Instant.ofEpochMilli(1_700_000_123_456L), queues, counters,
+                new StateSnapshot.JoinFilterState(128, 3, 42, new long[]{1L, -1L}));
+    }
+}
@@ -0,0 +1,130 @@
+import com.smartqueue.aliyun.dto.response.EtaResponse;
+import com.smartqueue.aliyun.eta.EtaCurve;
+import com.smartqueue.aliyun.eta.EtaCurveTable;
+
+import java.lang.management.ManagementFactory;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+/**
+ * Time and allocation per ETA estimate: the per-call computation /eta used to do versus a
+ * lookup in a precomputed EtaCurve. Single-file program against the compiled service classes:
+ *
+ *   cd service-eta-aliyun && mvn -q compile
+ *   java -cp target/classes ../tools/bench/EtaCurveBench.java [calls] [queues]
+ *
+ * Allocation is read from HotSpot's per-thread allocation counter, after escape analysis, so
+ * it is a property of this loop and this JVM, not of the /eta endpoint: the "+ response"
+ * variants only add the EtaResponse, not the observation, JSON and HTTP work of a request.
+ * Results depend on the machine and JDK; none are recorded here.
+ */
+public class EtaCurveBench {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink;
+
+    public static void main(String[] args) {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int queues = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        String[] queueIds = new String[queues];
+        for (int i = 0; i < queues; i++) {
+            queueIds[i] = "queue-" + i;
+        }
+        long validUntil = System.currentTimeMillis() + 3_600_000;
+        EtaCurveTable table = new EtaCurveTable(queueId -> EtaCurve.build(1.0 + (queueId.hashCode() & 7) / 4.0, slot -> 0.8, 15, 3, 5, 1000, validUntil), queues);
+
+        System.out.printf("%d calls over %d queues%n%n", calls, queues);
+        System.out.printf("%-28s %12s %12s%n", "variant", "ns/call", "bytes/call");
+        for (int round = 0; round < 3; round++) {
+            boolean report = round == 2; // first rounds warm up the JIT
+            run("legacy (per-call factors)", report, calls, i -> legacyMinutes(1.5, i % 200));
+            run("curve lookup", report, calls, i -> table.curve(queueIds[i % queues]).minutesAt(i % 200));
+            run("legacy + response", report, calls, i -> legacyResponse(queueIds[i % queues], i % 200).getEstimatedWaitMinutes());
+            run("curve lookup + response", report, calls, i -> curveResponse(table, queueIds[i % queues], i % 200).getEstimatedWaitMinutes());
+        }
+        System.out.println("\n(checksum " + sink + ")");
+    }
+
+    private interface Call {
+        int apply(int i);
+    }
+
+    private static void run(String name, boolean report, int calls, Call call) {
+        long thread = Thread.currentThread().getId();
+        long bytesBefore = THREADS.getThreadAllocatedBytes(thread);
+        long started = System.nanoTime();
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            sum += call.apply(i);
+        }
+        long elapsed = System.nanoTime() - started;
+        long bytes = THREADS.getThreadAllocatedBytes(thread) - bytesBefore;
+        sink += sum;
+        if (report) {
+            System.out.printf("%-28s %12.1f %12.2f%n", name, (double) elapsed / calls, (double) bytes / calls);
+        }
+    }
+
+    private static EtaResponse curveResponse(EtaCurveTable table, String queueId, int position) {
+        EtaCurve curve = table.curve(queueId);
+        return EtaResponse.builder()
+                .queueId(queueId)
+                .estimatedWaitMinutes(curve.minutesAt(position))
+                .p90WaitMinutes(curve.getP90WaitMinutes())
+                .p50WaitMinutes(curve.getP50WaitMinutes())
+                .serviceRate(curve.getServiceRate())
+                .updatedAt(Instant.now())
+                .build();
+    }
+
+    private static EtaResponse legacyResponse(String queueId, int position) {
+        return EtaResponse.builder()
+                .queueId(queueId)
+                .estimatedWaitMinutes(legacyMinutes(1.5, position))
+                .p90WaitMinutes(5)
+                .p50WaitMinutes(3)
+                .serviceRate(1.5)
+                .updatedAt(Instant.now())
+                .build();
+    }
+
+    // The computation EtaService did on every call before curves
+    private static int legacyMinutes(double baseRate, int position) {
+        LocalDateTime now = LocalDateTime.now(ZoneId.systemDefault());
+        LocalTime time = now.toLocalTime();
+        double multiplier = 1.0;
+        if ((time.isAfter(LocalTime.of(9, 0)) && time.isBefore(LocalTime.of(11, 0)))
+                || (time.isAfter(LocalTime.of(14, 0)) && time.isBefore(LocalTime.of(16, 0)))) {
+            multiplier *= 0.7;
+        }
+        if (time.isAfter(LocalTime.of(12, 0)) && time.isBefore(LocalTime.of(13, 30))) {
+            multiplier *= 0.5;
+        }
+        DayOfWeek day = now.getDayOfWeek();
+        if (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY) {
+            multiplier *= 0.8;
+        }
+        if (time.isAfter(LocalTime.of(18, 0)) && time.isBefore(LocalTime.of(20, 0))) {
+            multiplier *= 1.2;
+        }
+        double rate = Math.max(0.1, baseRate * multiplier);
+        double eta = position / rate;
+        if (position > 10) {
+            eta *= 1.1;
+        }
+        switch (day) {
+            case MONDAY -> eta *= 1.15;
+            case FRIDAY -> eta *= 1.1;
+            case SATURDAY, SUNDAY -> eta *= 0.9;
+            default -> { }
+        }
+        eta *= 1.05;
+        return Math.max(1, (int) Math.ceil(eta));
+    }
+}
@@ -0,0 +1,76 @@
+#!/bin/bash
+
+# service-eta-aliyun: platform-thread pool vs virtual threads under rising concurrency
+# Usage: ./compare_thread_modes.sh [latency_ms] [max_vus]
+#
+# Requires JDK 21+ and k6. Build first: cd service-eta-aliyun && mvn package -DskipTests
+# Runs the dev profile with MockEtaStatsRepository sleeping latency_ms per TableStore call,
+# which stands in for the SyncClient round trip. With the default Tomcat pool (200 threads)
+# throughput flattens at ~200 / request latency; in virtual mode it keeps scaling with VUs.
+
+set -e
+
+LATENCY_MS=${1:-50}
+MAX_VUS=${2:-1600}
+ROOT="$(cd "$(dirname "$0")/../.." && pwd)"
+JAR="$ROOT/service-eta-aliyun/target/service-eta-aliyun-1.0.0.jar"
+RESULTS_DIR="./results/thread_modes_$(date +%Y%m%d_%H%M%S)"
+PORT=8081
+
+if [ ! -f "$JAR" ]; then
+    echo "❌ $JAR not found (mvn package -DskipTests)"
+    exit 1
+fi
+
+mkdir -p "$RESULTS_DIR"
+
+# run_mode <label> <virtual:true|false>
+run_mode() {
+    local label=$1
+    local virtual=$2
+
+    echo "🚀 $label: starting service (simulated TableStore latency ${LATENCY_MS}ms)"
+    SPRING_PROFILES_ACTIVE=dev VIRTUAL_THREADS=$virtual \
+        java -Djdk.tracePinnedThreads=short -jar "$JAR" \
+        --app.mock.tablestore-latency-ms="$LATENCY_MS" \
+        --logging.level.com.smartqueue=WARN \
+        > "$RESULTS_DIR/$label.log" 2>&1 &
+    local pid=$!
+
+    until curl -sf "http://localhost:$PORT/actuator/health" | grep -q '"UP"'; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "❌ $label exited before becoming healthy, see $RESULTS_DIR/$label.log"
+            return 1
+        fi
+        sleep 0.5
+    done
+
+    k6 run --quiet -e API_ALIYUN_BASE="http://localhost:$PORT" -e MAX_VUS="$MAX_VUS" \
+        --summary-export="$RESULTS_DIR/$label.json" eta_thread_modes.js
+
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+
+    # Carrier pinning reported by -Djdk.tracePinnedThreads (virtual mode only)
+    local pinned
+    pinned=$(grep -c "onPinned\|<== monitors" "$RESULTS_DIR/$label.log" || true)
+    echo "📌 $label: pinned-thread stack traces: $pinned"
+}
+
+run_mode platform false
+run_mode virtual true
+
+echo ""
+echo "📊 Summary (latency ${LATENCY_MS}ms, up to $MAX_VUS VUs)"
+printf "%-10s | %10s | %10s | %10s | %8s\n" "mode" "req/s" "eta p50" "eta p99" "failed"
+for label in platform virtual; do
+    jq -r --arg label "$label" \
+        '[$label,
+          (.metrics.http_reqs.rate | floor),
+          (.metrics.eta_latency["p(50)"] | floor | tostring + "ms"),
+          (.metrics.eta_latency["p(99)"] | floor | tostring + "ms"),
+          ((.metrics.http_req_failed.value * 100 | floor | tostring) + "%")] | @tsv' \
+        "$RESULTS_DIR/$label.json" |
+        awk -F'\t' '{printf "%-10s | %10s | %10s | %10s | %8s\n", $1, $2, $3, $4, $5}'
+done
+echo "📄 Raw k6 summaries: $RESULTS_DIR"
@@ -0,0 +1,57 @@
+import http from 'k6/http';
+import { check } from 'k6';
+import { Trend } from 'k6/metrics';
+
+// Concurrency scaling of service-eta-aliyun: platform-thread Tomcat pool vs virtual threads.
+// Driven by compare_thread_modes.sh, which starts the service with a simulated TableStore latency.
+// Every VU issues requests back-to-back, so throughput = VUs / latency until the server saturates.
+
+const ALIYUN_BASE = __ENV.API_ALIYUN_BASE || 'http://localhost:8081';
+const MAX_VUS = parseInt(__ENV.MAX_VUS || '1600');
+const STEP_DURATION = __ENV.STEP_DURATION || '30s';
+
+const etaLatency = new Trend('eta_latency', true);
+const statsLatency = new Trend('stats_latency', true);
+
+// 100 -> 200 -> 400 -> ... -> MAX_VUS, each level held for STEP_DURATION
+function stepStages() {
+  const stages = [];
+  for (let vus = 100; vus <= MAX_VUS; vus *= 2) {
+    stages.push({ duration: '5s', target: vus });
+    stages.push({ duration: STEP_DURATION, target: vus });
+  }
+  stages.push({ duration: '5s', target: 0 });
+  return stages;
+}
+
+export const options = {
+  scenarios: {
+    ramp: {
+      executor: 'ramping-vus',
+      startVUs: 0,
+      stages: stepStages(),
+      gracefulRampDown: '5s',
+    },
+  },
+  summaryTrendStats: ['avg', 'p(50)', 'p(90)', 'p(99)', 'max'],
+};
+
+export default function () {
+  const queueId = `bench-queue-${__VU % 20}`;
+
+  if (__ITER % 5 === 0) {
+    const res = http.post(
+      `${ALIYUN_BASE}/stats/served`,
+      JSON.stringify({ queueId: queueId, count: 1, windowSec: 60 }),
+      { headers: { 'Content-Type': 'application/json' } }
+    );
+    statsLatency.add(res.timings.duration);
+    check(res, { 'stats 200': (r) => r.status === 200 });
+  } else {
+    const res = http.get(
+      `${ALIYUN_BASE}/eta?queueId=${queueId}&ticketId=bench-${__VU}-${__ITER}&position=${(__ITER % 30) + 1}`
+    );
+    etaLatency.add(res.timings.duration);
+    check(res, { 'eta 200': (r) => r.status === 200 });
+  }
+}
@@ -0,0 +1,110 @@
+import http from 'k6/http';
+import { check, sleep } from 'k6';
+import { Counter, Rate, Trend } from 'k6/metrics';
+
+// Status polling against service-queue-aws, with and without conditional GETs.
+// CONDITIONAL=true makes every poller send If-None-Match with the last ETag it saw;
+// compare data_received and status_latency between the two runs.
+//   k6 run -e CONDITIONAL=false status_polling.js
+//   k6 run -e CONDITIONAL=true status_polling.js
+
+const AWS_BASE = __ENV.API_AWS_BASE || 'http://localhost:8080';
+const CONDITIONAL = (__ENV.CONDITIONAL || 'true') === 'true';
+const QUEUE_ID = __ENV.QUEUE_ID || 'poll-bench-queue';
+const POLLERS = parseInt(__ENV.POLLERS || '200');
+const POLL_INTERVAL_SEC = parseFloat(__ENV.POLL_INTERVAL_SEC || '1');
+const DURATION = __ENV.DURATION || '2m';
+
+const statusLatency = new Trend('status_latency', true);
+const notModifiedRate = new Rate('status_not_modified');
+const fullResponses = new Counter('status_full_responses');
+
+export const options = {
+  scenarios: {
+    pollers: {
+      executor: 'constant-vus',
+      vus: POLLERS,
+      duration: DURATION,
+      exec: 'poll',
+    },
+    // One join and one serve every 5s, so some polls must see a new payload
+    churn: {
+      executor: 'constant-arrival-rate',
+      rate: 1,
+      timeUnit: '5s',
+      duration: DURATION,
+      preAllocatedVUs: 2,
+      exec: 'churn',
+    },
+  },
+  summaryTrendStats: ['avg', 'p(50)', 'p(90)', 'p(99)', 'max'],
+};
+
+export function setup() {
+  http.post(
+    `${AWS_BASE}/queues`,
+    JSON.stringify({ queueId: QUEUE_ID, queueName: 'Polling benchmark', maxCapacity: 100000, openSlots: 0, isActive: true }),
+    { headers: { 'Content-Type': 'application/json' } }
+  );
+
+  const run = Date.now();
+  const tickets = [];
+  for (let i = 0; i < POLLERS; i++) {
+    const userId = registerUser(`poll-${run}-${i}`);
+    const res = userId && http.post(
+      `${AWS_BASE}/queues/${QUEUE_ID}/join`,
+      JSON.stringify({ userId: userId }),
+      { headers: { 'Content-Type': 'application/json' } }
+    );
+    tickets.push(res && res.status === 200 ? JSON.parse(res.body).ticketId : null);
+  }
+
+  // Churn joins reuse a small pool of users; a user already waiting just gets their ticket back
+  const churnUsers = [];
+  for (let i = 0; i < 50; i++) {
+    churnUsers.push(registerUser(`churn-${run}-${i}`));
+  }
+  return { tickets: tickets, churnUsers: churnUsers.filter((u) => u) };
+}
+
+function registerUser(name) {
+  const res = http.post(
+    `${AWS_BASE}/users/register`,
+    JSON.stringify({ name: name, email: `${name}@bench.local`, phone: `+8490${Math.floor(Math.random() * 1e7)}`, password: 'Bench1234' }),
+    { headers: { 'Content-Type': 'application/json' } }
+  );
+  return res.status === 201 ? JSON.parse(res.body).userId : null;
+}
+
+let lastETag = null;
+
+export function poll(data) {
+  const ticketId = data.tickets[(__VU - 1) % data.tickets.length];
+  if (!ticketId) {
+    return;
+  }
+
+  const headers = CONDITIONAL && lastETag ? { 'If-None-Match': lastETag } : {};
+  const res = http.get(`${AWS_BASE}/queues/${QUEUE_ID}/status?ticketId=${ticketId}`, { headers: headers });
+  statusLatency.add(res.timings.duration);
+  notModifiedRate.add(res.status === 304);
+  if (res.status === 200) {
+    fullResponses.add(1);
+    lastETag = res.headers['Etag'] || null;
+  }
+  check(res, { 'status 200 or 304': (r) => r.status === 200 || r.status === 304 });
+  sleep(POLL_INTERVAL_SEC);
+}
+
+export function churn(data) {
+  http.post(
+    `${AWS_BASE}/queues/${QUEUE_ID}/join`,
+    JSON.stringify({ userId: data.churnUsers[__ITER % data.churnUsers.length] }),
+    { headers: { 'Content-Type': 'application/json' } }
+  );
+  http.post(
+    `${AWS_BASE}/queues/${QUEUE_ID}/next`,
+    JSON.stringify({ count: 1 }),
+    { headers: { 'Content-Type': 'application/json' } }
+  );
+}
@@ -0,0 +1,118 @@
+#!/bin/bash
+
+# Active-active replication drill: two service-queue-aws nodes (in-memory mode) gossiping
+# per-queue counters, a simulated partition while both keep taking joins and serves, then a
+# check that both nodes report the same counters after the partition heals.
+# Usage: ./partition_convergence.sh [joins-per-phase]
+#
+# Build first: cd service-queue-aws && mvn package -DskipTests
+# /internal/** needs the internal token; both nodes and the script share INTERNAL_TOKEN.
+
+set -e
+
+JOINS=${1:-20}
+ROOT="$(cd "$(dirname "$0")/../.." && pwd)"
+JAR="$ROOT/service-queue-aws/target/service-queue-aws-1.0.0.jar"
+QUEUE_ID="replication-drill"
+INTERNAL_TOKEN=${INTERNAL_TOKEN:-drill-$RANDOM$RANDOM}
+NODE_A="http://localhost:8080"
+NODE_B="http://localhost:8090"
+
+if [ ! -f "$JAR" ]; then
+    echo "❌ $JAR not found (mvn package -DskipTests)"
+    exit 1
+fi
+
+# start_node <id> <port> <peer-id> <peer-url>
+start_node() {
+    SERVER_PORT=$2 USE_IN_MEMORY=true OUTBOX_RELAY_ENABLED=false \
+    REPLICATION_ENABLED=true REPLICATION_NODE_ID=$1 REPLICATION_PEERS="$3=$4" \
+    REPLICATION_FAULT_INJECTION=true INTERNAL_TOKEN="$INTERNAL_TOKEN" \
+        java -jar "$JAR" > "/tmp/smartqueue-$1.log" 2>&1 &
+    echo $!
+}
+
+wait_healthy() {
+    until curl -sf "$1/actuator/health" | grep -q '"UP"'; do
+        sleep 0.5
+    done
+}
+
+# join_users <node-url> <prefix> <count>
+join_users() {
+    for i in $(seq 1 "$3"); do
+        local user_id
+        user_id=$(curl -sf -X POST "$1/users/register" -H 'Content-Type: application/json' \
+            -d "{\"name\":\"$2-$i\",\"email\":\"$2-$i@drill.local\",\"phone\":\"+8490$(printf '%07d' $((RANDOM * 10 + i)))\",\"password\":\"Drill1234\"}" \
+            | sed -n 's/.*"userId":"\([^"]*\)".*/\1/p')
+        curl -sf -o /dev/null -X POST "$1/queues/$QUEUE_ID/join" -H 'Content-Type: application/json' \
+            -d "{\"userId\":\"$user_id\"}"
+    done
+}
+
+serve() {
+    curl -sf -o /dev/null -X POST "$1/queues/$QUEUE_ID/next" -H 'Content-Type: application/json' -d "{\"count\":$2}"
+}
+
+# Counters as "joins served waiting openSlots joinSequence" (JSON key order varies between JVMs)
+counters() {
+    local body
+    body=$(curl -sf "$1/replication/queues/$QUEUE_ID")
+    for field in joins served waiting openSlots joinSequence; do
+        printf '%s=%s ' "$field" "$(echo "$body" | sed -n "s/.*\"$field\":\([0-9-]*\).*/\1/p")"
+    done
+}
+
+PID_A=$(start_node node-a 8080 node-b "$NODE_B")
+PID_B=$(start_node node-b 8090 node-a "$NODE_A")
+trap 'kill $PID_A $PID_B 2>/dev/null || true' EXIT
+wait_healthy "$NODE_A"
+wait_healthy "$NODE_B"
+
+# Each in-memory node has its own queue table; replicated open slots take the later create
+for node in "$NODE_A" "$NODE_B"; do
+    curl -sf -o /dev/null -X POST "$node/queues" -H 'Content-Type: application/json' \
+        -d "{\"queueId\":\"$QUEUE_ID\",\"queueName\":\"Replication drill\",\"maxCapacity\":100000,\"openSlots\":10,\"isActive\":true}"
+done
+
+# partition <method> <node-url>
+partition() {
+    curl -sf -X "$1" -H "X-Internal-Token: $INTERNAL_TOKEN" "$2/internal/replication/partition"
+}
+
+echo "🔗 Phase 1: connected"
+join_users "$NODE_A" "a1" "$JOINS"
+join_users "$NODE_B" "b1" "$JOINS"
+serve "$NODE_A" 3
+
+echo "✂️  Phase 2: partitioned, both nodes keep working"
+partition POST "$NODE_A"
+partition POST "$NODE_B"
+join_users "$NODE_A" "a2" "$JOINS"
+join_users "$NODE_B" "b2" "$JOINS"
+serve "$NODE_A" 5
+serve "$NODE_B" 7
+echo "   node A: $(counters "$NODE_A")"
+echo "   node B: $(counters "$NODE_B")"
+
+echo "🩹 Phase 3: healed"
+partition DELETE "$NODE_A"
+partition DELETE "$NODE_B"
+
+EXPECTED_JOINS=$((JOINS * 4))
+for attempt in $(seq 1 20); do
+    sleep 0.5
+    A=$(counters "$NODE_A")
+    B=$(counters "$NODE_B")
+    if [ "$A" = "$B" ] && echo "$A" | grep -q "joins=$EXPECTED_JOINS "; then
+        echo "   node A: $A"
+        echo "   node B: $B"
+        echo "✅ Converged after $attempt rounds (joins=$EXPECTED_JOINS, served=15)"
+        exit 0
+    fi
+done
+
+echo "   node A: $A"
+echo "   node B: $B"
+echo "❌ Nodes did not converge"
+exit 1
@@ -0,0 +1,94 @@
+#!/bin/bash
+
+# SmartQueue startup comparison: JVM jar vs JVM + AOT vs GraalVM native
+# Usage: ./compare_startup.sh [aws|aliyun] [runs]
+#
+# Build first:
+#   cd service-queue-aws && mvn -Pnative package && mvn -Pnative native:compile
+# Reports time until /actuator/health is UP and resident memory (RSS) at that point.
+
+set -e
+
+SERVICE=${1:-aws}
+RUNS=${2:-5}
+ROOT="$(cd "$(dirname "$0")/../.." && pwd)"
+
+if [ "$SERVICE" = "aws" ]; then
+    MODULE="service-queue-aws"
+    PORT=8080
+    export SPRING_PROFILES_ACTIVE=prod
+    export USE_IN_MEMORY=false
+    export AWS_ACCESS_KEY_ID=${AWS_ACCESS_KEY_ID:-test}
+    export AWS_SECRET_ACCESS_KEY=${AWS_SECRET_ACCESS_KEY:-test}
+else
+    MODULE="service-eta-aliyun"
+    PORT=8081
+    export SPRING_PROFILES_ACTIVE=prod
+fi
+
+JAR="$ROOT/$MODULE/target/$MODULE-1.0.0.jar"
+NATIVE="$ROOT/$MODULE/target/$MODULE"
+HEALTH_URL="http://localhost:$PORT/actuator/health"
+
+now_ms() {
+    date +%s%3N
+}
+
+rss_kb() {
+    if [ -r "/proc/$1/status" ]; then
+        awk '/VmRSS/ {print $2}' "/proc/$1/status"
+    else
+        ps -o rss= -p "$1" | tr -d ' '
+    fi
+}
+
+# measure <label> <command...>
+measure() {
+    local label=$1
+    shift
+    local total_ms=0
+    local total_rss=0
+
+    for i in $(seq 1 "$RUNS"); do
+        local start
+        start=$(now_ms)
+        "$@" > /dev/null 2>&1 &
+        local pid=$!
+
+        until curl -sf "$HEALTH_URL" | grep -q '"UP"'; do
+            if ! kill -0 "$pid" 2>/dev/null; then
+                echo "❌ $label exited before becoming healthy"
+                return 1
+            fi
+            sleep 0.02
+        done
+
+        local elapsed=$(( $(now_ms) - start ))
+        local rss
+        rss=$(rss_kb "$pid")
+        kill "$pid"
+        wait "$pid" 2>/dev/null || true
+
+        total_ms=$(( total_ms + elapsed ))
+        total_rss=$(( total_rss + rss ))
+    done
+
+    printf "%-12s | %8d ms | %8d MB\n" "$label" $(( total_ms / RUNS )) $(( total_rss / RUNS / 1024 ))
+}
+
+echo "🚀 Startup comparison for $MODULE ($RUNS runs each, averages)"
+printf "%-12s | %11s | %11s\n" "mode" "to healthy" "RSS"
+echo "-------------+-------------+------------"
+
+if [ -f "$JAR" ]; then
+    measure "jvm" java -jar "$JAR"
+    measure "jvm+aot" java -Dspring.aot.enabled=true -jar "$JAR"
+else
+    echo "⚠️  $JAR not found, skipping JVM modes"
+fi
+
+if [ -x "$NATIVE" ]; then
+    measure "native" "$NATIVE"
+else
+    echo "⚠️  $NATIVE not found, skipping native mode (mvn -Pnative native:compile)"
+fi